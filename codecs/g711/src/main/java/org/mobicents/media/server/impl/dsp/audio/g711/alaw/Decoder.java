@@ -22,6 +22,8 @@
 
 package org.mobicents.media.server.impl.dsp.audio.g711.alaw;
 
+import java.nio.ByteBuffer;
+
 import org.mobicents.media.server.spi.dsp.Codec;
 import org.mobicents.media.server.spi.format.Format;
 import org.mobicents.media.server.spi.format.FormatFactory;
@@ -142,14 +144,25 @@ public class Decoder implements Codec {
     	destinationLen=sourceLen * 2;
         Frame res = Memory.allocate(destinationLen);
         
-        byte[] data=frame.getData();
         byte[] resData=res.getData();
         
-        for (i = 0,j = 0; i < sourceLen; i++) 
-        {
-        	currentIndex = data[i] & 0xff;
-            resData[j++] = aLawDecompressTable_low[currentIndex];
-            resData[j++] = aLawDecompressTable_high[currentIndex];
+        if (frame.isDirect()) {
+            //read network buffer in place
+            ByteBuffer data=frame.getBuffer();
+            for (i = 0,j = 0; i < sourceLen; i++) 
+            {
+            	currentIndex = data.get(i) & 0xff;
+                resData[j++] = aLawDecompressTable_low[currentIndex];
+                resData[j++] = aLawDecompressTable_high[currentIndex];
+            }
+        } else {
+            byte[] data=frame.getData();
+            for (i = 0,j = 0; i < sourceLen; i++) 
+            {
+            	currentIndex = data[i] & 0xff;
+                resData[j++] = aLawDecompressTable_low[currentIndex];
+                resData[j++] = aLawDecompressTable_high[currentIndex];
+            }
         }
         
         res.setOffset(0);
@@ -22,6 +22,8 @@
 
 package org.mobicents.media.server.impl.dsp.audio.g711.ulaw;
 
+import java.nio.ByteBuffer;
+
 import org.mobicents.media.server.spi.dsp.Codec;
 import org.mobicents.media.server.spi.format.Format;
 import org.mobicents.media.server.spi.format.FormatFactory;
@@ -54,13 +56,19 @@ public class Encoder implements Codec {
      */
     public Frame process(Frame frame) {
     	count = frame.getLength() / 2;
-        Frame res = Memory.allocate(count);
+        Frame res = Memory.allocatePayload(count);
         
         byte[] data=frame.getData();
-        byte[] resData=res.getData();
-        
-        for (i = 0,j = 0; i < count; i++,j++)
-        	resData[i]=EncoderData.muLawCompressTable[data[j+1] & 0xff][data[j++] & 0xff];        	
+        if (res.isDirect()) {
+            //write directly into network buffer
+            ByteBuffer resData=res.getBuffer();
+            for (i = 0,j = 0; i < count; i++,j++)
+            	resData.put(i, EncoderData.muLawCompressTable[data[j+1] & 0xff][data[j++] & 0xff]);
+        } else {
+            byte[] resData=res.getData();
+            for (i = 0,j = 0; i < count; i++,j++)
+            	resData[i]=EncoderData.muLawCompressTable[data[j+1] & 0xff][data[j++] & 0xff];
+        }
         
         res.setOffset(0);
         res.setLength(count);
@@ -125,4 +125,28 @@ public class UlawCodecTest  {
             }
         }
     }
+
+    /**
+     * Test of process method with frames in direct memory.
+     */
+    @Test
+    public void testDirectCodec() {
+        Frame expected = new Decoder().process(new Encoder().process(buffer));
+
+        Memory.setDirectPayloads(true);
+        try {
+            Frame compressed = new Encoder().process(buffer);
+            assertTrue(compressed.isDirect());
+
+            Frame res = new Decoder().process(compressed);
+            assertFalse(res.isDirect());
+            for (int i = 0; i < res.getLength(); i++) {
+                if (res.getData()[i] != expected.getData()[i]) {
+                    fail("mismatch found at " + i);
+                }
+            }
+        } finally {
+            Memory.setDirectPayloads(false);
+        }
+    }
 }
@@ -24,6 +24,7 @@ package org.mobicents.media.server.component;
 
 import org.mobicents.media.server.spi.dsp.Codec;
 import org.mobicents.media.server.spi.dsp.Processor;
+import org.mobicents.media.server.spi.dsp.SharedEncoder;
 import org.mobicents.media.server.spi.format.Format;
 import org.mobicents.media.server.spi.memory.Frame;
 
@@ -71,7 +72,7 @@ public class Dsp implements Processor {
 			//do transcode if required
 			if (codec != null) {
 				try {
-					return codec.process(frame);
+					return encode(frame);
 				} finally {
 					frame.recycle();
 				}
@@ -103,7 +104,7 @@ public class Dsp implements Processor {
 		//if codec found do the transcoding
 		if (codec != null) {
 			try {
-				return codec.process(frame);
+				return encode(frame);
 			} finally {
 				frame.recycle();
 			}    			    			    			
@@ -112,4 +113,20 @@ public class Dsp implements Processor {
 		//return frame without changes
 		return frame;
     }
+
+    /**
+     * Transcodes frame with selected codec. Frame delivered to several sinks
+     * is transcoded only once by encoder shared between them.
+     */
+    private Frame encode(Frame frame) {
+    	SharedEncoder encoder = frame.getSharedEncoder();
+    	if (encoder != null) {
+    		Frame result = encoder.encode(frame, codec);
+    		if (result != null) {
+    			return result;
+    		}
+    	}
+
+    	return codec.process(frame);
+    }
 }
@@ -25,6 +25,7 @@ package org.mobicents.media.server.component.audio;
 import java.util.Iterator;
 
 import org.mobicents.media.server.concurrent.ConcurrentMap;
+import org.mobicents.media.server.spi.dsp.SharedEncoder;
 import org.mobicents.media.server.spi.format.AudioFormat;
 import org.mobicents.media.server.spi.format.FormatFactory;
 import org.mobicents.media.server.spi.memory.Frame;
@@ -33,10 +34,16 @@ import org.mobicents.media.server.spi.memory.Memory;
 /**
  * Implements compound components used by mixer and splitter.
  * 
+ * Peak amplitude of the received samples is tracked while they are decoded, so
+ * mixer may skip silent components without additional pass over the data.
+ * 
  * @author Yulian Oifa
  */
 public class AudioComponent {
 
+	// peak amplitude below which component is treated as silent
+	public static final int SILENCE_LEVEL = 16;
+
 	// the format of the output stream.
 	private AudioFormat format = FormatFactory.createAudioFormat("LINEAR",
 			8000, 16, 1);
@@ -63,6 +70,23 @@ public class AudioComponent {
 	int inputCount, outputCount, inputIndex, outputIndex;
 	boolean first;
 
+	// peak amplitude of current data
+	private int peak;
+	private int sample;
+
+	// sum of absolute amplitudes of current data and its smoothed average
+	private int energy;
+	private int level;
+
+	private int currLevel;
+
+	// whether component is selected as active speaker by mixer
+	boolean speaker;
+
+	// encoder of the only frame received during last cycle
+	private SharedEncoder sharedEncoder;
+	private long sharedCycle;
+
 	private int componentId;
 
 	/**
@@ -100,6 +124,7 @@ public class AudioComponent {
 
 	public void perform() {
 		first = true;
+		sharedEncoder = null;
 		activeInputs = inputs.valuesIterator();
 
 		while (activeInputs.hasNext()) {
@@ -107,21 +132,43 @@ public class AudioComponent {
 			inputFrame = input.poll();
 			if (inputFrame != null) {
 				dataArray = inputFrame.getData();
+				// last pass over data sees final values of samples
+				peak = 0;
+				energy = 0;
 				if (first) {
+					sharedEncoder = inputFrame.getSharedEncoder();
+					sharedCycle = inputFrame.getSharedCycle();
 					inputIndex = 0;
 					for (inputCount = 0; inputCount < dataArray.length; inputCount += 2) {
-						data[inputIndex++] = (short) (((dataArray[inputCount + 1]) << 8) | (dataArray[inputCount] & 0xff));
+						sample = (short) (((dataArray[inputCount + 1]) << 8) | (dataArray[inputCount] & 0xff));
+						data[inputIndex++] = sample;
+						sample = sample ^ (sample >> 31);
+						peak = Math.max(peak, sample);
+						energy += sample;
 					}
 					first = false;
 				} else {
+					sharedEncoder = null;
 					inputIndex = 0;
 					for (inputCount = 0; inputCount < dataArray.length; inputCount += 2) {
-						data[inputIndex++] += (short) (((dataArray[inputCount + 1]) << 8) | (dataArray[inputCount] & 0xff));
+						sample = data[inputIndex] + (short) (((dataArray[inputCount + 1]) << 8) | (dataArray[inputCount] & 0xff));
+						data[inputIndex++] = sample;
+						sample = sample ^ (sample >> 31);
+						peak = Math.max(peak, sample);
+						energy += sample;
 					}
 				}
 				inputFrame.recycle();
 			}
 		}
+
+		// fast attack and slow release of the speech level
+		currLevel = first ? 0 : energy / data.length;
+		if (currLevel > level) {
+			level += (currLevel - level) >> 1;
+		} else {
+			level -= (level - currLevel) >> 3;
+		}
 	}
 
 	public int[] getData() {
@@ -136,6 +183,63 @@ public class AudioComponent {
 		return data;
 	}
 
+	/**
+	 * Gets the peak amplitude of the data received during last cycle.
+	 * 
+	 * @return the absolute peak value, zero if no data was received.
+	 */
+	public int getPeak() {
+		if (first) {
+			return 0;
+		}
+
+		return peak;
+	}
+
+	/**
+	 * Gets the encoder of the frame received during last cycle.
+	 * 
+	 * Data of the component is exactly the content of that frame, so mixer
+	 * which passes data unchanged may mark its output with the same encoder.
+	 * 
+	 * @return the encoder or null if frame was not marked or data was mixed
+	 *         from several inputs.
+	 */
+	public SharedEncoder getSharedEncoder() {
+		return sharedEncoder;
+	}
+
+	/**
+	 * Gets the cycle of the encoder of the frame received during last cycle.
+	 * 
+	 * @return the cycle number.
+	 */
+	public long getSharedCycle() {
+		return sharedCycle;
+	}
+
+	/**
+	 * Gets the smoothed average amplitude of the received data.
+	 * 
+	 * Level rises quickly when speech starts and decays within several
+	 * cycles, so short pauses do not drop it below silence level.
+	 * 
+	 * @return the average absolute amplitude.
+	 */
+	public int getLevel() {
+		return level;
+	}
+
+	/**
+	 * Checks whether component has no audible data for mixing.
+	 * 
+	 * @return true if component does not read or its level is below
+	 *         {@link #SILENCE_LEVEL}.
+	 */
+	public boolean isSilent() {
+		return !this.shouldRead || first || peak <= SILENCE_LEVEL;
+	}
+
 	public void offer(int[] data) {
 		if (!this.shouldWrite) {
 			return;
@@ -166,4 +270,35 @@ public class AudioComponent {
 			output.wakeup();
 		}
 	}
+
+	/**
+	 * Offers frame shared between several components to each output.
+	 * 
+	 * Frame is not consumed, caller remains its owner and recycles it.
+	 * 
+	 * @param frame
+	 *            the frame with linear data.
+	 */
+	public void offer(Frame frame) {
+		if (!this.shouldWrite) {
+			return;
+		}
+
+		activeOutputs = outputs.valuesIterator();
+		while (activeOutputs.hasNext()) {
+			AudioOutput output = activeOutputs.next();
+			output.offer(frame.clone());
+			output.wakeup();
+		}
+	}
+
+	/**
+	 * Checks whether component was selected as one of active speakers by
+	 * mixer during last cycle.
+	 * 
+	 * @return true if data of component was mixed.
+	 */
+	public boolean isSpeaker() {
+		return speaker;
+	}
 }
@@ -25,7 +25,7 @@ package org.mobicents.media.server.component.audio;
 import java.io.IOException;
 
 import org.mobicents.media.server.impl.AbstractSink;
-import org.mobicents.media.server.concurrent.ConcurrentCyclicFIFO;
+import org.mobicents.media.server.concurrent.ConcurrentRingFIFO;
 import org.mobicents.media.server.spi.memory.Frame;
 import org.mobicents.media.server.spi.memory.Memory;
 
@@ -40,7 +40,7 @@ public class AudioInput extends AbstractSink {
 
 	private int inputId;
     private int limit=3;
-    private ConcurrentCyclicFIFO<Frame> buffer = new ConcurrentCyclicFIFO<Frame>();
+    private ConcurrentRingFIFO<Frame> buffer = new ConcurrentRingFIFO<Frame>(limit+1);
     private Frame activeFrame=null;
     private byte[] activeData;
     private byte[] oldData;
@@ -87,6 +87,10 @@ public class AudioInput extends AbstractSink {
     			activeFrame.setLength(packetSize);
     			activeData=activeFrame.getData(); 
     			byteIndex=0;
+    			
+    			//frame passed as a whole keeps encoder of its producer
+    			if(count==0 && oldData.length==packetSize)
+    				activeFrame.setSharedEncoder(frame.getSharedEncoder(), frame.getSharedCycle());
     		}
     		
     		if(oldData.length-count<activeData.length-byteIndex)
@@ -100,10 +104,14 @@ public class AudioInput extends AbstractSink {
     			System.arraycopy(oldData, count, activeData, byteIndex, activeData.length-byteIndex);
     			count+=activeData.length-byteIndex;
     			
-    			if (buffer.size() >= limit) 
-            		buffer.poll().recycle();
+    			if (buffer.size() >= limit) {
+    				Frame oldFrame = buffer.poll();
+    				if (oldFrame != null)
+    					oldFrame.recycle();
+    			}
                 
-            	buffer.offer(activeFrame);
+            	if (!buffer.offer(activeFrame))
+            		activeFrame.recycle();
             	
             	activeFrame=null;
     			activeData=null;    			    			
@@ -135,8 +143,7 @@ public class AudioInput extends AbstractSink {
      * Recycles input stream
      */
     public void recycle() {
-    	while(buffer.size()>0)
-    		buffer.poll().recycle();
+    	resetBuffer();
     	
     	if(activeFrame!=null)
     		activeFrame.recycle();
@@ -148,7 +155,10 @@ public class AudioInput extends AbstractSink {
     
     public void resetBuffer()
     {
-    	while(buffer.size()>0)
-    		buffer.poll().recycle();
+    	Frame frame = buffer.poll();
+    	while (frame != null) {
+    		frame.recycle();
+    		frame = buffer.poll();
+    	}
     }
 }
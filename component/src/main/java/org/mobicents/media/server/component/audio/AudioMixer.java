@@ -27,15 +27,42 @@ import java.util.Iterator;
 import org.mobicents.media.server.concurrent.ConcurrentMap;
 import org.mobicents.media.server.scheduler.Scheduler;
 import org.mobicents.media.server.scheduler.Task;
+import org.mobicents.media.server.spi.dsp.SharedEncoder;
 import org.mobicents.media.server.spi.format.AudioFormat;
 import org.mobicents.media.server.spi.format.FormatFactory;
+import org.mobicents.media.server.spi.memory.Frame;
+import org.mobicents.media.server.spi.memory.Memory;
 
 /**
  * Implements compound audio mixer , one of core components of mms 3.0
  * 
+ * Mixing is done in fixed point arithmetic. Silent components are skipped,
+ * sum of active components is accumulated with peak detection in the last
+ * pass and gain is applied together with subtraction of own signal for each
+ * speaker.
+ * 
+ * For large conferences number of mixed speakers may be limited. In that case
+ * only the loudest components are mixed, each of them receives the mix without
+ * own signal while all other components share the same frame. Current
+ * speakers are favored when selecting, so short pauses or slightly louder
+ * background noise of other party do not switch speakers back and forth.
+ * 
+ * Frame shared by listeners is marked with encoder of the mixer, so listeners
+ * which use the same codec transcode the mix only once per cycle. When the
+ * only speaker is passed to listeners unchanged, for example prompt of a
+ * player, frame keeps the encoder of the speaker instead, which may serve
+ * data encoded in advance.
+ * 
  * @author Yulian Oifa
  */
 public class AudioMixer {
+	// fixed point gain precision
+	private static final int GAIN_SHIFT = 16;
+	private static final int UNITY_GAIN = 1 << GAIN_SHIFT;
+
+	// level multiplier of current speakers, 6dB
+	private static final int HYSTERESIS_SHIFT = 1;
+
 	// scheduler for mixer job scheduling
 	private Scheduler scheduler;
 
@@ -56,7 +83,13 @@ public class AudioMixer {
 	public long mixCount = 0;
 
 	// gain value
-	private double gain = 1.0;
+	private volatile int gain = UNITY_GAIN;
+
+	// max number of mixed speakers, 0 if not limited
+	private volatile int maxSpeakers = 0;
+
+	// encoder of the mix shared by listeners
+	private SharedEncoder encoder = new SharedEncoder();
 
 	public AudioMixer(Scheduler scheduler) {
 		this.scheduler = scheduler;
@@ -88,7 +121,41 @@ public class AudioMixer {
 	 *            the new value of the gain in dBm.
 	 */
 	public void setGain(double gain) {
-		this.gain = gain > 0 ? gain * 1.26 : gain == 0 ? 1 : 1 / (gain * 1.26);
+		double value = gain > 0 ? gain * 1.26 : gain == 0 ? 1 : 1 / (gain * 1.26);
+		this.gain = (int) Math.round(value * UNITY_GAIN);
+	}
+
+	/**
+	 * Limits the number of speakers mixed together.
+	 * 
+	 * @param maxSpeakers
+	 *            the max number of loudest components mixed during each
+	 *            cycle, 0 to mix all components with audible data.
+	 */
+	public void setMaxSpeakers(int maxSpeakers) {
+		if (maxSpeakers < 0) {
+			throw new IllegalArgumentException("Max speakers can not be negative");
+		}
+		this.maxSpeakers = maxSpeakers;
+	}
+
+	/**
+	 * Gets the max number of speakers mixed together.
+	 * 
+	 * @return the number of speakers, 0 if not limited.
+	 */
+	public int getMaxSpeakers() {
+		return maxSpeakers;
+	}
+
+	/**
+	 * Assigns the key used by sharded schedulers to select the executing core,
+	 * should be the key of the endpoint which owns the mixer.
+	 * 
+	 * @param affinity the non negative key value.
+	 */
+	public void setAffinity(int affinity) {
+		mixer.setAffinity(affinity);
 	}
 
 	public void start() {
@@ -100,17 +167,41 @@ public class AudioMixer {
 	public void stop() {
 		started = false;
 		mixer.cancel();
+		encoder.release();
+	}
+
+	/**
+	 * Gets the encoder of the mix shared by listeners.
+	 * 
+	 * @return the encoder instance.
+	 */
+	public SharedEncoder getSharedEncoder() {
+		return encoder;
+	}
+
+	/**
+	 * Executes one mixing cycle.
+	 */
+	void mix() {
+		mixer.mix();
 	}
 
 	private class MixTask extends Task {
 		int sourcesCount = 0;
-		private int i;
-		private int minValue = 0;
+		private int i, k;
 		private int maxValue = 0;
-		private double currGain = 0;
+		private int currGain = 0;
+		private int value;
 		private int[] total = new int[packetSize / 2];
 		private int[] current;
 
+		// data of active components of current cycle
+		private AudioComponent[] sources = new AudioComponent[16];
+
+		// selection scores of speakers when their number is limited
+		private int[] scores = new int[16];
+		private int limit, score;
+
 		public MixTask() {
 			super();
 		}
@@ -122,76 +213,197 @@ public class AudioMixer {
 
 		@Override
 		public long perform() {
-			// summarize all
-			sourcesCount = 0;
-			activeComponents = components.valuesIterator();
-			while (activeComponents.hasNext()) {
-				AudioComponent component = activeComponents.next();
-				component.perform();
-				current = component.getData();
-				if (current != null) {
-					if (sourcesCount == 0) {
-						System.arraycopy(current, 0, total, 0, total.length);
+			mix();
+			scheduler.submit(this, Scheduler.MIXER_MIX_QUEUE);
+			return 0;
+		}
+
+		private void mix() {
+			limit = maxSpeakers;
+			if (limit > 0) {
+				selectSpeakers();
+			} else {
+				collectSources();
+			}
+
+			mixCount++;
+			if (sourcesCount == 0) {
+				return;
+			}
+
+			// summarize all, peak is detected while adding last source
+			maxValue = 0;
+			current = sources[0].getData();
+			if (sourcesCount == 1) {
+				for (i = 0; i < total.length; i++) {
+					value = current[i];
+					total[i] = value;
+					maxValue = Math.max(maxValue, value ^ (value >> 31));
+				}
+			} else {
+				System.arraycopy(current, 0, total, 0, total.length);
+				for (k = 1; k < sourcesCount - 1; k++) {
+					current = sources[k].getData();
+					for (i = 0; i < total.length; i++) {
+						total[i] += current[i];
+					}
+				}
+
+				current = sources[sourcesCount - 1].getData();
+				for (i = 0; i < total.length; i++) {
+					value = total[i] + current[i];
+					total[i] = value;
+					maxValue = Math.max(maxValue, value ^ (value >> 31));
+				}
+			}
+
+			// limit gain so sum fits into 16 bit samples
+			currGain = gain;
+			if ((long) maxValue * Math.abs(currGain) > ((long) Short.MAX_VALUE << GAIN_SHIFT)) {
+				currGain = (int) (((long) currGain * Short.MAX_VALUE) / maxValue);
+			}
+
+			if (currGain != UNITY_GAIN) {
+				for (i = 0; i < total.length; i++) {
+					total[i] = (int) (((long) total[i] * currGain) >> GAIN_SHIFT);
+				}
+			}
+
+			// N-1 mix for each speaker
+			if (sourcesCount > 1) {
+				for (k = 0; k < sourcesCount; k++) {
+					current = sources[k].getData();
+					if (currGain == UNITY_GAIN) {
+						for (i = 0; i < total.length; i++) {
+							current[i] = Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, total[i] - current[i]));
+						}
 					} else {
 						for (i = 0; i < total.length; i++) {
-							total[i] += current[i];
+							value = total[i] - (int) (((long) current[i] * currGain) >> GAIN_SHIFT);
+							current[i] = Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, value));
 						}
 					}
-					sourcesCount++;
+					sources[k].offer(current);
 				}
 			}
 
-			if (sourcesCount == 0) {
-				scheduler.submit(this, Scheduler.MIXER_MIX_QUEUE);
-				mixCount++;
-				return 0;
+			// listeners and silent speakers share the whole mix
+			Frame frame = null;
+			activeComponents = components.valuesIterator();
+			while (activeComponents.hasNext()) {
+				AudioComponent component = activeComponents.next();
+				if (!component.speaker) {
+					if (frame == null) {
+						frame = createFrame(total);
+					}
+					component.offer(frame);
+				}
 			}
 
-			minValue = 0;
-			maxValue = 0;
-			for (i = 0; i < total.length; i++) {
-				if (total[i] > maxValue) {
-					maxValue = total[i];
-				} else if (total[i] < minValue) {
-					minValue = total[i];
-				}
+			if (frame != null) {
+				frame.recycle();
 			}
 
-			if (minValue > 0) {
-				minValue = 0 - minValue;
+			for (k = 0; k < sourcesCount; k++) {
+				sources[k] = null;
 			}
+		}
 
-			if (minValue > maxValue) {
-				maxValue = minValue;
+		/**
+		 * Collects all components with audible data.
+		 */
+		private void collectSources() {
+			sourcesCount = 0;
+			activeComponents = components.valuesIterator();
+			while (activeComponents.hasNext()) {
+				AudioComponent component = activeComponents.next();
+				component.perform();
+				component.speaker = !component.isSilent();
+				if (component.speaker) {
+					if (sourcesCount == sources.length) {
+						AudioComponent[] newSources = new AudioComponent[sources.length * 2];
+						System.arraycopy(sources, 0, newSources, 0, sourcesCount);
+						sources = newSources;
+					}
+					sources[sourcesCount++] = component;
+				}
 			}
+		}
 
-			currGain = gain;
-			if (maxValue > Short.MAX_VALUE) {
-				currGain = (currGain * (double) Short.MAX_VALUE) / (double) maxValue;
+		/**
+		 * Selects up to limit loudest components, level of current speakers is
+		 * doubled so they are not replaced by parties with similar level.
+		 */
+		private void selectSpeakers() {
+			if (sources.length < limit) {
+				sources = new AudioComponent[limit];
 			}
 
-			for (i = 0; i < total.length; i++) {
-				total[i] = (short) ((double) total[i] * currGain);
+			if (scores.length < limit) {
+				scores = new int[limit];
 			}
 
-			// get data for each component
+			sourcesCount = 0;
 			activeComponents = components.valuesIterator();
 			while (activeComponents.hasNext()) {
 				AudioComponent component = activeComponents.next();
-				current = component.getData();
-				if (current != null && sourcesCount > 1) {
-					for (i = 0; i < total.length; i++) {
-						current[i] = total[i] - (short) ((double) current[i] * currGain);
-					}
-					component.offer(current);
-				} else if (current == null) {
-					component.offer(total);
+				component.perform();
+
+				score = component.getLevel();
+				if (component.speaker) {
+					score <<= HYSTERESIS_SHIFT;
+				}
+				component.speaker = false;
+
+				if (score <= AudioComponent.SILENCE_LEVEL || component.getData() == null) {
+					continue;
+				}
+
+				if (sourcesCount == limit && score <= scores[limit - 1]) {
+					continue;
+				}
+
+				// insert keeping scores in descending order
+				k = sourcesCount < limit ? sourcesCount++ : limit - 1;
+				while (k > 0 && scores[k - 1] < score) {
+					scores[k] = scores[k - 1];
+					sources[k] = sources[k - 1];
+					k--;
 				}
+				scores[k] = score;
+				sources[k] = component;
 			}
 
-			scheduler.submit(this, Scheduler.MIXER_MIX_QUEUE);
-			mixCount++;
-			return 0;
+			for (k = 0; k < sourcesCount; k++) {
+				sources[k].speaker = true;
+			}
+		}
+
+		private Frame createFrame(int[] data) {
+			Frame frame = allocateFrame(data);
+			if (sourcesCount == 1 && currGain == UNITY_GAIN && sources[0].getSharedEncoder() != null) {
+				frame.setSharedEncoder(sources[0].getSharedEncoder(), sources[0].getSharedCycle());
+			} else {
+				frame.setSharedEncoder(encoder, encoder.next());
+			}
+			return frame;
+		}
+
+		private Frame allocateFrame(int[] data) {
+			Frame frame = Memory.allocate(packetSize);
+			byte[] dataArray = frame.getData();
+
+			int j = 0;
+			for (i = 0; i < data.length; i++) {
+				dataArray[j++] = (byte) (data[i]);
+				dataArray[j++] = (byte) (data[i] >> 8);
+			}
+
+			frame.setOffset(0);
+			frame.setLength(packetSize);
+			frame.setDuration(period);
+			frame.setFormat(format);
+			return frame;
 		}
 	}
 }
@@ -112,6 +112,17 @@ public class AudioSplitter {
 		this.gain = gain > 0 ? gain * 1.26 : gain == 0 ? 1 : 1 / (gain * 1.26);
 	}
 
+	/**
+	 * Assigns the key used by sharded schedulers to select the executing core,
+	 * should be the key of the endpoint which owns the splitter.
+	 * 
+	 * @param affinity the non negative key value.
+	 */
+	public void setAffinity(int affinity) {
+		insideMixer.setAffinity(affinity);
+		outsideMixer.setAffinity(affinity);
+	}
+
 	public void start() {
 		mixCount = 0;
 		started = true;
@@ -72,6 +72,12 @@ public class SoundCard extends AbstractSink {
     	return this.output;
     }
     
+    @Override
+    public void setAffinity(int affinity)
+    {
+    	output.setAffinity(affinity);
+    }
+    
     public void activate()
     {
     	first = true;
@@ -72,6 +72,12 @@ public class SpectraAnalyzer extends AbstractSink {
     	return this.output;
     }
     
+    @Override
+    public void setAffinity(int affinity)
+    {
+    	output.setAffinity(affinity);
+    }
+    
     public void activate()
     {
     	this.len = 0;
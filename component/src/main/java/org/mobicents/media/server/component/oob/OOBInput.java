@@ -24,7 +24,7 @@ package org.mobicents.media.server.component.oob;
 
 import java.io.IOException;
 
-import org.mobicents.media.server.concurrent.ConcurrentCyclicFIFO;
+import org.mobicents.media.server.concurrent.ConcurrentRingFIFO;
 import org.mobicents.media.server.impl.AbstractSink;
 import org.mobicents.media.server.spi.memory.Frame;
 
@@ -39,7 +39,7 @@ public class OOBInput extends AbstractSink {
 
 	private int inputId;
     private int limit=10;
-    private ConcurrentCyclicFIFO<Frame> buffer = new ConcurrentCyclicFIFO<Frame>();
+    private ConcurrentRingFIFO<Frame> buffer = new ConcurrentRingFIFO<Frame>(limit);
     
     /**
      * Creates new stream
@@ -64,9 +64,15 @@ public class OOBInput extends AbstractSink {
     @Override
     public void onMediaTransfer(Frame frame) throws IOException {
     	if (buffer.size() >= limit) {
-    		buffer.poll().recycle();
-    	} 
-    	buffer.offer(frame);    	
+    		Frame oldFrame = buffer.poll();
+    		if (oldFrame != null) {
+    			oldFrame.recycle();
+    		}
+    	}
+
+    	if (!buffer.offer(frame)) {
+    		frame.recycle();
+    	}
     }
 
     /**
@@ -91,14 +97,14 @@ public class OOBInput extends AbstractSink {
      * Recycles input stream
      */
     public void recycle() {
-    	while(buffer.size()>0) {
-    		buffer.poll().recycle();    	    			       
-    	}
+    	resetBuffer();
     }
     
     public void resetBuffer() {
-    	while(buffer.size()>0) {
-    		buffer.poll().recycle();
+    	Frame frame = buffer.poll();
+    	while (frame != null) {
+    		frame.recycle();
+    		frame = buffer.poll();
     	}
     }
 }
@@ -70,6 +70,16 @@ public class OOBMixer {
 		components.remove(component.getComponentId());
 	}
 
+	/**
+	 * Assigns the key used by sharded schedulers to select the executing core,
+	 * should be the key of the endpoint which owns the mixer.
+	 * 
+	 * @param affinity the non negative key value.
+	 */
+	public void setAffinity(int affinity) {
+		mixer.setAffinity(affinity);
+	}
+
 	public void start() {
 		mixCount = 0;
 		started = true;
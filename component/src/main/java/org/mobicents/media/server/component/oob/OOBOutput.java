@@ -22,7 +22,7 @@
 
 package org.mobicents.media.server.component.oob;
 
-import org.mobicents.media.server.concurrent.ConcurrentCyclicFIFO;
+import org.mobicents.media.server.concurrent.ConcurrentRingFIFO;
 import org.mobicents.media.server.impl.AbstractSink;
 import org.mobicents.media.server.impl.AbstractSource;
 import org.mobicents.media.server.scheduler.Scheduler;
@@ -38,7 +38,7 @@ public class OOBOutput extends AbstractSource {
 	private static final long serialVersionUID = -1350715959623627363L;
 
 	private int outputId;
-    private ConcurrentCyclicFIFO<Frame> buffer = new ConcurrentCyclicFIFO<Frame>();
+    private ConcurrentRingFIFO<Frame> buffer = new ConcurrentRingFIFO<Frame>(4);
     
     /**
      * Creates new instance with default name.
@@ -67,22 +67,28 @@ public class OOBOutput extends AbstractSource {
 
     @Override
     public void stop() {
-    	while(buffer.size()>0) {
-    		buffer.poll().recycle();
-    	}
-    	super.stop();            
+    	resetBuffer();
+    	super.stop();
     }
     
     public void resetBuffer() {
-    	while(buffer.size()>0) {
-    		buffer.poll().recycle();
+    	Frame frame = buffer.poll();
+    	while (frame != null) {
+    		frame.recycle();
+    		frame = buffer.poll();
     	}
     }
     
     public void offer(Frame frame) {
     	if(buffer.size()>1) {
-        	buffer.poll().recycle();
+    		Frame oldFrame = buffer.poll();
+    		if (oldFrame != null) {
+    			oldFrame.recycle();
+    		}
+    	}
+
+    	if (!buffer.offer(frame)) {
+    		frame.recycle();
     	}
-    	buffer.offer(frame);
     }
 }
@@ -86,6 +86,17 @@ public class OOBSplitter {
 		outsideComponents.remove(component.getComponentId());
 	}
 
+	/**
+	 * Assigns the key used by sharded schedulers to select the executing core,
+	 * should be the key of the endpoint which owns the splitter.
+	 * 
+	 * @param affinity the non negative key value.
+	 */
+	public void setAffinity(int affinity) {
+		insideMixer.setAffinity(affinity);
+		outsideMixer.setAffinity(affinity);
+	}
+
 	public void start() {
 		mixCount = 0;
 		started = true;
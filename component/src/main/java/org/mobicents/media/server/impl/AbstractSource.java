@@ -98,6 +98,11 @@ public abstract class AbstractSource extends BaseComponent implements MediaSourc
     }
 
     
+    @Override
+    public void setAffinity(int affinity) {
+        worker.setAffinity(affinity);
+    }
+    
     /**
      * (Non Java-doc).
      * 
@@ -87,4 +87,15 @@ public abstract class BaseComponent implements Component {
     {
     	return this.endpoint;
     }
+    
+    /**
+     * Assigns the key used by sharded schedulers to select the executing core
+     * to all tasks of the component. Components of the same endpoint should
+     * share the key.
+     * 
+     * @param affinity the non negative key value.
+     */
+    public void setAffinity(int affinity)
+    {
+    }
 }
@@ -35,6 +35,8 @@ import org.junit.AfterClass;
 import org.junit.Before;
 import org.junit.BeforeClass;
 import org.junit.Test;
+import org.mobicents.media.server.spi.dsp.Codec;
+import org.mobicents.media.server.spi.dsp.SharedEncoder;
 import org.mobicents.media.server.spi.format.Format;
 import org.mobicents.media.server.spi.format.FormatFactory;
 import org.mobicents.media.server.spi.memory.Frame;
@@ -141,4 +143,110 @@ public class DspFactoryTest {
         System.out.println("fmt=" + frame2.getFormat().getName());
         assertTrue("Format missmatch", fmt2.matches(frame2.getFormat()));    	
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testSharedEncoding() throws Exception {
+        Format fmt = FormatFactory.createAudioFormat("linear", 8000, 16, 1);
+        Format fmt2 = FormatFactory.createAudioFormat("pcma", 8000, 8, 1);
+
+        dspFactory.addCodec("org.mobicents.media.server.impl.dsp.audio.g711.alaw.Encoder");
+        dspFactory.addCodec("org.mobicents.media.server.impl.dsp.audio.g711.alaw.Decoder");
+
+        Dsp dsp1 = dspFactory.newProcessor();
+        Dsp dsp2 = dspFactory.newProcessor();
+        SharedEncoder encoder = new SharedEncoder();
+
+        Frame frame = Memory.allocate(320);
+        byte[] data = frame.getData();
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) i;
+        }
+        frame.setOffset(0);
+        frame.setLength(320);
+        frame.setFormat(fmt);
+        long cycle = encoder.next();
+        frame.setSharedEncoder(encoder, cycle);
+
+        Frame copy = frame.clone();
+        frame.setTimestamp(100);
+        copy.setTimestamp(200);
+
+        // identical frames are encoded once, each copy keeps own timing
+        Frame encoded1 = dsp1.process(frame, fmt, fmt2);
+        Frame encoded2 = dsp2.process(copy, fmt, fmt2);
+        assertEquals(1, encoder.getEncodedFrames());
+        assertEquals(1, encoder.getSharedFrames());
+        assertTrue(fmt2.matches(encoded2.getFormat()));
+        assertEquals(100, encoded1.getTimestamp());
+        assertEquals(200, encoded2.getTimestamp());
+        assertEquals(encoded1.getLength(), encoded2.getLength());
+        for (int i = 0; i < encoded1.getLength(); i++) {
+            assertEquals(encoded1.getData()[encoded1.getOffset() + i], encoded2.getData()[encoded2.getOffset() + i]);
+        }
+
+        // late frame of previous cycle is encoded by processor itself
+        Frame late = Memory.allocate(320);
+        late.setLength(320);
+        late.setFormat(fmt);
+        late.setSharedEncoder(encoder, cycle);
+        encoder.next();
+
+        Frame encoded3 = dsp1.process(late, fmt, fmt2);
+        assertTrue(fmt2.matches(encoded3.getFormat()));
+        assertEquals(1, encoder.getEncodedFrames());
+    }
+
+    @Test
+    public void testStatefulCodecShared() throws Exception {
+        Format fmt = FormatFactory.createAudioFormat("linear", 8000, 16, 1);
+        SharedEncoder encoder = new SharedEncoder();
+        Codec codec1 = new CountingCodec();
+        Codec codec2 = new CountingCodec();
+
+        // one instance of encoder sees every cycle of the stream
+        for (int i = 1; i <= 3; i++) {
+            long cycle = encoder.next();
+            Frame frame1 = Memory.allocate(320);
+            frame1.setLength(320);
+            frame1.setFormat(fmt);
+            frame1.setSharedEncoder(encoder, cycle);
+            Frame frame2 = frame1.clone();
+
+            Frame encoded1 = encoder.encode(frame1, codec1);
+            Frame encoded2 = encoder.encode(frame2, codec2);
+            assertEquals(i, encoded1.getData()[encoded1.getOffset()]);
+            assertEquals(i, encoded2.getData()[encoded2.getOffset()]);
+        }
+
+        assertEquals(3, encoder.getEncodedFrames());
+        assertEquals(3, encoder.getSharedFrames());
+        assertEquals(0, ((CountingCodec) codec1).count);
+    }
+
+    /**
+     * Codec which keeps state between frames: output carries the number of
+     * frames seen by the instance.
+     */
+    public static class CountingCodec implements Codec {
+        private static final Format FORMAT = FormatFactory.createAudioFormat("linear", 8000, 16, 1);
+
+        private int count;
+
+        public Format getSupportedInputFormat() {
+            return FORMAT;
+        }
+
+        public Format getSupportedOutputFormat() {
+            return FORMAT;
+        }
+
+        public Frame process(Frame frame) {
+            Frame result = Memory.allocate(1);
+            result.setOffset(0);
+            result.setLength(1);
+            result.getData()[0] = (byte) ++count;
+            result.setFormat(FORMAT);
+            return result;
+        }
+    }
+}
@@ -28,6 +28,10 @@
 package org.mobicents.media.server.component.audio;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 
 import java.io.IOException;
 
@@ -35,10 +39,14 @@ import org.junit.After;
 import org.junit.AfterClass;
 import org.junit.Before;
 import org.junit.BeforeClass;
+import org.junit.Ignore;
 import org.junit.Test;
 import org.mobicents.media.server.scheduler.Clock;
 import org.mobicents.media.server.scheduler.DefaultClock;
 import org.mobicents.media.server.scheduler.Scheduler;
+import org.mobicents.media.server.spi.dsp.SharedEncoder;
+import org.mobicents.media.server.spi.memory.Frame;
+import org.mobicents.media.server.spi.memory.Memory;
 
 /**
  *
@@ -199,4 +207,252 @@ public class AudioMixerTest {
                 
         testMixing();    	
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testMixValues() throws IOException {
+        AudioMixer mixer = new AudioMixer(scheduler);
+        AudioInput[] inputs = new AudioInput[4];
+        AudioOutput[] outputs = new AudioOutput[4];
+        for (int i = 0; i < inputs.length; i++) {
+            inputs[i] = new AudioInput(i, 320);
+            outputs[i] = new AudioOutput(scheduler, i);
+            AudioComponent component = new AudioComponent(10 + i);
+            component.addInput(inputs[i]);
+            component.addOutput(outputs[i]);
+            // last component only listens
+            component.updateMode(i < 3, true);
+            mixer.addComponent(component);
+        }
+
+        // two speakers and one silent participant
+        inputs[0].onMediaTransfer(createFrame((short) 1000));
+        inputs[1].onMediaTransfer(createFrame((short) -2000));
+        inputs[2].onMediaTransfer(createFrame((short) 0));
+        mixer.mix();
+
+        assertSamples(-2000, outputs[0].evolve(0));
+        assertSamples(1000, outputs[1].evolve(0));
+        assertSamples(-1000, outputs[2].evolve(0));
+        assertSamples(-1000, outputs[3].evolve(0));
+
+        // single speaker does not hear anything
+        inputs[0].onMediaTransfer(createFrame((short) 1000));
+        mixer.mix();
+
+        assertNull(outputs[0].evolve(0));
+        assertSamples(1000, outputs[3].evolve(0));
+    }
+
+    @Test
+    public void testMixLimit() throws IOException {
+        AudioMixer mixer = new AudioMixer(scheduler);
+        AudioInput[] inputs = new AudioInput[3];
+        AudioOutput listener = new AudioOutput(scheduler, 0);
+        for (int i = 0; i < inputs.length; i++) {
+            inputs[i] = new AudioInput(i, 320);
+            AudioComponent component = new AudioComponent(10 + i);
+            component.addInput(inputs[i]);
+            component.updateMode(true, false);
+            mixer.addComponent(component);
+        }
+
+        AudioComponent component = new AudioComponent(20);
+        component.addOutput(listener);
+        component.updateMode(false, true);
+        mixer.addComponent(component);
+
+        for (int i = 0; i < inputs.length; i++) {
+            inputs[i].onMediaTransfer(createFrame((short) 20000));
+        }
+        mixer.mix();
+
+        // sum is scaled down to fit into 16 bit
+        assertSamples(Short.MAX_VALUE, listener.evolve(0), 1);
+    }
+
+    @Test
+    public void testMaxSpeakers() throws IOException {
+        AudioMixer mixer = new AudioMixer(scheduler);
+        mixer.setMaxSpeakers(2);
+
+        AudioInput[] inputs = new AudioInput[4];
+        AudioOutput[] outputs = new AudioOutput[5];
+        AudioComponent[] components = new AudioComponent[5];
+        for (int i = 0; i < components.length; i++) {
+            outputs[i] = new AudioOutput(scheduler, i);
+            components[i] = new AudioComponent(10 + i);
+            components[i].addOutput(outputs[i]);
+            if (i < inputs.length) {
+                inputs[i] = new AudioInput(i, 320);
+                components[i].addInput(inputs[i]);
+            }
+            // last component only listens
+            components[i].updateMode(i < inputs.length, true);
+            mixer.addComponent(components[i]);
+        }
+
+        // two loudest parties are mixed, others share the same mix
+        short[] levels = new short[] { 4000, 3000, 2000, 100 };
+        transfer(inputs, levels);
+        mixer.mix();
+
+        assertTrue(components[0].isSpeaker());
+        assertTrue(components[1].isSpeaker());
+        assertFalse(components[2].isSpeaker());
+        assertFalse(components[3].isSpeaker());
+        assertSamples(3000, outputs[0].evolve(0));
+        assertSamples(4000, outputs[1].evolve(0));
+        for (int i = 2; i < outputs.length; i++) {
+            assertSamples(7000, outputs[i].evolve(0));
+        }
+
+        // slightly louder party does not replace current speaker
+        levels[2] = 3500;
+        transfer(inputs, levels);
+        mixer.mix();
+
+        assertTrue(components[1].isSpeaker());
+        assertFalse(components[2].isSpeaker());
+        assertSamples(7000, outputs[2].evolve(0));
+        drain(outputs);
+
+        // speaker which stopped talking is replaced after few cycles
+        levels[1] = 0;
+        for (int i = 0; i < 5; i++) {
+            transfer(inputs, levels);
+            mixer.mix();
+            if (i < 4) {
+                drain(outputs);
+            }
+        }
+
+        assertFalse(components[1].isSpeaker());
+        assertTrue(components[2].isSpeaker());
+        assertSamples(3500, outputs[0].evolve(0));
+        assertSamples(7500, outputs[1].evolve(0));
+        assertSamples(4000, outputs[2].evolve(0));
+        assertSamples(7500, outputs[4].evolve(0));
+    }
+
+    @Test
+    public void testSourceEncoder() throws IOException {
+        AudioMixer mixer = new AudioMixer(scheduler);
+        AudioInput[] inputs = new AudioInput[2];
+        AudioOutput listener = new AudioOutput(scheduler, 0);
+        for (int i = 0; i < inputs.length; i++) {
+            inputs[i] = new AudioInput(i, 320);
+            AudioComponent component = new AudioComponent(10 + i);
+            component.addInput(inputs[i]);
+            component.updateMode(true, false);
+            mixer.addComponent(component);
+        }
+
+        AudioComponent component = new AudioComponent(20);
+        component.addOutput(listener);
+        component.updateMode(false, true);
+        mixer.addComponent(component);
+
+        // only speaker is passed unchanged and keeps its encoder
+        SharedEncoder encoder = new SharedEncoder();
+        Frame frame = createFrame((short) 1000);
+        frame.setSharedEncoder(encoder, 7);
+        inputs[0].onMediaTransfer(frame);
+        mixer.mix();
+
+        Frame output = listener.evolve(0);
+        assertSame(encoder, output.getSharedEncoder());
+        assertEquals(7, output.getSharedCycle());
+        assertSamples(1000, output);
+
+        // mix of several speakers is marked with encoder of mixer
+        frame = createFrame((short) 1000);
+        frame.setSharedEncoder(encoder, 8);
+        inputs[0].onMediaTransfer(frame);
+        inputs[1].onMediaTransfer(createFrame((short) 2000));
+        mixer.mix();
+
+        output = listener.evolve(0);
+        assertSame(mixer.getSharedEncoder(), output.getSharedEncoder());
+        assertSamples(3000, output);
+    }
+
+    /**
+     * Measures mixing cost per participant, all participants are speaking.
+     */
+    @Ignore
+    @Test
+    public void testMixSpeed() throws IOException {
+        int[] parties = new int[] { 3, 10, 50, 200 };
+        for (int n : parties) {
+            AudioMixer mixer = new AudioMixer(scheduler);
+            AudioInput[] inputs = new AudioInput[n];
+            for (int i = 0; i < n; i++) {
+                inputs[i] = new AudioInput(i, 320);
+                AudioComponent component = new AudioComponent(100 + i);
+                component.addInput(inputs[i]);
+                component.addOutput(new AudioOutput(scheduler, i));
+                component.updateMode(true, true);
+                mixer.addComponent(component);
+            }
+
+            // best of several rounds, first round warms up
+            int cycles = 20000 / n + 10;
+            long best = Long.MAX_VALUE;
+            for (int round = 0; round < 10; round++) {
+                long duration = 0;
+                for (int cycle = 0; cycle < cycles; cycle++) {
+                    for (int i = 0; i < n; i++) {
+                        inputs[i].onMediaTransfer(createFrame((short) (1000 + i * 100 + cycle % 100)));
+                    }
+
+                    long start = System.nanoTime();
+                    mixer.mix();
+                    duration += System.nanoTime() - start;
+                }
+                best = Math.min(best, duration / cycles / n);
+            }
+
+            System.out.println(n + " parties: " + best + " ns per participant");
+        }
+    }
+
+    private void transfer(AudioInput[] inputs, short[] levels) throws IOException {
+        for (int i = 0; i < inputs.length; i++) {
+            inputs[i].onMediaTransfer(createFrame(levels[i]));
+        }
+    }
+
+    private void drain(AudioOutput[] outputs) {
+        for (AudioOutput output : outputs) {
+            Frame frame = output.evolve(0);
+            while (frame != null) {
+                frame.recycle();
+                frame = output.evolve(0);
+            }
+        }
+    }
+
+    private Frame createFrame(short value) {
+        Frame frame = Memory.allocate(320);
+        byte[] data = frame.getData();
+        for (int i = 0; i < data.length; i += 2) {
+            data[i] = (byte) value;
+            data[i + 1] = (byte) (value >> 8);
+        }
+        frame.setOffset(0);
+        frame.setLength(320);
+        return frame;
+    }
+
+    private void assertSamples(int value, Frame frame) {
+        assertSamples(value, frame, 0);
+    }
+
+    private void assertSamples(int value, Frame frame, int delta) {
+        byte[] data = frame.getData();
+        for (int i = 0; i < frame.getLength(); i += 2) {
+            assertEquals(value, (short) (((data[i + 1]) << 8) | (data[i] & 0xff)), delta);
+        }
+        frame.recycle();
+    }
+}
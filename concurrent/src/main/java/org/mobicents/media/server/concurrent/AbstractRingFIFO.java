@@ -0,0 +1,162 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2014, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.mobicents.media.server.concurrent;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Base for bounded array backed lock free queues.
+ * 
+ * Each slot of the ring keeps sequence number which shows whether slot is
+ * ready for writing or for reading in the current lap, so producers and
+ * consumers never take locks and never allocate. Producers claim slots by CAS
+ * on the tail counter, consumer side is implemented by concrete queue.
+ */
+public abstract class AbstractRingFIFO<E> {
+
+	protected final int mask;
+
+	protected final AtomicReferenceArray<E> items;
+	protected final AtomicLongArray sequences;
+
+	//next position to read
+	protected final PaddedAtomicLong head = new PaddedAtomicLong(0);
+
+	//next position to write
+	protected final PaddedAtomicLong tail = new PaddedAtomicLong(0);
+
+	/**
+	 * Creates new queue.
+	 * 
+	 * @param capacity the maximum number of elements, rounded up to power of two.
+	 */
+	protected AbstractRingFIFO(int capacity) {
+		if (capacity < 1) {
+			throw new IllegalArgumentException("Capacity should be positive");
+		}
+
+		int size = 1;
+		while (size < capacity) {
+			size <<= 1;
+		}
+
+		this.mask = size - 1;
+		this.items = new AtomicReferenceArray<E>(size);
+		this.sequences = new AtomicLongArray(size);
+		for (int i = 0; i < size; i++) {
+			sequences.set(i, i);
+		}
+	}
+
+	/**
+	 * Gets the maximum number of elements.
+	 * 
+	 * @return the capacity of the queue.
+	 */
+	public int capacity() {
+		return mask + 1;
+	}
+
+	/**
+	 * Gets the number of elements in queue.
+	 * 
+	 * @return the approximate number of elements.
+	 */
+	public int size() {
+		long size = tail.get() - head.get();
+		if (size < 0) {
+			return 0;
+		}
+
+		if (size > mask + 1) {
+			return mask + 1;
+		}
+
+		return (int) size;
+	}
+
+	public boolean isEmpty() {
+		return tail.get() == head.get();
+	}
+
+	/**
+	 * Inserts element at the tail of queue.
+	 * 
+	 * @param e the element to add.
+	 * @return false if queue is full.
+	 */
+	public boolean offer(E e) {
+		if (e == null) {
+			throw new NullPointerException();
+		}
+
+		long pos = tail.get();
+		int index;
+		long diff;
+		while (true) {
+			index = (int) pos & mask;
+			diff = sequences.get(index) - pos;
+			if (diff == 0) {
+				if (tail.compareAndSet(pos, pos + 1)) {
+					break;
+				}
+
+				pos = tail.get();
+			} else if (diff < 0) {
+				// slot is not read yet in previous lap
+				return false;
+			} else {
+				pos = tail.get();
+			}
+		}
+
+		items.lazySet(index, e);
+		sequences.lazySet(index, pos + 1);
+		return true;
+	}
+
+	/**
+	 * Retrieves and removes the head of queue.
+	 * 
+	 * @return the element or null if queue is empty.
+	 */
+	public abstract E poll();
+
+	/**
+	 * Removes all elements from queue.
+	 */
+	public void clear() {
+		while (poll() != null) {
+		}
+	}
+
+	/**
+	 * Reads element from claimed slot and releases slot for next lap.
+	 */
+	protected E release(int index, long pos) {
+		E result = items.get(index);
+		items.lazySet(index, null);
+		sequences.lazySet(index, pos + mask + 1);
+		return result;
+	}
+}
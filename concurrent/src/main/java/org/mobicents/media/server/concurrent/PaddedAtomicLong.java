@@ -0,0 +1,53 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2014, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.mobicents.media.server.concurrent;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Atomic long padded up to the cache line size, so heavily updated counters
+ * placed next to each other do not share the same cache line.
+ */
+public class PaddedAtomicLong extends AtomicLong {
+
+	private static final long serialVersionUID = -3415778863941386253L;
+
+	//padding, not used directly
+	public volatile long p1, p2, p3, p4, p5, p6 = 7L;
+
+	public PaddedAtomicLong() {
+		super();
+	}
+
+	public PaddedAtomicLong(long initialValue) {
+		super(initialValue);
+	}
+
+	/**
+	 * Prevents padding from being eliminated as unused.
+	 * 
+	 * @return sum of padding fields.
+	 */
+	public long sumPaddingToPreventOptimisation() {
+		return p1 + p2 + p3 + p4 + p5 + p6;
+	}
+}
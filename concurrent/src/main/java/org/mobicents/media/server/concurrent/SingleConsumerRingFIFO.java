@@ -0,0 +1,48 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2014, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.mobicents.media.server.concurrent;
+
+/**
+ * Bounded lock free queue for multiple producers and single consumer.
+ * 
+ * Consumer side does not use CAS at all, so poll should be called by one
+ * thread at a time only.
+ */
+public class SingleConsumerRingFIFO<E> extends AbstractRingFIFO<E> {
+
+	public SingleConsumerRingFIFO(int capacity) {
+		super(capacity);
+	}
+
+	@Override
+	public E poll() {
+		long pos = head.get();
+		int index = (int) pos & mask;
+		if (sequences.get(index) != pos + 1) {
+			// slot is not written yet
+			return null;
+		}
+
+		head.lazySet(pos + 1);
+		return release(index, pos);
+	}
+}
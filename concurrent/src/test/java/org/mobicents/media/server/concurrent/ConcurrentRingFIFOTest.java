@@ -0,0 +1,190 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2014, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.mobicents.media.server.concurrent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import org.junit.Ignore;
+import org.junit.Test;
+
+public class ConcurrentRingFIFOTest {
+
+	private static final int step = 100000;
+
+	@Test
+	public void testOrderAndCapacity() {
+		ConcurrentRingFIFO<Integer> queue = new ConcurrentRingFIFO<Integer>(5);
+		assertEquals(8, queue.capacity());
+		assertTrue(queue.isEmpty());
+
+		for (int i = 0; i < 8; i++) {
+			assertTrue(queue.offer(i));
+		}
+
+		assertFalse(queue.offer(8));
+		assertEquals(8, queue.size());
+
+		for (int i = 0; i < 8; i++) {
+			assertEquals(Integer.valueOf(i), queue.poll());
+		}
+
+		assertNull(queue.poll());
+
+		// second lap reuses same slots
+		assertTrue(queue.offer(100));
+		assertEquals(Integer.valueOf(100), queue.poll());
+		assertEquals(0, queue.size());
+	}
+
+	@Test
+	public void testSingleConsumerOrder() {
+		SingleConsumerRingFIFO<Integer> queue = new SingleConsumerRingFIFO<Integer>(4);
+		for (int lap = 0; lap < 3; lap++) {
+			for (int i = 0; i < 4; i++) {
+				assertTrue(queue.offer(i));
+			}
+
+			assertFalse(queue.offer(4));
+			for (int i = 0; i < 4; i++) {
+				assertEquals(Integer.valueOf(i), queue.poll());
+			}
+
+			assertNull(queue.poll());
+		}
+	}
+
+	@Test
+	public void testMultipleProducersConsumers() throws InterruptedException {
+		ConcurrentRingFIFO<Integer> queue = new ConcurrentRingFIFO<Integer>(1024);
+		assertEquals(0, transfer(queue, 4, 4, 10000));
+	}
+
+	@Test
+	public void testMultipleProducersSingleConsumer() throws InterruptedException {
+		SingleConsumerRingFIFO<Integer> queue = new SingleConsumerRingFIFO<Integer>(1024);
+		assertEquals(0, transfer(queue, 4, 1, 10000));
+	}
+
+	@Test
+	@Ignore
+	public void testSpeed() throws InterruptedException {
+		int[] producers = new int[] { 1, 4, 16, 64 };
+		for (int i = 0; i < producers.length; i++) {
+			long startTime = System.nanoTime();
+			transfer(new ConcurrentRingFIFO<Integer>(8192), producers[i], 1, step);
+			long ringTime = System.nanoTime() - startTime;
+
+			startTime = System.nanoTime();
+			transfer(new CyclicFIFOAdapter(), producers[i], 1, step);
+			long cyclicTime = System.nanoTime() - startTime;
+
+			System.out.println("Producers:" + producers[i] + " ring:" + ringTime / step / producers[i] + "ns/op cyclic:"
+					+ cyclicTime / step / producers[i] + "ns/op");
+		}
+	}
+
+	/**
+	 * Transfers unique values from producers to consumers.
+	 * 
+	 * @return the number of values lost or received more than once.
+	 */
+	private int transfer(final AbstractRingFIFO<Integer> queue, int producers, int consumers, final int count)
+			throws InterruptedException {
+		final int total = producers * count;
+		final AtomicIntegerArray received = new AtomicIntegerArray(total);
+		final AtomicInteger remaining = new AtomicInteger(total);
+		final CountDownLatch done = new CountDownLatch(producers + consumers);
+
+		for (int i = 0; i < producers; i++) {
+			final int start = i * count;
+			new Thread() {
+				public void run() {
+					for (int j = 0; j < count; j++) {
+						Integer value = Integer.valueOf(start + j);
+						while (!queue.offer(value)) {
+							Thread.yield();
+						}
+					}
+					done.countDown();
+				}
+			}.start();
+		}
+
+		for (int i = 0; i < consumers; i++) {
+			new Thread() {
+				public void run() {
+					while (remaining.get() > 0) {
+						Integer value = queue.poll();
+						if (value == null) {
+							Thread.yield();
+							continue;
+						}
+
+						received.incrementAndGet(value);
+						remaining.decrementAndGet();
+					}
+					done.countDown();
+				}
+			}.start();
+		}
+
+		done.await();
+
+		int errors = 0;
+		for (int i = 0; i < total; i++) {
+			if (received.get(i) != 1) {
+				errors++;
+			}
+		}
+
+		return errors;
+	}
+
+	/**
+	 * Exposes linked queue through ring interface for comparison.
+	 */
+	private class CyclicFIFOAdapter extends AbstractRingFIFO<Integer> {
+		private ConcurrentCyclicFIFO<Integer> queue = new ConcurrentCyclicFIFO<Integer>();
+
+		public CyclicFIFOAdapter() {
+			super(1);
+		}
+
+		@Override
+		public boolean offer(Integer e) {
+			queue.offer(e);
+			return true;
+		}
+
+		@Override
+		public Integer poll() {
+			return queue.poll();
+		}
+	}
+}
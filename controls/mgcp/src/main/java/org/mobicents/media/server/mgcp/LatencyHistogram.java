@@ -0,0 +1,141 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.mobicents.media.server.mgcp;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock free histogram of processing latencies.
+ *
+ * Bucket i counts samples below 2^i microseconds, the last bucket counts all
+ * longer samples, so percentiles are accurate within factor of two.
+ */
+public class LatencyHistogram {
+	//number of buckets, last one starts at ~1 second
+	public static final int BUCKETS = 22;
+
+	private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+	private final AtomicLong count = new AtomicLong();
+	private final AtomicLong total = new AtomicLong();
+	private volatile long max;
+
+	/**
+	 * Adds sample to the histogram.
+	 *
+	 * @param latency the latency in nanoseconds.
+	 */
+	public void update(long latency) {
+		long micros = latency / 1000L;
+		int index = 64 - Long.numberOfLeadingZeros(micros);
+		if (index >= BUCKETS)
+			index = BUCKETS - 1;
+
+		buckets.incrementAndGet(index);
+		count.incrementAndGet();
+		total.addAndGet(latency);
+		if (latency > max)
+			max = latency;
+	}
+
+	/**
+	 * Gets the number of samples.
+	 *
+	 * @return the number of samples.
+	 */
+	public long getCount() {
+		return count.get();
+	}
+
+	/**
+	 * Gets the number of samples in bucket.
+	 *
+	 * @param index the bucket index.
+	 * @return the number of samples.
+	 */
+	public long getBucket(int index) {
+		return buckets.get(index);
+	}
+
+	/**
+	 * Gets the upper bound of the bucket.
+	 *
+	 * @param index the bucket index.
+	 * @return the bound in microseconds, Long.MAX_VALUE for last bucket.
+	 */
+	public static long getBucketBound(int index) {
+		return index == BUCKETS - 1 ? Long.MAX_VALUE : 1L << index;
+	}
+
+	/**
+	 * Gets the average latency.
+	 *
+	 * @return the latency in microseconds.
+	 */
+	public long getAverage() {
+		long currCount = count.get();
+		return currCount == 0 ? 0 : total.get() / currCount / 1000L;
+	}
+
+	/**
+	 * Gets the longest latency.
+	 *
+	 * @return the latency in microseconds.
+	 */
+	public long getMax() {
+		return max / 1000L;
+	}
+
+	/**
+	 * Gets the latency below which the given part of samples falls.
+	 *
+	 * @param percentile the value between 0 and 1, for example 0.99
+	 * @return the upper bound of bucket in microseconds.
+	 */
+	public long getPercentile(double percentile) {
+		long currCount = count.get();
+		if (currCount == 0)
+			return 0;
+
+		long threshold = (long) Math.ceil(currCount * percentile);
+		long sum = 0;
+		for (int i = 0; i < BUCKETS - 1; i++) {
+			sum += buckets.get(i);
+			if (sum >= threshold)
+				return getBucketBound(i);
+		}
+		return getMax();
+	}
+
+	/**
+	 * Clears all samples.
+	 */
+	public void reset() {
+		for (int i = 0; i < BUCKETS; i++)
+			buckets.set(i, 0);
+
+		count.set(0);
+		total.set(0);
+		max = 0;
+	}
+}
@@ -29,9 +29,10 @@ import java.nio.ByteBuffer;
 import java.nio.channels.DatagramChannel;
 import java.nio.channels.SelectionKey;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
 
 import org.apache.log4j.Logger;
-import org.mobicents.media.server.concurrent.ConcurrentCyclicFIFO;
+import org.mobicents.media.server.concurrent.ConcurrentRingFIFO;
 import org.mobicents.media.server.io.network.ProtocolHandler;
 import org.mobicents.media.server.io.network.UdpManager;
 import org.mobicents.media.server.mgcp.message.MgcpMessage;
@@ -42,10 +43,34 @@ import org.mobicents.media.server.spi.listener.Listeners;
 import org.mobicents.media.server.spi.listener.TooManyListenersException;
 
 /**
+ * MGCP provider.
+ * 
+ * Datagrams are read by network thread into pooled buffers and passed to
+ * worker threads which parse them in place and deliver events to listeners.
+ * Requests for the same endpoint are always handled by the same worker, so
+ * their order is kept. Requests for wildcarded endpoints and responses are
+ * spread by transaction identifier.
  *
  * @author Oifa Yulian
  */
 public class MgcpProvider {
+    //size of receive buffer
+    private static final int BUFFER_SIZE = 8192;
+    
+    //datagrams read before workers are notified
+    private static final int BATCH_SIZE = 16;
+    
+    //datagrams waiting for each worker
+    private static final int WORKER_QUEUE_SIZE = 1024;
+    
+    //commands with own latency statistics
+    private static final String[] COMMANDS = new String[] {"CRCX", "MDCX", "DLCX", "RQNT", "NTFY", "AUEP", "AUCX", "EPCF", "RSIP"};
+    private static final byte[][] COMMAND_BYTES = new byte[COMMANDS.length][];
+    
+    static {
+    	for (int i = 0; i < COMMANDS.length; i++)
+    		COMMAND_BYTES[i] = COMMANDS[i].getBytes();
+    }
     
     private String name;
     
@@ -65,13 +90,23 @@ public class MgcpProvider {
     private Scheduler scheduler;
     
     //transmission buffer
-    private ConcurrentCyclicFIFO<ByteBuffer> txBuffer = new ConcurrentCyclicFIFO<ByteBuffer>();
+    private ConcurrentRingFIFO<ByteBuffer> txBuffer = new ConcurrentRingFIFO<ByteBuffer>(128);
+    
+    //pool of receive buffers
+    private ConcurrentRingFIFO<ByteBuffer> rxBuffer = new ConcurrentRingFIFO<ByteBuffer>(WORKER_QUEUE_SIZE);
+    
+    //parsing threads
+    private int workersCount = Math.min(4, Runtime.getRuntime().availableProcessors());
+    private Worker[] workers;
     
-    //receiver buffer
-    private ByteBuffer rxBuffer = ByteBuffer.allocate(8192);
+    //latency from receiving till dispatching, per command, responses and other
+    private LatencyHistogram[] latency = new LatencyHistogram[COMMANDS.length + 2];
     
     //pool of events
-    private ConcurrentCyclicFIFO<MgcpEventImpl> events = new ConcurrentCyclicFIFO<MgcpEventImpl>();
+    private ConcurrentRingFIFO<MgcpEventImpl> events = new ConcurrentRingFIFO<MgcpEventImpl>(128);
+    
+    //responses kept for retransmitted commands
+    private ResponseCache responses = new ResponseCache();
         
     private final static Logger logger = Logger.getLogger(MgcpProvider.class);
     /**
@@ -93,6 +128,12 @@ public class MgcpProvider {
         
         for(int i=0;i<100;i++)
         	txBuffer.offer(ByteBuffer.allocate(8192));
+        
+        for(int i=0;i<100;i++)
+        	rxBuffer.offer(ByteBuffer.allocate(BUFFER_SIZE));
+        
+        for(int i=0;i<latency.length;i++)
+        	latency[i]=new LatencyHistogram();
     }
 
     /**
@@ -116,6 +157,12 @@ public class MgcpProvider {
         
         for(int i=0;i<100;i++)
         	txBuffer.offer(ByteBuffer.allocate(8192));
+        
+        for(int i=0;i<100;i++)
+        	rxBuffer.offer(ByteBuffer.allocate(BUFFER_SIZE));
+        
+        for(int i=0;i<latency.length;i++)
+        	latency[i]=new LatencyHistogram();
     }
     
     /**
@@ -150,6 +197,8 @@ public class MgcpProvider {
     		currBuffer=ByteBuffer.allocate(8192);
     	
     	msg.write(currBuffer);
+    	if (event.getEventID() == MgcpEvent.RESPONSE)
+    		cache(destination, msg.getTxID(), currBuffer);
     	channel.send(currBuffer, destination);
     	
     	currBuffer.clear();
@@ -168,6 +217,8 @@ public class MgcpProvider {
     		currBuffer=ByteBuffer.allocate(8192);    		
     	
     	msg.write(currBuffer);
+    	if (event.getEventID() == MgcpEvent.RESPONSE)
+    		cache(event.getAddress(), msg.getTxID(), currBuffer);
     	channel.send(currBuffer, event.getAddress());
     	
     	currBuffer.clear();
@@ -192,6 +243,93 @@ public class MgcpProvider {
     	txBuffer.offer(currBuffer);    	
     }
     
+    /**
+     * Sends again the response to transaction.
+     * 
+     * @param destination the address of the call agent which retransmitted the command.
+     * @param txID the transaction identifier.
+     * @return true if response was found and sent, false otherwise.
+     */
+    public boolean retransmit(SocketAddress destination, int txID) throws IOException {
+    	if (!(destination instanceof InetSocketAddress))
+    		return false;
+    	
+    	byte[] data = responses.get((InetSocketAddress) destination, txID, System.currentTimeMillis());
+    	if (data == null)
+    		return false;
+    	
+    	channel.send(ByteBuffer.wrap(data), destination);
+    	return true;
+    }
+    
+    /**
+     * Gets the cache of sent responses.
+     * 
+     * @return the response cache.
+     */
+    public ResponseCache getResponseCache() {
+    	return responses;
+    }
+    
+    private void cache(SocketAddress destination, int txID, ByteBuffer buffer) {
+    	if (destination instanceof InetSocketAddress)
+    		responses.put((InetSocketAddress) destination, txID, buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining(), System.currentTimeMillis());
+    }
+    
+    /**
+     * Modifies the number of threads which parse and dispatch received messages.
+     * Takes effect on next activation.
+     * 
+     * @param workersCount the number of threads.
+     */
+    public void setWorkersCount(int workersCount) {
+    	if (workersCount < 1)
+    		throw new IllegalArgumentException("Workers count should be positive");
+    	this.workersCount = workersCount;
+    }
+    
+    /**
+     * Gets the number of threads which parse and dispatch received messages.
+     * 
+     * @return the number of threads.
+     */
+    public int getWorkersCount() {
+    	return workersCount;
+    }
+    
+    /**
+     * Gets latency statistics of the command, measured from receiving of the
+     * datagram till delivery of the event to listeners.
+     * 
+     * @param command the command verb, for example CRCX.
+     * @return the histogram or null if command is unknown.
+     */
+    public LatencyHistogram getCommandLatency(String command) {
+    	for (int i = 0; i < COMMANDS.length; i++)
+    		if (COMMANDS[i].equalsIgnoreCase(command))
+    			return latency[i];
+    	
+    	return null;
+    }
+    
+    /**
+     * Gets latency statistics of received responses.
+     * 
+     * @return the histogram.
+     */
+    public LatencyHistogram getResponseLatency() {
+    	return latency[COMMANDS.length];
+    }
+    
+    /**
+     * Gets latency statistics of requests with unknown commands.
+     * 
+     * @return the histogram.
+     */
+    public LatencyHistogram getOtherLatency() {
+    	return latency[COMMANDS.length + 1];
+    }
+    
     /**
      * Registers new even listener.
      * 
@@ -212,6 +350,12 @@ public class MgcpProvider {
     }
     
     public void activate() {
+    	workers = new Worker[workersCount];
+    	for (int i = 0; i < workers.length; i++) {
+    		workers[i] = new Worker(i);
+    		workers[i].start();
+    	}
+    	
         try {
             logger.info("Opening channel");
             channel = transport.open(new MGCPHandler());
@@ -239,7 +383,13 @@ public class MgcpProvider {
             	channel.close();
             } catch (IOException e) {
             }
-        }        
+        }
+        
+        if (workers != null) {
+        	for (int i = 0; i < workers.length; i++)
+        		workers[i].shutdown();
+        	workers = null;
+        }
     }
     
     private void recycleEvent(MgcpEventImpl event) {
@@ -249,6 +399,13 @@ public class MgcpProvider {
     	{
     		event.response.clean();
         	event.request.clean();
+        	
+        	//message does not refer receive buffer anymore
+        	if (event.buffer != null) {
+        		event.buffer.clear();
+        		rxBuffer.offer(event.buffer);
+        		event.buffer = null;
+        	}
         	events.offer(event);
     	}
     }
@@ -299,6 +456,7 @@ public class MgcpProvider {
      */
     private class Receiver {
         private SocketAddress address;
+        private ByteBuffer buffer;
         
         public Receiver() {
             super();
@@ -310,24 +468,35 @@ public class MgcpProvider {
         }
         
         public long perform() {
-            rxBuffer.clear();
+        	Worker[] currWorkers = workers;
+        	if (currWorkers == null)
+        		return 0;
+        	
+        	int received = 0;
             try {
-                while ((address = channel.receive(rxBuffer)) != null) {
-                    rxBuffer.flip();
+            	while (true) {
+            		if (buffer == null) {
+            			buffer = rxBuffer.poll();
+            			if (buffer == null)
+            				buffer = ByteBuffer.allocate(BUFFER_SIZE);
+            		}
+            		
+            		if ((address = channel.receive(buffer)) == null)
+            			break;
+            		
+                    buffer.flip();
                     
                     if (logger.isDebugEnabled()) {
-                        logger.debug("Receive  message " + rxBuffer.limit() + " bytes length");
+                        logger.debug("Receive  message " + buffer.limit() + " bytes length");
                     }
                     
-                    if (rxBuffer.limit() == 0) {
+                    if (buffer.limit() == 0) {
+                    	buffer.clear();
                         continue;
                     }
                     
-                    byte b = rxBuffer.get();
-                    rxBuffer.rewind();
-
-                    
                     //update event ID.
+                    byte b = buffer.get(0);
                     int msgType = -1;
                     if (b >= 48 && b <= 57) {
                         msgType = MgcpEvent.RESPONSE;
@@ -335,30 +504,174 @@ public class MgcpProvider {
                         msgType = MgcpEvent.REQUEST;
                     }
                     
-                    MgcpEvent evt = createEvent(msgType, address);
+                    MgcpEventImpl evt = events.poll();
+                    if (evt == null)
+                    	evt = new MgcpEventImpl(MgcpProvider.this);
                     
-                    //parse message
-                    if (logger.isDebugEnabled()) {
-                    	final byte[] data = rxBuffer.array();
-                    	logger.debug("Parsing message: " + new String(data,0,rxBuffer.limit()));
-                    }
-                    MgcpMessage msg = evt.getMessage();
-                    msg.read(rxBuffer);
+                    evt.inQueue.set(false);
+                    evt.setEventID(msgType);
+                    evt.source = address;
+                    evt.buffer = buffer;
+                    evt.receiveTime = System.nanoTime();
+                    buffer = null;
                     
-                    //deliver event to listeners
-                    if (logger.isDebugEnabled()) {
-                        logger.debug("Dispatching message");
+                    Worker worker = currWorkers[(partition(evt.buffer) & Integer.MAX_VALUE) % currWorkers.length];
+                    if (!worker.queue.offer(evt)) {
+                    	logger.warn("Too many MGCP messages are waiting to be handled. Message will be dropped.");
+                    	evt.recycle();
                     }
-                    listeners.dispatch(evt);
                     
-                    //clean buffer for next reading
-                    rxBuffer.clear();
+                    //wake up workers once per batch
+                    if (++received % BATCH_SIZE == 0)
+                    	notifyWorkers(currWorkers);
                 }
             } catch (Exception e) {
                 logger.error("Could not process message", e);
             }
+            
+            if (received % BATCH_SIZE != 0)
+            	notifyWorkers(currWorkers);
             return 0;
-        }       
+        }
+        
+        private void notifyWorkers(Worker[] currWorkers) {
+        	for (int i = 0; i < currWorkers.length; i++)
+        		if (currWorkers[i].queue.size() > 0)
+        			LockSupport.unpark(currWorkers[i]);
+        }
+    }
+    
+    /**
+     * Selects partition of the message without parsing it. Requests are
+     * partitioned by endpoint name unless it is wildcarded, other messages by
+     * transaction identifier.
+     * 
+     * @param buffer the buffer holding message.
+     * @return the partition key.
+     */
+    private static int partition(ByteBuffer buffer) {
+    	int limit = buffer.limit();
+    	byte b = buffer.get(0);
+    	boolean request = b < 48 || b > 57;
+    	
+    	//skip command or response code
+    	int i = 0;
+    	while (i < limit && buffer.get(i) != ' ')
+    		i++;
+    	while (i < limit && buffer.get(i) == ' ')
+    		i++;
+    	
+    	//transaction identifier
+    	int txKey = 0;
+    	while (i < limit && (b = buffer.get(i)) != ' ' && b != '\r' && b != '\n') {
+    		txKey = 31 * txKey + b;
+    		i++;
+    	}
+    	
+    	if (!request)
+    		return txKey;
+    	
+    	while (i < limit && buffer.get(i) == ' ')
+    		i++;
+    	
+    	//endpoint name, case insensitive
+    	int endpointKey = 0;
+    	boolean local = true;
+    	while (i < limit && (b = buffer.get(i)) != ' ' && b != '\r' && b != '\n') {
+    		if (b == '@') {
+    			local = false;
+    		} else if (local && (b == '$' || b == '*')) {
+    			//new endpoint is selected, order does not matter
+    			return txKey;
+    		}
+    		
+    		if (b >= 'A' && b <= 'Z')
+    			b += 32;
+    		endpointKey = 31 * endpointKey + b;
+    		i++;
+    	}
+    	return endpointKey;
+    }
+    
+    private int commandIndex(ByteBuffer buffer) {
+    	byte b = buffer.get(0);
+    	if (b >= 48 && b <= 57)
+    		return COMMANDS.length;
+    	
+    	if (buffer.limit() >= 4) {
+    		for (int i = 0; i < COMMAND_BYTES.length; i++) {
+    			byte[] command = COMMAND_BYTES[i];
+    			int j = 0;
+    			while (j < 4 && (buffer.get(j) & 0xDF) == command[j])
+    				j++;
+    			if (j == 4)
+    				return i;
+    		}
+    	}
+    	return COMMANDS.length + 1;
+    }
+    
+    /**
+     * Thread which parses received messages and delivers them to listeners.
+     */
+    private class Worker extends Thread {
+    	private volatile boolean active = true;
+    	private ConcurrentRingFIFO<MgcpEventImpl> queue = new ConcurrentRingFIFO<MgcpEventImpl>(WORKER_QUEUE_SIZE);
+    	
+    	public Worker(int index) {
+    		super("MGCP-worker-" + port + "-" + index);
+    		setDaemon(true);
+    	}
+    	
+    	@Override
+    	public void run() {
+    		while (active) {
+    			MgcpEventImpl evt = queue.poll();
+    			if (evt == null) {
+    				LockSupport.park(this);
+    				continue;
+    			}
+    			
+    			process(evt);
+    		}
+    		
+    		//release messages which were not handled
+    		MgcpEventImpl evt = queue.poll();
+    		while (evt != null) {
+    			evt.recycle();
+    			evt = queue.poll();
+    		}
+    	}
+    	
+    	private void process(MgcpEventImpl evt) {
+    		//event may be recycled by listeners
+    		int index = commandIndex(evt.buffer);
+    		long receiveTime = evt.receiveTime;
+    		try {
+    			evt.setAddress(evt.source);
+    			
+    			//parse message
+    			if (logger.isDebugEnabled()) {
+    				logger.debug("Parsing message: " + new String(evt.buffer.array(), 0, evt.buffer.limit()));
+    			}
+    			evt.getMessage().strain(evt.buffer);
+    			
+    			//deliver event to listeners
+    			if (logger.isDebugEnabled()) {
+    				logger.debug("Dispatching message");
+    			}
+    			listeners.dispatch(evt);
+    		} catch (Exception e) {
+    			logger.error("Could not process message", e);
+    		}
+    		
+    		latency[index].update(System.nanoTime() - receiveTime);
+    	}
+    	
+    	private void shutdown() {
+    		active = false;
+    		LockSupport.unpark(this);
+    	}
     }
 
     /**
@@ -380,6 +693,11 @@ public class MgcpProvider {
         //the source address 
         private SocketAddress address;
         
+        //received datagram, message refers its content
+        private ByteBuffer buffer;
+        private SocketAddress source;
+        private long receiveTime;
+        
         private AtomicBoolean inQueue=new AtomicBoolean(true);
         /**
          * Creates new event object.
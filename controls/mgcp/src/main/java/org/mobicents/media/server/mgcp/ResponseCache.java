@@ -0,0 +1,195 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.mobicents.media.server.mgcp;
+
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Keeps responses sent to call agents, so retransmitted commands are answered
+ * with the original response instead of being executed again.
+ *
+ * Responses are kept in time buckets, each bucket covers 1/BUCKETS of the
+ * history window and the whole bucket expires at once. RFC 3435 section 3.5.6
+ * requires responses to be kept for T-HIST, which is 30 seconds by default.
+ */
+public class ResponseCache {
+	//default history window, T-HIST
+	public static final long HISTORY = 30000L;
+
+	private static final int BUCKETS = 6;
+
+	private final ConcurrentHashMap<Key, Entry> responses = new ConcurrentHashMap<Key, Entry>();
+
+	//keys stored in each bucket, used for expiration
+	@SuppressWarnings("unchecked")
+	private final ConcurrentLinkedQueue<Key>[] buckets = new ConcurrentLinkedQueue[BUCKETS];
+
+	private final long bucketDuration;
+	private volatile long epoch;
+
+	/**
+	 * Creates cache with T-HIST window.
+	 */
+	public ResponseCache() {
+		this(HISTORY);
+	}
+
+	/**
+	 * Creates new cache.
+	 *
+	 * @param history the time in milliseconds responses are kept.
+	 */
+	public ResponseCache(long history) {
+		if (history < BUCKETS)
+			throw new IllegalArgumentException("History is too short: " + history);
+
+		this.bucketDuration = history / BUCKETS;
+		for (int i = 0; i < BUCKETS; i++)
+			buckets[i] = new ConcurrentLinkedQueue<Key>();
+	}
+
+	/**
+	 * Stores response.
+	 *
+	 * @param destination the address of the call agent.
+	 * @param txID the transaction identifier.
+	 * @param data the array holding encoded response.
+	 * @param offset the position of the first byte of response.
+	 * @param length the length of response.
+	 * @param time current time in milliseconds.
+	 */
+	public void put(InetSocketAddress destination, int txID, byte[] data, int offset, int length, long time) {
+		long currEpoch = rotate(time);
+
+		Key key = new Key(destination, txID);
+		responses.put(key, new Entry(Arrays.copyOfRange(data, offset, offset + length), currEpoch));
+		buckets[(int) (currEpoch % BUCKETS)].offer(key);
+	}
+
+	/**
+	 * Gets response previously sent for transaction.
+	 *
+	 * @param source the address of the call agent.
+	 * @param txID the transaction identifier.
+	 * @param time current time in milliseconds.
+	 * @return encoded response or null if not found or expired.
+	 */
+	public byte[] get(InetSocketAddress source, int txID, long time) {
+		long currEpoch = rotate(time);
+		if (responses.isEmpty())
+			return null;
+
+		Entry entry = responses.get(new Key(source, txID));
+		if (entry == null || currEpoch - entry.epoch >= BUCKETS)
+			return null;
+
+		return entry.data;
+	}
+
+	/**
+	 * Gets the number of cached responses.
+	 *
+	 * @return the number of responses.
+	 */
+	public int size() {
+		return responses.size();
+	}
+
+	/**
+	 * Removes all responses.
+	 */
+	public void clear() {
+		responses.clear();
+		for (int i = 0; i < BUCKETS; i++)
+			buckets[i].clear();
+	}
+
+	private long rotate(long time) {
+		long currEpoch = time / bucketDuration;
+		if (currEpoch == epoch)
+			return currEpoch;
+
+		synchronized (this) {
+			long lastEpoch = epoch;
+			if (currEpoch <= lastEpoch)
+				return currEpoch;
+
+			//expire buckets reused since last rotation
+			long count = Math.min(currEpoch - lastEpoch, BUCKETS);
+			for (long i = currEpoch - count + 1; i <= currEpoch; i++)
+				expire(buckets[(int) (i % BUCKETS)], currEpoch);
+
+			epoch = currEpoch;
+		}
+		return currEpoch;
+	}
+
+	private void expire(ConcurrentLinkedQueue<Key> bucket, long currEpoch) {
+		Key key = bucket.poll();
+		while (key != null) {
+			Entry entry = responses.get(key);
+			//response may be stored again later in newer bucket
+			if (entry != null && currEpoch - entry.epoch >= BUCKETS)
+				responses.remove(key, entry);
+
+			key = bucket.poll();
+		}
+	}
+
+	private static class Key {
+		private final InetSocketAddress address;
+		private final int txID;
+
+		private Key(InetSocketAddress address, int txID) {
+			this.address = address;
+			this.txID = txID;
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * address.hashCode() + txID;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Key))
+				return false;
+
+			Key other = (Key) obj;
+			return txID == other.txID && address.equals(other.address);
+		}
+	}
+
+	private static class Entry {
+		private final byte[] data;
+		private final long epoch;
+
+		private Entry(byte[] data, long epoch) {
+			this.data = data;
+			this.epoch = epoch;
+		}
+	}
+}
@@ -61,4 +61,13 @@ public class CallManager {
 		calls.remove(call.id);
 	}
 
+	/**
+	 * Checks whether there are active calls.
+	 * 
+	 * @return true if no call is active.
+	 */
+	public boolean isEmpty() {
+		return calls.isEmpty();
+	}
+
 }
@@ -222,7 +222,22 @@ public class Controller implements MgcpListener, ServerManager {
 		int txID = event.getMessage().getTxID();
 		Transaction tx;
 		if (event.getEventID() == MgcpEvent.REQUEST) {
+			// answer retransmitted command with the original response
+			try {
+				if (mgcpProvider.retransmit(event.getAddress(), txID)) {
+					event.recycle();
+					return;
+				}
+			} catch (IOException e) {
+				logger.error("Could not retransmit response tx=" + txID, e);
+			}
+			
 			tx = txManager.allocateNew((InetSocketAddress) event.getAddress(), txID);
+			if (tx == null) {
+				// command is still executing, response will be sent once it completes
+				event.recycle();
+				return;
+			}
 		} else {
 			// TODO find by transaction number - hrosa
 			tx = txManager.find((InetSocketAddress) event.getAddress(), txID);
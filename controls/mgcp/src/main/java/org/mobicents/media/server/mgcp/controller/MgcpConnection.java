@@ -106,9 +106,11 @@ public class MgcpConnection implements ConnectionFailureListener {
     }
     
     public Text getDescriptor() {
-    	if(connection.getDescriptor()!=null)
+    	String sdp = connection.getDescriptor();
+    	if(sdp!=null)
     	{	
-    		descriptor.strain(connection.getDescriptor().getBytes(), 0, connection.getDescriptor().length());
+    		byte[] data = sdp.getBytes();
+    		descriptor.strain(data, 0, data.length);
     		return descriptor;
     	}        
     	
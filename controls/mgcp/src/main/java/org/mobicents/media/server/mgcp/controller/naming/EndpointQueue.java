@@ -19,12 +19,20 @@
  * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
  * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
  */
+
 package org.mobicents.media.server.mgcp.controller.naming;
 
-import java.util.ArrayList;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.log4j.Logger;
-import org.mobicents.media.server.concurrent.ConcurrentCyclicFIFO;
+import org.mobicents.media.server.concurrent.ConcurrentMap;
 import org.mobicents.media.server.mgcp.controller.MgcpEndpoint;
 import org.mobicents.media.server.mgcp.controller.MgcpEndpointStateListener;
 import org.mobicents.media.server.spi.EndpointInstaller;
@@ -34,27 +42,50 @@ import org.mobicents.media.server.utils.Text;
 /**
  * Storage for endpoints of same type with search and reordering functions.
  * 
+ * Free endpoints are kept in lock free queue. When the number of free
+ * endpoints drops below low water mark the pool is expanded by batch of
+ * endpoints in background thread, so requests for any endpoint do not wait
+ * for endpoint construction.
+ * 
  * @author yulian oifa
  */
 public class EndpointQueue implements MgcpEndpointStateListener {
-    //reserved space for endpoint queue
-    private final static int SIZE = 100;
+    //expansion starts when number of free endpoints drops below this value
+    public final static int LOW_WATER_MARK = 5;
+    
+    //number of endpoints created by one expansion
+    public final static int EXPANSION_BATCH = 10;
     
     //wildcards
     private final static Text ANY = new Text("$");
     private final static Text ALL = new Text("*");
     
-    //queue of endpoints
-    private ArrayList<Holder> completeList=new ArrayList<Holder>(SIZE);
-    private ConcurrentCyclicFIFO<MgcpEndpoint> queue = new ConcurrentCyclicFIFO<MgcpEndpoint>();
+    //creates endpoints for all queues
+    private final static ThreadPoolExecutor expander = new ThreadPoolExecutor(1, 1, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, "MGCP-endpoint-expander");
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+    
+    static {
+    	expander.allowCoreThreadTimeOut(true);
+    }
+    
+    //all endpoints in registration order
+    private CopyOnWriteArrayList<MgcpEndpoint> completeList = new CopyOnWriteArrayList<MgcpEndpoint>();
     
-    //reference for just found endpoind
-    //private Holder holder;
+    //endpoints indexed by number
+    private ConcurrentMap<MgcpEndpoint> numbers = new ConcurrentMap<MgcpEndpoint>();
     
-    //index
-    private int k;
+    //free endpoints
+    private ConcurrentLinkedQueue<MgcpEndpoint> queue = new ConcurrentLinkedQueue<MgcpEndpoint>();
+    private AtomicInteger freeCount = new AtomicInteger();
     
-    private EndpointInstaller installer;
+    private volatile EndpointInstaller installer;
+    private AtomicBoolean expanding = new AtomicBoolean(false);
     
     public  Logger logger = Logger.getLogger(EndpointQueue.class);
     
@@ -69,26 +100,21 @@ public class EndpointQueue implements MgcpEndpointStateListener {
      * @param endpoint the endpoint to be added
      */
     public void add(MgcpEndpoint endpoint) {
-    	Holder holder=new Holder(endpoint);
     	endpoint.setMgcpEndpointStateListener(this);
-    	completeList.add(holder);
-        queue.offer(endpoint);
+    	completeList.add(endpoint);
+    	
+    	//index endpoint by number, last token of its name
+    	String name = endpoint.getName();
+    	try {
+    		numbers.put(Integer.parseInt(name.substring(name.lastIndexOf('/') + 1)), endpoint);
+    	} catch (NumberFormatException e) {
+    		if(logger.isDebugEnabled())
+    			logger.debug("Endpoint " + name + " can not be found by number");
+    	}
+    	
+    	offer(endpoint);
     }
     
-    /**
-     * Removes endpoint from the queue.
-     * 
-     * @param endpoint the endpoint to be removed.
-     */
-    /*public void remove(MgcpEndpoint endpoint) {
-    	for(int i=0;i<completeList.size();i++)
-    		if(completeList.get(i).endpoint==endpoint)
-    		{
-    			completeList.remove(i);
-    			break;
-    		}    	    	
-    }*/
-     
     /**
      * Finds endpoints matching to name pattern.
      * 
@@ -102,28 +128,35 @@ public class EndpointQueue implements MgcpEndpointStateListener {
     public int find(Text name, MgcpEndpoint[] endpoints) {
     	//return all endpoint if all requested
         if (name.equals(ALL)) {
-            k = 0;
-            for(int i=0;i<completeList.size();i++) {
-                endpoints[k++] = completeList.get(i).endpoint;
+            int k = 0;
+            for (MgcpEndpoint endpoint : completeList) {
+            	if (k == endpoints.length)
+            		break;
+                endpoints[k++] = endpoint;
             }
             
-            return completeList.size();
+            return k;
         }
         
         //return first free if ANY endpoint requested
         if (name.equals(ANY)) {        	        	
-        	MgcpEndpoint endp=queue.poll();
-        	while(endp==null && installer!=null && installer.canExpand())
+        	MgcpEndpoint endp=poll();
+        	if(freeCount.get() < LOW_WATER_MARK)
+        		expand();
+        	
+        	//background expansion did not keep up with requests
+        	EndpointInstaller currInstaller=installer;
+        	while(endp==null && currInstaller!=null && currInstaller.canExpand())
         	{
         		if(logger.isDebugEnabled())    	
             		logger.debug("No free endpoints,expanding");            		
             	
-        		synchronized(installer)
+        		synchronized(currInstaller)
         		{
-        			installer.newEndpoint();
+        			currInstaller.newEndpoint();
         		}
         		
-        		endp=queue.poll();
+        		endp=poll();
         	}
         		
         	if(endp!=null) {
@@ -132,7 +165,7 @@ public class EndpointQueue implements MgcpEndpointStateListener {
         		if(logger.isDebugEnabled())    	
             	{
             		logger.debug("Endpoint " + endp.getName() + " taken");
-            		logger.debug("Free endpoints " + queue.size());
+            		logger.debug("Free endpoints " + freeCount.get());
             	}
         		return 1;        		            
         	}
@@ -140,35 +173,73 @@ public class EndpointQueue implements MgcpEndpointStateListener {
             return 0;
         }
                
-        int value=name.toInteger();
-        if(value>0 && value<=completeList.size())
-        {
-        	endpoints[0] = completeList.get(value-1).endpoint;
+        MgcpEndpoint endpoint = numbers.get(name.toInteger());
+        if (endpoint != null) {
+        	endpoints[0] = endpoint;
         	return 1;
         }
         
         return 0;
     }
     
+    /**
+     * Gets the number of free endpoints.
+     * 
+     * @return the number of endpoints.
+     */
+    public int getFreeCount() {
+    	return freeCount.get();
+    }
+    
     @Override
     public void onFreed(MgcpEndpoint endpoint)
     {
-    	queue.offer(endpoint);    
+    	offer(endpoint);    
     	if(logger.isDebugEnabled())    	
     	{
     		logger.debug("Endpoint " + endpoint.getName() + " released");
-    		logger.debug("Free endpoints " + queue.size());
+    		logger.debug("Free endpoints " + freeCount.get());
     	}
     }
     
-    private class Holder {
-        protected MgcpEndpoint endpoint;
-        protected Text name;
-        
-        protected Holder(MgcpEndpoint endpoint) {
-            this.endpoint = endpoint;
-            String[] tokens = endpoint.getName().split("/");
-            this.name = new Text(tokens[tokens.length - 1]);            
-        }
+    private void offer(MgcpEndpoint endpoint) {
+    	queue.offer(endpoint);
+    	freeCount.incrementAndGet();
+    }
+    
+    private MgcpEndpoint poll() {
+    	MgcpEndpoint endpoint = queue.poll();
+    	if (endpoint != null)
+    		freeCount.decrementAndGet();
+    	return endpoint;
+    }
+    
+    /**
+     * Schedules creation of new endpoints unless expansion is in progress.
+     */
+    private void expand() {
+    	final EndpointInstaller currInstaller = installer;
+    	if (currInstaller == null || !expanding.compareAndSet(false, true))
+    		return;
+    	
+    	expander.execute(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					for (int i = 0; i < EXPANSION_BATCH && currInstaller.canExpand(); i++) {
+						synchronized (currInstaller) {
+							currInstaller.newEndpoint();
+						}
+					}
+				} catch (RuntimeException e) {
+					logger.error("Could not expand endpoints pool", e);
+				} finally {
+					expanding.set(false);
+				}
+				
+				if (logger.isDebugEnabled())
+					logger.debug("Endpoints pool expanded, free endpoints " + freeCount.get());
+			}
+		});
     }
 }
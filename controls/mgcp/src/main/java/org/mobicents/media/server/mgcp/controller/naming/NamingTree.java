@@ -19,6 +19,7 @@
  * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
  * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
  */
+
 package org.mobicents.media.server.mgcp.controller.naming;
 
 import org.mobicents.media.server.mgcp.controller.MgcpEndpoint;
@@ -30,11 +31,18 @@ import org.mobicents.media.server.concurrent.ConcurrentCyclicFIFO;
 /**
  * Naming tree for MGCP endpoints.
  * 
+ * Endpoint types are kept in open addressing table indexed by hash of the
+ * path without last token, for example "mobicents/ivr". Paths are split when
+ * endpoint is registered, lookups do not allocate and do not lock. The table
+ * is replaced on write, which happens only when new endpoint type appears.
+ * 
  * @author kulikov
  */
 public class NamingTree {
-    //the root of the tree
-    private NamingNode<EndpointQueue> root = new NamingNode<EndpointQueue>(new Text("root"), null);
+    //table of endpoint types, size is power of two
+    private volatile Node[] table = new Node[16];
+    private int size;
+    
     private ConcurrentCyclicFIFO<Text[]> patterns = new ConcurrentCyclicFIFO<Text[]>();
     
     public NamingTree() {
@@ -65,24 +73,21 @@ public class NamingTree {
     		path[i] = new Text(tokens[i]);
     	}
         
-    	//create tree of nodes starting from root
-    	NamingNode<EndpointQueue> currentNode = root;
-    	for (int i = 0; i < path.length - 1; i++) {
-    		//try to find node first
-    		NamingNode foundNode = currentNode.find(new Text[]{path[i]}, 1);            
-            
-    		//create new node if not found
-    		currentNode = foundNode != null ? foundNode : currentNode.createChild(path[i]);            
-            
-    		//attach endpoint queue if it is not attached yet
-    		if (currentNode.poll() == null) {
-    			currentNode.attach(new EndpointQueue());
+    	//create queue for each parent path, like nodes of the tree
+    	Node node = null;
+    	for (int i = 1; i < path.length; i++) {
+    		node = get(path, i);
+    		if (node == null) {
+    			Text[] parent = new Text[i];
+    			System.arraycopy(path, 0, parent, 0, i);
+    			node = new Node(parent, hash(parent, i), new EndpointQueue());
+    			put(node);
     		}
     	}
         
     	//finally add endpoint
-    	((EndpointQueue)currentNode.poll()).add(endpoint);
-    	((EndpointQueue)currentNode.poll()).setInstaller(installer);
+    	node.queue.add(endpoint);
+    	node.queue.setInstaller(installer);
     }
     
     /**
@@ -111,19 +116,102 @@ public class NamingTree {
     		}
     	}
     	
-    	//clean prev search
-    	NamingNode node = null;
-    	int n = name.divide('/', pattern);        
+    	try {
+    		int n = name.divide('/', pattern);        
+    	
+    		//search endpoint type
+    		Node node = n > 1 ? get(pattern, n - 1) : null;
+    		if (node == null) {
+    			throw new UnknownEndpointException();
+    		}
+        
+    		return node.queue.find(pattern[n - 1], endpoints);
+    	} finally {
+    		patterns.offer(pattern);
+    	}
+    }
+    
+    private Node get(Text[] path, int n) {
+    	Node[] currTable = table;
+    	int mask = currTable.length - 1;
+    	int hash = hash(path, n);
     	
-    	//search node
-    	node = root.find(pattern, n - 1);
+    	int slot = hash & mask;
+    	Node node = currTable[slot];
+    	while (node != null) {
+    		if (node.hash == hash && node.matches(path, n))
+    			return node;
+    		
+    		slot = (slot + 1) & mask;
+    		node = currTable[slot];
+    	}
+    	return null;
+    }
+    
+    private void put(Node node) {
+    	//keep load factor below one half
+    	int capacity = table.length;
+    	if ((size + 1) * 2 > capacity)
+    		capacity <<= 1;
     	
-    	if (node == null) {
-    		throw new UnknownEndpointException();
+    	Node[] newTable = new Node[capacity];
+    	for (Node curr : table) {
+    		if (curr != null)
+    			insert(newTable, curr);
+    	}
+    	insert(newTable, node);
+    	
+    	size++;
+    	table = newTable;
+    }
+    
+    private static void insert(Node[] table, Node node) {
+    	int mask = table.length - 1;
+    	int slot = node.hash & mask;
+    	while (table[slot] != null)
+    		slot = (slot + 1) & mask;
+    	table[slot] = node;
+    }
+    
+    /**
+     * Case insensitive hash of first n tokens of path.
+     */
+    private static int hash(Text[] path, int n) {
+    	int hash = n;
+    	for (int i = 0; i < n; i++) {
+    		Text token = path[i];
+    		for (int j = 0; j < token.length(); j++) {
+    			//same folding as Text.equals
+    			char c = token.charAt(j);
+    			if (65 <= c && c < 97)
+    				c += 32;
+    			hash = 31 * hash + c;
+    		}
+    		hash = 31 * hash + '/';
+    	}
+    	return hash ^ (hash >>> 16);
+    }
+    
+    private static class Node {
+    	private final Text[] path;
+    	private final int hash;
+    	private final EndpointQueue queue;
+    	
+    	private Node(Text[] path, int hash, EndpointQueue queue) {
+    		this.path = path;
+    		this.hash = hash;
+    		this.queue = queue;
+    	}
+    	
+    	private boolean matches(Text[] other, int n) {
+    		if (path.length != n)
+    			return false;
+    		
+    		for (int i = 0; i < n; i++) {
+    			if (!path[i].equals(other[i]))
+    				return false;
+    		}
+    		return true;
     	}
-        
-    	int result=((EndpointQueue)node.poll()).find(pattern[n - 1], endpoints);
-    	patterns.offer(pattern);
-    	return result;
     }
 }
@@ -24,6 +24,7 @@ package org.mobicents.media.server.mgcp.controller.signal;
 
 import java.util.ArrayList;
 
+import org.mobicents.media.core.endpoints.BaseEndpointImpl;
 import org.mobicents.media.server.mgcp.controller.UnknownActivityException;
 import org.mobicents.media.server.spi.Connection;
 import org.mobicents.media.server.spi.Endpoint;
@@ -149,6 +150,19 @@ public abstract class Signal {
         return mgcpPackage.getEndpoint();
     }
 
+    /**
+     * Gets the key which keeps tasks of the signal on the core of its endpoint.
+     *
+     * @return the affinity of the endpoint.
+     */
+    protected int getAffinity() {
+        Endpoint endpoint = getEndpoint();
+        if (endpoint instanceof BaseEndpointImpl)
+            return ((BaseEndpointImpl) endpoint).getAffinity();
+
+        return endpoint.getLocalName().hashCode() & Integer.MAX_VALUE;
+    }
+
     public Connection getConnection(String ID) {
     	try {
 			return this.mgcpPackage.getConnection(ID);
@@ -56,6 +56,22 @@ public abstract class MgcpMessage {
         parse(buff, 0, buffer.limit());
     }
     
+    /**
+     * Parses message without copying it.
+     * 
+     * Parsed fields refer to the buffer content, so buffer should not be
+     * modified till the message is cleaned.
+     * 
+     * @param buffer the buffer with array holding message from position to limit.
+     */
+    public void strain(ByteBuffer buffer) {
+        if (!buffer.hasArray()) {
+            read(buffer);
+            return;
+        }
+        parse(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+    }
+    
     protected abstract void parse(byte[] buff, int offset, int len);
     
     public void write(ByteBuffer buffer) {
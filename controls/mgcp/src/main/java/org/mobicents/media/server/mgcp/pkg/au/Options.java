@@ -69,6 +69,14 @@ public class Options {
     private final static Text cur = new Text("cur");
     private final static Text dpa = new Text("dpa");
     private final static Text x_md= new Text("x-md");
+    private final static Text x_rf= new Text("x-rf");
+    private final static Text x_ds= new Text("x-ds");
+    
+    //record formats
+    private final static Text linear = new Text("linear");
+    private final static Text pcma = new Text("pcma");
+    private final static Text pcmu = new Text("pcmu");
+    private final static Text gsm = new Text("gsm");
     
     private final static Text TRUE = new Text("true");
     private final static Text FALSE = new Text("false");
@@ -123,6 +131,8 @@ public class Options {
     
     private boolean nonInterruptable = false;
     private long recordDuration = -1;
+    private Text recordFormat = null;
+    private boolean dropSilence = false;
     private boolean clearDigits = false;
     private boolean includeEndInput = false;
     
@@ -198,6 +208,8 @@ public class Options {
         
         options.nonInterruptable = false;
         options.recordDuration = -1;
+        options.recordFormat = null;
+        options.dropSilence = false;
         options.clearDigits = false;
         options.includeEndInput = false;
         
@@ -530,10 +542,27 @@ public class Options {
             	}
             	else if (name.equals(x_md))
                     this.maxDuration = value.toInteger();        		
+            	else if (name.equals(x_rf))
+            		this.recordFormat = recordFormat(value);
+            	else if (name.equals(x_ds))
+            		this.dropSilence = value.equals(TRUE);
             }
         }
     }
 
+    private Text recordFormat(Text value) {
+    	if (value.equals(linear))
+    		return linear;
+    	else if (value.equals(pcma))
+    		return pcma;
+    	else if (value.equals(pcmu))
+    		return pcmu;
+    	else if (value.equals(gsm))
+    		return gsm;
+    	
+    	return null;
+    }
+    
     public Collection<Text> getSegments() {
         return segments;
     }
@@ -634,6 +663,24 @@ public class Options {
         return this.recordDuration;
     }
     
+    /**
+     * Gets the format of recorded file.
+     * 
+     * @return linear, pcma, pcmu or gsm, null if not requested.
+     */
+    public Text getRecordFormat() {
+        return this.recordFormat;
+    }
+    
+    /**
+     * Checks whether silence should be trimmed from recorded file.
+     * 
+     * @return true if only speech is recorded.
+     */
+    public boolean isDropSilence() {
+        return this.dropSilence;
+    }
+    
     public boolean isOverride() {
         return this.override;
     }
@@ -121,6 +121,7 @@ public class PlayCollect extends Signal {
 		segCount = 0;
 		this.scheduler = getEndpoint().getScheduler();
 		heartbeat = new Heartbeat(this);
+		heartbeat.setAffinity(getAffinity());
 
 		// get options of the request
 		options = Options.allocate(getTrigger().getParams());
@@ -87,6 +87,7 @@ public class PlayRecord extends Signal {
     
     private boolean isCompleted;
     private final static Logger logger = Logger.getLogger(PlayRecord.class);
+    private final static String LINEAR = "linear";
     private int segCount = 0;
     
     private PlayerMode playerMode=PlayerMode.PROMPT;
@@ -291,10 +292,16 @@ public class PlayRecord extends Signal {
         	recorder.setPreSpeechTimer(options.getPreSpeechTimer());
         else
         	recorder.setPreSpeechTimer(options.getPostSpeechTimer());
+        recorder.setDropSilence(options.isDropSilence());
         
         try {
         	recorder.addListener(recordingHandler);
             
+            //pooled recorder must not keep format of previous request
+            if (options.getRecordFormat() != null)
+            	recorder.setRecordFormat(options.getRecordFormat().toString());
+            else
+            	recorder.setRecordFormat(LINEAR);
             recorder.setRecordFile(options.getRecordID().toString(), !options.isOverride());
             recorder.activate();
         } 
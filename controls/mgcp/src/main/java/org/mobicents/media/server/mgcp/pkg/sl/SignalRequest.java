@@ -96,6 +96,7 @@ public class SignalRequest extends Signal implements DtmfGeneratorListener
                 
             this.scheduler=getEndpoint().getScheduler();
             heartbeat=new Heartbeat(this);
+            heartbeat.setAffinity(getAffinity());
             
             // Lets send the signals.
             generator = getDtmfGenerator();
@@ -97,6 +97,7 @@ public class Continuity1 extends Signal implements ToneDetectorListener {
         	{
         		this.scheduler=getEndpoint().getScheduler();
         		heartbeat=new Heartbeat(this);
+        		heartbeat.setAffinity(getAffinity());
         	}
         	
         	prepareToneReceiving();        
@@ -95,6 +95,7 @@ public class Continuity2 extends Signal implements ToneDetectorListener {
         {
         	this.scheduler=getEndpoint().getScheduler();
     		heartbeat=new Heartbeat(this);
+    		heartbeat.setAffinity(getAffinity());
         	prepareToneReceiving();
         }        	       
         
@@ -95,6 +95,7 @@ public class ContinuityTransporder extends Signal implements ToneDetectorListene
         	{
         		this.scheduler=getEndpoint().getScheduler();
         		heartbeat=new Heartbeat(this);
+        		heartbeat.setAffinity(getAffinity());
         	}
         	
         	prepareToneReceiving();
@@ -33,15 +33,15 @@ import org.mobicents.media.server.scheduler.Scheduler;
 /**
  * Implements pool of transactions.
  * 
+ * Transactions of all call agents are served by one shared manager, which
+ * indexes them by call agent address, port and transaction number.
+ * 
  * @author yulian oifa
  */
 public class GlobalTransactionManager 
 {	
-	//one byte block
-    private GlobalTransactionManager[] subManager;
-    
-    //ports block
-    private TransactionManager[] managers;    
+    //shared transaction manager
+    private volatile TransactionManager manager;
     
     //MGCP protocol provider
     protected MgcpProvider provider;
@@ -71,9 +71,9 @@ public class GlobalTransactionManager
     }
     
     /**
-     * Associates endpoint naming service.
+     * Modifies the size of shared transaction pool.
      * 
-     * @param namingService the endpoint naming service.
+     * @param poolSize the number of transactions kept in pool.
      */
     public void setPoolSize(int poolSize) {
         this.poolSize = poolSize;
@@ -113,42 +113,20 @@ public class GlobalTransactionManager
      * @return transaction object or null if does not exist.
      */
     public Transaction find(InetSocketAddress source,int id) {    
-    	return find(source.getAddress().getAddress(),source.getPort(),0,id);  
-    }
-    
-    private Transaction find(byte[] address,int port,int level,int id) {    
-    	if(level==address.length-1)
-    	{
-    		checkPort(port-1);
-    		return managers[port-1].find(id);
-    	}
-    	
-    	int intIndex = ((int)address[level]) & 0xFF;    				       	
-    	checkAddress(intIndex);
-    	return subManager[intIndex].find(address, port, level+1, id);    	
+    	return getTransactionManager().find(id);  
     }
     
+    /**
+     * Starts new transaction for command received from call agent.
+     * 
+     * @param source the address of the call agent.
+     * @param id the transaction identifier.
+     * @return transaction object or null if transaction with same identifier is in progress.
+     */
     public Transaction allocateNew(InetSocketAddress source,int id) {
-    	return allocateNew(source.getAddress().getAddress(),source.getPort(),0,id);
-    }
-    
-    private Transaction allocateNew(byte[] address,int port,int level,int id) {
-    	if(level==address.length-1)
-    	{    		
-    		checkPort(port-1);
-    		// hrosa - look for transaction by tx number rather than unique id
-    		// Fixes issue MEDIA-20
-    		Transaction old=managers[port-1].findByTransactionNumber(id);
-			if (old == null) {
-				return managers[port - 1].allocateNew(id);
-			} else {
-				return null;
-			}
-    	}
-    	
-    	int intIndex = ((int)address[level]) & 0xFF;    				       	
-    	checkAddress(intIndex);
-    	return subManager[intIndex].allocateNew(address, port, level+1, id);    	
+		// hrosa - look for transaction by tx number rather than unique id
+		// Fixes issue MEDIA-20
+    	return getTransactionManager().allocateNew(source, id);
     }
     
     public TransactionManager createTransactionManager() {
@@ -160,8 +138,14 @@ public class GlobalTransactionManager
         return txManager;
     }
     
-    private void checkPort(int portIndex) {
-    	if(managers==null)
+    /**
+     * Gets the manager shared by all call agents.
+     * 
+     * @return the transaction manager.
+     */
+    public TransactionManager getTransactionManager() {
+    	TransactionManager txManager = manager;
+    	if(txManager==null)
 		{
     		try
     		{
@@ -172,76 +156,15 @@ public class GlobalTransactionManager
     			
     		}
 			
-			if(managers==null)
+    		txManager = manager;
+			if(txManager==null)
 			{
-				managers=new TransactionManager[65536];				
-				managers[portIndex]=createTransactionManager();    			
+				txManager=createTransactionManager();
+				manager=txManager;
 			}
 			
 			lock.unlock();
 		}
-		else if(managers[portIndex]==null)
-		{
-			try
-    		{
-    			lock.lock();
-    		}
-    		catch(java.lang.InterruptedException e)
-    		{
-    			
-    		}
-			
-			if(managers[portIndex]==null)
-				managers[portIndex]=createTransactionManager();
-			
-			lock.unlock();
-		}
+    	return txManager;
     }
-    
-    private void checkAddress(int intIndex) {
-    	if(subManager==null)
-		{
-    		try
-    		{
-    			lock.lock();
-    		}
-    		catch(java.lang.InterruptedException e)
-    		{
-    			
-    		}
-			
-			if(subManager==null)
-			{
-				subManager=new GlobalTransactionManager[256];
-				
-				subManager[intIndex]=new GlobalTransactionManager(scheduler);
-    			subManager[intIndex].setMgcpProvider(provider);
-    			subManager[intIndex].setNamingService(namingService);
-    			subManager[intIndex].setPoolSize(poolSize);
-			}
-			
-			lock.unlock();
-		}
-		else if(subManager[intIndex]==null)
-		{
-			try
-    		{
-    			lock.lock();
-    		}
-    		catch(java.lang.InterruptedException e)
-    		{
-    			
-    		}
-			
-			if(subManager[intIndex]==null)
-			{
-				subManager[intIndex]=new GlobalTransactionManager(scheduler);
-    			subManager[intIndex].setMgcpProvider(provider);
-    			subManager[intIndex].setNamingService(namingService);
-    			subManager[intIndex].setPoolSize(poolSize);
-			}
-			
-			lock.unlock();
-		}
-    }    
 }
@@ -22,6 +22,8 @@
 
 package org.mobicents.media.server.mgcp.tx;
 
+import java.net.InetSocketAddress;
+
 import jain.protocol.ip.mgcp.message.parms.ReturnCode;
 import org.mobicents.media.server.mgcp.controller.*;
 import org.apache.log4j.Logger;
@@ -43,6 +45,9 @@ public class Transaction implements ActionListener {
     protected int id;
     protected int uniqueId; 
     
+    //call agent which started transaction
+    protected InetSocketAddress source;
+    
     protected boolean completed=false;
     
     //Transaction manager instance
@@ -90,7 +95,7 @@ public class Transaction implements ActionListener {
     }
 
     public MgcpCall getCall(Integer id, boolean isNew) {
-        return txManager.callManager.getCall(id, isNew);
+        return txManager.getCallManager(source).getCall(id, isNew);
     }
     
     
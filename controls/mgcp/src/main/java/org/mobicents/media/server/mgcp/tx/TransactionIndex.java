@@ -0,0 +1,248 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.mobicents.media.server.mgcp.tx;
+
+import java.net.InetSocketAddress;
+
+/**
+ * Open addressing map from (call agent address, port, transaction number)
+ * to transaction.
+ *
+ * Each key is packed into three longs: two for IPv4 or IPv6 address and one
+ * for address type, port and transaction number. Keys and values are kept in
+ * flat arrays with linear probing, removed entries are back shifted so no
+ * tombstones are left behind.
+ */
+public class TransactionIndex {
+	private static final int NONE = 0;
+	private static final int IPV4 = 1;
+	private static final int IPV6 = 2;
+
+	private static final int MIN_CAPACITY = 16;
+
+	//three longs per slot
+	private long[] keys;
+	private Transaction[] values;
+	private int mask;
+	private int size;
+
+	/**
+	 * Creates new index.
+	 *
+	 * @param expectedSize the expected number of active transactions.
+	 */
+	public TransactionIndex(int expectedSize) {
+		int capacity = MIN_CAPACITY;
+		while (capacity < expectedSize * 2)
+			capacity <<= 1;
+
+		allocate(capacity);
+	}
+
+	/**
+	 * Finds transaction.
+	 *
+	 * @param source the address of the call agent or null for local transactions.
+	 * @param id the transaction number.
+	 * @return the transaction or null if not found.
+	 */
+	public synchronized Transaction get(InetSocketAddress source, int id) {
+		byte[] address = address(source);
+		long high = high(address), low = low(address), meta = meta(address, source, id);
+
+		int slot = hash(high, low, meta) & mask;
+		while (values[slot] != null) {
+			if (matches(slot, high, low, meta))
+				return values[slot];
+
+			slot = (slot + 1) & mask;
+		}
+		return null;
+	}
+
+	/**
+	 * Associates transaction with key unless key is already used.
+	 *
+	 * @param source the address of the call agent or null for local transactions.
+	 * @param id the transaction number.
+	 * @param transaction the transaction.
+	 * @return the transaction already associated with key or null.
+	 */
+	public synchronized Transaction putIfAbsent(InetSocketAddress source, int id, Transaction transaction) {
+		byte[] address = address(source);
+		long high = high(address), low = low(address), meta = meta(address, source, id);
+
+		int slot = hash(high, low, meta) & mask;
+		while (values[slot] != null) {
+			if (matches(slot, high, low, meta))
+				return values[slot];
+
+			slot = (slot + 1) & mask;
+		}
+
+		int base = slot * 3;
+		keys[base] = high;
+		keys[base + 1] = low;
+		keys[base + 2] = meta;
+		values[slot] = transaction;
+
+		if (++size * 2 > values.length)
+			resize(values.length << 1);
+		return null;
+	}
+
+	/**
+	 * Removes transaction if it is still associated with key.
+	 *
+	 * @param source the address of the call agent or null for local transactions.
+	 * @param id the transaction number.
+	 * @param transaction the transaction.
+	 * @return true if transaction was removed.
+	 */
+	public synchronized boolean remove(InetSocketAddress source, int id, Transaction transaction) {
+		byte[] address = address(source);
+		long high = high(address), low = low(address), meta = meta(address, source, id);
+
+		int slot = hash(high, low, meta) & mask;
+		while (values[slot] != null) {
+			if (matches(slot, high, low, meta)) {
+				if (values[slot] != transaction)
+					return false;
+
+				delete(slot);
+				return true;
+			}
+
+			slot = (slot + 1) & mask;
+		}
+		return false;
+	}
+
+	/**
+	 * Gets the number of indexed transactions.
+	 *
+	 * @return the number of transactions.
+	 */
+	public synchronized int size() {
+		return size;
+	}
+
+	/**
+	 * Gets the number of slots.
+	 *
+	 * @return the current capacity.
+	 */
+	public synchronized int capacity() {
+		return values.length;
+	}
+
+	private void delete(int slot) {
+		values[slot] = null;
+		size--;
+
+		//shift back entries which probed over removed slot
+		int gap = slot;
+		int next = (slot + 1) & mask;
+		while (values[next] != null) {
+			int base = next * 3;
+			int home = hash(keys[base], keys[base + 1], keys[base + 2]) & mask;
+			if (((next - home) & mask) >= ((next - gap) & mask)) {
+				System.arraycopy(keys, base, keys, gap * 3, 3);
+				values[gap] = values[next];
+				values[next] = null;
+				gap = next;
+			}
+			next = (next + 1) & mask;
+		}
+
+		if (values.length > MIN_CAPACITY && size * 8 < values.length)
+			resize(values.length >> 1);
+	}
+
+	private void resize(int capacity) {
+		long[] oldKeys = keys;
+		Transaction[] oldValues = values;
+		allocate(capacity);
+
+		for (int i = 0; i < oldValues.length; i++) {
+			if (oldValues[i] == null)
+				continue;
+
+			int base = i * 3;
+			int slot = hash(oldKeys[base], oldKeys[base + 1], oldKeys[base + 2]) & mask;
+			while (values[slot] != null)
+				slot = (slot + 1) & mask;
+
+			System.arraycopy(oldKeys, base, keys, slot * 3, 3);
+			values[slot] = oldValues[i];
+		}
+	}
+
+	private void allocate(int capacity) {
+		keys = new long[capacity * 3];
+		values = new Transaction[capacity];
+		mask = capacity - 1;
+	}
+
+	private boolean matches(int slot, long high, long low, long meta) {
+		int base = slot * 3;
+		return keys[base + 2] == meta && keys[base + 1] == low && keys[base] == high;
+	}
+
+	private static byte[] address(InetSocketAddress source) {
+		return source == null ? null : source.getAddress().getAddress();
+	}
+
+	private static long high(byte[] address) {
+		if (address == null || address.length == 4)
+			return 0;
+		return bytes(address, 0);
+	}
+
+	private static long low(byte[] address) {
+		if (address == null)
+			return 0;
+		return address.length == 4 ? bytes(address, 0) : bytes(address, 8);
+	}
+
+	private static long meta(byte[] address, InetSocketAddress source, int id) {
+		long type = address == null ? NONE : address.length == 4 ? IPV4 : IPV6;
+		long port = source == null ? 0 : source.getPort();
+		return (type << 48) | (port << 32) | (id & 0xFFFFFFFFL);
+	}
+
+	private static long bytes(byte[] address, int offset) {
+		long value = 0;
+		int end = Math.min(address.length, offset + 8);
+		for (int i = offset; i < end; i++)
+			value = (value << 8) | (address[i] & 0xFF);
+		return value;
+	}
+
+	private static int hash(long high, long low, long meta) {
+		long h = high * 0x9E3779B97F4A7C15L;
+		h = (h ^ low) * 0x9E3779B97F4A7C15L;
+		h = (h ^ meta) * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32));
+	}
+}
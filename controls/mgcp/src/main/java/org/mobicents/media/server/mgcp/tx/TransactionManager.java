@@ -22,7 +22,11 @@
 
 package org.mobicents.media.server.mgcp.tx;
 
+import java.net.InetSocketAddress;
 import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import org.mobicents.media.server.concurrent.ConcurrentCyclicFIFO;
@@ -36,6 +40,12 @@ import org.mobicents.media.server.scheduler.Task;
 /**
  * Implements pool of transactions.
  * 
+ * Single manager is shared by all call agents, the pool keeps at most the
+ * initial number of idle transactions and one heartbeat returns terminated
+ * transactions to the pool. Calls of call agent which has no active calls
+ * and sent no commands for a while are dropped, so agents using ephemeral
+ * ports do not leak call managers.
+ * 
  * @author yulian oifa
  */
 public class TransactionManager {
@@ -44,6 +54,7 @@ public class TransactionManager {
     
     //pool of transaction objects
 	private ConcurrentCyclicFIFO<Transaction> pool = new ConcurrentCyclicFIFO<Transaction>();
+	private int poolSize;
     
     //cache size in 100ms units    
 	private static final int cacheSize = 5;
@@ -53,6 +64,9 @@ public class TransactionManager {
     //currently active transactions.
     private ConcurrentMap<Transaction> active;
     
+    //active transactions indexed by call agent and transaction number
+    private TransactionIndex numbers;
+    
     //scheduler instance
     private Scheduler scheduler;
 
@@ -65,6 +79,13 @@ public class TransactionManager {
     //call manager
     protected CallManager callManager;
     
+    //calls of each call agent, call identifiers are unique per call agent only
+    private ConcurrentHashMap<InetSocketAddress, CallAgent> callAgents = new ConcurrentHashMap<InetSocketAddress, CallAgent>();
+    
+    //time after which call agent without calls is dropped, in nanoseconds
+    private static final long CALL_AGENT_TIMEOUT = TimeUnit.SECONDS.toNanos(60);
+    private long callAgentTimeout = CALL_AGENT_TIMEOUT;
+    
     //cache heartbeat
     private Heartbeat cacheHeartbeat;
     
@@ -78,7 +99,9 @@ public class TransactionManager {
         this.scheduler = scheduler;
         
         active = new ConcurrentMap<Transaction>();
+        numbers = new TransactionIndex(size);
         
+        this.poolSize = size;
         for (int i = 0; i < size; i++) {
         	pool.offer(new Transaction(this));            
         }      
@@ -123,6 +146,64 @@ public class TransactionManager {
     public void setCallManager(CallManager callManager) {
         this.callManager = callManager;
     }
+    
+    /**
+     * Gets calls maintained for call agent.
+     * 
+     * @param source the address of call agent or null for local transactions.
+     * @return the call manager.
+     */
+    protected CallManager getCallManager(InetSocketAddress source) {
+    	if (source == null)
+    		return callManager;
+    	
+    	while (true) {
+    		CallAgent agent = callAgents.get(source);
+    		if (agent == null) {
+    			CallAgent newAgent = new CallAgent();
+    			agent = callAgents.putIfAbsent(source, newAgent);
+    			if (agent == null)
+    				agent = newAgent;
+    		}
+    		
+    		//agent may be dropped concurrently, retry with new one then
+    		if (agent.touch(getTime()))
+    			return agent.calls;
+    	}
+    }
+    
+    /**
+     * Drops call agents without calls which were idle longer than timeout.
+     */
+    private void dropIdleCallAgents() {
+    	long now = getTime();
+    	Iterator<Map.Entry<InetSocketAddress, CallAgent>> iterator = callAgents.entrySet().iterator();
+    	while (iterator.hasNext()) {
+    		Map.Entry<InetSocketAddress, CallAgent> entry = iterator.next();
+    		if (entry.getValue().drop(now, callAgentTimeout))
+    			callAgents.remove(entry.getKey(), entry.getValue());
+    	}
+    }
+    
+    /**
+     * Sets the time after which call agent without calls is dropped.
+     * Used for test purpose.
+     * 
+     * @param timeout the timeout in nanoseconds.
+     */
+    protected void setCallAgentTimeout(long timeout) {
+    	this.callAgentTimeout = timeout;
+    }
+    
+    /**
+     * Gets the number of call agents with maintained calls.
+     * Used for test purpose.
+     * 
+     * @return the number of call agents.
+     */
+    protected int callAgents() {
+    	return callAgents.size();
+    }
         
     /**
      * Assigns MGCP provider.
@@ -155,20 +236,47 @@ public class TransactionManager {
 	 * @author hrosa
 	 */
 	public Transaction findByTransactionNumber(int transactionNumber) {
-		Iterator<Transaction> transactions = this.active.valuesIterator();
-		while (transactions.hasNext()) {
-			Transaction transaction = transactions.next();
-			if (transaction.getId() == transactionNumber) {
-				return transaction;
-			}
-		}
-		return null;
+		return numbers.get(null, transactionNumber);
 	}
     
+    /**
+     * Finds a transaction started by call agent.
+     * 
+     * @param source the address of the call agent.
+     * @param transactionNumber the number of the transaction to look for
+     * @return the transaction or null if none matches criteria.
+     */
+    public Transaction findByTransactionNumber(InetSocketAddress source, int transactionNumber) {
+    	return numbers.get(source, transactionNumber);
+    }
+    
+    /**
+     * Starts new transaction with specified number.
+     * 
+     * @param id the transaction number.
+     * @return the new transaction or null if number is already in use.
+     */
     public Transaction allocateNew(int id) {
+    	return allocateNew(null, id);
+    }
+    
+    /**
+     * Starts new transaction for command received from call agent.
+     * 
+     * Terminated transactions keep their number till they are returned to
+     * the pool, so retransmitted commands are not executed twice.
+     * 
+     * @param source the address of the call agent.
+     * @param id the transaction number.
+     * @return the new transaction or null if number is already in use.
+     */
+    public Transaction allocateNew(InetSocketAddress source, int id) {
     	Transaction t=begin(ID.getAndIncrement());
-    	if(t!=null) {
-    		t.id=id;
+    	t.id=id;
+    	t.source=source;
+    	if(numbers.putIfAbsent(source, id, t)!=null) {
+    		release(t);
+    		return null;
     	}
     	return t;
     }
@@ -198,6 +306,18 @@ public class TransactionManager {
     	cache[cleanIndex].offer(t);
     }   
     
+    private void release(Transaction t) {
+    	active.remove(t.uniqueId);
+    	t.id = 0;
+    	t.uniqueId=0;
+    	t.source=null;
+    	t.completed=false;
+    	
+    	//keep pool bounded after bursts
+    	if(pool.size()<poolSize)
+    		pool.offer(t);
+    }
+    
     /**
      * Generates unique transaction identifier.
      * 
@@ -230,15 +350,17 @@ public class TransactionManager {
         	Transaction current=cache[queueToClean].poll();
             while(current!=null)
             {
-            	active.remove(current.uniqueId);
-            	current.id = 0;
-            	current.uniqueId=0;
-            	current.completed=false;
-            	pool.offer(current);
+            	numbers.remove(current.source, current.id, current);
+            	release(current);
             	current=cache[queueToClean].poll();
             }
             
             cleanIndex=(cleanIndex+1)%cacheSize;
+            
+            //once per cache cycle
+            if(cleanIndex==0)
+            	dropIdleCallAgents();
+            
             scheduler.submitHeatbeat(this);
             return 0;
         }
@@ -248,4 +370,41 @@ public class TransactionManager {
             return Scheduler.HEARTBEAT_QUEUE;
         }
     }
+    
+    /**
+     * Calls of single call agent with time of last command.
+     */
+    private static class CallAgent {
+    	private final CallManager calls = new CallManager();
+    	private long lastAccess;
+    	private boolean dropped;
+    	
+    	/**
+    	 * Marks agent as active.
+    	 * 
+    	 * @param now the current time.
+    	 * @return false if agent was already dropped.
+    	 */
+    	public synchronized boolean touch(long now) {
+    		if (dropped)
+    			return false;
+    		
+    		lastAccess = now;
+    		return true;
+    	}
+    	
+    	/**
+    	 * Marks agent as dropped if it has no calls and was idle long enough.
+    	 * 
+    	 * @param now the current time.
+    	 * @param timeout the idle timeout.
+    	 * @return true if agent was dropped.
+    	 */
+    	public synchronized boolean drop(long now, long timeout) {
+    		if (!dropped && now - lastAccess >= timeout && calls.isEmpty())
+    			dropped = true;
+    		
+    		return dropped;
+    	}
+    }
 }
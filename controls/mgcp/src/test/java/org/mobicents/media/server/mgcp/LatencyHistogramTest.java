@@ -0,0 +1,62 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.mobicents.media.server.mgcp;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void testPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        
+        // 90 samples of 100us, 10 samples of 5ms
+        for (int i = 0; i < 90; i++)
+            histogram.update(100000L);
+        for (int i = 0; i < 10; i++)
+            histogram.update(5000000L);
+        
+        assertEquals(100, histogram.getCount());
+        assertEquals(590, histogram.getAverage());
+        assertEquals(5000, histogram.getMax());
+        assertEquals(128, histogram.getPercentile(0.5));
+        assertEquals(128, histogram.getPercentile(0.9));
+        assertEquals(8192, histogram.getPercentile(0.99));
+        assertEquals(90, histogram.getBucket(7));
+        
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getPercentile(0.99));
+    }
+
+    @Test
+    public void testOverflow() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.update(10000000000L);
+        
+        assertEquals(1, histogram.getBucket(LatencyHistogram.BUCKETS - 1));
+        assertEquals(10000000, histogram.getPercentile(0.5));
+    }
+}
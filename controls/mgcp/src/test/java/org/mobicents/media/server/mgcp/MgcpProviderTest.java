@@ -42,6 +42,11 @@ import org.junit.Before;
 import org.junit.BeforeClass;
 import org.junit.Test;
 import org.mobicents.media.server.mgcp.message.Parameter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import static org.junit.Assert.*;
 
 /**
@@ -181,6 +186,72 @@ public class MgcpProviderTest {
         
     }
     
+    @Test
+    public void testEndpointOrdering() throws Exception {
+        provider3 = new MgcpProvider(udpInterface, 1035, scheduler);
+        provider4 = new MgcpProvider(udpInterface, 1037, scheduler);
+        provider4.setWorkersCount(3);
+        
+        provider3.activate();
+        provider4.activate();
+        
+        OrderTester orderTester = new OrderTester();
+        provider4.addListener(orderTester);
+        InetSocketAddress destination3 = new InetSocketAddress("127.0.0.1", 1037);
+        
+        for (int i = 1; i <= 200; i++) {
+            MgcpEvent evt = provider3.createEvent(MgcpEvent.REQUEST, destination3);
+            MgcpRequest req = (MgcpRequest) evt.getMessage();
+            
+            req.setCommand(new Text(i % 2 == 0 ? "MDCX" : "CRCX"));
+            req.setTxID(i);
+            req.setEndpoint(new Text("test/" + (i % 5) + "@127.0.0.1"));
+            req.setParameter(new Text("c"), new Text("abcd"));
+            
+            provider3.send(evt, destination3);
+            evt.recycle();
+        }
+        
+        Thread.sleep(500);
+        
+        // every endpoint observed its requests in sending order
+        assertEquals(5, orderTester.received.size());
+        for (List<Integer> txIDs : orderTester.received.values()) {
+            assertEquals(40, txIDs.size());
+            List<Integer> sorted = new ArrayList<Integer>(txIDs);
+            Collections.sort(sorted);
+            assertEquals(sorted, txIDs);
+        }
+        
+        assertEquals(100, provider4.getCommandLatency("CRCX").getCount());
+        assertEquals(100, provider4.getCommandLatency("mdcx").getCount());
+        assertEquals(0, provider4.getCommandLatency("DLCX").getCount());
+        assertNull(provider4.getCommandLatency("XXXX"));
+        
+        provider3.shutdown();
+        provider4.shutdown();
+    }
+    
+    private class OrderTester implements MgcpListener {
+        
+        private Map<String, List<Integer>> received = Collections.synchronizedMap(new HashMap<String, List<Integer>>());
+        
+        public void process(MgcpEvent event) {
+            try {
+                MgcpRequest req = (MgcpRequest) event.getMessage();
+                String endpoint = req.getEndpoint().toString();
+                List<Integer> txIDs = received.get(endpoint);
+                if (txIDs == null) {
+                    txIDs = Collections.synchronizedList(new ArrayList<Integer>());
+                    received.put(endpoint, txIDs);
+                }
+                txIDs.add(req.getTxID());
+            } finally {
+                event.recycle();
+            }
+        }
+    }
+    
     private class RequestTester implements MgcpListener {
 
         protected boolean success = false;
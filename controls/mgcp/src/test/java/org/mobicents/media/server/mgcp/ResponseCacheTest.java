@@ -0,0 +1,69 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.mobicents.media.server.mgcp;
+
+import java.net.InetSocketAddress;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class ResponseCacheTest {
+
+    private InetSocketAddress agent1 = new InetSocketAddress("127.0.0.1", 2727);
+    private InetSocketAddress agent2 = new InetSocketAddress("127.0.0.1", 2728);
+
+    @Test
+    public void testLookup() {
+        ResponseCache cache = new ResponseCache(6000);
+        byte[] data = "200 11 Successful Transaction\n".getBytes();
+
+        cache.put(agent1, 11, data, 0, data.length, 100000);
+        assertArrayEquals(data, cache.get(agent1, 11, 100500));
+        assertNull(cache.get(agent1, 12, 100500));
+        assertNull(cache.get(agent2, 11, 100500));
+
+        byte[] partial = cache.get(agent1, 11, 100500);
+        cache.put(agent2, 11, data, 4, 2, 100500);
+        assertEquals("11", new String(cache.get(agent2, 11, 100600)));
+        assertArrayEquals(partial, cache.get(agent1, 11, 100600));
+    }
+
+    @Test
+    public void testExpiration() {
+        ResponseCache cache = new ResponseCache(6000);
+        byte[] data = "200 11 Successful Transaction\n".getBytes();
+
+        cache.put(agent1, 11, data, 0, data.length, 100000);
+        cache.put(agent1, 12, data, 0, data.length, 103000);
+        assertEquals(2, cache.size());
+
+        //first response is older than history window
+        assertNull(cache.get(agent1, 11, 106500));
+        assertNotNull(cache.get(agent1, 12, 106500));
+        assertEquals(1, cache.size());
+
+        //long idle period expires everything
+        assertNull(cache.get(agent1, 12, 200000));
+        assertEquals(0, cache.size());
+    }
+}
@@ -22,6 +22,8 @@
 package org.mobicents.media.server.mgcp.controller.naming;
 
 import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import org.junit.After;
 import org.junit.AfterClass;
 import org.junit.Before;
@@ -31,6 +33,7 @@ import static org.junit.Assert.*;
 import org.mobicents.media.server.mgcp.controller.MgcpEndpoint;
 import org.mobicents.media.server.mgcp.controller.MyTestEndpoint;
 import org.mobicents.media.server.mgcp.controller.signal.MgcpPackage;
+import org.mobicents.media.server.spi.EndpointInstaller;
 import org.mobicents.media.server.utils.Text;
 
 /**
@@ -132,4 +135,61 @@ public class EndpointQueueTest {
         int n = queue.find(new Text("100"), res);
         assertEquals(0, n);
     }
+    
+    @Test
+    public void testFindByNumber() {
+        //registration order does not matter
+        EndpointQueue other = new EndpointQueue();
+        other.add(ac3);
+        other.add(ac1);
+        
+        assertEquals(1, other.find(new Text("1"), res));
+        assertEquals(ac1, res[0]);
+        assertEquals(1, other.find(new Text("3"), res));
+        assertEquals(ac3, res[0]);
+        assertEquals(0, other.find(new Text("2"), res));
+    }
+    
+    @Test
+    public void testBackgroundExpansion() throws InterruptedException {
+        final EndpointQueue other = new EndpointQueue();
+        final AtomicInteger created = new AtomicInteger();
+        other.setInstaller(new EndpointInstaller() {
+            public void install() {
+            }
+            
+            public void uninstall() {
+            }
+            
+            public boolean canExpand() {
+                return true;
+            }
+            
+            public void newEndpoint() {
+                String name = "mobicents/aap/" + created.incrementAndGet();
+                other.add(new MgcpEndpoint(new MyTestEndpoint(name), null, "localhost", 2727, new ArrayList<MgcpPackage>()));
+            }
+        });
+        
+        //empty pool is expanded in place
+        assertEquals(1, other.find(new Text("$"), res));
+        
+        //low water mark reached, batch is created in background
+        Thread.sleep(500);
+        assertEquals(1 + EndpointQueue.EXPANSION_BATCH, created.get());
+        assertEquals(EndpointQueue.EXPANSION_BATCH, other.getFreeCount());
+        
+        for (int i = 0; i < EndpointQueue.EXPANSION_BATCH - EndpointQueue.LOW_WATER_MARK; i++) {
+            assertEquals(1, other.find(new Text("$"), res));
+        }
+        assertEquals(1 + EndpointQueue.EXPANSION_BATCH, created.get());
+        
+        assertEquals(1, other.find(new Text("$"), res));
+        Thread.sleep(500);
+        assertEquals(1 + 2 * EndpointQueue.EXPANSION_BATCH, created.get());
+        
+        //endpoints are found by number
+        assertEquals(1, other.find(new Text("" + created.get()), res));
+        assertEquals("mobicents/aap/" + created.get(), res[0].getName());
+    }
 }
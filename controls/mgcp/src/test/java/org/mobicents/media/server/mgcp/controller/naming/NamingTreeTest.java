@@ -96,6 +96,18 @@ public class NamingTreeTest {
         assertEquals(1, n);
     }
     
+    @Test
+    public void testFindIgnoresCase() throws UnknownEndpointException {
+        int n = namingTree.find(new Text("Mobicents/AAP/2"), res);
+        assertEquals(1, n);
+        assertEquals(ac2, res[0]);
+    }
+    
+    @Test(expected = UnknownEndpointException.class)
+    public void testUnknownType() throws UnknownEndpointException {
+        namingTree.find(new Text("mobicents/ivr/$"), res);
+    }
+    
     @Test
     public void testFindDuration() throws UnknownEndpointException {
         long s = System.nanoTime();
@@ -68,4 +68,36 @@ public class OptionsTest {
         
         Options.recycle(options);
     }
+
+    /**
+     * Test of getRecordFormat method, of class Options.
+     */
+    @Test
+    public void testGetRecordFormat() {
+        Options options = Options.allocate(new Text("ri=file://test.wav x-rf=PCMU"));
+        assertEquals("pcmu", options.getRecordFormat().toString());
+        Options.recycle(options);
+        
+        options = Options.allocate(new Text("ri=file://test.wav x-rf=mp3"));
+        assertNull(options.getRecordFormat());
+        Options.recycle(options);
+        
+        options = Options.allocate(new Text("ri=file://test.wav"));
+        assertNull(options.getRecordFormat());
+        Options.recycle(options);
+    }
+
+    /**
+     * Test of isDropSilence method, of class Options.
+     */
+    @Test
+    public void testIsDropSilence() {
+        Options options = Options.allocate(new Text("ri=file://test.wav x-ds=true"));
+        assertTrue(options.isDropSilence());
+        Options.recycle(options);
+        
+        options = Options.allocate(new Text("ri=file://test.wav"));
+        assertFalse(options.isDropSilence());
+        Options.recycle(options);
+    }
 }
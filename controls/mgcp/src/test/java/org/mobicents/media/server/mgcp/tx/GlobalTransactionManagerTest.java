@@ -0,0 +1,149 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.mobicents.media.server.mgcp.tx;
+
+import java.net.InetSocketAddress;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.mobicents.media.server.scheduler.DefaultClock;
+import org.mobicents.media.server.scheduler.Scheduler;
+import static org.junit.Assert.*;
+
+public class GlobalTransactionManagerTest {
+
+    private Scheduler scheduler;
+    private GlobalTransactionManager txManager;
+
+    @Before
+    public void setUp() {
+        scheduler = new Scheduler();
+        scheduler.setClock(new DefaultClock());
+        scheduler.start();
+
+        txManager = new GlobalTransactionManager(scheduler);
+        txManager.setPoolSize(3);
+    }
+
+    @After
+    public void tearDown() {
+        scheduler.stop();
+    }
+
+    @Test
+    public void testSources() {
+        InetSocketAddress agent1 = new InetSocketAddress("127.0.0.1", 2727);
+        InetSocketAddress agent2 = new InetSocketAddress("127.0.0.2", 2727);
+
+        Transaction tx1 = txManager.allocateNew(agent1, 10);
+        Transaction tx2 = txManager.allocateNew(agent2, 10);
+        assertNotNull(tx1);
+        assertNotNull(tx2);
+        assertNull("Transaction allocated twice", txManager.allocateNew(agent1, 10));
+
+        assertEquals(tx1, txManager.find(agent1, tx1.uniqueId));
+        assertEquals(tx2, txManager.find(agent2, tx2.uniqueId));
+
+        //calls are kept per call agent
+        assertNotNull(tx1.getCall(5, true));
+        assertNull(tx2.getCall(5, false));
+        assertNotNull(tx2.getCall(5, true));
+        assertNotSame(tx1.getCall(5, false), tx2.getCall(5, false));
+    }
+
+    @Test
+    public void testSharedPool() {
+        TransactionManager manager = txManager.getTransactionManager();
+        for (int i = 0; i < 10; i++) {
+            InetSocketAddress agent = new InetSocketAddress("127.0.0.1", 2727 + i);
+            Transaction tx = txManager.allocateNew(agent, 1);
+            assertNotNull(tx);
+            manager.terminate(tx);
+        }
+        assertSame(manager, txManager.getTransactionManager());
+
+        try
+        {
+        	Thread.sleep(700);
+        }
+        catch(InterruptedException e)
+        {
+        	
+        }
+
+        //pool does not grow beyond initial size
+        assertEquals(3, manager.remainder());
+    }
+
+    @Test
+    public void testIdleCallAgents() throws InterruptedException {
+        TransactionManager manager = txManager.getTransactionManager();
+        manager.setCallAgentTimeout(0);
+
+        InetSocketAddress agent1 = new InetSocketAddress("127.0.0.1", 2727);
+        InetSocketAddress agent2 = new InetSocketAddress("127.0.0.1", 2728);
+
+        Transaction tx1 = txManager.allocateNew(agent1, 1);
+        Transaction tx2 = txManager.allocateNew(agent2, 1);
+        assertNotNull(tx1.getCall(5, true));
+        assertNull(tx2.getCall(5, false));
+        assertEquals(2, manager.callAgents());
+
+        Thread.sleep(700);
+
+        //agent without calls is dropped, agent with active call is kept
+        assertEquals(1, manager.callAgents());
+        assertNotNull(tx1.getCall(5, false));
+    }
+
+    private long usedMemory() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+            }
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    @Test
+    @Ignore
+    public void testFootprint() {
+        for (int sources : new int[] { 10, 100, 1000 }) {
+            long before = usedMemory();
+            GlobalTransactionManager manager = new GlobalTransactionManager(scheduler);
+            manager.setPoolSize(25);
+            for (int i = 0; i < sources; i++) {
+                InetSocketAddress agent = new InetSocketAddress("10." + (i / 250) + "." + (i % 250) + ".1", 2427 + i);
+                manager.allocateNew(agent, 1);
+            }
+            long after = usedMemory();
+            System.out.println(sources + " call agents: " + (after - before) / 1024 + " KB");
+            assertNotNull(manager.getTransactionManager());
+        }
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.mobicents.media.server.mgcp.tx;
+
+import java.net.InetSocketAddress;
+
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class TransactionIndexTest {
+
+    private TransactionIndex index;
+    private Transaction[] transactions = new Transaction[100];
+
+    @Before
+    public void setUp() {
+        index = new TransactionIndex(4);
+        TransactionManager txManager = new TransactionManager(null, 0);
+        for (int i = 0; i < transactions.length; i++) {
+            transactions[i] = new Transaction(txManager);
+        }
+    }
+
+    @Test
+    public void testKeys() {
+        InetSocketAddress agent1 = new InetSocketAddress("127.0.0.1", 2727);
+        InetSocketAddress agent2 = new InetSocketAddress("127.0.0.1", 2728);
+        InetSocketAddress agent3 = new InetSocketAddress("::1", 2727);
+
+        assertNull(index.putIfAbsent(agent1, 1, transactions[0]));
+        assertNull(index.putIfAbsent(agent2, 1, transactions[1]));
+        assertNull(index.putIfAbsent(agent3, 1, transactions[2]));
+        assertNull(index.putIfAbsent(null, 1, transactions[3]));
+        assertEquals(transactions[0], index.putIfAbsent(agent1, 1, transactions[4]));
+
+        assertEquals(transactions[0], index.get(new InetSocketAddress("127.0.0.1", 2727), 1));
+        assertEquals(transactions[1], index.get(agent2, 1));
+        assertEquals(transactions[2], index.get(agent3, 1));
+        assertEquals(transactions[3], index.get(null, 1));
+        assertNull(index.get(agent1, 2));
+        assertEquals(4, index.size());
+
+        assertFalse(index.remove(agent1, 1, transactions[4]));
+        assertTrue(index.remove(agent1, 1, transactions[0]));
+        assertNull(index.get(agent1, 1));
+        assertEquals(3, index.size());
+    }
+
+    @Test
+    public void testResize() {
+        InetSocketAddress agent = new InetSocketAddress("127.0.0.1", 2727);
+        for (int i = 0; i < transactions.length; i++) {
+            assertNull(index.putIfAbsent(agent, i, transactions[i]));
+        }
+        assertEquals(transactions.length, index.size());
+        assertTrue(index.capacity() >= transactions.length * 2);
+
+        //remove every other entry, others remain reachable after back shifts
+        for (int i = 0; i < transactions.length; i += 2) {
+            assertTrue(index.remove(agent, i, transactions[i]));
+        }
+        for (int i = 0; i < transactions.length; i++) {
+            assertEquals(i % 2 == 0 ? null : transactions[i], index.get(agent, i));
+        }
+
+        for (int i = 1; i < transactions.length; i += 2) {
+            assertTrue(index.remove(agent, i, transactions[i]));
+        }
+        assertEquals(0, index.size());
+        assertEquals(16, index.capacity());
+    }
+}
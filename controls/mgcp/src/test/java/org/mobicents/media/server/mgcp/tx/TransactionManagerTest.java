@@ -120,6 +120,32 @@ public class TransactionManagerTest {
         assertEquals(3, txManager.remainder());
     }
     
+    @Test
+    public void testRetransmission() {
+        Transaction tx = txManager.allocateNew(1);
+        assertTrue("Transaction not found", tx != null);
+        assertEquals(tx, txManager.findByTransactionNumber(1));
+        
+        assertNull("Transaction allocated twice", txManager.allocateNew(1));
+        assertEquals(2, txManager.remainder());
+        
+        txManager.terminate(tx);
+        assertNull("Terminated transaction reused", txManager.allocateNew(1));
+        
+        try
+        {
+        	Thread.sleep(700);
+        }
+        catch(InterruptedException e)
+        {
+        	
+        }
+        
+        assertNull(txManager.findByTransactionNumber(1));
+        tx = txManager.allocateNew(1);
+        assertTrue("Transaction not found", tx != null);
+    }
+    
     public void testTransaction(int id) throws InterruptedException {
     	try
     	{    		
@@ -32,9 +32,11 @@ import org.mobicents.media.core.connections.LocalConnectionImpl;
 import org.mobicents.media.core.connections.RtpConnectionImpl;
 import org.mobicents.media.server.concurrent.ConcurrentCyclicFIFO;
 import org.mobicents.media.server.impl.resource.audio.AudioRecorderImpl;
+import org.mobicents.media.server.impl.resource.audio.RecordingWriter;
 import org.mobicents.media.server.impl.resource.dtmf.DetectorImpl;
 import org.mobicents.media.server.impl.resource.dtmf.GeneratorImpl;
 import org.mobicents.media.server.impl.resource.mediaplayer.audio.AudioPlayerImpl;
+import org.mobicents.media.server.impl.resource.mediaplayer.audio.PromptCache;
 import org.mobicents.media.server.impl.resource.phone.PhoneSignalDetector;
 import org.mobicents.media.server.impl.resource.phone.PhoneSignalGenerator;
 import org.mobicents.media.server.impl.rtp.ChannelsManager;
@@ -72,6 +74,13 @@ public class ResourcesPool implements ComponentFactory {
 	private int defaultSignalGenerators;
 
 	private int dtmfDetectorDbi;
+
+	// size of prompt cache in megabytes, 0 disables the cache
+	private int promptCacheSize;
+	private PromptCache promptCache;
+
+	// memory of each recorder for data waiting for I/O in kilobytes
+	private int recorderBufferSize;
 	
 	private AtomicInteger playersCount;
 	private AtomicInteger recordersCount;
@@ -107,6 +116,7 @@ public class ResourcesPool implements ComponentFactory {
 		this.remoteConnections = new ConcurrentCyclicFIFO<Connection>();
 		
 		this.dtmfDetectorDbi = -35;
+		this.recorderBufferSize = RecordingWriter.DEFAULT_MAX_BUFFER_SIZE / 1024;
 		
 		this.connectionId = new AtomicInteger(1);
 		
@@ -161,10 +171,34 @@ public class ResourcesPool implements ComponentFactory {
 		this.dtmfDetectorDbi = value;
 	}
 
+	public void setPromptCacheSize(int value) {
+		this.promptCacheSize = value;
+	}
+
+	public PromptCache getPromptCache() {
+		return promptCache;
+	}
+
+	public void setRecorderBufferSize(int value) {
+		this.recorderBufferSize = value;
+	}
+
+	private AudioRecorderImpl createRecorder() {
+		AudioRecorderImpl recorder = new AudioRecorderImpl(this.scheduler);
+		recorder.setMaxBufferSize(this.recorderBufferSize * 1024);
+		return recorder;
+	}
+
 	public void start() {
+		// Setup prompt cache shared by players
+		if (this.promptCacheSize > 0) {
+			this.promptCache = new PromptCache(this.promptCacheSize * 1024L * 1024L);
+		}
+
 		// Setup audio players
 		for (int i = 0; i < this.defaultPlayers; i++) {
 			AudioPlayerImpl player = new AudioPlayerImpl("player", this.scheduler);
+			player.setPromptCache(this.promptCache);
 			try {
 				player.setDsp(dspFactory.newProcessor());
 			} catch (Exception e) {
@@ -176,7 +210,7 @@ public class ResourcesPool implements ComponentFactory {
 
 		// Setup recorders
 		for (int i = 0; i < this.defaultRecorders; i++) {
-			this.recorders.offer(new AudioRecorderImpl(this.scheduler));
+			this.recorders.offer(createRecorder());
 		}
 		recordersCount.set(this.defaultRecorders);
 
@@ -258,6 +292,7 @@ public class ResourcesPool implements ComponentFactory {
 			result = this.players.poll();
 			if (result == null) {
 				result = new AudioPlayerImpl("player", this.scheduler);
+				((AudioPlayerImpl) result).setPromptCache(this.promptCache);
 				try {
 					((AudioPlayerImpl) result).setDsp(this.dspFactory.newProcessor());
 				} catch (Exception ex) {
@@ -274,7 +309,7 @@ public class ResourcesPool implements ComponentFactory {
 		case RECORDER:
 			result = this.recorders.poll();
 			if (result == null) {
-				result = new AudioRecorderImpl(this.scheduler);
+				result = createRecorder();
 				this.recordersCount.incrementAndGet();
 			}
 
@@ -30,6 +30,7 @@ import org.apache.log4j.Logger;
 import org.mobicents.media.core.endpoints.BaseEndpointImpl;
 import org.mobicents.media.core.endpoints.VirtualEndpointInstaller;
 import org.mobicents.media.core.naming.NamingService;
+import org.mobicents.media.server.impl.srtp.DtlsHandshakeExecutor;
 import org.mobicents.media.server.io.network.UdpManager;
 import org.mobicents.media.server.scheduler.Clock;
 import org.mobicents.media.server.scheduler.Scheduler;
@@ -300,11 +301,25 @@ public class Server implements MediaServer {
         	ttl--;
             if (ttl == 0) {
             	logger.info("Global hearbeat is still alive");
+            	logDtlsStatistics();
             	restart();
             } else {
                 scheduler.submitHeatbeat(this);
             }            
             return 0;
         }
+
+        private void logDtlsStatistics() {
+        	DtlsHandshakeExecutor dtls = DtlsHandshakeExecutor.getInstance();
+        	if (dtls.getCompletedHandshakes() == 0 && dtls.getRejectedHandshakes() == 0) {
+        		return;
+        	}
+
+        	logger.info("DTLS handshakes: active=" + dtls.getActiveHandshakes() + ", queued=" + dtls.getQueueDepth()
+        			+ ", completed=" + dtls.getCompletedHandshakes() + ", rejected=" + dtls.getRejectedHandshakes()
+        			+ ", cancelled=" + dtls.getCancelledHandshakes() + ", duration avg/max=" + dtls.getAverageDuration()
+        			+ "/" + dtls.getWorstDuration() + "ms, wait avg/max=" + dtls.getAverageWait() + "/"
+        			+ dtls.getWorstWait() + "ms");
+        }
     }
 }
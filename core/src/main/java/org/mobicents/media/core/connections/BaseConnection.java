@@ -100,6 +100,18 @@ public abstract class BaseConnection implements Connection {
 
 	public abstract OOBComponent getOOBComponent();
 
+	/**
+	 * Assigns the key used by sharded schedulers to select the executing core
+	 * to all tasks of the connection, should be the key of the endpoint which
+	 * owns the connection.
+	 * 
+	 * @param affinity
+	 *            the non negative key value.
+	 */
+	public void setAffinity(int affinity) {
+		heartBeat.setAffinity(affinity);
+	}
+
 	@Override
 	public int getId() {
 		return id;
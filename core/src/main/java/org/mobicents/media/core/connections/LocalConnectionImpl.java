@@ -68,6 +68,13 @@ public class LocalConnectionImpl extends BaseConnection {
     	return this.localAudioChannel.getOOBComponent();
     }
     
+    @Override
+    public void setAffinity(int affinity)
+    {
+    	super.setAffinity(affinity);
+    	this.localAudioChannel.setAffinity(affinity);
+    }
+    
     public void generateOffer() throws IOException {
     	throw new UnsupportedOperationException("Not supported yet!");
     }
@@ -61,6 +61,9 @@ public class RtpConnectionImpl extends BaseConnection implements RtpListener {
 	private static final Logger logger = Logger
 			.getLogger(RtpConnectionImpl.class);
 
+	// Initial size of generated SDP, large enough for a WebRTC answer
+	private static final int SDP_CAPACITY = 2048;
+
 	// Core elements
 	private final ChannelsManager channelsManager;
 
@@ -73,7 +76,7 @@ public class RtpConnectionImpl extends BaseConnection implements RtpListener {
 	private AudioChannel audioChannel;
 
 	// Session Description
-	private SessionDescription localSdp;
+	private String localSdp;
 	private SessionDescription remoteSdp;
 
 	// Listeners
@@ -140,6 +143,12 @@ public class RtpConnectionImpl extends BaseConnection implements RtpListener {
 		return this.audioChannel.getAudioOobComponent();
 	}
 
+	@Override
+	public void setAffinity(int affinity) {
+		super.setAffinity(affinity);
+		this.audioChannel.setAffinity(affinity);
+	}
+
 	@Override
 	public boolean getIsLocal() {
 		return this.local;
@@ -158,8 +167,8 @@ public class RtpConnectionImpl extends BaseConnection implements RtpListener {
 	@Override
 	public void setOtherParty(byte[] descriptor) throws IOException {
 		try {
-			this.remoteSdp = SessionDescriptionParser.parse(new String(
-					descriptor));
+			this.remoteSdp = SessionDescriptionParser.parse(descriptor, 0,
+					descriptor.length);
 			setOtherParty();
 		} catch (SdpException e) {
 			throw new IOException(e);
@@ -168,7 +177,12 @@ public class RtpConnectionImpl extends BaseConnection implements RtpListener {
 
 	@Override
 	public void setOtherParty(Text descriptor) throws IOException {
-		setOtherParty(descriptor.toString().getBytes());
+		try {
+			this.remoteSdp = SessionDescriptionParser.parse(descriptor);
+			setOtherParty();
+		} catch (SdpException e) {
+			throw new IOException(e);
+		}
 	}
 
 	/**
@@ -239,26 +253,28 @@ public class RtpConnectionImpl extends BaseConnection implements RtpListener {
 				.getLocalBindAddress() : this.channelsManager.getBindAddress();
 		String externalAddress = this.channelsManager.getUdpManager()
 				.getExternalAddress();
+		StringBuilder answer = new StringBuilder(SDP_CAPACITY);
 		if (this.audioChannel.isOpen()) {
-			this.localSdp = SdpFactory.buildSdp(bindAddress, externalAddress,
+			SdpFactory.writeSdp(answer, bindAddress, externalAddress,
 					this.audioChannel);
 		} else {
 			// In case remote peer did not offer audio channel
-			this.localSdp = SdpFactory.buildSdp(bindAddress, externalAddress);
+			SdpFactory.writeSdp(answer, bindAddress, externalAddress);
 		}
 
 		// Reject any channels other than audio
 		MediaDescriptionField remoteVideo = this.remoteSdp
 				.getMediaDescription("video");
 		if (remoteVideo != null) {
-			SdpFactory.rejectMediaField(this.localSdp, remoteVideo);
+			SdpFactory.writeRejectedMedia(answer, remoteVideo);
 		}
 
 		MediaDescriptionField remoteApplication = this.remoteSdp
 				.getMediaDescription("application");
 		if (remoteApplication != null) {
-			SdpFactory.rejectMediaField(this.localSdp, remoteApplication);
+			SdpFactory.writeRejectedMedia(answer, remoteApplication);
 		}
+		this.localSdp = answer.toString();
 
 		// Change the state of this RTP connection from HALF_OPEN to OPEN
 		try {
@@ -417,7 +433,7 @@ public class RtpConnectionImpl extends BaseConnection implements RtpListener {
 
 	@Override
 	public String getDescriptor() {
-		return (this.localSdp == null) ? "" : this.localSdp.toString();
+		return (this.localSdp == null) ? "" : this.localSdp;
 	}
 
 	@Override
@@ -437,15 +453,17 @@ public class RtpConnectionImpl extends BaseConnection implements RtpListener {
 					.getBindAddress();
 			String externalAddress = this.channelsManager.getUdpManager()
 					.getExternalAddress();
-			this.localSdp = SdpFactory.buildSdp(bindAddress, externalAddress,
+			StringBuilder offer = new StringBuilder(SDP_CAPACITY);
+			SdpFactory.writeSdp(offer, bindAddress, externalAddress,
 					this.audioChannel);
+			this.localSdp = offer.toString();
 			this.remoteSdp = null;
 		}
 	}
 
 	@Override
 	public String getLocalDescriptor() {
-		return (this.localSdp == null) ? "" : this.localSdp.toString();
+		return (this.localSdp == null) ? "" : this.localSdp;
 	}
 
 	@Override
@@ -77,6 +77,16 @@ public abstract class BaseEndpointImpl implements Endpoint {
 		return localName;
 	}
 
+	/**
+	 * Gets the key used by sharded schedulers to run all tasks of this
+	 * endpoint on the same core.
+	 * 
+	 * @return the non negative key derived from the local name.
+	 */
+	public int getAffinity() {
+		return localName.hashCode() & Integer.MAX_VALUE;
+	}
+
 	@Override
 	public void setScheduler(Scheduler scheduler) {
 		this.scheduler = scheduler;
@@ -168,6 +178,7 @@ public abstract class BaseEndpointImpl implements Endpoint {
 		}
 
 		connection.setEndpoint(this);
+		((BaseConnection) connection).setAffinity(getAffinity());
 		connections.put(connection.getId(), connection);
 		return connection;
 	}
@@ -47,15 +47,45 @@ public class BaseMixerEndpointImpl extends BaseEndpointImpl {
 	private AtomicInteger readCount = new AtomicInteger(0);
 	private AtomicInteger writeCount = new AtomicInteger(0);
 
+	private int maxSpeakers = 0;
+
 	public BaseMixerEndpointImpl(String localName) {
 		super(localName);
 	}
 
+	/**
+	 * Gets the max number of speakers mixed together.
+	 * 
+	 * @return the number of speakers, 0 if not limited.
+	 */
+	public int getMaxSpeakers() {
+		return maxSpeakers;
+	}
+
+	/**
+	 * Limits the number of loudest speakers mixed together.
+	 * 
+	 * @param maxSpeakers
+	 *            the number of speakers, 0 to mix everyone.
+	 */
+	public void setMaxSpeakers(int maxSpeakers) {
+		if (maxSpeakers < 0) {
+			throw new IllegalArgumentException("Max speakers can not be negative");
+		}
+		this.maxSpeakers = maxSpeakers;
+		if (audioMixer != null) {
+			audioMixer.setMaxSpeakers(maxSpeakers);
+		}
+	}
+
 	@Override
 	public void start() throws ResourceUnavailableException {
 		super.start();
 		audioMixer = new AudioMixer(getScheduler());
 		oobMixer = new OOBMixer(getScheduler());
+		audioMixer.setAffinity(getAffinity());
+		audioMixer.setMaxSpeakers(maxSpeakers);
+		oobMixer.setAffinity(getAffinity());
 	}
 
 	@Override
@@ -56,6 +56,8 @@ public class BaseSplitterEndpointImpl extends BaseEndpointImpl {
 		super.start();
 		audioSplitter = new AudioSplitter(getScheduler());
 		oobSplitter = new OOBSplitter(getScheduler());
+		audioSplitter.setAffinity(getAffinity());
+		oobSplitter.setAffinity(getAffinity());
 	}
 
 	@Override
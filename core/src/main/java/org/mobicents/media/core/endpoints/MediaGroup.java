@@ -30,6 +30,7 @@ import org.mobicents.media.server.spi.Endpoint;
 import org.mobicents.media.server.component.audio.AudioComponent;
 import org.mobicents.media.server.component.oob.OOBComponent;
 import org.mobicents.media.core.ResourcesPool;
+import org.mobicents.media.server.impl.BaseComponent;
 
 import org.mobicents.media.server.impl.resource.dtmf.DetectorImpl;
 import org.mobicents.media.server.impl.resource.dtmf.GeneratorImpl;
@@ -60,6 +61,7 @@ public class MediaGroup {
 	private OOBComponent oobComponent;
 	
 	private Endpoint endpoint;
+	private int affinity;
 	
 	private int readComponents=0,writeComponents=0;
 	private int readDtmfComponents=0,writeDtmfComponents=0;
@@ -72,6 +74,8 @@ public class MediaGroup {
 		this.audioComponent=new AudioComponent(0);
 		this.oobComponent=new OOBComponent(0);
 		this.endpoint=endpoint;
+		if(endpoint instanceof BaseEndpointImpl)
+			this.affinity=((BaseEndpointImpl)endpoint).getAffinity();
 	} 
 	
 	public AudioComponent getAudioComponent()
@@ -102,6 +106,7 @@ public class MediaGroup {
 			{
 				this.player=resourcesPool.newAudioComponent(ComponentType.PLAYER);
 				this.player.setEndpoint(endpoint);
+				((BaseComponent) this.player).setAffinity(affinity);
 				audioComponent.addInput(((AudioPlayerImpl)this.player).getAudioInput());
 				readComponents++;
 				audioComponent.updateMode(true,writeComponents!=0);
@@ -171,6 +176,7 @@ public class MediaGroup {
 			{
 				this.recorder=resourcesPool.newAudioComponent(ComponentType.RECORDER);
 				this.recorder.setEndpoint(endpoint);
+				((BaseComponent) this.recorder).setAffinity(affinity);
 				audioComponent.addOutput(((AudioRecorderImpl)this.recorder).getAudioOutput());
 				oobComponent.addOutput(((AudioRecorderImpl)this.recorder).getOOBOutput());
 				writeComponents++;
@@ -245,6 +251,7 @@ public class MediaGroup {
 			{
 				this.dtmfDetector=resourcesPool.newAudioComponent(ComponentType.DTMF_DETECTOR);
 				this.dtmfDetector.setEndpoint(endpoint);
+				((BaseComponent) this.dtmfDetector).setAffinity(affinity);
 				audioComponent.addOutput(((DetectorImpl)this.dtmfDetector).getAudioOutput());
 				oobComponent.addOutput(((DetectorImpl)this.dtmfDetector).getOOBOutput());
 				writeComponents++;
@@ -320,6 +327,7 @@ public class MediaGroup {
 			{
 				this.dtmfGenerator=resourcesPool.newAudioComponent(ComponentType.DTMF_GENERATOR);
 				this.dtmfGenerator.setEndpoint(endpoint);
+				((BaseComponent) this.dtmfGenerator).setAffinity(affinity);
 				audioComponent.addInput(((GeneratorImpl)this.dtmfGenerator).getAudioInput());
 				oobComponent.addInput(((GeneratorImpl)this.dtmfGenerator).getOOBInput());
 				readComponents++;
@@ -393,6 +401,7 @@ public class MediaGroup {
 			{
 				this.signalDetector=resourcesPool.newAudioComponent(ComponentType.SIGNAL_DETECTOR);
 				this.signalDetector.setEndpoint(endpoint);
+				((BaseComponent) this.signalDetector).setAffinity(affinity);
 				audioComponent.addOutput(((PhoneSignalDetector)this.signalDetector).getAudioOutput());
 				writeComponents++;
 				audioComponent.updateMode(readComponents!=0,true);
@@ -462,6 +471,7 @@ public class MediaGroup {
 			{
 				this.signalGenerator=resourcesPool.newAudioComponent(ComponentType.SIGNAL_GENERATOR);
 				this.signalGenerator.setEndpoint(endpoint);
+				((BaseComponent) this.signalGenerator).setAffinity(affinity);
 				audioComponent.addInput(((PhoneSignalGenerator)this.signalGenerator).getAudioInput());
 				readComponents++;
 				audioComponent.updateMode(true,writeComponents!=0);
@@ -43,6 +43,7 @@ public class VirtualEndpointInstaller implements EndpointInstaller {
 	private String namePattern;
 	private String endpointClass;
 	protected Integer initialSize;
+	protected Integer maxSpeakers = 0;
 
 	protected EndpointNameGenerator nameParser;
 	protected Server server;
@@ -123,6 +124,26 @@ public class VirtualEndpointInstaller implements EndpointInstaller {
 		this.initialSize = initialSize;
 	}
 
+	/**
+	 * Gets the max number of speakers mixed by mixer endpoints
+	 * 
+	 * @return the number of speakers, 0 if not limited
+	 */
+	public Integer getMaxSpeakers() {
+		return this.maxSpeakers;
+	}
+
+	/**
+	 * Sets the max number of speakers mixed by mixer endpoints. Ignored by
+	 * other endpoints.
+	 * 
+	 * @param maxSpeakers
+	 *            the number of speakers, 0 to mix everyone
+	 */
+	public void setMaxSpeakers(Integer maxSpeakers) {
+		this.maxSpeakers = maxSpeakers;
+	}
+
 	@Override
 	public void install() {
 		ClassLoader loader = Server.class.getClassLoader();
@@ -138,6 +159,9 @@ public class VirtualEndpointInstaller implements EndpointInstaller {
 		try {
 			Constructor constructor = loader.loadClass(this.endpointClass).getConstructor(String.class);
 			Endpoint endpoint = (Endpoint) constructor.newInstance(namePattern + lastEndpointID.getAndIncrement());
+			if (endpoint instanceof BaseMixerEndpointImpl) {
+				((BaseMixerEndpointImpl) endpoint).setMaxSpeakers(maxSpeakers);
+			}
 			server.install(endpoint, this);
 		} catch (Exception e) {
 			server.logger.error("Couldn't instantiate endpoint", e);
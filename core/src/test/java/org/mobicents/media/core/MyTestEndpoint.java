@@ -73,17 +73,21 @@ public class MyTestEndpoint extends BaseMixerEndpointImpl {
 		sine.setFrequency(f);
 		sine.setAmplitude((short) (Short.MAX_VALUE / 3));
 		analyzer = new SpectraAnalyzer("analyzer", this.getScheduler());
+		sine.setAffinity(getAffinity());
+		analyzer.setAffinity(getAffinity());
 
 		audioComponent.addInput(sine.getAudioInput());
 		audioComponent.addOutput(analyzer.getAudioOutput());
 		this.dtmfDetector = resourcesPool.newAudioComponent(ComponentType.DTMF_DETECTOR);
 		this.dtmfDetector.setEndpoint(this);
+		((DetectorImpl) this.dtmfDetector).setAffinity(getAffinity());
 
 		audioComponent.addOutput(((DetectorImpl) this.dtmfDetector).getAudioOutput());
 		oobComponent.addOutput(((DetectorImpl) this.dtmfDetector).getOOBOutput());
 
 		this.dtmfGenerator = resourcesPool.newAudioComponent(ComponentType.DTMF_GENERATOR);
 		this.dtmfGenerator.setEndpoint(this);
+		((GeneratorImpl) this.dtmfGenerator).setAffinity(getAffinity());
 
 		audioComponent.addInput(((GeneratorImpl) this.dtmfGenerator).getAudioInput());
 		oobComponent.addInput(((GeneratorImpl) this.dtmfGenerator).getOOBInput());
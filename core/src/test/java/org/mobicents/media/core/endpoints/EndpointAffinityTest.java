@@ -0,0 +1,189 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.mobicents.media.core.endpoints;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mobicents.media.Component;
+import org.mobicents.media.ComponentType;
+import org.mobicents.media.core.MyTestEndpoint;
+import org.mobicents.media.core.ResourcesPool;
+import org.mobicents.media.server.component.DspFactoryImpl;
+import org.mobicents.media.server.impl.rtp.ChannelsManager;
+import org.mobicents.media.server.io.network.UdpManager;
+import org.mobicents.media.server.scheduler.Clock;
+import org.mobicents.media.server.scheduler.DefaultClock;
+import org.mobicents.media.server.scheduler.Scheduler;
+import org.mobicents.media.server.scheduler.ShardedScheduler;
+import org.mobicents.media.server.scheduler.Task;
+import org.mobicents.media.server.spi.Connection;
+import org.mobicents.media.server.spi.ConnectionMode;
+import org.mobicents.media.server.spi.ConnectionType;
+import org.mobicents.media.server.spi.MediaType;
+import org.mobicents.media.server.spi.ResourceUnavailableException;
+import org.mobicents.media.server.spi.TooManyConnectionsException;
+import org.mobicents.media.server.utils.Text;
+
+/**
+ * Checks that all media tasks of endpoint carry the endpoint affinity, so
+ * sharded scheduler queues them to the same shard.
+ */
+public class EndpointAffinityTest {
+
+	private static final int SHARDS = 4;
+
+	private Clock clock;
+	private RecordingScheduler scheduler;
+	private UdpManager udpManager;
+	private ChannelsManager channelsManager;
+	private DspFactoryImpl dspFactory = new DspFactoryImpl();
+	private ResourcesPool resourcesPool;
+
+	private MyTestEndpoint endpoint1;
+	private MyTestEndpoint endpoint2;
+
+	@Before
+	public void setUp() throws ResourceUnavailableException, TooManyConnectionsException, IOException {
+		clock = new DefaultClock();
+
+		dspFactory.addCodec("org.mobicents.media.server.impl.dsp.audio.g711.alaw.Encoder");
+		dspFactory.addCodec("org.mobicents.media.server.impl.dsp.audio.g711.alaw.Decoder");
+
+		scheduler = new RecordingScheduler(SHARDS);
+		scheduler.setClock(clock);
+		scheduler.start();
+
+		udpManager = new UdpManager(scheduler);
+		udpManager.setBindAddress("127.0.0.1");
+		udpManager.start();
+
+		channelsManager = new ChannelsManager(udpManager);
+		channelsManager.setScheduler(scheduler);
+
+		resourcesPool = new ResourcesPool(scheduler, channelsManager, dspFactory);
+
+		endpoint1 = new MyTestEndpoint("test-affinity-1");
+		endpoint1.setScheduler(scheduler);
+		endpoint1.setResourcesPool(resourcesPool);
+		endpoint1.setFreq(400);
+		endpoint1.start();
+
+		endpoint2 = new MyTestEndpoint("test-affinity-2");
+		endpoint2.setScheduler(scheduler);
+		endpoint2.setResourcesPool(resourcesPool);
+		endpoint2.setFreq(200);
+		endpoint2.start();
+	}
+
+	@After
+	public void tearDown() {
+		if (endpoint1 != null) {
+			endpoint1.stop();
+		}
+
+		if (endpoint2 != null) {
+			endpoint2.stop();
+		}
+
+		udpManager.stop();
+		scheduler.stop();
+	}
+
+	@Test
+	public void testSameShard() throws Exception {
+		Component sine1 = endpoint1.getResource(MediaType.AUDIO, ComponentType.SINE);
+		Component sine2 = endpoint2.getResource(MediaType.AUDIO, ComponentType.SINE);
+		Component analyzer1 = endpoint1.getResource(MediaType.AUDIO, ComponentType.SPECTRA_ANALYZER);
+		Component analyzer2 = endpoint2.getResource(MediaType.AUDIO, ComponentType.SPECTRA_ANALYZER);
+		Component detector1 = endpoint1.mediaGroup.getDtmfDetector();
+
+		sine1.activate();
+		sine2.activate();
+		analyzer1.activate();
+		analyzer2.activate();
+		detector1.activate();
+
+		Connection connection1 = endpoint1.createConnection(ConnectionType.RTP, false);
+		Connection connection2 = endpoint2.createConnection(ConnectionType.RTP, false);
+
+		connection1.generateOffer();
+		connection2.setOtherParty(new Text(connection1.getLocalDescriptor()));
+		connection1.setOtherParty(new Text(connection2.getLocalDescriptor()));
+
+		connection1.setMode(ConnectionMode.SEND_RECV);
+		connection2.setMode(ConnectionMode.SEND_RECV);
+
+		Thread.sleep(1000);
+
+		sine1.deactivate();
+		sine2.deactivate();
+		analyzer1.deactivate();
+		analyzer2.deactivate();
+		detector1.deactivate();
+
+		assertFalse(scheduler.affinities.isEmpty());
+		for (Integer affinity : scheduler.affinities) {
+			assertTrue("Unexpected task affinity " + affinity,
+					affinity == endpoint1.getAffinity() || affinity == endpoint2.getAffinity());
+		}
+
+		// both endpoints had media tasks
+		assertEquals(2, scheduler.affinities.size());
+	}
+
+	/**
+	 * Sharded scheduler which remembers the affinity of each media task.
+	 */
+	private class RecordingScheduler extends ShardedScheduler {
+		private Set<Integer> affinities = Collections.newSetFromMap(new ConcurrentHashMap<Integer, Boolean>());
+
+		public RecordingScheduler(int shardsCount) {
+			super(shardsCount);
+		}
+
+		@Override
+		public void submit(Task task, Integer index) {
+			// network tasks are not owned by endpoints
+			if (index >= Scheduler.INPUT_QUEUE)
+				affinities.add(task.getAffinity());
+
+			super.submit(task, index);
+		}
+
+		@Override
+		public void submitHeatbeat(Task task) {
+			affinities.add(task.getAffinity());
+			super.submitHeatbeat(task);
+		}
+	}
+}
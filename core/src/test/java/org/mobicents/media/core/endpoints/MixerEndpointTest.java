@@ -0,0 +1,86 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.mobicents.media.core.endpoints;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mobicents.media.core.ResourcesPool;
+import org.mobicents.media.core.endpoints.impl.ConferenceEndpoint;
+import org.mobicents.media.server.component.DspFactoryImpl;
+import org.mobicents.media.server.scheduler.DefaultClock;
+import org.mobicents.media.server.scheduler.Scheduler;
+import org.mobicents.media.server.spi.ResourceUnavailableException;
+
+/**
+ * Checks that mixer endpoints pass the configured number of speakers to the
+ * audio mixer.
+ */
+public class MixerEndpointTest {
+
+	private Scheduler scheduler;
+	private ResourcesPool resourcesPool;
+	private ConferenceEndpoint endpoint;
+
+	@Before
+	public void setUp() {
+		scheduler = new Scheduler();
+		scheduler.setClock(new DefaultClock());
+		resourcesPool = new ResourcesPool(scheduler, null, new DspFactoryImpl());
+
+		endpoint = new ConferenceEndpoint("test-cnf");
+		endpoint.setScheduler(scheduler);
+		endpoint.setResourcesPool(resourcesPool);
+	}
+
+	@After
+	public void tearDown() {
+		endpoint.stop();
+	}
+
+	@Test
+	public void testDefaultMaxSpeakers() throws ResourceUnavailableException {
+		endpoint.start();
+		assertEquals(0, endpoint.getMaxSpeakers());
+		assertEquals(0, endpoint.audioMixer.getMaxSpeakers());
+	}
+
+	@Test
+	public void testMaxSpeakers() throws ResourceUnavailableException {
+		endpoint.setMaxSpeakers(3);
+		endpoint.start();
+		assertEquals(3, endpoint.audioMixer.getMaxSpeakers());
+
+		// reconfiguring a started endpoint updates its mixer
+		endpoint.setMaxSpeakers(2);
+		assertEquals(2, endpoint.audioMixer.getMaxSpeakers());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNegativeMaxSpeakers() {
+		endpoint.setMaxSpeakers(-1);
+	}
+
+}
@@ -32,10 +32,13 @@ import java.nio.channels.spi.SelectorProvider;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.log4j.Logger;
 import org.mobicents.media.server.io.network.channel.Channel;
+import org.mobicents.media.server.io.network.channel.MultiplexedChannel;
 import org.mobicents.media.server.scheduler.Scheduler;
 import org.mobicents.media.server.scheduler.Task;
 
@@ -44,6 +47,18 @@ import org.mobicents.media.server.scheduler.Task;
  * 
  * Important! Any CPU-bound action here are illegal!
  * 
+ * In batched mode each poll drains readable channels up to the batch size and
+ * flushes pending data of all channels of the selector after receive phase.
+ * Counters of packets, system calls and poll duration are kept per selector.
+ * 
+ * Optionally channels may be served by dedicated reactor threads instead of
+ * selectors polled by scheduler. Reactor thread blocks in select, reads
+ * available datagrams and hands channel to the scheduler thread which owns
+ * the endpoint of the channel. Sharded scheduler handles queued datagrams as
+ * soon as the shard completes current stage, so receive latency is not tied
+ * to the 20ms cycle, default scheduler handles them in the network stage of
+ * the next cycle.
+ * 
  * @author yulian oifa
  */
 public class UdpManager {
@@ -81,7 +96,8 @@ public class UdpManager {
 	// state flag
 	private volatile boolean isActive;
 
-	private volatile int count;
+	// updated by scheduler and reactor threads
+	private final AtomicLong count = new AtomicLong();
 
 	// name of the interface
 	private String name = "unknown";
@@ -93,6 +109,14 @@ public class UdpManager {
 
 	private AtomicInteger currSelectorIndex = new AtomicInteger(0);
 
+	/** dedicated io threads */
+	private List<Reactor> reactors = new ArrayList<Reactor>(0);
+	private AtomicInteger currReactorIndex = new AtomicInteger(0);
+
+	/** batched io mode */
+	private volatile boolean batchedIo = false;
+	private volatile int batchSize = 32;
+
 	/**
 	 * Creates UDP periphery.
 	 * 
@@ -112,7 +136,7 @@ public class UdpManager {
 	}
 
 	public int getCount() {
-		return count;
+		return (int) count.get();
 	}
 
 	/**
@@ -268,6 +292,164 @@ public class UdpManager {
 		return portManager.getLowestPort();
 	}
 
+	/**
+	 * Enables or disables batched io mode.
+	 * 
+	 * @param batchedIo
+	 *            true to drain channels and coalesce sends on each poll
+	 */
+	public void setBatchedIo(boolean batchedIo) {
+		this.batchedIo = batchedIo;
+	}
+
+	public boolean isBatchedIo() {
+		return batchedIo;
+	}
+
+	/**
+	 * Modify the maximum number of datagrams read from one channel per poll in
+	 * batched mode.
+	 * 
+	 * @param batchSize
+	 *            the number of datagrams
+	 */
+	public void setBatchSize(int batchSize) {
+		if (batchSize < 1)
+			throw new IllegalArgumentException("Batch size should be positive");
+
+		this.batchSize = batchSize;
+	}
+
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	/**
+	 * Gets the number of selectors polled by scheduler.
+	 * 
+	 * @return the number of selectors
+	 */
+	public int getSelectorsCount() {
+		return pollTasks.size();
+	}
+
+	/**
+	 * Gets the number of packets received by the selector.
+	 * 
+	 * @param index
+	 *            the index of the selector
+	 * @return the number of packets
+	 */
+	public long getReceivedPackets(int index) {
+		return pollTasks.get(index).packets;
+	}
+
+	/**
+	 * Gets the average number of packets received or sent per read or write
+	 * system call of the selector.
+	 * 
+	 * @param index
+	 *            the index of the selector
+	 * @return the packets per system call ratio
+	 */
+	public double getPacketsPerSyscall(int index) {
+		PollTask pollTask = pollTasks.get(index);
+		if (pollTask.syscalls == 0)
+			return 0;
+
+		return (double) (pollTask.packets + pollTask.sends) / pollTask.syscalls;
+	}
+
+	/**
+	 * Gets the total time spent in polls of the selector.
+	 * 
+	 * @param index
+	 *            the index of the selector
+	 * @return the duration in nanoseconds
+	 */
+	public long getPollTime(int index) {
+		return pollTasks.get(index).pollTime;
+	}
+
+	/**
+	 * Gets the longest poll of the selector.
+	 * 
+	 * @param index
+	 *            the index of the selector
+	 * @return the duration in nanoseconds
+	 */
+	public long getWorstPollTime(int index) {
+		return pollTasks.get(index).worstPollTime;
+	}
+
+	/**
+	 * Gets the number of polls of the selector.
+	 * 
+	 * @param index
+	 *            the index of the selector
+	 * @return the number of polls
+	 */
+	public long getPolls(int index) {
+		return pollTasks.get(index).polls;
+	}
+
+	/**
+	 * Modify the number of dedicated reactor threads.
+	 * 
+	 * Channels opened afterwards are served by reactor threads, zero value
+	 * means channels are polled by scheduler. Should be configured before
+	 * start.
+	 * 
+	 * @param reactorThreads
+	 *            the number of threads
+	 * @throws IOException
+	 *             if selector could not be opened
+	 */
+	public void setReactorThreads(int reactorThreads) throws IOException {
+		if (reactorThreads < 0)
+			throw new IllegalArgumentException("Reactor threads should not be negative");
+
+		synchronized (LOCK) {
+			if (this.isActive)
+				throw new IllegalStateException("Reactor threads should be configured before start");
+
+			for (int i = 0; i < this.reactors.size(); i++)
+				this.reactors.get(i).selector.close();
+
+			List<Reactor> newReactors = new ArrayList<Reactor>(reactorThreads);
+			for (int i = 0; i < reactorThreads; i++)
+				newReactors.add(new Reactor(i, SelectorProvider.provider().openSelector()));
+
+			this.reactors = newReactors;
+		}
+	}
+
+	public int getReactorThreads() {
+		return reactors.size();
+	}
+
+	/**
+	 * Gets the number of packets received by reactor thread.
+	 * 
+	 * @param index
+	 *            the index of the reactor thread
+	 * @return the number of packets
+	 */
+	public long getReactorReceivedPackets(int index) {
+		return reactors.get(index).packets;
+	}
+
+	/**
+	 * Gets the number of returns from select of reactor thread.
+	 * 
+	 * @param index
+	 *            the index of the reactor thread
+	 * @return the number of wakeups
+	 */
+	public long getReactorWakeups(int index) {
+		return reactors.get(index).wakeups;
+	}
+
 	public void addSelector(Selector selector) {
 		synchronized (LOCK) {
 			if (!this.selectors.contains(selector)) {
@@ -326,13 +508,17 @@ public class UdpManager {
 	public SelectionKey open(Channel channel) throws IOException {
 		DatagramChannel dataChannel = DatagramChannel.open();
 		dataChannel.configureBlocking(false);
-		int index = currSelectorIndex.getAndIncrement();
-		SelectionKey key = dataChannel.register(selectors.get(index % selectors.size()), SelectionKey.OP_READ);
-		key.attach(channel);
-		return key;
+		return open(dataChannel, channel);
 	}
 	
 	public SelectionKey open(DatagramChannel dataChannel, Channel channel) throws IOException {
+		 List<Reactor> currReactors = this.reactors;
+		 if (!currReactors.isEmpty()) {
+			 // Serve the channel by dedicated thread
+			 int index = currReactorIndex.getAndIncrement();
+			 return currReactors.get((index & Integer.MAX_VALUE) % currReactors.size()).register(dataChannel, channel);
+		 }
+		 
 		 // Get a selector
 		 int index = currSelectorIndex.getAndIncrement();
 		 Selector selector = selectors.get(index % selectors.size());
@@ -440,6 +626,9 @@ public class UdpManager {
 			for (int i = 0; i < this.pollTasks.size(); i++)
 				this.pollTasks.get(i).startNow();
 
+			for (int i = 0; i < this.reactors.size(); i++)
+				this.reactors.get(i).start();
+
 			logger.info(String.format(
 					"Initialized UDP interface[%s]: bind address=%s", name,
 					bindAddress));
@@ -458,6 +647,9 @@ public class UdpManager {
 			for (int i = 0; i < this.pollTasks.size(); i++)
 				this.pollTasks.get(i).cancel();
 
+			for (int i = 0; i < this.reactors.size(); i++)
+				this.reactors.get(i).stop();
+
 			logger.info("Stopped");
 		}
 	}
@@ -469,6 +661,17 @@ public class UdpManager {
 
 		private Selector localSelector;
 
+		// channels with data to be sent at the end of batched poll
+		private List<Channel> pendingChannels = new ArrayList<Channel>();
+
+		// statistics
+		private volatile long polls;
+		private volatile long packets;
+		private volatile long sends;
+		private volatile long syscalls;
+		private volatile long pollTime;
+		private volatile long worstPollTime;
+
 		/**
 		 * Creates new instance of this task
 		 * 
@@ -490,9 +693,14 @@ public class UdpManager {
 				return 0;
 			}
 
+			long pollStart = System.nanoTime();
+			boolean batched = batchedIo;
+			int budget = batched ? batchSize : 1;
+
 			// select channels ready for IO and ignore error
 			try {
 				localSelector.selectNow();
+
 				Iterator<SelectionKey> it = localSelector.selectedKeys().iterator();
 				while (it.hasNext()) {
 					SelectionKey key = it.next();
@@ -517,7 +725,9 @@ public class UdpManager {
 						// do read
 						if (key.isReadable()) {
 							handler.receive(udpChannel);
-							count++;
+							count.incrementAndGet();
+							packets++;
+							syscalls++;
 						}
 						
 					} else if (attachment instanceof Channel) {
@@ -526,12 +736,18 @@ public class UdpManager {
 						// Perform an operation only if channel is open and key is valid
 						if(udpChannel.isOpen()) {
 							if(key.isValid()) {
-								channel.receive();
-								count++;
+								int received = channel.receive(budget);
+								count.addAndGet(received);
+								packets += received;
+								// last read of drained channel returns nothing
+								syscalls += received < budget ? received + 1 : received;
 								
 								if(channel.hasPendingData()) {
-									channel.send();
-									count++;
+									if(batched) {
+										pendingChannels.add(channel);
+									} else {
+										send(channel);
+									}
 								}
 							}
 						} else {
@@ -541,15 +757,37 @@ public class UdpManager {
 					}
 				}
 				localSelector.selectedKeys().clear();
+
+				// flush responses of the whole selector at once
+				for (int i = 0; i < pendingChannels.size(); i++) {
+					send(pendingChannels.get(i));
+				}
 			} catch (IOException e) {
 				logger.error(e);
 				return 0;
 			} finally {
+				pendingChannels.clear();
+				updateStatistics(System.nanoTime() - pollStart);
 				scheduler.submit(this, Scheduler.UDP_MANAGER_QUEUE);
 			}
 
 			return 0;
 		}
+
+		private void send(Channel channel) throws IOException {
+			channel.send();
+			count.incrementAndGet();
+			sends++;
+			syscalls++;
+		}
+
+		private void updateStatistics(long duration) {
+			polls++;
+			pollTime += duration;
+			if (duration > worstPollTime) {
+				worstPollTime = duration;
+			}
+		}
 		
 		/**
 		 * Immediately start current task
@@ -558,4 +796,142 @@ public class UdpManager {
 			scheduler.submit(this, Scheduler.UDP_MANAGER_QUEUE);
 		}
 	}
+
+	/**
+	 * Dedicated thread which blocks on selector and reads datagrams of its
+	 * channels.
+	 */
+	private class Reactor implements Runnable {
+
+		private final int index;
+		private final Selector selector;
+		private final Object guard = new Object();
+
+		private volatile Thread thread;
+
+		// statistics
+		private volatile long wakeups;
+		private volatile long packets;
+
+		public Reactor(int index, Selector selector) {
+			this.index = index;
+			this.selector = selector;
+		}
+
+		/**
+		 * Registers channel within selector which may be blocked by reactor
+		 * thread.
+		 */
+		public SelectionKey register(DatagramChannel dataChannel, Channel channel) throws IOException {
+			synchronized (guard) {
+				selector.wakeup();
+				return dataChannel.register(selector, SelectionKey.OP_READ, new DispatchTask(channel));
+			}
+		}
+
+		public void start() {
+			thread = new Thread(this, "UdpManager-reactor-" + name + "-" + index);
+			thread.setDaemon(true);
+			thread.start();
+		}
+
+		public void stop() {
+			thread = null;
+			selector.wakeup();
+		}
+
+		@Override
+		public void run() {
+			Thread current = Thread.currentThread();
+			while (isActive && thread == current) {
+				try {
+					// wait while channel is registered
+					synchronized (guard) {
+					}
+
+					selector.select();
+					wakeups++;
+
+					Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+					while (it.hasNext()) {
+						SelectionKey key = it.next();
+						it.remove();
+
+						DispatchTask task = (DispatchTask) key.attachment();
+						DatagramChannel udpChannel = (DatagramChannel) key.channel();
+						if (!udpChannel.isOpen()) {
+							task.channel.close();
+							continue;
+						}
+
+						if (key.isValid() && key.isReadable()) {
+							int received = task.channel.read(batchSize);
+							if (received > 0) {
+								count.addAndGet(received);
+								packets += received;
+								task.schedule();
+							}
+						}
+					}
+				} catch (IOException e) {
+					logger.error(e);
+				} catch (RuntimeException e) {
+					logger.error("Reactor failure", e);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Handles datagrams read by reactor thread on the scheduler thread which
+	 * owns the endpoint of the channel.
+	 */
+	private class DispatchTask extends Task {
+
+		private final Channel channel;
+		private final AtomicBoolean scheduled = new AtomicBoolean(false);
+
+		public DispatchTask(Channel channel) {
+			super();
+			this.channel = channel;
+		}
+
+		public int getQueueNumber() {
+			return Scheduler.UDP_MANAGER_QUEUE;
+		}
+
+		@Override
+		public int getAffinity() {
+			// datagrams are handled by the core of the endpoint
+			if (channel instanceof MultiplexedChannel) {
+				int affinity = ((MultiplexedChannel) channel).getAffinity();
+				if (affinity >= 0) {
+					return affinity;
+				}
+			}
+			return super.getAffinity();
+		}
+
+		public void schedule() {
+			if (scheduled.compareAndSet(false, true)) {
+				scheduler.submitNow(this);
+			}
+		}
+
+		@Override
+		public long perform() {
+			// data read after this point is handled by next execution
+			scheduled.set(false);
+			try {
+				channel.dispatch();
+				if (channel.hasPendingData()) {
+					channel.send();
+					count.incrementAndGet();
+				}
+			} catch (IOException e) {
+				logger.error(e);
+			}
+			return 0;
+		}
+	}
 }
@@ -57,6 +57,36 @@ public interface Channel {
 	 */
 	void receive() throws IOException;
 
+	/**
+	 * Receive all data available on the channel, up to a limit
+	 * 
+	 * @param budget
+	 *            the maximum number of datagrams to be read
+	 * @return the number of datagrams that were read
+	 * @throws IOException
+	 */
+	int receive(int budget) throws IOException;
+
+	/**
+	 * Reads data available on the channel, up to a limit, without handling it.
+	 * <br>
+	 * Data is kept by the channel till {@link #dispatch()} is invoked.
+	 * 
+	 * @param budget
+	 *            the maximum number of datagrams to be read
+	 * @return the number of datagrams that were read
+	 * @throws IOException
+	 */
+	int read(int budget) throws IOException;
+
+	/**
+	 * Handles data previously read by {@link #read(int)}
+	 * 
+	 * @return the number of datagrams that were handled
+	 * @throws IOException
+	 */
+	int dispatch() throws IOException;
+
 	/**
 	 * Send data through the channel
 	 * 
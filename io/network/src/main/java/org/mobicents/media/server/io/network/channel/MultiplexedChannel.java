@@ -30,6 +30,9 @@ import java.util.ArrayList;
 import java.util.List;
 
 import org.apache.log4j.Logger;
+import org.mobicents.media.server.concurrent.SingleConsumerRingFIFO;
+import org.mobicents.media.server.spi.memory.Frame;
+import org.mobicents.media.server.spi.memory.Memory;
 
 /**
  * Data channel that supports multiplexing.
@@ -48,19 +51,27 @@ public class MultiplexedChannel implements Channel {
 	// Registered protocol handlers. Used for multiplexing.
 	protected final PacketHandlerPipeline handlers;
 
-	// The buffer into which we will read data when it's available
+	// The buffer into which we will read data when it's available.
+	// Handlers get a view of its array, so it must not be direct.
 	private static final int BUFFER_SIZE = 8192;
 	private final ByteBuffer receiveBuffer;
 	
+	// Datagrams read by io thread which are waiting to be handled
+	private static final int INBOUND_QUEUE_SIZE = 64;
+	private volatile SingleConsumerRingFIFO<Frame> inboundData;
+	
 	// Data that is pending for writing
 	private final List<byte[]> pendingData;
 	private final ByteBuffer pendingDataBuffer;
+	
+	// Key of the endpoint which owns the channel, negative if not assigned
+	private volatile int affinity = -1;
 
 	public MultiplexedChannel() {
 		this.handlers = new PacketHandlerPipeline();
 		this.pendingData = new ArrayList<byte[]>();
 		this.pendingDataBuffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
-		this.receiveBuffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+		this.receiveBuffer = ByteBuffer.allocate(BUFFER_SIZE);
 	}
 	
 	@Override
@@ -117,6 +128,27 @@ public class MultiplexedChannel implements Channel {
 		return 0;
 	}
 	
+	/**
+	 * Assigns the key used by sharded schedulers to select the core which
+	 * handles datagrams of the channel.
+	 * 
+	 * @param affinity
+	 *            The key of the endpoint which owns the channel
+	 */
+	public void setAffinity(int affinity) {
+		this.affinity = affinity;
+	}
+	
+	/**
+	 * Gets the key used by sharded schedulers to select the core which
+	 * handles datagrams of the channel.
+	 * 
+	 * @return The key of the endpoint or negative value if not assigned
+	 */
+	public int getAffinity() {
+		return affinity;
+	}
+	
 	/**
 	 * 
 	 * @param channel
@@ -160,53 +192,143 @@ public class MultiplexedChannel implements Channel {
 	
 	@Override
 	public void receive() throws IOException {
+		receiveDatagram();
+	}
+	
+	@Override
+	public int receive(int budget) throws IOException {
+		int received = 0;
+		while (received < budget && receiveDatagram()) {
+			received++;
+		}
+		return received;
+	}
+
+	/**
+	 * Reads single datagram and passes it to the proper handler.
+	 * 
+	 * @return true if datagram was read, which may be empty, false if no
+	 *         data is available or channel was closed.
+	 */
+	private boolean receiveDatagram() throws IOException {
 		// Get buffer ready to read new data
 		this.receiveBuffer.clear();
 
 		// Read data from channel
-		int dataLength = 0;
+		SocketAddress remotePeer;
 		try {
-			SocketAddress remotePeer = dataChannel.receive(this.receiveBuffer);
-			if (!isConnected() && remotePeer != null) {
+			remotePeer = dataChannel.receive(this.receiveBuffer);
+		} catch (IOException e) {
+			// Stop if socket was shutdown or error occurred
+			close();
+			return false;
+		}
+
+		if (remotePeer == null) {
+			return false;
+		}
+
+		if (!isConnected()) {
+			connect(remotePeer);
+		}
+
+		int dataLength = this.receiveBuffer.position();
+		if (dataLength > 0) {
+			// Handlers read datagram directly from receive buffer and must
+			// not keep reference to it after handling
+			handleData(this.receiveBuffer.array(), this.receiveBuffer.arrayOffset(), dataLength);
+		}
+		return true;
+	}
+
+	@Override
+	public int read(int budget) throws IOException {
+		if (this.inboundData == null) {
+			this.inboundData = new SingleConsumerRingFIFO<Frame>(INBOUND_QUEUE_SIZE);
+		}
+
+		int received = 0;
+		while (received < budget) {
+			this.receiveBuffer.clear();
+			SocketAddress remotePeer;
+			try {
+				remotePeer = dataChannel.receive(this.receiveBuffer);
+			} catch (IOException e) {
+				// Stop if socket was shutdown or error occurred
+				close();
+				break;
+			}
+
+			if (remotePeer == null) {
+				break;
+			}
+
+			if (!isConnected()) {
 				connect(remotePeer);
 			}
-			dataLength = this.receiveBuffer.position();
-		} catch (IOException e) {
-			dataLength = -1;
+
+			received++;
+			int dataLength = this.receiveBuffer.position();
+			if (dataLength > 0) {
+				// Copy data into pooled frame, handlers are executed later
+				Frame frame = Memory.allocate(dataLength);
+				this.receiveBuffer.flip();
+				this.receiveBuffer.get(frame.getData(), 0, dataLength);
+				frame.setOffset(0);
+				frame.setLength(dataLength);
+
+				if (!this.inboundData.offer(frame)) {
+					frame.recycle();
+					logger.warn("Too many incoming packets are waiting to be handled. Packet will be dropped.");
+				}
+			}
+		}
+		return received;
+	}
+
+	@Override
+	public int dispatch() throws IOException {
+		SingleConsumerRingFIFO<Frame> queue = this.inboundData;
+		if (queue == null) {
+			return 0;
 		}
 
-		// Stop if socket was shutdown or error occurred
-		if (dataLength == -1) {
-			close();
-			return;
-		} else if (dataLength > 0) {
-			// Copy data from buffer so we don't mess with original
-			byte[] dataCopy = new byte[dataLength];
-			this.receiveBuffer.rewind();
-			this.receiveBuffer.get(dataCopy, 0, dataLength);
-			
-			// Delegate work to the proper handler
-			PacketHandler handler = this.handlers.getHandler(dataCopy);
-			if (handler != null) {
-				try {
-					// Let the handler process the incoming packet.
-					// A response MAY be provided as result.
-					byte[] response = handler.handle(dataCopy, dataLength, 0, (InetSocketAddress) dataChannel.getLocalAddress(), (InetSocketAddress) dataChannel.getRemoteAddress());
-					
-					/*
-					 * If handler intends to send a response to the remote peer,
-					 * queue the data to send it on writing cycle. Only allowed if
-					 * Selection Key is writable!
-					 */
-					if (response != null && response.length > 0) {
-						queueData(response);
-					}
-				} catch (PacketHandlerException e) {
-					logger.error("Could not handle incoming packet: " + e.getMessage());
+		int count = 0;
+		Frame frame = queue.poll();
+		while (frame != null) {
+			try {
+				handleData(frame.getData(), frame.getOffset(), frame.getLength());
+			} finally {
+				frame.recycle();
+			}
+			count++;
+			frame = queue.poll();
+		}
+		return count;
+	}
+
+	private void handleData(byte[] data, int offset, int dataLength) throws IOException {
+		// Delegate work to the proper handler
+		PacketHandler handler = this.handlers.getHandler(data, dataLength, offset);
+		if (handler != null) {
+			try {
+				// Let the handler process the incoming packet.
+				// A response MAY be provided as result.
+				byte[] response = handler.handle(data, dataLength, offset, (InetSocketAddress) dataChannel.getLocalAddress(), (InetSocketAddress) dataChannel.getRemoteAddress());
+				
+				/*
+				 * If handler intends to send a response to the remote peer,
+				 * queue the data to send it on writing cycle. Only allowed if
+				 * Selection Key is writable!
+				 */
+				if (response != null && response.length > 0) {
+					queueData(response);
 				}
-			} else {
-				logger.warn("No protocol handler was found to process an incoming packet. Packet will be dropped.");
+			} catch (PacketHandlerException e) {
+				logger.error("Could not handle incoming packet: " + e.getMessage());
 			}
+		} else {
+			logger.warn("No protocol handler was found to process an incoming packet. Packet will be dropped.");
 		}
 	}
 
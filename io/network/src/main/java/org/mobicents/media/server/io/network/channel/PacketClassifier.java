@@ -0,0 +1,103 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2014, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ *
+ */
+
+package org.mobicents.media.server.io.network.channel;
+
+/**
+ * Classifies packets received on a multiplexed port by their first byte.
+ *
+ * <pre>
+ *                  +----------------+
+ *                  |        [0..3] -+--> forward to STUN
+ *                  |                |
+ *                  |      [16..19] -+--> forward to ZRTP
+ *                  |                |
+ *      packet -->  |      [20..63] -+--> forward to DTLS
+ *                  |                |
+ *                  |      [64..79] -+--> forward to TURN Channel
+ *                  |                |
+ *                  |    [128..191] -+--> forward to RTP/RTCP
+ *                  +----------------+
+ * </pre>
+ *
+ * RTCP is told apart from RTP by packet type 192-223 in the second byte.
+ * @see <a href="http://tools.ietf.org/html/rfc7983#section-7">RFC7983</a>
+ * @see <a href="http://tools.ietf.org/html/rfc5761#section-4">RFC5761</a>
+ */
+public class PacketClassifier {
+
+	public static final int UNKNOWN = 0;
+	public static final int STUN = 1;
+	public static final int ZRTP = 2;
+	public static final int DTLS = 3;
+	public static final int TURN_CHANNEL = 4;
+	public static final int RTP = 5;
+	public static final int RTCP = 6;
+
+	/**
+	 * The number of packet classes
+	 */
+	public static final int TYPES = 7;
+
+	private PacketClassifier() {
+		super();
+	}
+
+	/**
+	 * Classifies a packet.
+	 *
+	 * @param packet
+	 *            The buffer holding the packet
+	 * @param dataLength
+	 *            The length of the packet
+	 * @param offset
+	 *            The position of the first byte of the packet
+	 * @return The packet class
+	 */
+	public static int classify(byte[] packet, int dataLength, int offset) {
+		if (dataLength < 1) {
+			return UNKNOWN;
+		}
+
+		int b0 = packet[offset] & 0xFF;
+		if (b0 < 4) {
+			return STUN;
+		} else if (b0 < 16) {
+			return UNKNOWN;
+		} else if (b0 < 20) {
+			return ZRTP;
+		} else if (b0 < 64) {
+			return DTLS;
+		} else if (b0 < 80) {
+			return TURN_CHANNEL;
+		} else if (b0 < 128 || b0 > 191) {
+			return UNKNOWN;
+		}
+
+		if (dataLength > 1) {
+			int type = packet[offset + 1] & 0xFF;
+			if (type >= 192 && type <= 223) {
+				return RTCP;
+			}
+		}
+		return RTP;
+	}
+
+}
@@ -21,7 +21,7 @@
 package org.mobicents.media.server.io.network.channel;
 
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Arrays;
 import java.util.Comparator;
 import java.util.List;
 
@@ -29,6 +29,12 @@ import java.util.List;
  * Pipeline that selects a capable {@link PacketHandler} to process incoming
  * packets.
  * 
+ * Handlers are kept in a copy-on-write array so packets are dispatched without
+ * locking or copying. The pipeline remembers which handler processed the last
+ * packet of each {@link PacketClassifier} class and queries it first, so
+ * usually a single handler is asked per packet. Handlers are expected to
+ * accept distinct packet classes, as RTP, RTCP and STUN handlers do.
+ * 
  * @author Henrique Rosa (henrique.rosa@telestax.com)
  * 
  */
@@ -42,12 +48,17 @@ public class PacketHandlerPipeline {
 		}
 	};
 	
-	private final List<PacketHandler> handlers;
-	private int count;
+	private static final PacketHandler[] EMPTY = new PacketHandler[0];
+	
+	// Registered handlers sorted by priority, replaced on every change
+	private volatile PacketHandler[] handlers;
+	
+	// Handler which accepted last packet of each class
+	private volatile PacketHandler[] lastHandlers;
 
 	public PacketHandlerPipeline() {
-		this.handlers = new ArrayList<PacketHandler>(5);
-		this.count = 0;
+		this.handlers = EMPTY;
+		this.lastHandlers = new PacketHandler[PacketClassifier.TYPES];
 	}
 
 	/**
@@ -58,16 +69,15 @@ public class PacketHandlerPipeline {
 	 *            The handler to be registered.
 	 * @return Whether the handler was successfully registered or not.
 	 */
-	public boolean addHandler(PacketHandler handler) {
-		synchronized (this.handlers) {
-			if (!handlers.contains(handler)) {
-				handlers.add(handler);
-				this.count++;
-				Collections.sort(this.handlers, REVERSE_COMPARATOR);
-				return true;
-			}
-			return false;
+	public synchronized boolean addHandler(PacketHandler handler) {
+		if (!contains(handler)) {
+			PacketHandler[] updated = Arrays.copyOf(this.handlers, this.handlers.length + 1);
+			updated[updated.length - 1] = handler;
+			Arrays.sort(updated, REVERSE_COMPARATOR);
+			publish(updated);
+			return true;
 		}
+		return false;
 	}
 	
 	/**
@@ -78,14 +88,23 @@ public class PacketHandlerPipeline {
 	 * @return Returns true if the handler is removed successfully. Returns
 	 *         false, if the handler is not registered in the pipeline.
 	 */
-	public boolean removeHandler(PacketHandler handler) {
-		synchronized (this.handlers) {
-			boolean removed = this.handlers.remove(handler);
-			if(removed) {
-				this.count--;
+	public synchronized boolean removeHandler(PacketHandler handler) {
+		PacketHandler[] current = this.handlers;
+		for (int i = 0; i < current.length; i++) {
+			if (current[i].equals(handler)) {
+				PacketHandler[] updated = new PacketHandler[current.length - 1];
+				System.arraycopy(current, 0, updated, 0, i);
+				System.arraycopy(current, i + 1, updated, i, updated.length - i);
+				publish(updated);
+				return true;
 			}
-			return removed;
 		}
+		return false;
+	}
+	
+	private void publish(PacketHandler[] updated) {
+		this.handlers = updated;
+		this.lastHandlers = new PacketHandler[PacketClassifier.TYPES];
 	}
 
 	/**
@@ -94,7 +113,7 @@ public class PacketHandlerPipeline {
 	 * @return The number of registered handlers.
 	 */
 	public int count() {
-		return this.count;
+		return this.handlers.length;
 	}
 
 	/**
@@ -106,9 +125,13 @@ public class PacketHandlerPipeline {
 	 *         <code>false</code>, otherwise.
 	 */
 	public boolean contains(PacketHandler handler) {
-		synchronized (this.handlers) {
-			return this.handlers.contains(handler);
+		PacketHandler[] current = this.handlers;
+		for (int i = 0; i < current.length; i++) {
+			if (current[i].equals(handler)) {
+				return true;
+			}
 		}
+		return false;
 	}
 
 	/**
@@ -120,16 +143,40 @@ public class PacketHandlerPipeline {
 	 *         Returns null in case no capable handler exists.
 	 */
 	public PacketHandler getHandler(byte[] packet) {
-		// Copy the current handlers for thread safety
-		List<PacketHandler> handlersCopy;
-		synchronized (this.handlers) {
-			handlersCopy = new ArrayList<PacketHandler>(this.handlers);
+		return getHandler(packet, packet.length, 0);
+	}
+
+	/**
+	 * Gets the protocol handler capable of processing the packet.
+	 * 
+	 * @param packet
+	 *            The buffer holding the packet to be processed
+	 * @param dataLength
+	 *            The length of the packet
+	 * @param offset
+	 *            The position of the packet in the buffer
+	 * @return The protocol handler capable of processing the packet.<br>
+	 *         Returns null in case no capable handler exists.
+	 */
+	public PacketHandler getHandler(byte[] packet, int dataLength, int offset) {
+		// Read cache first, it is published after the handlers
+		PacketHandler[] last = this.lastHandlers;
+		PacketHandler[] current = this.handlers;
+		int type = PacketClassifier.classify(packet, dataLength, offset);
+
+		// Most packets of a class go to the same handler
+		PacketHandler handler = last[type];
+		if (handler != null && handler.canHandle(packet, dataLength, offset)) {
+			return handler;
 		}
 
 		// Search for the first handler capable of processing the packet
-		for (PacketHandler protocolHandler : handlersCopy) {
-			if (protocolHandler.canHandle(packet)) {
-				return protocolHandler;
+		for (int i = 0; i < current.length; i++) {
+			if (current[i].canHandle(packet, dataLength, offset)) {
+				if (type != PacketClassifier.UNKNOWN) {
+					last[type] = current[i];
+				}
+				return current[i];
 			}
 		}
 
@@ -143,9 +190,7 @@ public class PacketHandlerPipeline {
 	 * @return The list of handlers registered.
 	 */
 	public List<PacketHandler> getHandlers() {
-		synchronized (this.handlers) {
-			return new ArrayList<PacketHandler>(this.handlers);
-		}
+		return new ArrayList<PacketHandler>(Arrays.asList(this.handlers));
 	}
 	
 }
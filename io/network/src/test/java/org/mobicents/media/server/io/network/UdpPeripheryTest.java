@@ -27,9 +27,13 @@
 
 package org.mobicents.media.server.io.network;
 
+import org.mobicents.media.server.io.network.channel.MultiplexedChannel;
+import org.mobicents.media.server.scheduler.DefaultClock;
 import org.mobicents.media.server.scheduler.Scheduler;
+import org.mobicents.media.server.scheduler.ShardedScheduler;
 import java.net.InetSocketAddress;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.channels.DatagramChannel;
 import java.nio.channels.SelectionKey;
 import org.junit.After;
@@ -45,6 +49,7 @@ import static org.junit.Assert.*;
  */
 public class UdpPeripheryTest {
 
+    private Scheduler scheduler;
     private UdpManager udpPeriphery;
 
     public UdpPeripheryTest() {
@@ -60,7 +65,7 @@ public class UdpPeripheryTest {
 
     @Before
     public void setUp() throws IOException {
-    	Scheduler scheduler=new Scheduler();
+    	scheduler=new Scheduler();
         udpPeriphery = new UdpManager(scheduler);
     }
 
@@ -93,6 +98,168 @@ public class UdpPeripheryTest {
         channel.socket().close();
     }
 
+    /**
+     * Test of poll in batched mode.
+     */
+    @Test
+    public void testBatchedPoll() throws Exception {
+        scheduler.setClock(new DefaultClock());
+        udpPeriphery.setBatchedIo(true);
+        udpPeriphery.setBatchSize(8);
+
+        DatagramChannel local = DatagramChannel.open();
+        local.configureBlocking(false);
+        local.bind(new InetSocketAddress("127.0.0.1", 0));
+        MultiplexedChannel channel = new MultiplexedChannel();
+        channel.open(local);
+        udpPeriphery.open(local, channel);
+
+        DatagramChannel remote = DatagramChannel.open();
+        remote.bind(new InetSocketAddress("127.0.0.1", 0));
+        local.connect(remote.getLocalAddress());
+        for (int i = 0; i < 5; i++) {
+            remote.send(ByteBuffer.wrap(new byte[] { 1, 2, 3 }), local.getLocalAddress());
+        }
+
+        scheduler.start();
+        udpPeriphery.start();
+        try {
+            Thread.sleep(100);
+        } finally {
+            udpPeriphery.stop();
+            scheduler.stop();
+            local.close();
+            remote.close();
+        }
+
+        long packets = 0;
+        for (int i = 0; i < udpPeriphery.getSelectorsCount(); i++) {
+            packets += udpPeriphery.getReceivedPackets(i);
+            assertTrue(udpPeriphery.getPolls(i) > 0);
+            assertTrue(udpPeriphery.getPollTime(i) > 0);
+            if (udpPeriphery.getReceivedPackets(i) > 0) {
+                // 5 packets and final empty read
+                assertEquals(5.0 / 6.0, udpPeriphery.getPacketsPerSyscall(i), 0.001);
+            }
+        }
+
+        assertEquals(5, packets);
+    }
+
+    /**
+     * Test of dedicated reactor threads.
+     */
+    @Test
+    public void testReactor() throws Exception {
+        scheduler.setClock(new DefaultClock());
+        udpPeriphery.setReactorThreads(1);
+        assertEquals(1, udpPeriphery.getReactorThreads());
+
+        scheduler.start();
+        udpPeriphery.start();
+
+        DatagramChannel local = DatagramChannel.open();
+        local.configureBlocking(false);
+        local.bind(new InetSocketAddress("127.0.0.1", 0));
+        DatagramChannel remote = DatagramChannel.open();
+        remote.bind(new InetSocketAddress("127.0.0.1", 0));
+        local.connect(remote.getLocalAddress());
+
+        MultiplexedChannel channel = new MultiplexedChannel();
+        channel.open(local);
+        udpPeriphery.open(local, channel);
+
+        try {
+            // idle reactor is blocked
+            Thread.sleep(50);
+            assertTrue(udpPeriphery.getReactorWakeups(0) <= 2);
+
+            for (int i = 0; i < 5; i++) {
+                remote.send(ByteBuffer.wrap(new byte[] { 1, 2, 3 }), local.getLocalAddress());
+            }
+            Thread.sleep(50);
+
+            assertEquals(5, udpPeriphery.getReactorReceivedPackets(0));
+            // datagrams are handled by scheduler
+            assertEquals(0, channel.dispatch());
+        } finally {
+            udpPeriphery.stop();
+            scheduler.stop();
+            local.close();
+            remote.close();
+        }
+    }
+
+    /**
+     * Test of hand-off of datagrams read by reactor to the shard of the
+     * endpoint.
+     */
+    @Test
+    public void testReactorShard() throws Exception {
+        ShardedScheduler sharded = new ShardedScheduler(2);
+        sharded.setClock(new DefaultClock());
+        UdpManager manager = new UdpManager(sharded);
+        manager.setReactorThreads(1);
+
+        sharded.start();
+        manager.start();
+
+        DatagramChannel local = DatagramChannel.open();
+        local.configureBlocking(false);
+        local.bind(new InetSocketAddress("127.0.0.1", 0));
+        DatagramChannel remote = DatagramChannel.open();
+        remote.bind(new InetSocketAddress("127.0.0.1", 0));
+        local.connect(remote.getLocalAddress());
+
+        LatencyChannel channel = new LatencyChannel();
+        channel.setAffinity(3);
+        channel.open(local);
+        manager.open(local, channel);
+
+        try {
+            int packets = 20;
+            for (int i = 0; i < packets; i++) {
+                channel.sent = System.nanoTime();
+                remote.send(ByteBuffer.wrap(new byte[] { 1, 2, 3 }), local.getLocalAddress());
+                // spread packets over the cycle
+                Thread.sleep(7);
+            }
+            Thread.sleep(50);
+
+            assertEquals(packets, channel.dispatched);
+            // handled by the shard of the endpoint, not in the next cycle
+            assertEquals("Scheduler-shard-1", channel.thread);
+            assertTrue("Worst latency " + channel.worstLatency + "ns", channel.worstLatency < 5000000L);
+        } finally {
+            manager.stop();
+            sharded.stop();
+            local.close();
+            remote.close();
+        }
+    }
+
+    private class LatencyChannel extends MultiplexedChannel {
+
+        private volatile long sent;
+        private volatile long worstLatency;
+        private volatile int dispatched;
+        private volatile String thread;
+
+        @Override
+        public int dispatch() throws IOException {
+            int count = super.dispatch();
+            if (count > 0) {
+                long latency = System.nanoTime() - sent;
+                if (latency > worstLatency) {
+                    worstLatency = latency;
+                }
+                dispatched += count;
+                thread = Thread.currentThread().getName();
+            }
+            return count;
+        }
+    }
+
     private class TestHandler implements ProtocolHandler {
 
         public void receive(DatagramChannel channel) {
@@ -130,6 +130,112 @@ public class MultiplexedChannelTest {
 		Assert.assertEquals("received "+msg, new String(sentData));
 	}
 	
+	@Test
+	public void testReceiveBatch() throws IOException, InterruptedException {
+		// given
+		DatagramChannel local = openChannel();
+		DatagramChannel remote = openChannel();
+		local.configureBlocking(false);
+		local.connect(remote.getLocalAddress());
+
+		MultiplexedChannel channel = new MultiplexedChannel();
+		channel.handlers.addHandler(new LowPriorityPacketHandlerMock());
+		channel.setTransport(local);
+
+		byte[] data = LowPriorityPacketHandlerMock.DATA.getBytes();
+		for (int i = 0; i < 5; i++) {
+			remote.send(ByteBuffer.wrap(data), local.getLocalAddress());
+		}
+		Thread.sleep(50);
+
+		try {
+			// when
+			int first = channel.receive(3);
+			int second = channel.receive(3);
+			int third = channel.receive(3);
+
+			// then
+			Assert.assertEquals(3, first);
+			Assert.assertEquals(2, second);
+			Assert.assertEquals(0, third);
+			Assert.assertTrue(channel.hasPendingData());
+		} finally {
+			closeChannel(local);
+			closeChannel(remote);
+		}
+	}
+	
+	@Test
+	public void testReceiveBatchEmptyDatagram() throws IOException, InterruptedException {
+		// given
+		DatagramChannel local = openChannel();
+		DatagramChannel remote = openChannel();
+		local.configureBlocking(false);
+		local.connect(remote.getLocalAddress());
+
+		MultiplexedChannel channel = new MultiplexedChannel();
+		channel.handlers.addHandler(new LowPriorityPacketHandlerMock());
+		channel.setTransport(local);
+
+		byte[] data = LowPriorityPacketHandlerMock.DATA.getBytes();
+		remote.send(ByteBuffer.wrap(data), local.getLocalAddress());
+		remote.send(ByteBuffer.allocate(0), local.getLocalAddress());
+		remote.send(ByteBuffer.wrap(data), local.getLocalAddress());
+		Thread.sleep(50);
+
+		try {
+			// when
+			int received = channel.receive(10);
+
+			// then
+			Assert.assertEquals(3, received);
+			Assert.assertEquals(0, channel.receive(10));
+			Assert.assertTrue(channel.hasPendingData());
+		} finally {
+			closeChannel(local);
+			closeChannel(remote);
+		}
+	}
+	
+	@Test
+	public void testReadDispatch() throws IOException, InterruptedException {
+		// given
+		DatagramChannel local = openChannel();
+		DatagramChannel remote = openChannel();
+		local.configureBlocking(false);
+		local.connect(remote.getLocalAddress());
+
+		MultiplexedChannel channel = new MultiplexedChannel();
+		channel.handlers.addHandler(new LowPriorityPacketHandlerMock());
+		channel.setTransport(local);
+
+		byte[] data = LowPriorityPacketHandlerMock.DATA.getBytes();
+		for (int i = 0; i < 3; i++) {
+			remote.send(ByteBuffer.wrap(data), local.getLocalAddress());
+		}
+		Thread.sleep(50);
+
+		try {
+			// when
+			int read = channel.read(10);
+
+			// then
+			Assert.assertEquals(3, read);
+			Assert.assertFalse(channel.hasPendingData());
+
+			// when
+			int handled = channel.dispatch();
+
+			// then
+			Assert.assertEquals(3, handled);
+			Assert.assertEquals(0, channel.dispatch());
+			Assert.assertTrue(channel.hasPendingData());
+		} finally {
+			closeChannel(local);
+			closeChannel(remote);
+		}
+	}
+	
 	/*
 	 * Test Setup
 	 */
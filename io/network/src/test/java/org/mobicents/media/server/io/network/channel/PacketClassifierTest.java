@@ -0,0 +1,64 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2014, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ *
+ */
+
+package org.mobicents.media.server.io.network.channel;
+
+import org.junit.Test;
+
+import junit.framework.Assert;
+
+/**
+ * Unit tests for {@link PacketClassifier}
+ * 
+ */
+public class PacketClassifierTest {
+
+	private int classify(int b0, int b1) {
+		byte[] packet = new byte[] { 0, 0, (byte) b0, (byte) b1 };
+		return PacketClassifier.classify(packet, 2, 2);
+	}
+
+	@Test
+	public void testClassify() {
+		Assert.assertEquals(PacketClassifier.STUN, classify(0x00, 0x01));
+		Assert.assertEquals(PacketClassifier.STUN, classify(0x01, 0x01));
+		Assert.assertEquals(PacketClassifier.ZRTP, classify(0x10, 0x00));
+		// DTLS handshake and application data records
+		Assert.assertEquals(PacketClassifier.DTLS, classify(22, 0xFE));
+		Assert.assertEquals(PacketClassifier.DTLS, classify(23, 0xFE));
+		Assert.assertEquals(PacketClassifier.TURN_CHANNEL, classify(0x40, 0x00));
+		// RTP PCMU with and without marker bit
+		Assert.assertEquals(PacketClassifier.RTP, classify(0x80, 0x00));
+		Assert.assertEquals(PacketClassifier.RTP, classify(0x80, 0x80));
+		// RTCP SR, RR and BYE
+		Assert.assertEquals(PacketClassifier.RTCP, classify(0x80, 200));
+		Assert.assertEquals(PacketClassifier.RTCP, classify(0x81, 201));
+		Assert.assertEquals(PacketClassifier.RTCP, classify(0x81, 203));
+	}
+
+	@Test
+	public void testUnknown() {
+		Assert.assertEquals(PacketClassifier.UNKNOWN, classify(0x05, 0x00));
+		Assert.assertEquals(PacketClassifier.UNKNOWN, classify(0x60, 0x00));
+		Assert.assertEquals(PacketClassifier.UNKNOWN, classify(0xC0, 0x00));
+		Assert.assertEquals(PacketClassifier.UNKNOWN, PacketClassifier.classify(new byte[4], 0, 0));
+	}
+
+}
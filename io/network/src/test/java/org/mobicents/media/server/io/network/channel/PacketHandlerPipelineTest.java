@@ -122,6 +122,144 @@ public class PacketHandlerPipelineTest {
 		// then
 		Assert.assertEquals(lpHandler, handler);
 	}
+
+	@Test
+	public void testGetHandlerFromView() {
+		// given
+		PacketHandlerPipeline pipeline = new PacketHandlerPipeline();
+		byte[] buffer = new byte[64];
+		byte[] msgData = "medium".getBytes();
+		System.arraycopy(msgData, 0, buffer, 0, msgData.length);
+		
+		// when
+		pipeline.addHandler(hpHandler);
+		pipeline.addHandler(lpHandler);
+		pipeline.addHandler(mpHandler);
+		
+		PacketHandler handler = pipeline.getHandler(buffer, msgData.length, 0);
+		
+		// then
+		Assert.assertEquals(mpHandler, handler);
+		Assert.assertNull(pipeline.getHandler(buffer, msgData.length - 1, 0));
+	}
 	
-	
+	@Test
+	public void testRemoveHandler() {
+		// given
+		PacketHandlerPipeline pipeline = new PacketHandlerPipeline();
+		byte[] msgData = "low".getBytes();
+		pipeline.addHandler(hpHandler);
+		pipeline.addHandler(lpHandler);
+		Assert.assertEquals(lpHandler, pipeline.getHandler(msgData));
+		
+		// when
+		Assert.assertTrue(pipeline.removeHandler(lpHandler));
+		Assert.assertFalse(pipeline.removeHandler(lpHandler));
+		
+		// then
+		Assert.assertEquals(1, pipeline.count());
+		Assert.assertNull(pipeline.getHandler(msgData));
+	}
+
+	@Test
+	public void testCachedHandlerPerClass() {
+		// given
+		PacketHandlerPipeline pipeline = new PacketHandlerPipeline();
+		RangePacketHandler stunHandler = new RangePacketHandler(3, 0, 3);
+		RangePacketHandler dtlsHandler = new RangePacketHandler(2, 20, 63);
+		RangePacketHandler rtpHandler = new RangePacketHandler(1, 128, 191);
+		pipeline.addHandler(rtpHandler);
+		pipeline.addHandler(dtlsHandler);
+		pipeline.addHandler(stunHandler);
+
+		byte[] rtp = new byte[] { (byte) 0x80, 0x00, 0x00, 0x01 };
+		byte[] dtls = new byte[] { 0x16, (byte) 0xFE, (byte) 0xFD };
+		byte[] stun = new byte[] { 0x00, 0x01, 0x00, 0x00 };
+
+		// when
+		Assert.assertEquals(rtpHandler, pipeline.getHandler(rtp));
+		Assert.assertEquals(dtlsHandler, pipeline.getHandler(dtls));
+		Assert.assertEquals(stunHandler, pipeline.getHandler(stun));
+		stunHandler.queries = 0;
+		dtlsHandler.queries = 0;
+		rtpHandler.queries = 0;
+
+		// then each class is served by its cached handler only
+		Assert.assertEquals(rtpHandler, pipeline.getHandler(rtp));
+		Assert.assertEquals(dtlsHandler, pipeline.getHandler(dtls));
+		Assert.assertEquals(stunHandler, pipeline.getHandler(stun));
+		Assert.assertEquals(1, stunHandler.queries);
+		Assert.assertEquals(1, dtlsHandler.queries);
+		Assert.assertEquals(1, rtpHandler.queries);
+	}
+
+	@Test
+	public void testCacheInvalidatedOnAdd() {
+		// given
+		PacketHandlerPipeline pipeline = new PacketHandlerPipeline();
+		RangePacketHandler anyHandler = new RangePacketHandler(1, 0, 255);
+		RangePacketHandler rtpHandler = new RangePacketHandler(2, 128, 191);
+		byte[] rtp = new byte[] { (byte) 0x80, 0x00, 0x00, 0x01 };
+
+		pipeline.addHandler(anyHandler);
+		Assert.assertEquals(anyHandler, pipeline.getHandler(rtp));
+
+		// when
+		pipeline.addHandler(rtpHandler);
+
+		// then handler of higher priority is not hidden by cache
+		Assert.assertEquals(rtpHandler, pipeline.getHandler(rtp));
+		Assert.assertEquals(rtpHandler, pipeline.getHandler(rtp));
+	}
+
+	@Test
+	public void testCacheInvalidatedOnRemove() {
+		// given
+		PacketHandlerPipeline pipeline = new PacketHandlerPipeline();
+		RangePacketHandler anyHandler = new RangePacketHandler(1, 0, 255);
+		RangePacketHandler dtlsHandler = new RangePacketHandler(2, 20, 63);
+		byte[] dtls = new byte[] { 0x16, (byte) 0xFE, (byte) 0xFD };
+
+		pipeline.addHandler(anyHandler);
+		pipeline.addHandler(dtlsHandler);
+		Assert.assertEquals(dtlsHandler, pipeline.getHandler(dtls));
+
+		// when
+		pipeline.removeHandler(dtlsHandler);
+
+		// then removed handler is not served from cache
+		Assert.assertEquals(anyHandler, pipeline.getHandler(dtls));
+
+		// when
+		pipeline.removeHandler(anyHandler);
+
+		// then
+		Assert.assertNull(pipeline.getHandler(dtls));
+	}
+
+	/**
+	 * Handler which accepts packets by range of the first byte and counts
+	 * queries.
+	 */
+	private static class RangePacketHandler extends PacketHandlerMock {
+
+		private final int min;
+		private final int max;
+		private int queries;
+
+		public RangePacketHandler(int priority, int min, int max) {
+			super(priority, "");
+			this.min = min;
+			this.max = max;
+		}
+
+		@Override
+		public boolean canHandle(byte[] packet, int dataLength, int offset) {
+			queries++;
+			int b0 = packet[offset] & 0xFF;
+			return dataLength > 0 && b0 >= min && b0 <= max;
+		}
+
+	}
+
 }
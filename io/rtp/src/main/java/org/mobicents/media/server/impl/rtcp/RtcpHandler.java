@@ -362,7 +362,7 @@ public class RtcpHandler implements PacketHandler {
 			}
 			rtcpPacket.decode(decoded, 0);
 		} else {
-			rtcpPacket.decode(packet, offset);
+			rtcpPacket.decode(packet, offset, dataLength);
 		}
 		
 		// Trace incoming RTCP report
@@ -410,18 +410,18 @@ public class RtcpHandler implements PacketHandler {
 			packet.encode(data, 0);
 			int dataLength = packet.getSize();
 			
-			// If channel is secure, convert RTCP packet to SRTCP. WebRTC calls only.
-			if(this.secure) {
-				data = this.dtlsHandler.encodeRTCP(data, 0, dataLength);
-				dataLength = data.length;
-			}
-
 			// prepare buffer
 			byteBuffer.clear();
 			byteBuffer.rewind();
 			byteBuffer.put(data, 0, dataLength);
 			byteBuffer.flip();
 			byteBuffer.rewind();
+
+			// If channel is secure, convert RTCP packet to SRTCP in place. WebRTC calls only.
+			if(this.secure && !this.dtlsHandler.encodeRTCP(byteBuffer)) {
+				logger.warn("Could not secure RTCP packet! Packet dropped.");
+				return;
+			}
 			
 			// trace outgoing RTCP report
 			if(logger.isDebugEnabled()) {
@@ -78,9 +78,25 @@ public class RtcpPacket implements Serializable {
 	}
 
 	public int decode(byte[] rawData, int offSet) {
+		return decode(rawData, offSet, rawData.length - offSet);
+	}
+
+	/**
+	 * Decodes compound packet which occupies part of the buffer.
+	 * 
+	 * @param rawData
+	 *            the buffer holding the packet
+	 * @param offSet
+	 *            the position of the packet
+	 * @param length
+	 *            the length of the packet
+	 * @return the position after the decoded packet
+	 */
+	public int decode(byte[] rawData, int offSet, int length) {
 //		this.size = rawData.length - offSet;
 		this.size = 0;
-		while (offSet < rawData.length) {
+		int end = offSet + length;
+		while (offSet < end) {
 			int type = rawData[offSet + 1] & 0x000000FF;
 			switch (type) {
 			case RtcpHeader.RTCP_SR:
@@ -115,7 +131,7 @@ public class RtcpPacket implements Serializable {
 				break;
 			default:				
 				logger.error("Received type = "+type+" RTCP Packet decoding falsed. offSet = "+offSet +". Packet count = "+ packetCount);
-				offSet = rawData.length;
+				offSet = end;
 				break;
 			}
 		}
@@ -23,7 +23,6 @@
 package org.mobicents.media.server.impl.rtp;
 
 import java.io.Serializable;
-import java.util.ArrayList;
 
 import org.apache.log4j.Logger;
 import org.mobicents.media.server.impl.rtp.sdp.RTPFormat;
@@ -46,6 +45,12 @@ import org.mobicents.media.server.spi.memory.Memory;
  * an adaptive jitter buffer then the maximum size may be set to 100-200mS. Note
  * that if the jitter buffer size exceeds 100mS then the additional delay
  * introduced can lead to conversational difficulty.
+ * 
+ * Frames are kept in ring indexed by sequence number, so insertion, duplicate
+ * detection and playout take constant time. Configured size is used as initial
+ * playout delay, once jitter estimate is settled the delay follows it within
+ * [packet period, 200mS] range. Buffered media exceeding twice the playout
+ * delay is discarded from the head, so delay shrinks when network improves.
  *
  * @author oifa yulian
  */
@@ -53,10 +58,28 @@ public class JitterBuffer implements Serializable {
 	
 	private static final long serialVersionUID = -389930569631795779L;
 
-	//The underlying buffer size
-    private static final int QUEUE_SIZE = 10;
+	//The underlying buffer size, power of 2
+    private static final int QUEUE_SIZE = 64;
+    private static final int QUEUE_MASK = QUEUE_SIZE - 1;
+    
+    //number of late packets in row which restarts the stream
+    private static final int MAX_DROPPED_IN_RAW = 5;
+    
+    //number of packets after which playout delay follows jitter estimate
+    private static final int ADAPTATION_PACKETS = 16;
+    
+    //playout delay as multiple of estimated jitter
+    private static final int JITTER_FACTOR = 4;
+    
+    //max playout delay in milliseconds
+    private static final int MAX_DELAY = 200;
+    
     //the underlying buffer
-    private ArrayList<Frame> queue = new ArrayList<Frame>(QUEUE_SIZE);
+    private Frame[] queue = new Frame[QUEUE_SIZE];
+    //extended sequence number of the next frame to play and after the last one received
+    private long head, tail;
+    //number of frames in buffer
+    private int size;
     
     //RTP clock
     private RtpClock rtpClock;
@@ -66,19 +89,23 @@ public class JitterBuffer implements Serializable {
     //allowed jitter
     private long jitterBufferSize;
     
-    //packet arrival dead line measured on RTP clock.
-    //initial value equals to infinity
-    private long arrivalDeadLine = 0;
+    //current playout delay and nominal packet duration in milliseconds
+    private volatile long playoutDelay;
+    private long period = 20;
+    private long lastTimestamp;
+    private long packets;
 
-    //packet arrival dead line measured on RTP clock.
-    //initial value equals to infinity
+    //the number of late packets in raw
     private long droppedInRaw = 0;
     
     //The number of dropped packets
     private int dropCount;
-
-    //known duration of media wich contains in this buffer.
-    private volatile long duration;
+    
+    //statistics
+    private volatile long lateCount;
+    private volatile long lostCount;
+    private volatile long duplicateCount;
+    private volatile long overflowCount;
 
     //buffer's monitor
     private BufferListener listener;
@@ -114,6 +141,7 @@ public class JitterBuffer implements Serializable {
     public JitterBuffer(RtpClock clock, int jitterBufferSize) {
         this.rtpClock = clock;
         this.jitterBufferSize = jitterBufferSize;        
+        this.playoutDelay = jitterBufferSize;
     }
 
     private void initJitter(RtpPacket firstPacket) {
@@ -182,6 +210,52 @@ public class JitterBuffer implements Serializable {
         return dropCount;
     }
     
+    /**
+     * Gets the number of packets arrived after their playout time.
+     * 
+     * @return the number of late packets.
+     */
+    public long getLate() {
+        return lateCount;
+    }
+    
+    /**
+     * Gets the number of packets which have not arrived till their playout time.
+     * 
+     * @return the number of lost packets.
+     */
+    public long getLost() {
+        return lostCount;
+    }
+    
+    /**
+     * Gets the number of packets received more than once.
+     * 
+     * @return the number of duplicate packets.
+     */
+    public long getDuplicates() {
+        return duplicateCount;
+    }
+    
+    /**
+     * Gets the number of frames discarded because buffer was full or
+     * exceeded playout delay.
+     * 
+     * @return the number of discarded frames.
+     */
+    public long getOverflows() {
+        return overflowCount;
+    }
+    
+    /**
+     * Gets the current playout delay.
+     * 
+     * @return the delay in milliseconds.
+     */
+    public long getPlayoutDelay() {
+        return playoutDelay;
+    }
+    
     public boolean bufferInUse()
     {
     	return this.useBuffer;
@@ -206,7 +280,7 @@ public class JitterBuffer implements Serializable {
      *
      * @param packet the packet to accept
      */
-	public void write(RtpPacket packet, RTPFormat format) {
+	public synchronized void write(RtpPacket packet, RTPFormat format) {
 		// checking format
 		if (format == null) {
 			logger.warn("No format specified. Packet dropped!");
@@ -222,6 +296,8 @@ public class JitterBuffer implements Serializable {
 		if (isn == -1) {
 			rtpClock.synchronize(packet.getTimestamp());
 			isn = packet.getSeqNumber();
+			head = isn;
+			tail = isn;
 			initJitter(packet);
 		} else {
 			estimateJitter(packet);
@@ -230,92 +306,102 @@ public class JitterBuffer implements Serializable {
 		// update clock rate
 		rtpClock.setClockRate(this.format.getClockRate());
 
+		// extend sequence number relatively to playout position
+		long seq = head + (short) (packet.getSeqNumber() - head);
+
 		// drop outstanding packets
-		// packet is outstanding if its timestamp of arrived packet is less
-		// then consumer media time
-		if (packet.getTimestamp() < this.arrivalDeadLine) {
-			logger.warn("drop packet: dead line=" + arrivalDeadLine + ", packet time=" + packet.getTimestamp() + ", seq=" + packet.getSeqNumber() + ", payload length=" + packet.getPayloadLength() + ", format=" + this.format.toString());
+		// packet is outstanding if its playout position is already passed
+		if (seq < head) {
+			logger.warn("drop packet: head=" + head + ", seq=" + packet.getSeqNumber() + ", payload length=" + packet.getPayloadLength() + ", format=" + this.format.toString());
 			dropCount++;
+			lateCount++;
 
 			// checking if not dropping too much
 			droppedInRaw++;
-			if (droppedInRaw == QUEUE_SIZE / 2 || queue.size() == 0) {
-				arrivalDeadLine = 0;
+			if (droppedInRaw == MAX_DROPPED_IN_RAW || size == 0) {
+				// stream restarted, continue from this packet
+				reset();
+				head = seq;
+				tail = seq;
 			} else {
 				return;
 			}
 		}
+		droppedInRaw = 0;
+
+		// overflow?
+		// remove oldest frames so packet fits into buffer
+		if (seq - head >= 2 * QUEUE_SIZE) {
+			logger.warn("Sequence jump, reseting jitter buffer!");
+			reset();
+			head = seq;
+			tail = seq;
+		}
+
+		while (seq - head >= QUEUE_SIZE) {
+			Frame oldFrame = queue[(int) head & QUEUE_MASK];
+			if (oldFrame != null) {
+				logger.warn("Buffer overflow!");
+				queue[(int) head & QUEUE_MASK] = null;
+				oldFrame.recycle();
+				size--;
+				dropCount++;
+				overflowCount++;
+			}
+			head++;
+		}
+
+		// check for duplicate packet
+		int index = (int) seq & QUEUE_MASK;
+		if (queue[index] != null) {
+			duplicateCount++;
+			return;
+		}
 
-		Frame f = Memory.allocate(packet.getPayloadLength());
-		// put packet into buffer irrespective of its sequence number
+		Frame f = Memory.allocatePayload(packet.getPayloadLength());
 		f.setHeader(null);
 		f.setSequenceNumber(packet.getSeqNumber());
 		// here time is in milliseconds
 		f.setTimestamp(rtpClock.convertToAbsoluteTime(packet.getTimestamp()));
 		f.setOffset(0);
 		f.setLength(packet.getPayloadLength());
-		packet.getPayload(f.getData(), 0);
+		if (f.isDirect()) {
+			packet.getPayload(f.getBuffer(), 0);
+		} else {
+			packet.getPayload(f.getData(), 0);
+		}
 
 		// set format
 		f.setFormat(this.format.getFormat());
 
-		// make checks only if have packet
-		if (f != null) {
-			droppedInRaw = 0;
-
-			// find correct position to insert a packet
-			// use timestamp since its always positive
-			int currIndex = queue.size() - 1;
-			while (currIndex >= 0 && queue.get(currIndex).getTimestamp() > f.getTimestamp()) {
-				currIndex--;
-			}
-
-			// check for duplicate packet
-			if (currIndex >= 0 && queue.get(currIndex).getSequenceNumber() == f.getSequenceNumber()) {
-				return;
-			}
-
-			queue.add(currIndex + 1, f);
-
-			// recalculate duration of each frame in queue and overall duration
-			// since we could insert the frame in the middle of the queue
-			duration = 0;
-			if (queue.size() > 1) {
-				duration = queue.get(queue.size() - 1).getTimestamp() - queue.get(0).getTimestamp();
-			}
+		queue[index] = f;
+		size++;
 
-			for (int i = 0; i < queue.size() - 1; i++) {
-				// duration measured by wall clock
-				long d = queue.get(i + 1).getTimestamp() - queue.get(i).getTimestamp();
-				// in case of RFC2833 event timestamp remains same
-				queue.get(i).setDuration(d > 0 ? d : 0);
-			}
+		// track nominal packet duration
+		if (seq == tail && packets > 0 && f.getTimestamp() > lastTimestamp) {
+			period = f.getTimestamp() - lastTimestamp;
+		}
 
-			// if overall duration is negative we have some mess here,try to
-			// reset
-			if (duration < 0 && queue.size() > 1) {
-				logger.warn("Something messy happened. Reseting jitter buffer!");
-				reset();
-				return;
-			}
+		if (seq >= tail) {
+			tail = seq + 1;
+			lastTimestamp = f.getTimestamp();
+		}
 
-			// overflow?
-			// only now remove packet if overflow , possibly the same packet we just received
-			if (queue.size() > QUEUE_SIZE) {
-				logger.warn("Buffer overflow!");
-				dropCount++;
-				queue.remove(0).recycle();
-			}
+		// adapt playout delay to network jitter
+		packets++;
+		if (packets > ADAPTATION_PACKETS) {
+			long jitter = getEstimatedJitter() * 1000L / this.format.getClockRate();
+			playoutDelay = Math.max(period, Math.min(MAX_DELAY, JITTER_FACTOR * jitter));
+		}
 
-			// check if this buffer already full
-			if (!ready) {
-				ready = !useBuffer || (duration >= jitterBufferSize && queue.size() > 1);
-				if (ready && listener != null) {
-					listener.onFill();
-				}
+		// check if this buffer already full
+		if (!ready) {
+			ready = !useBuffer || ((tail - head - 1) * period >= playoutDelay && size > 1);
+			if (ready && listener != null) {
+				listener.onFill();
 			}
 		}
-	}     
+	}
 
     /**
      * Polls packet from buffer's head.
@@ -323,24 +409,45 @@ public class JitterBuffer implements Serializable {
      * @param timestamp the media time measured by reader
      * @return the media frame.
      */
-    public Frame read(long timestamp) {
-    	if (queue.size()==0) {
+    public synchronized Frame read(long timestamp) {
+    	if (size == 0) {
     		this.ready = false;
     		return null;
     	}
     	
-    	//extract packet
-    	Frame frame = queue.remove(0);
-    		
+    	// discard media above playout delay
+    	if (packets > ADAPTATION_PACKETS) {
+    		while (size > 2 && (tail - head - 1) * period > 2 * playoutDelay) {
+    			Frame oldFrame = poll();
+    			if (oldFrame != null) {
+    				oldFrame.recycle();
+    				dropCount++;
+    				overflowCount++;
+    			} else {
+    				lostCount++;
+    			}
+    		}
+    	}
+    	
+    	// skip lost packets
+    	Frame frame = poll();
+    	while (frame == null) {
+    		lostCount++;
+    		frame = poll();
+    	}
+    	
     	//buffer empty now? - change ready flag.
-    	if (queue.size() == 0) {
+    	if (size == 0) {
     		this.ready = false;
-    		//arrivalDeadLine = 0;
     		//set it as 1 ms since otherwise will be dropped by pipe
     		frame.setDuration(1);
-    	}    		
-    		
-    	arrivalDeadLine = rtpClock.convertToRtpTime(frame.getTimestamp() + frame.getDuration());
+    	} else {
+    		Frame next = queue[(int) head & QUEUE_MASK];
+    		// duration measured by wall clock
+    		// in case of RFC2833 event timestamp remains same
+    		long d = next != null ? next.getTimestamp() - frame.getTimestamp() : period;
+    		frame.setDuration(d > 0 ? d : 0);
+    	}
     	
     	//convert duration to nanoseconds
     	frame.setDuration(frame.getDuration() * 1000000L);
@@ -349,20 +456,48 @@ public class JitterBuffer implements Serializable {
     	return frame;    	
     }
     
+    /**
+     * Removes frame at playout position.
+     * 
+     * @return the frame or null if packet is missing.
+     */
+    private Frame poll() {
+    	int index = (int) head & QUEUE_MASK;
+    	Frame frame = queue[index];
+    	queue[index] = null;
+    	head++;
+    	if (frame != null) {
+    		size--;
+    	}
+    	return frame;
+    }
+    
     /**
      * Resets buffer.
      */
-    public void reset() {
-    	while(queue.size()>0)
-    		queue.remove(0).recycle();    	
+    public synchronized void reset() {
+    	for (int i = 0; i < queue.length; i++) {
+    		if (queue[i] != null) {
+    			queue[i].recycle();
+    			queue[i] = null;
+    		}
+    	}
+    	size = 0;
+    	tail = head;
     }
     
-    public void restart() {
+    public synchronized void restart() {
     	reset();
     	this.ready=false;
-    	arrivalDeadLine = 0;
     	dropCount=0;
     	droppedInRaw=0;
+    	lateCount=0;
+    	lostCount=0;
+    	duplicateCount=0;
+    	overflowCount=0;
+    	packets=0;
+    	period=20;
+    	playoutDelay=jitterBufferSize;
     	format=null;
     	isn=-1;
     }
@@ -98,6 +98,18 @@ public class LocalDataChannel {
 		return this.oobComponent;
 	}
 
+	/**
+	 * Assigns the key used by sharded schedulers to select the executing core
+	 * to the outputs of the channel, should be the key of the endpoint which
+	 * owns the channel.
+	 * 
+	 * @param affinity the non negative key value.
+	 */
+	public void setAffinity(int affinity) {
+		output.setAffinity(affinity);
+		oobOutput.setAffinity(affinity);
+	}
+
 	public void join(LocalDataChannel otherChannel) throws IOException {
 		if (this.otherChannel != null) {
 			throw new IOException("Channel already joined");
@@ -179,6 +179,23 @@ public class RtpChannel extends MultiplexedChannel implements DtlsListener {
 		this.transmitter.getRtpOutput().setFormats(fmts);
 	}
 	
+	/**
+	 * Assigns the key used by sharded schedulers to select the executing core
+	 * to all tasks of the channel, should be the key of the endpoint which
+	 * owns the channel.
+	 * 
+	 * @param affinity the non negative key value.
+	 */
+	@Override
+	public void setAffinity(int affinity) {
+		super.setAffinity(affinity);
+		this.heartBeat.setAffinity(affinity);
+		this.rtpHandler.getRtpInput().setAffinity(affinity);
+		this.rtpHandler.getDtmfInput().setAffinity(affinity);
+		this.transmitter.getRtpOutput().getAudioOutput().setAffinity(affinity);
+		this.transmitter.getDtmfOutput().getOOBOutput().setAffinity(affinity);
+	}
+	
 	public void setRtpListener(RtpListener listener) {
 		this.rtpListener = listener;
 	}
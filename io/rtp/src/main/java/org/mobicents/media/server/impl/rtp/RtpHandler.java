@@ -22,6 +22,7 @@ package org.mobicents.media.server.impl.rtp;
 
 import java.net.InetSocketAddress;
 import java.nio.ByteBuffer;
+import java.util.Arrays;
 
 import org.apache.log4j.Logger;
 import org.mobicents.media.server.impl.rtcp.RtcpHeader;
@@ -248,25 +249,16 @@ public class RtpHandler implements PacketHandler {
 			return null;
 		}
 		
-		if(this.secure) {
-			// Decode SRTP packet into RTP. WebRTC calls only.
-			byte[] decoded = this.dtlsHandler.decodeRTP(packet, offset, dataLength);
-			if(decoded == null || decoded.length == 0) {
-				logger.warn("SRTP packet is not valid! Dropping packet.");
-				return null;
-			} else {
-				// Transform incoming data directly into an RTP Packet
-				ByteBuffer buffer = this.rtpPacket.getBuffer();
-				buffer.clear();
-				buffer.put(decoded);
-				buffer.flip();
-			}
-		} else {
-			// Transform incoming data directly into an RTP Packet
-			ByteBuffer buffer = this.rtpPacket.getBuffer();
-			buffer.clear();
-			buffer.put(packet, offset, dataLength);
-			buffer.flip();
+		// Transform incoming data directly into an RTP Packet
+		ByteBuffer buffer = this.rtpPacket.getBuffer();
+		buffer.clear();
+		buffer.put(packet, offset, dataLength);
+		buffer.flip();
+
+		// Decode SRTP packet into RTP in place. WebRTC calls only.
+		if(this.secure && !this.dtlsHandler.decodeRTP(buffer)) {
+			logger.warn("SRTP packet is not valid! Dropping packet.");
+			return null;
 		}
 		
 		// Restart jitter buffer for first received packet
@@ -286,8 +278,9 @@ public class RtpHandler implements PacketHandler {
 					// Update statistics for RTCP
 					this.statistics.onRtpReceive(rtpPacket);
 					this.statistics.onRtpSent(rtpPacket);
-					// Return same packet (looping) so it can be transmitted
-					return packet;
+					// Return same packet (looping) so it can be transmitted.
+					// Packet may be a view of the receive buffer so copy it.
+					return Arrays.copyOfRange(packet, offset, offset + dataLength);
 				} else {
 					// Update statistics for RTCP
 					this.statistics.onRtpReceive(rtpPacket);
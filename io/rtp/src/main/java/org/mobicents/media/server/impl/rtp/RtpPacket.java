@@ -299,6 +299,21 @@ public class RtpPacket implements Serializable {
         buffer.get(buff, offset, buffer.limit() - FIXED_HEADER_SIZE);
     }
 
+    /**
+     * Reads the data transported by RTP in a packet into buffer.
+     * 
+     * Position and limit of the target buffer are reset after copy.
+     *
+     * @param buff the target buffer
+     * @param offset the offset in the target buffer
+     */
+    public void getPayload(ByteBuffer buff, int offset) {
+        buffer.position(FIXED_HEADER_SIZE);
+        buff.position(offset);
+        buff.put(buffer);
+        buff.clear();
+    }
+
     /**
      * Encapsulates data into the packet for transmission via RTP.
      *
@@ -312,6 +327,36 @@ public class RtpPacket implements Serializable {
      * @param len the number of bytes
      */
     public void wrap(boolean mark, int payloadType, int seqNumber, long timestamp, long ssrc, byte[] data, int offset, int len) {
+        writeHeader(mark, payloadType, seqNumber, timestamp, ssrc);
+        buffer.put(data, offset, len);
+        buffer.flip();
+        buffer.rewind();
+    }
+
+    /**
+     * Encapsulates data into the packet for transmission via RTP.
+     * 
+     * Position and limit of the data buffer are reset after copy.
+     *
+     * @param mark mark field
+     * @param payloadType payload type field.
+     * @param seqNumber sequence number field
+     * @param timestamp timestamp field
+     * @param ssrc synchronization source field
+     * @param data data buffer
+     * @param offset offset in the data buffer
+     * @param len the number of bytes
+     */
+    public void wrap(boolean mark, int payloadType, int seqNumber, long timestamp, long ssrc, ByteBuffer data, int offset, int len) {
+        writeHeader(mark, payloadType, seqNumber, timestamp, ssrc);
+        data.limit(offset + len).position(offset);
+        buffer.put(data);
+        data.clear();
+        buffer.flip();
+        buffer.rewind();
+    }
+
+    private void writeHeader(boolean mark, int payloadType, int seqNumber, long timestamp, long ssrc) {
         buffer.clear();
         buffer.rewind();
 
@@ -340,10 +385,6 @@ public class RtpPacket implements Serializable {
          buffer.put((byte) ((ssrc & 0x00FF0000) >> 16));
          buffer.put((byte) ((ssrc & 0x0000FF00) >> 8));
          buffer.put((byte) ((ssrc & 0x000000FF)));
-
-         buffer.put(data, offset, len);
-         buffer.flip();
-         buffer.rewind();
     }
 
     @Override
@@ -149,21 +149,11 @@ public class RtpTransmitter {
 			return;
 		}
 		
-		// Secure RTP packet. WebRTC calls only. 
-		// SRTP handler returns null if an error occurs
+		// Secure RTP packet in place. WebRTC calls only. 
 		ByteBuffer buffer = packet.getBuffer();
-		if (this.secure) {
-			byte[] rtpData = new byte[buffer.limit()];
-			buffer.get(rtpData, 0, rtpData.length);
-			byte[] srtpData = this.dtlsHandler.encodeRTP(rtpData, 0, rtpData.length);
-			if(srtpData == null || srtpData.length == 0) {
-				LOGGER.warn("Could not secure RTP packet! Packet dropped.");
-				return;
-			} else {
-				buffer.clear();
-				buffer.put(srtpData);
-				buffer.flip();
-			}
+		if (this.secure && !this.dtlsHandler.encodeRTP(buffer)) {
+			LOGGER.warn("Could not secure RTP packet! Packet dropped.");
+			return;
 		}
 		
 		if(packet != null) {
@@ -240,7 +230,11 @@ public class RtpTransmitter {
 		timestamp = frame.getTimestamp() / 1000000L;
 		// convert to rtp time units
 		timestamp = rtpClock.convertToRtpTime(timestamp);
-		rtpPacket.wrap(false, currentFormat.getID(), this.sequenceNumber++, timestamp, this.statistics.getSsrc(), frame.getData(), frame.getOffset(), frame.getLength());
+		if (frame.isDirect()) {
+			rtpPacket.wrap(false, currentFormat.getID(), this.sequenceNumber++, timestamp, this.statistics.getSsrc(), frame.getBuffer(), frame.getOffset(), frame.getLength());
+		} else {
+			rtpPacket.wrap(false, currentFormat.getID(), this.sequenceNumber++, timestamp, this.statistics.getSsrc(), frame.getData(), frame.getOffset(), frame.getLength());
+		}
 
 		frame.recycle();
 		try {
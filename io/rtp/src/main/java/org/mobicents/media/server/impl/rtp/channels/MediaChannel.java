@@ -361,6 +361,18 @@ public abstract class MediaChannel {
 		this.rtpListener = listener;
 	}
 
+	/**
+	 * Assigns the key used by sharded schedulers to select the executing core
+	 * to all tasks of the RTP component.
+	 * 
+	 * @param affinity
+	 *            The key of the endpoint which owns the channel
+	 */
+	public void setAffinity(int affinity) {
+		this.rtpChannel.setAffinity(affinity);
+		this.rtcpChannel.setAffinity(affinity);
+	}
+
 	/**
 	 * Sets the input Digital Signaling Processor (DSP) of the RTP component.
 	 * 
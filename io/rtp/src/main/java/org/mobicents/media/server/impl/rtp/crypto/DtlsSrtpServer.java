@@ -23,6 +23,7 @@ package org.mobicents.media.server.impl.rtp.crypto;
 import java.io.IOException;
 import java.util.Hashtable;
 import java.util.Vector;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.log4j.Level;
 import org.apache.log4j.Logger;
@@ -30,7 +31,10 @@ import org.bouncycastle.asn1.x509.Certificate;
 import org.bouncycastle.crypto.tls.AlertLevel;
 import org.bouncycastle.crypto.tls.CertificateRequest;
 import org.bouncycastle.crypto.tls.ClientCertificateType;
+import org.bouncycastle.crypto.params.AsymmetricKeyParameter;
+import org.bouncycastle.crypto.tls.DefaultTlsEncryptionCredentials;
 import org.bouncycastle.crypto.tls.DefaultTlsServer;
+import org.bouncycastle.crypto.tls.DefaultTlsSignerCredentials;
 import org.bouncycastle.crypto.tls.ExporterLabel;
 import org.bouncycastle.crypto.tls.HashAlgorithm;
 import org.bouncycastle.crypto.tls.ProtocolVersion;
@@ -49,6 +53,8 @@ import org.bouncycastle.crypto.tls.UseSRTPData;
  * The implementation follows the advise from Pierrick Grasland and Tim Panton on this forum thread:
  * http://bouncy-castle.1462172.n4.nabble.com/DTLS-SRTP-with-bouncycastle-1-49-td4656286.html
  * 
+ * Server certificate chain, private key and fingerprints are loaded once and
+ * shared by all server instances.
  * 
  * @author Ivelin Ivanov (ivelin.ivanov@telestax.com)
  * @author Henrique Rosa (henrique.rosa@telestax.com)
@@ -61,6 +67,11 @@ public class DtlsSrtpServer extends DefaultTlsServer {
     // Certificate resources
 	private static final String[] CERT_RESOURCES = new String[] { "x509-server.pem", "x509-ca.pem" };
 	private static final String KEY_RESOURCE = "x509-server-key.pem";
+
+	// Credentials shared by all servers, loaded on first use
+	private static volatile org.bouncycastle.crypto.tls.Certificate certificateChain;
+	private static volatile AsymmetricKeyParameter privateKey;
+	private static final ConcurrentHashMap<String, String> FINGERPRINTS = new ConcurrentHashMap<String, String>();
 	
 	private String hashFunction = "";
     
@@ -123,7 +134,7 @@ public class DtlsSrtpServer extends DefaultTlsServer {
     }
 
     protected TlsEncryptionCredentials getRSAEncryptionCredentials() throws IOException {
-        return TlsUtils.loadEncryptionCredentials(context, CERT_RESOURCES, KEY_RESOURCE);
+        return new DefaultTlsEncryptionCredentials(context, getCertificateChain(), getPrivateKey());
     }
 
     @SuppressWarnings("unchecked")
@@ -147,7 +158,35 @@ public class DtlsSrtpServer extends DefaultTlsServer {
                 return null;
             }
         }
-        return TlsUtils.loadSignerCredentials(context, new String[]{"x509-server.pem", "x509-ca.pem"}, "x509-server-key.pem", signatureAndHashAlgorithm);
+        return new DefaultTlsSignerCredentials(context, getCertificateChain(), getPrivateKey(), signatureAndHashAlgorithm);
+    }
+
+    private static org.bouncycastle.crypto.tls.Certificate getCertificateChain() throws IOException {
+    	org.bouncycastle.crypto.tls.Certificate chain = certificateChain;
+    	if (chain == null) {
+    		synchronized (DtlsSrtpServer.class) {
+    			chain = certificateChain;
+    			if (chain == null) {
+    				chain = TlsUtils.loadCertificateChain(CERT_RESOURCES);
+    				certificateChain = chain;
+    			}
+    		}
+    	}
+    	return chain;
+    }
+
+    private static AsymmetricKeyParameter getPrivateKey() throws IOException {
+    	AsymmetricKeyParameter key = privateKey;
+    	if (key == null) {
+    		synchronized (DtlsSrtpServer.class) {
+    			key = privateKey;
+    			if (key == null) {
+    				key = TlsUtils.loadPrivateKeyResource(KEY_RESOURCE);
+    				privateKey = key;
+    			}
+    		}
+    	}
+    	return key;
     }
     
     @SuppressWarnings("unchecked")
@@ -283,9 +322,13 @@ public class DtlsSrtpServer extends DefaultTlsServer {
 	public String generateFingerprint(String hashFunction) {
 		try {
 			this.hashFunction = hashFunction;
-			org.bouncycastle.crypto.tls.Certificate chain = TlsUtils.loadCertificateChain(CERT_RESOURCES);
-			Certificate certificate = chain.getCertificateAt(0);
-			return TlsUtils.fingerprint(this.hashFunction, certificate);
+			String fingerprint = FINGERPRINTS.get(hashFunction);
+			if (fingerprint == null) {
+				Certificate certificate = getCertificateChain().getCertificateAt(0);
+				fingerprint = TlsUtils.fingerprint(hashFunction, certificate);
+				FINGERPRINTS.putIfAbsent(hashFunction, fingerprint);
+			}
+			return fingerprint;
 		} catch (IOException e) {
 			LOGGER.error("Could not get local fingerprint: "+ e.getMessage());
 			return "";
@@ -7,6 +7,7 @@
  */
 package org.mobicents.media.server.impl.rtp.crypto;
 
+import java.nio.ByteBuffer;
 
 /**
  * Encapsulate the concept of packet transformation. Given a packet,
@@ -65,6 +66,29 @@ public interface PacketTransformer {
 	 */
 	public byte[] reverseTransform(byte[] pkt, int offset, int length);
 
+	/**
+	 * Transforms a non-secure packet in place. Authentication tag is appended
+	 * to the packet, so buffer should have enough spare capacity.
+	 * 
+	 * @param buffer
+	 *            The buffer holding the packet from index 0 to its limit. On
+	 *            return limit is set to the end of transformed packet and
+	 *            position to 0.
+	 * @return Whether the packet was transformed
+	 */
+	public boolean transform(ByteBuffer buffer);
+
+	/**
+	 * Reverse-transforms a specific packet in place.
+	 * 
+	 * @param buffer
+	 *            The buffer holding the packet from index 0 to its limit. On
+	 *            return limit is set to the end of restored packet and
+	 *            position to 0.
+	 * @return Whether the packet was successfully restored
+	 */
+	public boolean reverseTransform(ByteBuffer buffer);
+
 	/**
 	 * Close the transformer and underlying transform engine.
 	 * 
@@ -45,11 +45,17 @@ public class RawPacket {
      */
     private ByteBuffer buffer;
 
+    /**
+     * Buffer owned by this packet, used when data is copied in
+     */
+    private ByteBuffer ownBuffer;
+
     /**
      * Initializes a new empty <tt>RawPacket</tt> instance.
      */
     public RawPacket() {
-    	this.buffer = ByteBuffer.allocateDirect(RtpPacket.RTP_PACKET_MAX_SIZE);
+    	this.ownBuffer = ByteBuffer.allocateDirect(RtpPacket.RTP_PACKET_MAX_SIZE);
+    	this.buffer = this.ownBuffer;
     }
 
     /**
@@ -64,11 +70,12 @@ public class RawPacket {
      * constitute the actual data to be represented by the new instance
      */
     public RawPacket(byte[] data, int offset, int length) {
-    	this.buffer = ByteBuffer.allocateDirect(RtpPacket.RTP_PACKET_MAX_SIZE);
+    	this.ownBuffer = ByteBuffer.allocateDirect(RtpPacket.RTP_PACKET_MAX_SIZE);
         wrap(data, offset, length);
     }
     
     public void wrap(byte[] data, int offset, int length) {
+    	this.buffer = this.ownBuffer;
     	this.buffer.clear();
     	this.buffer.rewind();
     	this.buffer.put(data, offset, length);
@@ -76,6 +83,18 @@ public class RawPacket {
     	this.buffer.rewind();
     }
     
+    /**
+     * Uses specified buffer as content of this packet, so packet is processed
+     * in place without copies. Packet data starts at index 0 of the buffer and
+     * ends at its limit.
+     * 
+     * @param buffer the buffer holding the packet.
+     */
+    public void wrap(ByteBuffer buffer) {
+    	this.buffer = buffer;
+    	this.buffer.rewind();
+    }
+    
     public byte[] getData() {
     	this.buffer.rewind();
     	byte[] data = new byte[this.buffer.limit()];
@@ -292,6 +311,9 @@ public class RawPacket {
 			newBuffer.put(buffer);
 			newBuffer.limit(newLen);
 			// switch to new buffer
+			if (buffer == ownBuffer) {
+				ownBuffer = newBuffer;
+			}
 			buffer = newBuffer;
 		}
 	}
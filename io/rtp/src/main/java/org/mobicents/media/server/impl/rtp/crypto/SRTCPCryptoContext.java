@@ -457,8 +457,13 @@ public class SRTCPCryptoContext {
     	ByteBuffer buf = pkt.getBuffer();
     	buf.rewind();
     	int len = buf.remaining();
-    	buf.get(tempBuffer, 0, len);
-        mac.update(tempBuffer, 0, len);
+    	if (buf.hasArray()) {
+    		// authenticate heap packet in place
+    		mac.update(buf.array(), buf.arrayOffset(), len);
+    	} else {
+    		buf.get(tempBuffer, 0, len);
+    		mac.update(tempBuffer, 0, len);
+    	}
         rbStore[0] = (byte) (index >> 24);
         rbStore[1] = (byte) (index >> 16);
         rbStore[2] = (byte) (index >> 8);
@@ -7,6 +7,7 @@
  */
 package org.mobicents.media.server.impl.rtp.crypto;
 
+import java.nio.ByteBuffer;
 import java.util.Hashtable;
 import java.util.Iterator;
 import java.util.Map;
@@ -68,21 +69,26 @@ public class SRTCPTransformer implements PacketTransformer {
     	// Wrap the data into raw packet for readable format
     	this.packet.wrap(pkt, offset, length);
     	
-    	// Associate the packet with its encryption context
-        long ssrc = this.packet.getRTCPSSRC();
-        SRTCPCryptoContext context = contexts.get(ssrc);
-
-        if (context == null) {
-            context = forwardEngine.getDefaultContextControl().deriveContext(ssrc);
-            context.deriveSrtcpKeys();
-            contexts.put(ssrc, context);
-        }
-        
         // Secure packet into SRTCP format
-        context.transformPacket(packet);
+        getForwardContext().transformPacket(packet);
         return packet.getData();
     }
 
+    public boolean transform(ByteBuffer buffer) {
+    	// Process packet directly in its buffer
+    	this.packet.wrap(buffer);
+    	SRTCPCryptoContext context = getForwardContext();
+    	
+    	// Index and authentication tag are appended in place
+    	if (buffer.capacity() - buffer.limit() < 4 + context.getAuthTagLength()) {
+    		return false;
+    	}
+    	
+    	context.transformPacket(packet);
+    	buffer.rewind();
+    	return true;
+    }
+
     public byte[] reverseTransform(byte[] pkt) {
     	return reverseTransform(pkt, 0, pkt.length);
     }
@@ -91,7 +97,41 @@ public class SRTCPTransformer implements PacketTransformer {
     	// wrap data into raw packet for readable format
     	this.packet.wrap(pkt, offset, length);
     	
-    	// Associate the packet with its encryption context
+        // Decode packet to RTCP format
+        boolean reversed = getReverseContext().reverseTransformPacket(packet);
+        if(reversed) {
+        	return packet.getData();
+        }
+        return null;
+    }
+
+    public boolean reverseTransform(ByteBuffer buffer) {
+    	// Process packet directly in its buffer
+    	this.packet.wrap(buffer);
+    	boolean reversed = getReverseContext().reverseTransformPacket(packet);
+    	buffer.rewind();
+    	return reversed;
+    }
+
+    /**
+     * Associates current packet with its encryption context.
+     */
+    private SRTCPCryptoContext getForwardContext() {
+        long ssrc = this.packet.getRTCPSSRC();
+        SRTCPCryptoContext context = contexts.get(ssrc);
+
+        if (context == null) {
+            context = forwardEngine.getDefaultContextControl().deriveContext(ssrc);
+            context.deriveSrtcpKeys();
+            contexts.put(ssrc, context);
+        }
+        return context;
+    }
+
+    /**
+     * Associates current packet with its decryption context.
+     */
+    private SRTCPCryptoContext getReverseContext() {
         long ssrc = this.packet.getRTCPSSRC();
         SRTCPCryptoContext context = this.contexts.get(ssrc);
 
@@ -100,13 +140,7 @@ public class SRTCPTransformer implements PacketTransformer {
             context.deriveSrtcpKeys();
             contexts.put(new Long(ssrc), context);
         }
-        
-        // Decode packet to RTCP format
-        boolean reversed = context.reverseTransformPacket(packet);
-        if(reversed) {
-        	return packet.getData();
-        }
-        return null;
+        return context;
     }
 
     /**
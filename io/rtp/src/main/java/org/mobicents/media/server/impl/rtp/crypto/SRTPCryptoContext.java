@@ -8,8 +8,10 @@
 package org.mobicents.media.server.impl.rtp.crypto;
 
 import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
 import java.util.Arrays;
 
+import org.apache.log4j.Logger;
 import org.bouncycastle.crypto.BlockCipher;
 import org.bouncycastle.crypto.Mac;
 import org.bouncycastle.crypto.digests.SHA1Digest;
@@ -41,9 +43,23 @@ import org.mobicents.media.server.impl.rtp.RtpPacket;
  * automatically using some key management protocol, such as MIKEY (RFC3830),
  * SDES (RFC4568) or Phil Zimmermann's ZRTP protocol (RFC6189).
  * 
+ * AES-CM encryption and HMAC-SHA1 authentication of packets may be done by
+ * ciphers of JDK security providers instead of BouncyCastle engines. JDK
+ * ciphers are selected by {@value #JCE_PROPERTY} system property or with
+ * {@link #setJceEnabled(boolean)}, key derivation always uses BouncyCastle.
+ * 
  * @author Bing SU (nova.su@gmail.com)
  */
 public class SRTPCryptoContext {
+	
+	/**
+	 * System property which enables JDK ciphers for new contexts
+	 */
+	public static final String JCE_PROPERTY = "mms.srtp.jce";
+	
+	private static volatile boolean jceEnabled = Boolean.getBoolean(JCE_PROPERTY);
+	
+	private static final Logger logger = Logger.getLogger(SRTPCryptoContext.class);
 	/**
 	 * The replay check windows size
 	 */
@@ -139,6 +155,12 @@ public class SRTPCryptoContext {
 	 */
 	private final SRTPCipherCTR cipherCtr = new SRTPCipherCTR();
 
+	/**
+	 * JDK ciphers used instead of cipher and mac, null if not enabled
+	 */
+	private SRTPCipherJCE cipherJce = null;
+	private final boolean useJce;
+
 	/**
 	 * Temp store.
 	 */
@@ -182,6 +204,7 @@ public class SRTPCryptoContext {
 		seqNumSet = false;
 		policy = null;
 		tagStore = null;
+		useJce = false;
 	}
 
 	/**
@@ -271,6 +294,39 @@ public class SRTPCryptoContext {
 		default:
 			tagStore = null;
 		}
+
+		useJce = jceEnabled
+				&& (policy.getEncType() == SRTPPolicy.NULL_ENCRYPTION || policy.getEncType() == SRTPPolicy.AESCM_ENCRYPTION)
+				&& (policy.getAuthType() == SRTPPolicy.NULL_AUTHENTICATION || policy.getAuthType() == SRTPPolicy.HMACSHA1_AUTHENTICATION);
+	}
+
+	/**
+	 * Selects ciphers used by crypto contexts created afterwards.
+	 * 
+	 * @param enabled
+	 *            true to use JDK ciphers for AES-CM and HMAC-SHA1, false to use
+	 *            BouncyCastle engines
+	 */
+	public static void setJceEnabled(boolean enabled) {
+		jceEnabled = enabled;
+	}
+
+	/**
+	 * Checks whether new crypto contexts use JDK ciphers.
+	 * 
+	 * @return true if JDK ciphers are selected
+	 */
+	public static boolean isJceEnabled() {
+		return jceEnabled;
+	}
+
+	/**
+	 * Checks whether this context processes packets with JDK ciphers.
+	 * 
+	 * @return true if JDK ciphers are used
+	 */
+	public boolean isJceUsed() {
+		return cipherJce != null;
 	}
 
 	/**
@@ -480,7 +536,11 @@ public class SRTPCryptoContext {
 		final int payloadOffset = pkt.getHeaderLength();
 		final int payloadLength = pkt.getPayloadLength();
 
-		cipherCtr.process(cipher, pkt.getBuffer(), payloadOffset, payloadLength, ivStore);
+		if (cipherJce != null) {
+			cipherJce.process(pkt.getBuffer(), payloadOffset, payloadLength, ivStore);
+		} else {
+			cipherCtr.process(cipher, pkt.getBuffer(), payloadOffset, payloadLength, ivStore);
+		}
 	}
 
 	/**
@@ -493,8 +553,9 @@ public class SRTPCryptoContext {
 		// 11 bytes of the RTP header are the 11 bytes of the iv
 		// the first byte of the RTP header is not used.
 		ByteBuffer buf = pkt.getBuffer();
-		buf.compact();
-		buf.get(ivStore, 0, 12);
+		for (int i = 1; i < 12; i++) {
+			ivStore[i] = buf.get(i);
+		}
 		ivStore[0] = 0;
 
 		// set the ROC in network order into IV
@@ -520,15 +581,26 @@ public class SRTPCryptoContext {
 	 *            Roll-Over-Counter
 	 */
 	private void authenticatePacketHMCSHA1(RawPacket pkt, int rocIn) {
-		ByteBuffer buf = pkt.getBuffer();
-		buf.rewind();
-		int len = buf.remaining();
-		buf.get(tempBuffer, 0, len);
-		mac.update(tempBuffer, 0, len);
 		rbStore[0] = (byte) (rocIn >> 24);
 		rbStore[1] = (byte) (rocIn >> 16);
 		rbStore[2] = (byte) (rocIn >> 8);
 		rbStore[3] = (byte) rocIn;
+
+		ByteBuffer buf = pkt.getBuffer();
+		if (cipherJce != null) {
+			cipherJce.authenticate(buf, rbStore, tagStore);
+			return;
+		}
+
+		buf.rewind();
+		int len = buf.remaining();
+		if (buf.hasArray()) {
+			// authenticate heap packet in place
+			mac.update(buf.array(), buf.arrayOffset(), len);
+		} else {
+			buf.get(tempBuffer, 0, len);
+			mac.update(tempBuffer, 0, len);
+		}
 		mac.update(rbStore, 0, rbStore.length);
 		mac.doFinal(tagStore, 0);
 	}
@@ -634,6 +706,15 @@ public class SRTPCryptoContext {
 				break;
 			}
 		}
+
+		// JDK ciphers get session keys before they are cleared
+		if (useJce) {
+			try {
+				cipherJce = new SRTPCipherJCE(encKey, authKey);
+			} catch (GeneralSecurityException e) {
+				logger.warn("JDK ciphers are not available, using BouncyCastle engines", e);
+			}
+		}
 		Arrays.fill(authKey, (byte) 0);
 
 		// compute the session salt
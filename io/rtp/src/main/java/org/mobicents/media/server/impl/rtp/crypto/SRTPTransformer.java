@@ -7,6 +7,7 @@
  */
 package org.mobicents.media.server.impl.rtp.crypto;
 
+import java.nio.ByteBuffer;
 import java.util.Hashtable;
 
 import org.apache.log4j.Logger;
@@ -73,20 +74,25 @@ public class SRTPTransformer implements PacketTransformer {
 	public byte[] transform(byte[] pkt, int offset, int length) {
 		// Updates the contents of raw packet with new incoming packet 
 		this.rawPacket.wrap(pkt, offset, length);
-		
-		// Associate packet to a crypto context
-		long ssrc = rawPacket.getSSRC();
-		SRTPCryptoContext context = contexts.get(ssrc);
 
-		if (context == null) {
-			context = forwardEngine.getDefaultContext().deriveContext(ssrc, 0, 0);
-			context.deriveSrtpKeys(0);
-			contexts.put(ssrc, context);
+		// Transform RTP packet into SRTP
+		getForwardContext().transformPacket(this.rawPacket);
+		return this.rawPacket.getData();
+	}
+
+	public boolean transform(ByteBuffer buffer) {
+		// Process packet directly in its buffer
+		this.rawPacket.wrap(buffer);
+		SRTPCryptoContext context = getForwardContext();
+
+		// Authentication tag is appended in place
+		if (buffer.capacity() - buffer.limit() < context.getAuthTagLength()) {
+			return false;
 		}
 
-		// Transform RTP packet into SRTP
 		context.transformPacket(this.rawPacket);
-		return this.rawPacket.getData();
+		buffer.rewind();
+		return true;
 	}
 
 	/**
@@ -104,8 +110,42 @@ public class SRTPTransformer implements PacketTransformer {
 	public byte[] reverseTransform(byte[] pkt, int offset, int length) {
 		// Wrap data into the raw packet for readable format
 		this.rawPacket.wrap(pkt, offset, length);
-		
-		// Associate packet to a crypto context
+
+		boolean reversed = getReverseContext().reverseTransformPacket(this.rawPacket);
+		if(reversed) {
+			return this.rawPacket.getData();
+		}
+		return null;
+	}
+
+	public boolean reverseTransform(ByteBuffer buffer) {
+		// Process packet directly in its buffer
+		this.rawPacket.wrap(buffer);
+		boolean reversed = getReverseContext().reverseTransformPacket(this.rawPacket);
+		buffer.rewind();
+		return reversed;
+	}
+
+	/**
+	 * Associates current packet to a crypto context used for transformation.
+	 */
+	private SRTPCryptoContext getForwardContext() {
+		long ssrc = this.rawPacket.getSSRC();
+		SRTPCryptoContext context = contexts.get(ssrc);
+
+		if (context == null) {
+			context = forwardEngine.getDefaultContext().deriveContext(ssrc, 0, 0);
+			context.deriveSrtpKeys(0);
+			contexts.put(ssrc, context);
+		}
+		return context;
+	}
+
+	/**
+	 * Associates current packet to a crypto context used for reverse
+	 * transformation.
+	 */
+	private SRTPCryptoContext getReverseContext() {
 		long ssrc = this.rawPacket.getSSRC();
 		SRTPCryptoContext context = this.contexts.get(ssrc);
 		if (context == null) {
@@ -113,12 +153,7 @@ public class SRTPTransformer implements PacketTransformer {
 			context.deriveSrtpKeys(this.rawPacket.getSequenceNumber());
 			contexts.put(ssrc, context);
 		}
-
-		boolean reversed = context.reverseTransformPacket(this.rawPacket);
-		if(reversed) {
-			return this.rawPacket.getData();
-		}
-		return null;
+		return context;
 	}
 
 	/**
@@ -0,0 +1,227 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2014, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ *
+ */
+package org.mobicents.media.server.impl.rtp.sdp;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.mobicents.media.server.impl.rtp.channels.AudioChannel;
+import org.mobicents.media.server.io.sdp.MediaProfile;
+import org.mobicents.media.server.spi.format.AudioFormat;
+
+/**
+ * Precompiled text of a media description.
+ * <p>
+ * Lines that only depend on the media type, profile, negotiated formats and
+ * whether rtcp-mux, ICE and DTLS are used are rendered once and shared by all
+ * channels with the same setup. Values that change per channel are left as
+ * slots and written by a {@link SlotWriter}.
+ * </p>
+ *
+ */
+public class MediaDescriptionTemplate {
+
+	public static final int ADDRESS = 0;
+	public static final int PORT = 1;
+	public static final int RTCP_ADDRESS = 2;
+	public static final int RTCP_PORT = 3;
+	public static final int ICE_UFRAG = 4;
+	public static final int ICE_PWD = 5;
+	public static final int CANDIDATES = 6;
+	public static final int FINGERPRINT = 7;
+	public static final int SSRC = 8;
+	public static final int CNAME = 9;
+
+	private static final int MAX_TEMPLATES = 128;
+	private static final ConcurrentHashMap<String, MediaDescriptionTemplate> TEMPLATES = new ConcurrentHashMap<String, MediaDescriptionTemplate>();
+
+	// literals[i] precedes slots[i], last literal closes the description
+	private final String[] literals;
+	private final int[] slots;
+
+	private MediaDescriptionTemplate(String[] literals, int[] slots) {
+		this.literals = literals;
+		this.slots = slots;
+	}
+
+	/**
+	 * Gets the template of a media description, compiling it on first use.
+	 *
+	 * @param mediaType
+	 *            The type of media
+	 * @param profile
+	 *            The media profile
+	 * @param formats
+	 *            The negotiated formats
+	 * @param rtcpMux
+	 *            Whether RTCP is multiplexed with RTP
+	 * @param ice
+	 *            Whether ICE attributes are present
+	 * @param dtls
+	 *            Whether DTLS attributes are present
+	 * @return The compiled template
+	 */
+	public static MediaDescriptionTemplate getTemplate(String mediaType, MediaProfile profile, RTPFormats formats,
+			boolean rtcpMux, boolean ice, boolean dtls) {
+		if (!AudioChannel.MEDIA_TYPE.equals(mediaType)) {
+			throw new IllegalArgumentException("Media type " + mediaType + " not supported.");
+		}
+
+		StringBuilder key = new StringBuilder(64);
+		key.append(mediaType).append(' ').append(profile.getProfile())
+				.append(rtcpMux ? " mux" : "").append(ice ? " ice" : "").append(dtls ? " dtls" : "");
+		formats.rewind();
+		while (formats.hasMore()) {
+			RTPFormat f = formats.next();
+			AudioFormat format = (AudioFormat) f.getFormat();
+			key.append(' ').append(f.getID()).append(':').append(format.getName()).append('/')
+					.append(f.getClockRate()).append('/').append(format.getChannels());
+		}
+
+		String id = key.toString();
+		MediaDescriptionTemplate template = TEMPLATES.get(id);
+		if (template == null) {
+			template = compile(mediaType, profile, formats, rtcpMux, ice, dtls);
+			if (TEMPLATES.size() >= MAX_TEMPLATES) {
+				// Codec sets are bounded by configuration, this is only a safety net
+				TEMPLATES.clear();
+			}
+			MediaDescriptionTemplate existing = TEMPLATES.putIfAbsent(id, template);
+			if (existing != null) {
+				template = existing;
+			}
+		}
+		return template;
+	}
+
+	private static MediaDescriptionTemplate compile(String mediaType, MediaProfile profile, RTPFormats formats,
+			boolean rtcpMux, boolean ice, boolean dtls) {
+		Compiler compiler = new Compiler();
+
+		compiler.append("m=").append(mediaType).append(" ").slot(PORT).append(" ").append(profile.getProfile());
+		formats.rewind();
+		while (formats.hasMore()) {
+			compiler.append(" ").append(formats.next().getID());
+		}
+
+		compiler.append("\nc=IN IP4 ").slot(ADDRESS);
+		compiler.append("\na=sendrecv");
+		compiler.append("\na=rtcp:").slot(RTCP_PORT).append(" IN IP4 ").slot(RTCP_ADDRESS);
+		if (rtcpMux) {
+			compiler.append("\na=rtcp-mux");
+		}
+		compiler.append("\na=ptime:20");
+
+		if (ice) {
+			compiler.append("\na=ice-ufrag:").slot(ICE_UFRAG);
+			compiler.append("\na=ice-pwd:").slot(ICE_PWD);
+			compiler.slot(CANDIDATES);
+		}
+
+		formats.rewind();
+		while (formats.hasMore()) {
+			RTPFormat f = formats.next();
+			AudioFormat format = (AudioFormat) f.getFormat();
+			compiler.append("\na=rtpmap:").append(f.getID()).append(" ").append(format.getName().toString())
+					.append("/").append(f.getClockRate());
+			if (format.getChannels() > 1) {
+				compiler.append("/").append(format.getChannels());
+			}
+		}
+
+		if (dtls) {
+			compiler.append("\na=setup:passive");
+			compiler.append("\na=fingerprint:").slot(FINGERPRINT);
+		}
+
+		compiler.append("\na=ssrc:").slot(SSRC).append(" cname:").slot(CNAME);
+		return compiler.build();
+	}
+
+	/**
+	 * Writes the media description.
+	 *
+	 * @param out
+	 *            The buffer to write to
+	 * @param writer
+	 *            The writer of per channel values
+	 */
+	public void write(StringBuilder out, SlotWriter writer) {
+		for (int i = 0; i < this.slots.length; i++) {
+			out.append(this.literals[i]);
+			writer.write(this.slots[i], out);
+		}
+		out.append(this.literals[this.slots.length]);
+	}
+
+	/**
+	 * Writes values of a media description which are not part of the
+	 * template.
+	 */
+	public interface SlotWriter {
+
+		/**
+		 * Writes the value of a slot.
+		 *
+		 * @param slot
+		 *            The slot to be written
+		 * @param out
+		 *            The buffer to write to
+		 */
+		void write(int slot, StringBuilder out);
+
+	}
+
+	private static class Compiler {
+
+		private final StringBuilder literal = new StringBuilder(256);
+		private final List<String> literals = new ArrayList<String>();
+		private final List<Integer> slots = new ArrayList<Integer>();
+
+		public Compiler append(String value) {
+			this.literal.append(value);
+			return this;
+		}
+
+		public Compiler append(int value) {
+			this.literal.append(value);
+			return this;
+		}
+
+		public Compiler slot(int slot) {
+			this.literals.add(this.literal.toString());
+			this.slots.add(slot);
+			this.literal.setLength(0);
+			return this;
+		}
+
+		public MediaDescriptionTemplate build() {
+			this.literals.add(this.literal.toString());
+			int[] slotArray = new int[this.slots.size()];
+			for (int i = 0; i < slotArray.length; i++) {
+				slotArray[i] = this.slots.get(i);
+			}
+			return new MediaDescriptionTemplate(this.literals.toArray(new String[this.literals.size()]), slotArray);
+		}
+
+	}
+
+}
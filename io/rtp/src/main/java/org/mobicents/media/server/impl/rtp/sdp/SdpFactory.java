@@ -98,6 +98,68 @@ public class SdpFactory {
 		return sd;
 	}
 	
+	/**
+	 * Writes a session description to be sent to a remote peer.
+	 * <p>
+	 * Produces the same description as {@link #buildSdp(String, String, MediaChannel...)} without building the
+	 * object graph. Media descriptions are written from precompiled templates.
+	 * </p>
+	 * 
+	 * @param out
+	 *            The buffer to write the description to.
+	 * @param localAddress
+	 *            The local address of the media server.
+	 * @param externalAddress
+	 *            The public address of the media server.
+	 * @param channels
+	 *            The media channels to be included in the session description.
+	 */
+	public static void writeSdp(StringBuilder out, String localAddress, String externalAddress, MediaChannel... channels) {
+		ChannelValues[] values = new ChannelValues[channels.length];
+		String connectionAddress = localAddress;
+		boolean ice = false;
+		for (int i = 0; i < channels.length; i++) {
+			values[i] = new ChannelValues(channels[i]);
+			if (values[i].ice) {
+				// Fix session-level attribute
+				connectionAddress = values[i].address;
+				ice = true;
+			}
+		}
+
+		// Session-level fields
+		String originAddress = (externalAddress == null || externalAddress.isEmpty()) ? localAddress : externalAddress;
+		out.append("v=0\no=- ").append(System.currentTimeMillis()).append(" 1 IN IP4 ").append(originAddress);
+		out.append("\ns=Mobicents Media Server");
+		out.append("\nc=IN IP4 ").append(connectionAddress);
+		out.append("\nt=0 0");
+		if (ice) {
+			out.append("\na=ice-lite");
+		}
+
+		// Media Descriptions
+		for (ChannelValues value : values) {
+			out.append("\n");
+			value.template.write(out, value);
+		}
+	}
+
+	/**
+	 * Writes a rejected media description from an SDP offer.
+	 * 
+	 * @param out
+	 *            The buffer holding the SDP answer
+	 * @param media
+	 *            The offered media description to be rejected
+	 */
+	public static void writeRejectedMedia(StringBuilder out, MediaDescriptionField media) {
+		out.append("\nm=").append(media.getMedia()).append(" 0 ").append(media.getProtocol());
+		int[] payloadTypes = media.getPayloadTypes();
+		for (int payloadType : payloadTypes) {
+			out.append(" ").append(payloadType);
+		}
+	}
+
 	/**
 	 * Rejects a media description from an SDP offer.
 	 * 
@@ -228,6 +290,125 @@ public class SdpFactory {
 		return md;
 	}
 	
+	private static void writeCandidates(StringBuilder out, List<LocalCandidateWrapper> candidates) {
+		for (LocalCandidateWrapper wrapper : candidates) {
+			IceCandidate candidate = wrapper.getCandidate();
+			String candidateType = candidate.getType().getDescription();
+			out.append("\na=candidate:").append(candidate.getFoundation())
+					.append(" ").append(candidate.getComponentId())
+					.append(" ").append(candidate.getProtocol().getDescription())
+					.append(" ").append(candidate.getPriority())
+					.append(" ").append(candidate.getHostString())
+					.append(" ").append(candidate.getPort())
+					.append(" typ ").append(candidateType);
+			if (!CandidateAttribute.TYP_HOST.equals(candidateType)) {
+				out.append(" raddr ").append(candidate.getBase().getHostString())
+						.append(" rport ").append(candidate.getBase().getPort());
+			}
+			out.append(" generation 0");
+		}
+	}
+
+	/**
+	 * Values of a media channel written into the slots of its template.
+	 */
+	private static class ChannelValues implements MediaDescriptionTemplate.SlotWriter {
+
+		private final MediaChannel channel;
+		private final MediaDescriptionTemplate template;
+		private final boolean ice;
+
+		private String address;
+		private int port;
+		private String rtcpAddress;
+		private int rtcpPort;
+		private List<LocalCandidateWrapper> rtpCandidates;
+		private List<LocalCandidateWrapper> rtcpCandidates;
+
+		public ChannelValues(MediaChannel channel) {
+			this.channel = channel;
+			this.ice = channel.isIceEnabled();
+			boolean rtcpMux = channel.isRtcpMux();
+			boolean dtls = channel.isDtlsEnabled();
+			MediaProfile profile = dtls ? MediaProfile.RTP_SAVPF : MediaProfile.RTP_AVP;
+			this.template = MediaDescriptionTemplate.getTemplate(channel.getMediaType(), profile, channel.getFormats(),
+					rtcpMux, this.ice, dtls);
+
+			this.address = channel.getRtpAddress();
+			this.port = channel.getRtpPort();
+			this.rtcpAddress = channel.getRtcpAddress();
+			this.rtcpPort = channel.getRtcpPort();
+
+			if (this.ice) {
+				this.rtpCandidates = channel.getRtpCandidates();
+				if (!this.rtpCandidates.isEmpty()) {
+					// Fix connection address based on default candidate
+					IceCandidate defaultCandidate = channel.getDefaultRtpCandidate().getCandidate();
+					this.address = defaultCandidate.getHostString();
+					this.port = defaultCandidate.getPort();
+
+					// Fix RTCP if rtcp-mux is used
+					if (rtcpMux) {
+						this.rtcpAddress = this.address;
+						this.rtcpPort = this.port;
+					}
+				}
+
+				if (!rtcpMux) {
+					this.rtcpCandidates = channel.getRtcpCandidates();
+					if (!this.rtcpCandidates.isEmpty()) {
+						// Fix RTCP based on default RTCP candidate
+						IceCandidate defaultCandidate = channel.getDefaultRtcpCandidate().getCandidate();
+						this.rtcpAddress = defaultCandidate.getHostString();
+						this.rtcpPort = defaultCandidate.getPort();
+					}
+				}
+			}
+		}
+
+		@Override
+		public void write(int slot, StringBuilder out) {
+			switch (slot) {
+			case MediaDescriptionTemplate.ADDRESS:
+				out.append(this.address);
+				break;
+			case MediaDescriptionTemplate.PORT:
+				out.append(this.port);
+				break;
+			case MediaDescriptionTemplate.RTCP_ADDRESS:
+				out.append(this.rtcpAddress);
+				break;
+			case MediaDescriptionTemplate.RTCP_PORT:
+				out.append(this.rtcpPort);
+				break;
+			case MediaDescriptionTemplate.ICE_UFRAG:
+				out.append(this.channel.getIceUfrag());
+				break;
+			case MediaDescriptionTemplate.ICE_PWD:
+				out.append(this.channel.getIcePwd());
+				break;
+			case MediaDescriptionTemplate.CANDIDATES:
+				writeCandidates(out, this.rtpCandidates);
+				if (this.rtcpCandidates != null) {
+					writeCandidates(out, this.rtcpCandidates);
+				}
+				break;
+			case MediaDescriptionTemplate.FINGERPRINT:
+				out.append(this.channel.getDtlsFingerprint());
+				break;
+			case MediaDescriptionTemplate.SSRC:
+				out.append(this.channel.getSsrc());
+				break;
+			case MediaDescriptionTemplate.CNAME:
+				out.append(this.channel.getCname());
+				break;
+			default:
+				break;
+			}
+		}
+
+	}
+
 	private static CandidateAttribute processCandidate(IceCandidate candidate) {
 		CandidateAttribute candidateSdp = new CandidateAttribute();
 		candidateSdp.setFoundation(candidate.getFoundation());
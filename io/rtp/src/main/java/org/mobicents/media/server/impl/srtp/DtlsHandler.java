@@ -20,11 +20,15 @@
 
 package org.mobicents.media.server.impl.srtp;
 
+import java.nio.ByteBuffer;
 import java.nio.channels.DatagramChannel;
 import java.security.SecureRandom;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.log4j.Logger;
 import org.bouncycastle.crypto.tls.DTLSServerProtocol;
@@ -44,12 +48,18 @@ public class DtlsHandler {
 
 	private static final Logger logger = Logger.getLogger(DtlsHandler.class);
 
+	// shared by handshakes, SecureRandom is thread safe and costly to seed
+	private static final SecureRandom SECURE_RANDOM = new SecureRandom();
+
 	private DtlsSrtpServer server;
 	private DatagramChannel channel;
 	private volatile boolean handshakeComplete;
 	private volatile boolean handshakeFailed;
 	private volatile boolean handshaking;
-	private Thread worker;
+	private final DtlsHandshakeExecutor executor;
+	private Future<?> handshakeFuture;
+	// incremented on reset, results of older handshakes are dropped
+	private final AtomicInteger generation = new AtomicInteger();
 	private String hashFunction;
 	private String remoteFingerprint;
 	private String localFingerprint;
@@ -88,7 +98,8 @@ public class DtlsHandler {
 	 */
 	private PacketTransformer srtcpDecoder;
 
-	public DtlsHandler(final DatagramChannel channel) {
+	public DtlsHandler(final DatagramChannel channel, final DtlsHandshakeExecutor executor) {
+		this.executor = executor;
 		this.listeners = new ArrayList<DtlsListener>();
 		this.server = new DtlsSrtpServer();
 		this.channel = channel;
@@ -100,6 +111,10 @@ public class DtlsHandler {
 		this.localFingerprint = "";
 	}
 
+	public DtlsHandler(final DatagramChannel channel) {
+		this(channel, DtlsHandshakeExecutor.getInstance());
+	}
+
 	public DtlsHandler() {
 		this(null);
 	}
@@ -158,27 +173,27 @@ public class DtlsHandler {
 		this.remoteFingerprint = fingerprint;
 	}
 
-	private byte[] getMasterServerKey() {
+	private static byte[] getMasterServerKey(DtlsSrtpServer server) {
 		return server.getSrtpMasterServerKey();
 	}
 
-	private byte[] getMasterServerSalt() {
+	private static byte[] getMasterServerSalt(DtlsSrtpServer server) {
 		return server.getSrtpMasterServerSalt();
 	}
 
-	private byte[] getMasterClientKey() {
+	private static byte[] getMasterClientKey(DtlsSrtpServer server) {
 		return server.getSrtpMasterClientKey();
 	}
 
-	private byte[] getMasterClientSalt() {
+	private static byte[] getMasterClientSalt(DtlsSrtpServer server) {
 		return server.getSrtpMasterClientSalt();
 	}
 
-	private SRTPPolicy getSrtpPolicy() {
+	private static SRTPPolicy getSrtpPolicy(DtlsSrtpServer server) {
 		return server.getSrtpPolicy();
 	}
 
-	private SRTPPolicy getSrtcpPolicy() {
+	private static SRTPPolicy getSrtcpPolicy(DtlsSrtpServer server) {
 		return server.getSrtcpPolicy();
 	}
 
@@ -202,9 +217,9 @@ public class DtlsHandler {
 	 * Generates an SRTP encoder for outgoing RTP packets using keying material
 	 * from the DTLS handshake.
 	 */
-	private PacketTransformer generateRtpEncoder() {
-		return new SRTPTransformEngine(getMasterServerKey(),
-				getMasterServerSalt(), getSrtpPolicy(), getSrtcpPolicy())
+	private static PacketTransformer generateRtpEncoder(DtlsSrtpServer server) {
+		return new SRTPTransformEngine(getMasterServerKey(server),
+				getMasterServerSalt(server), getSrtpPolicy(server), getSrtcpPolicy(server))
 				.getRTPTransformer();
 	}
 
@@ -212,9 +227,9 @@ public class DtlsHandler {
 	 * Generates an SRTP decoder for incoming RTP packets using keying material
 	 * from the DTLS handshake.
 	 */
-	private PacketTransformer generateRtpDecoder() {
-		return new SRTPTransformEngine(getMasterClientKey(),
-				getMasterClientSalt(), getSrtpPolicy(), getSrtcpPolicy())
+	private static PacketTransformer generateRtpDecoder(DtlsSrtpServer server) {
+		return new SRTPTransformEngine(getMasterClientKey(server),
+				getMasterClientSalt(server), getSrtpPolicy(server), getSrtcpPolicy(server))
 				.getRTPTransformer();
 	}
 
@@ -222,9 +237,9 @@ public class DtlsHandler {
 	 * Generates an SRTCP encoder for outgoing RTCP packets using keying
 	 * material from the DTLS handshake.
 	 */
-	private PacketTransformer generateRtcpEncoder() {
-		return new SRTPTransformEngine(getMasterServerKey(),
-				getMasterServerSalt(), getSrtpPolicy(), getSrtcpPolicy())
+	private static PacketTransformer generateRtcpEncoder(DtlsSrtpServer server) {
+		return new SRTPTransformEngine(getMasterServerKey(server),
+				getMasterServerSalt(server), getSrtpPolicy(server), getSrtcpPolicy(server))
 				.getRTCPTransformer();
 	}
 
@@ -232,9 +247,9 @@ public class DtlsHandler {
 	 * Generates an SRTCP decoder for incoming RTCP packets using keying
 	 * material from the DTLS handshake.
 	 */
-	private PacketTransformer generateRtcpDecoder() {
-		return new SRTPTransformEngine(getMasterClientKey(),
-				getMasterClientSalt(), getSrtpPolicy(), getSrtcpPolicy())
+	private static PacketTransformer generateRtcpDecoder(DtlsSrtpServer server) {
+		return new SRTPTransformEngine(getMasterClientKey(server),
+				getMasterClientSalt(server), getSrtpPolicy(server), getSrtcpPolicy(server))
 				.getRTCPTransformer();
 	}
 
@@ -260,6 +275,30 @@ public class DtlsHandler {
 		return this.srtpEncoder.transform(packet, offset, length);
 	}
 
+	/**
+	 * Decodes an RTP packet in place
+	 * 
+	 * @param buffer
+	 *            The buffer holding encoded RTP packet from index 0 to its
+	 *            limit
+	 * @return Whether packet is valid
+	 */
+	public boolean decodeRTP(ByteBuffer buffer) {
+		return this.srtpDecoder.reverseTransform(buffer);
+	}
+
+	/**
+	 * Encodes an RTP packet in place, authentication tag is appended to the
+	 * packet
+	 * 
+	 * @param buffer
+	 *            The buffer holding RTP packet from index 0 to its limit
+	 * @return Whether packet was encoded
+	 */
+	public boolean encodeRTP(ByteBuffer buffer) {
+		return this.srtpEncoder.transform(buffer);
+	}
+
 	/**
 	 * Decodes an RTCP Packet
 	 * 
@@ -282,12 +321,47 @@ public class DtlsHandler {
 		return this.srtcpEncoder.transform(packet, offset, length);
 	}
 
+	/**
+	 * Decodes an RTCP packet in place
+	 * 
+	 * @param buffer
+	 *            The buffer holding encoded RTCP packet from index 0 to its
+	 *            limit
+	 * @return Whether packet is valid
+	 */
+	public boolean decodeRTCP(ByteBuffer buffer) {
+		return this.srtcpDecoder.reverseTransform(buffer);
+	}
+
+	/**
+	 * Encodes an RTCP packet in place
+	 * 
+	 * @param buffer
+	 *            The buffer holding RTCP packet from index 0 to its limit
+	 * @return Whether packet was encoded
+	 */
+	public boolean encodeRTCP(ByteBuffer buffer) {
+		return this.srtcpEncoder.transform(buffer);
+	}
+
 	public void handshake() {
-		if (!handshaking && !handshakeComplete) {
+		synchronized (this) {
+			if (handshaking || handshakeComplete) {
+				return;
+			}
+
 			this.handshaking = true;
-			this.worker = new Thread(new HandshakeWorker());
-			this.worker.start();
+			try {
+				this.handshakeFuture = this.executor.execute(new HandshakeWorker(this.channel, this.server, this.generation.get()));
+				return;
+			} catch (RejectedExecutionException e) {
+				logger.warn("Too many DTLS handshakes are waiting, handshake is rejected");
+				this.handshaking = false;
+				this.handshakeFailed = true;
+			}
 		}
+
+		fireHandshakeFailed(new RejectedExecutionException("DTLS handshake queue is full"));
 	}
 
 	private void fireHandshakeComplete() {
@@ -308,8 +382,15 @@ public class DtlsHandler {
 		}
 	}
 
-	public void reset() {
-		// XXX try not to create the server every time!
+	public synchronized void reset() {
+		// handshake in progress belongs to previous session
+		this.generation.incrementAndGet();
+		if (this.handshakeFuture != null) {
+			this.executor.cancel(this.handshakeFuture);
+			this.handshakeFuture = null;
+		}
+
+		// server credentials are cached, new server only holds handshake state
 		this.server = new DtlsSrtpServer();
 		this.channel = null;
 		this.srtcpDecoder = null;
@@ -326,45 +407,79 @@ public class DtlsHandler {
 
 	private class HandshakeWorker implements Runnable {
 
+		// session state captured when handshake was requested
+		private final DatagramChannel channel;
+		private final DtlsSrtpServer server;
+		private final int generation;
+
+		public HandshakeWorker(DatagramChannel channel, DtlsSrtpServer server, int generation) {
+			this.channel = channel;
+			this.server = server;
+			this.generation = generation;
+		}
+
 		public void run() {
-			SecureRandom secureRandom = new SecureRandom();
-			DTLSServerProtocol serverProtocol = new DTLSServerProtocol(
-					secureRandom);
-			NioUdpTransport transport = new NioUdpTransport(getChannel());
+			DTLSServerProtocol serverProtocol = new DTLSServerProtocol(SECURE_RANDOM);
+			NioUdpTransport transport = new NioUdpTransport(this.channel);
 
 			try {
 				// Perform the handshake in a non-blocking fashion
-				serverProtocol.accept(server, transport);
+				serverProtocol.accept(this.server, transport);
 
 				// Prepare the shared key to be used in RTP streaming
-				server.prepareSrtpSharedSecret();
+				this.server.prepareSrtpSharedSecret();
 
 				// Generate encoders for DTLS traffic
-				srtpDecoder = generateRtpDecoder();
-				srtpEncoder = generateRtpEncoder();
-				srtcpDecoder = generateRtcpDecoder();
-				srtcpEncoder = generateRtcpEncoder();
-
-				// Declare handshake as complete
-				handshakeComplete = true;
-				handshakeFailed = false;
-				handshaking = false;
+				PacketTransformer rtpDecoder = generateRtpDecoder(this.server);
+				PacketTransformer rtpEncoder = generateRtpEncoder(this.server);
+				PacketTransformer rtcpDecoder = generateRtcpDecoder(this.server);
+				PacketTransformer rtcpEncoder = generateRtcpEncoder(this.server);
+
+				synchronized (DtlsHandler.this) {
+					if (!isCurrent()) {
+						return;
+					}
+
+					srtpDecoder = rtpDecoder;
+					srtpEncoder = rtpEncoder;
+					srtcpDecoder = rtcpDecoder;
+					srtcpEncoder = rtcpEncoder;
+
+					// Declare handshake as complete
+					handshakeComplete = true;
+					handshakeFailed = false;
+					handshaking = false;
+					handshakeFuture = null;
+				}
 
 				// Warn listeners handshake completed
 				fireHandshakeComplete();
 			} catch (Exception e) {
-				logger.error("DTLS handshake failed: " + e.getMessage(), e);
-
-				// Declare handshake as failed
-				handshakeComplete = false;
-				handshakeFailed = true;
-				handshaking = false;
+				synchronized (DtlsHandler.this) {
+					if (!isCurrent()) {
+						// handler was reset while handshaking
+						logger.debug("Cancelled DTLS handshake terminated: " + e.getMessage());
+						return;
+					}
+
+					logger.error("DTLS handshake failed: " + e.getMessage(), e);
+
+					// Declare handshake as failed
+					handshakeComplete = false;
+					handshakeFailed = true;
+					handshaking = false;
+					handshakeFuture = null;
+				}
 
 				// Warn listeners handshake completed
 				fireHandshakeFailed(e);
 			}
 		}
 
+		private boolean isCurrent() {
+			return this.generation == DtlsHandler.this.generation.get();
+		}
+
 	}
 
 }
@@ -0,0 +1,324 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2014, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ *
+ */
+
+package org.mobicents.media.server.impl.srtp;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Bounded executor shared by DTLS handlers to run handshakes.
+ *
+ * At most pool size handshakes run concurrently, others wait in the queue so
+ * bursts of WebRTC calls do not spawn one thread per call. The queue is
+ * bounded, handshakes above its capacity are rejected. Workers are virtual
+ * threads when the JVM supports them and daemon platform threads otherwise.
+ * Size of the shared pool and its queue are set by
+ * {@value #POOL_SIZE_PROPERTY} and {@value #QUEUE_SIZE_PROPERTY} system
+ * properties.
+ *
+ */
+public class DtlsHandshakeExecutor {
+
+	private static final Logger logger = Logger.getLogger(DtlsHandshakeExecutor.class);
+
+	public static final String POOL_SIZE_PROPERTY = "mms.dtls.handshake.threads";
+	public static final String QUEUE_SIZE_PROPERTY = "mms.dtls.handshake.queue";
+
+	public static final int DEFAULT_QUEUE_SIZE = 1024;
+
+	// idle workers are released after this period
+	private static final long KEEP_ALIVE = 60L;
+
+	private static final DtlsHandshakeExecutor INSTANCE = new DtlsHandshakeExecutor(Integer.getInteger(POOL_SIZE_PROPERTY, Runtime.getRuntime().availableProcessors() * 2), Integer.getInteger(QUEUE_SIZE_PROPERTY, DEFAULT_QUEUE_SIZE));
+
+	private final ThreadPoolExecutor executor;
+	private final boolean virtual;
+
+	// statistics
+	private final AtomicInteger active = new AtomicInteger();
+	private final AtomicLong completed = new AtomicLong();
+	private final AtomicLong rejected = new AtomicLong();
+	private final AtomicLong cancelled = new AtomicLong();
+	private final AtomicLong totalDuration = new AtomicLong();
+	private final AtomicLong totalWait = new AtomicLong();
+	private volatile long worstDuration;
+	private volatile long worstWait;
+
+	/**
+	 * Creates new executor with default queue size.
+	 *
+	 * @param poolSize
+	 *            the maximum number of concurrent handshakes
+	 */
+	public DtlsHandshakeExecutor(int poolSize) {
+		this(poolSize, DEFAULT_QUEUE_SIZE);
+	}
+
+	/**
+	 * Creates new executor.
+	 *
+	 * @param poolSize
+	 *            the maximum number of concurrent handshakes
+	 * @param queueSize
+	 *            the maximum number of waiting handshakes
+	 */
+	public DtlsHandshakeExecutor(int poolSize, int queueSize) {
+		if (poolSize < 1) {
+			throw new IllegalArgumentException("Pool size should be positive");
+		}
+
+		if (queueSize < 1) {
+			throw new IllegalArgumentException("Queue size should be positive");
+		}
+
+		ThreadFactory factory = virtualThreadFactory();
+		this.virtual = factory != null;
+		if (factory == null) {
+			factory = new DaemonThreadFactory();
+		}
+
+		this.executor = new ThreadPoolExecutor(poolSize, poolSize, KEEP_ALIVE, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(queueSize), factory);
+		this.executor.allowCoreThreadTimeOut(true);
+	}
+
+	/**
+	 * Gets executor shared by all DTLS handlers.
+	 *
+	 * @return the shared executor
+	 */
+	public static DtlsHandshakeExecutor getInstance() {
+		return INSTANCE;
+	}
+
+	/**
+	 * Queues handshake for execution.
+	 *
+	 * @param handshake
+	 *            the handshake task
+	 * @return the future which may be used to cancel the handshake
+	 * @throws RejectedExecutionException
+	 *             if the queue is full or executor is shut down
+	 */
+	public Future<?> execute(Runnable handshake) {
+		try {
+			return executor.submit(new TimedHandshake(handshake));
+		} catch (RejectedExecutionException e) {
+			rejected.incrementAndGet();
+			throw e;
+		}
+	}
+
+	/**
+	 * Cancels handshake, waiting handshake is removed from the queue and
+	 * running one is interrupted.
+	 *
+	 * @param handshake
+	 *            the future returned by {@link #execute(Runnable)}
+	 */
+	public void cancel(Future<?> handshake) {
+		if (handshake.cancel(true)) {
+			cancelled.incrementAndGet();
+			executor.remove((Runnable) handshake);
+		}
+	}
+
+	/**
+	 * Terminates workers, queued handshakes are not executed.
+	 */
+	public void shutdown() {
+		executor.shutdownNow();
+	}
+
+	/**
+	 * Gets the maximum number of concurrent handshakes.
+	 *
+	 * @return the pool size
+	 */
+	public int getPoolSize() {
+		return executor.getMaximumPoolSize();
+	}
+
+	/**
+	 * Checks whether handshakes run in virtual threads.
+	 *
+	 * @return true if workers are virtual threads
+	 */
+	public boolean isVirtual() {
+		return virtual;
+	}
+
+	/**
+	 * Gets the number of handshakes waiting for a worker.
+	 *
+	 * @return the queue depth
+	 */
+	public int getQueueDepth() {
+		return executor.getQueue().size();
+	}
+
+	/**
+	 * Gets the number of handshakes in progress.
+	 *
+	 * @return the number of active handshakes
+	 */
+	public int getActiveHandshakes() {
+		return active.get();
+	}
+
+	/**
+	 * Gets the number of finished handshakes, either completed or failed.
+	 *
+	 * @return the number of handshakes
+	 */
+	public long getCompletedHandshakes() {
+		return completed.get();
+	}
+
+	/**
+	 * Gets the number of handshakes rejected because the queue was full.
+	 *
+	 * @return the number of handshakes
+	 */
+	public long getRejectedHandshakes() {
+		return rejected.get();
+	}
+
+	/**
+	 * Gets the number of handshakes cancelled before completion.
+	 *
+	 * @return the number of handshakes
+	 */
+	public long getCancelledHandshakes() {
+		return cancelled.get();
+	}
+
+	/**
+	 * Gets the average handshake duration.
+	 *
+	 * @return the duration in milliseconds
+	 */
+	public long getAverageDuration() {
+		long count = completed.get();
+		return count == 0 ? 0 : totalDuration.get() / count / 1000000L;
+	}
+
+	/**
+	 * Gets the longest handshake duration.
+	 *
+	 * @return the duration in milliseconds
+	 */
+	public long getWorstDuration() {
+		return worstDuration / 1000000L;
+	}
+
+	/**
+	 * Gets the average time handshakes wait in queue.
+	 *
+	 * @return the wait time in milliseconds
+	 */
+	public long getAverageWait() {
+		long count = completed.get();
+		return count == 0 ? 0 : totalWait.get() / count / 1000000L;
+	}
+
+	/**
+	 * Gets the longest time handshake waited in queue.
+	 *
+	 * @return the wait time in milliseconds
+	 */
+	public long getWorstWait() {
+		return worstWait / 1000000L;
+	}
+
+	private static ThreadFactory virtualThreadFactory() {
+		// Thread.ofVirtual().name(prefix, 0).factory(), available since Java 21
+		try {
+			Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+			Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+			Method name = builderClass.getMethod("name", String.class, long.class);
+			builder = name.invoke(builder, "DTLS-handshake-", 0L);
+			return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+		} catch (ReflectiveOperationException e) {
+			return null;
+		} catch (RuntimeException e) {
+			logger.warn("Could not create virtual threads for DTLS handshakes: " + e.getMessage());
+			return null;
+		}
+	}
+
+	private class TimedHandshake implements Runnable {
+
+		private final Runnable handshake;
+		private final long queued;
+
+		public TimedHandshake(Runnable handshake) {
+			this.handshake = handshake;
+			this.queued = System.nanoTime();
+		}
+
+		@Override
+		public void run() {
+			long start = System.nanoTime();
+			active.incrementAndGet();
+			try {
+				handshake.run();
+			} catch (RuntimeException e) {
+				logger.error("DTLS handshake terminated unexpectedly: " + e.getMessage(), e);
+			} finally {
+				active.decrementAndGet();
+
+				long wait = start - queued;
+				long duration = System.nanoTime() - start;
+				totalWait.addAndGet(wait);
+				totalDuration.addAndGet(duration);
+				completed.incrementAndGet();
+				if (wait > worstWait) {
+					worstWait = wait;
+				}
+				if (duration > worstDuration) {
+					worstDuration = duration;
+				}
+			}
+		}
+	}
+
+	private static class DaemonThreadFactory implements ThreadFactory {
+
+		private final AtomicInteger index = new AtomicInteger();
+
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, "DTLS-handshake-" + index.getAndIncrement());
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+
+}
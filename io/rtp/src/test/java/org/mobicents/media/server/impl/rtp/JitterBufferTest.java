@@ -204,6 +204,51 @@ public class JitterBufferTest {
         assertEquals(1, data.getSequenceNumber());
     }
 
+    @Test
+    public void testCounters() {
+        RtpPacket[] stream = createStream(4);
+
+        jitterBuffer.write(stream[0],AVProfile.audio.find(8));
+        jitterBuffer.write(stream[1],AVProfile.audio.find(8));
+        jitterBuffer.write(stream[1],AVProfile.audio.find(8));
+        jitterBuffer.write(stream[3],AVProfile.audio.find(8));
+        assertEquals(1, jitterBuffer.getDuplicates());
+
+        assertEquals(1, jitterBuffer.read(wallClock.getTime()).getSequenceNumber());
+        assertEquals(2, jitterBuffer.read(wallClock.getTime()).getSequenceNumber());
+        assertEquals(4, jitterBuffer.read(wallClock.getTime()).getSequenceNumber());
+        assertEquals(1, jitterBuffer.getLost());
+
+        jitterBuffer.write(stream[2],AVProfile.audio.find(8));
+        assertEquals(1, jitterBuffer.getLate());
+        assertEquals(0, jitterBuffer.getOverflows());
+    }
+
+    @Test
+    public void testAdaptiveDelay() throws Exception {
+        RtpPacket[] stream = createStream(100);
+        Frame[] media = new Frame[stream.length];
+
+        // clean network, delay shrinks to single packet
+        for (int i = 0; i < 40; i++) {
+            wallClock.tick(20000000L);
+            jitterBuffer.write(stream[i],AVProfile.audio.find(8));
+            media[i] = jitterBuffer.read(wallClock.getTime());
+        }
+        assertEquals(period, jitterBuffer.getPlayoutDelay());
+
+        // packets arrive in pairs, delay follows jitter
+        for (int i = 40; i < stream.length; i++) {
+            wallClock.tick(i % 2 == 0 ? 40000000L : 0L);
+            jitterBuffer.write(stream[i],AVProfile.audio.find(8));
+            media[i] = jitterBuffer.read(wallClock.getTime());
+        }
+        assertTrue(jitterBuffer.getPlayoutDelay() > jitter);
+
+        this.checkSequence(media);
+        assertEquals(0, jitterBuffer.getDropped());
+    }
+
     @Test
     /**
      * 
@@ -116,6 +116,22 @@ public class RtpPacketTest {
         assertEquals(0, buffer.compareTo(rtpPacket.getBuffer()));
     }
 
+    @Test
+    public void testWrapDirect() {
+        ByteBuffer payload = ByteBuffer.allocateDirect(p.length);
+        payload.put(p).clear();
+
+        rtpPacket.wrap(false, 8, 27244, 3249239181l, 3001189225l, payload, 12, p.length - 12);
+        assertEquals(0, ByteBuffer.wrap(p).compareTo(rtpPacket.getBuffer()));
+        assertEquals(0, payload.position());
+
+        ByteBuffer target = ByteBuffer.allocateDirect(p.length);
+        rtpPacket.getPayload(target, 12);
+        for (int i = 12; i < p.length; i++) {
+            assertEquals(p[i], target.get(i));
+        }
+    }
+
     @Test
     public void testMark() {
         rtpPacket.wrap(true, 8, 27244, 3249239181l, 3001189225l, p, 12, p.length - 12);
@@ -0,0 +1,176 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2014, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.mobicents.media.server.impl.rtp.crypto;
+
+import java.nio.ByteBuffer;
+
+import org.bouncycastle.crypto.engines.AESFastEngine;
+import org.bouncycastle.crypto.params.KeyParameter;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.mobicents.media.server.impl.rtp.RtpPacket;
+
+/**
+ *
+ */
+public class SRTPCipherJCETest {
+
+	// RFC3711, appendix B.2
+	private static final String CM_KEY = "2B7E151628AED2A6ABF7158809CF4F3C";
+	private static final String CM_IV = "F0F1F2F3F4F5F6F7F8F9FAFBFCFD0000";
+	private static final String CM_KEYSTREAM = "E03EAD0935C95E80E166B16DD92B4EB4" + "D23513162B02D0F72A43A2FE4A5F97AB" + "41E95B3BB0A2E8DD477901E4FCA894C0";
+
+	// AES_CM_128_HMAC_SHA1_80 packet, master key and salt of RFC3711 appendix B.3
+	private static final String MASTER_KEY = "E1F97A0D3E018BE0D64FA32C06DE4139";
+	private static final String MASTER_SALT = "0EC675AD498AFEEBB6960B3AABE6";
+	private static final String PLAIN_PACKET = "800F1234DECAFBADCAFEBABE" + "ABABABABABABABABABABABABABABABAB";
+	private static final String SRTP_PACKET = "800F1234DECAFBADCAFEBABE" + "4E55DC4CE79978D88CA4D215949D2402" + "B78D6ACC99EA179B8DBB";
+
+	@After
+	public void tearDown() {
+		SRTPCryptoContext.setJceEnabled(false);
+	}
+
+	private static byte[] fromHex(String hex) {
+		byte[] result = new byte[hex.length() / 2];
+		for (int i = 0; i < result.length; i++) {
+			result[i] = (byte) Integer.parseInt(hex.substring(i * 2, i * 2 + 2), 16);
+		}
+		return result;
+	}
+
+	private PacketTransformer createTransformer(boolean jce) {
+		SRTPCryptoContext.setJceEnabled(jce);
+		SRTPPolicy srtpPolicy = new SRTPPolicy(SRTPPolicy.AESCM_ENCRYPTION, 16, SRTPPolicy.HMACSHA1_AUTHENTICATION, 20, 10, 14);
+		SRTPPolicy srtcpPolicy = new SRTPPolicy(SRTPPolicy.AESCM_ENCRYPTION, 16, SRTPPolicy.HMACSHA1_AUTHENTICATION, 20, 10, 14);
+		return new SRTPTransformEngine(fromHex(MASTER_KEY), fromHex(MASTER_SALT), srtpPolicy, srtcpPolicy).getRTPTransformer();
+	}
+
+	private ByteBuffer createPacket(int seq) {
+		byte[] payload = new byte[160];
+		for (int i = 0; i < payload.length; i++) {
+			payload[i] = (byte) (i + seq);
+		}
+
+		RtpPacket packet = new RtpPacket(RtpPacket.RTP_PACKET_MAX_SIZE, true);
+		packet.wrap(false, 0, seq, seq * 160, 0xCAFEBABE, payload, 0, payload.length);
+		return packet.getBuffer();
+	}
+
+	private byte[] toArray(ByteBuffer buffer) {
+		byte[] data = new byte[buffer.limit()];
+		buffer.get(data);
+		buffer.rewind();
+		return data;
+	}
+
+	@Test
+	public void testKeystream() throws Exception {
+		byte[] expected = fromHex(CM_KEYSTREAM);
+
+		// JDK cipher over zero data gives the keystream
+		ByteBuffer data = ByteBuffer.allocate(expected.length);
+		new SRTPCipherJCE(fromHex(CM_KEY), null).process(data, 0, expected.length, fromHex(CM_IV));
+		Assert.assertArrayEquals(expected, data.array());
+
+		// BouncyCastle engine produces the same keystream
+		AESFastEngine engine = new AESFastEngine();
+		engine.init(true, new KeyParameter(fromHex(CM_KEY)));
+		byte[] stream = new byte[expected.length];
+		new SRTPCipherCTR().getCipherStream(engine, stream, stream.length, fromHex(CM_IV));
+		Assert.assertArrayEquals(expected, stream);
+	}
+
+	@Test
+	public void testPartialBlock() throws Exception {
+		byte[] expected = fromHex(CM_KEYSTREAM);
+		int len = expected.length - 11;
+
+		// keystream of the last block is cut, data lies off heap at offset
+		ByteBuffer data = ByteBuffer.allocateDirect(len + 5);
+		new SRTPCipherJCE(fromHex(CM_KEY), null).process(data, 5, len, fromHex(CM_IV));
+		for (int i = 0; i < len; i++) {
+			Assert.assertEquals(expected[i], data.get(i + 5));
+		}
+	}
+
+	@Test
+	public void testPacketVector() {
+		for (boolean jce : new boolean[] { false, true }) {
+			byte[] plain = fromHex(PLAIN_PACKET);
+			PacketTransformer encoder = createTransformer(jce);
+			Assert.assertArrayEquals(fromHex(SRTP_PACKET), encoder.transform(plain, 0, plain.length));
+
+			byte[] srtp = fromHex(SRTP_PACKET);
+			PacketTransformer decoder = createTransformer(jce);
+			Assert.assertArrayEquals(fromHex(PLAIN_PACKET), decoder.reverseTransform(srtp, 0, srtp.length));
+		}
+	}
+
+	@Test
+	public void testInterop() {
+		PacketTransformer jceEncoder = createTransformer(true);
+		PacketTransformer bcDecoder = createTransformer(false);
+
+		for (int seq = 1; seq <= 10; seq++) {
+			ByteBuffer packet = createPacket(seq);
+			byte[] original = toArray(packet);
+
+			Assert.assertTrue(jceEncoder.transform(packet));
+			Assert.assertTrue(bcDecoder.reverseTransform(packet));
+			Assert.assertArrayEquals(original, toArray(packet));
+		}
+	}
+
+	@Test
+	public void testTampered() {
+		PacketTransformer encoder = createTransformer(true);
+		PacketTransformer decoder = createTransformer(true);
+
+		ByteBuffer packet = createPacket(1);
+		Assert.assertTrue(encoder.transform(packet));
+		packet.put(20, (byte) (packet.get(20) ^ 1));
+		Assert.assertFalse(decoder.reverseTransform(packet));
+	}
+
+	@Test
+	@Ignore
+	public void testSpeed() {
+		int packets = 200000;
+		for (boolean jce : new boolean[] { false, true, false, true }) {
+			PacketTransformer encoder = createTransformer(jce);
+			PacketTransformer decoder = createTransformer(jce);
+			ByteBuffer packet = createPacket(1);
+
+			long start = System.nanoTime();
+			for (int seq = 1; seq <= packets; seq++) {
+				packet.putShort(2, (short) seq);
+				encoder.transform(packet);
+				decoder.reverseTransform(packet);
+			}
+			long duration = System.nanoTime() - start;
+			System.out.println((jce ? "JCE" : "BouncyCastle") + ": " + (packets * 1000000000L / duration) + " packets/s");
+		}
+	}
+}
@@ -0,0 +1,105 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2014, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ *
+ */
+
+package org.mobicents.media.server.impl.rtp.crypto;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mobicents.media.server.impl.rtp.RtpPacket;
+
+/**
+ *
+ */
+public class SrtpTransformerTest {
+
+	private static final byte[] MASTER_KEY = new byte[] { (byte) 0xE1, (byte) 0xF9, 0x7A, 0x0D, 0x3E, 0x01, (byte) 0x8B, (byte) 0xE0, (byte) 0xD6, 0x4F, (byte) 0xA3, 0x2C, 0x06, (byte) 0xDE, 0x41, 0x39 };
+	private static final byte[] MASTER_SALT = new byte[] { 0x0E, (byte) 0xC6, 0x75, (byte) 0xAD, 0x49, (byte) 0x8A, (byte) 0xFE, (byte) 0xEB, (byte) 0xB6, (byte) 0x96, 0x0B, 0x3A, (byte) 0xAB, (byte) 0xE6 };
+
+	private PacketTransformer createTransformer() {
+		SRTPPolicy srtpPolicy = new SRTPPolicy(SRTPPolicy.AESCM_ENCRYPTION, 16, SRTPPolicy.HMACSHA1_AUTHENTICATION, 20, 10, 14);
+		SRTPPolicy srtcpPolicy = new SRTPPolicy(SRTPPolicy.AESCM_ENCRYPTION, 16, SRTPPolicy.HMACSHA1_AUTHENTICATION, 20, 10, 14);
+		return new SRTPTransformEngine(MASTER_KEY, MASTER_SALT, srtpPolicy, srtcpPolicy).getRTPTransformer();
+	}
+
+	private RtpPacket createPacket(int seq) {
+		byte[] payload = new byte[160];
+		for (int i = 0; i < payload.length; i++) {
+			payload[i] = (byte) (i + seq);
+		}
+
+		RtpPacket packet = new RtpPacket(RtpPacket.RTP_PACKET_MAX_SIZE, true);
+		packet.wrap(false, 0, seq, seq * 160, 0xCAFEBABE, payload, 0, payload.length);
+		return packet;
+	}
+
+	private byte[] toArray(ByteBuffer buffer) {
+		byte[] data = new byte[buffer.limit()];
+		buffer.get(data);
+		buffer.rewind();
+		return data;
+	}
+
+	@Test
+	public void testInPlace() {
+		PacketTransformer encoder = createTransformer();
+		PacketTransformer copyEncoder = createTransformer();
+		PacketTransformer decoder = createTransformer();
+
+		for (int seq = 1; seq <= 10; seq++) {
+			RtpPacket packet = createPacket(seq);
+			byte[] original = toArray(packet.getBuffer());
+
+			// in place result matches the copying path
+			byte[] expected = copyEncoder.transform(original, 0, original.length);
+			Assert.assertTrue(encoder.transform(packet.getBuffer()));
+			Assert.assertEquals(0, packet.getBuffer().position());
+			Assert.assertArrayEquals(expected, toArray(packet.getBuffer()));
+
+			// reverse restores original packet
+			Assert.assertTrue(decoder.reverseTransform(packet.getBuffer()));
+			Assert.assertArrayEquals(original, toArray(packet.getBuffer()));
+		}
+	}
+
+	@Test
+	public void testTampered() {
+		PacketTransformer encoder = createTransformer();
+		PacketTransformer decoder = createTransformer();
+
+		RtpPacket packet = createPacket(1);
+		Assert.assertTrue(encoder.transform(packet.getBuffer()));
+
+		ByteBuffer buffer = packet.getBuffer();
+		buffer.put(20, (byte) (buffer.get(20) ^ 1));
+		Assert.assertFalse(decoder.reverseTransform(buffer));
+	}
+
+	@Test
+	public void testNoSpaceForTag() {
+		PacketTransformer encoder = createTransformer();
+
+		ByteBuffer buffer = ByteBuffer.allocate(172);
+		buffer.put(toArray(createPacket(1).getBuffer()));
+		buffer.flip();
+		Assert.assertFalse(encoder.transform(buffer));
+	}
+}
@@ -0,0 +1,163 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2014, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ *
+ */
+package org.mobicents.media.server.impl.rtp.sdp;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mobicents.media.server.io.sdp.MediaProfile;
+import org.mobicents.media.server.io.sdp.SdpException;
+import org.mobicents.media.server.io.sdp.fields.MediaDescriptionField;
+import org.mobicents.media.server.io.sdp.fields.parser.MediaDescriptionFieldParser;
+
+/**
+ *
+ */
+public class MediaDescriptionTemplateTest {
+
+	private static final MediaDescriptionTemplate.SlotWriter VALUES = new MediaDescriptionTemplate.SlotWriter() {
+
+		@Override
+		public void write(int slot, StringBuilder out) {
+			switch (slot) {
+			case MediaDescriptionTemplate.ADDRESS:
+				out.append("192.168.1.10");
+				break;
+			case MediaDescriptionTemplate.PORT:
+				out.append(65000);
+				break;
+			case MediaDescriptionTemplate.RTCP_ADDRESS:
+				out.append("192.168.1.11");
+				break;
+			case MediaDescriptionTemplate.RTCP_PORT:
+				out.append(65001);
+				break;
+			case MediaDescriptionTemplate.ICE_UFRAG:
+				out.append("ufrag");
+				break;
+			case MediaDescriptionTemplate.ICE_PWD:
+				out.append("password");
+				break;
+			case MediaDescriptionTemplate.CANDIDATES:
+				out.append("\na=candidate:1 1 udp 2130706431 192.168.1.10 65000 typ host generation 0");
+				break;
+			case MediaDescriptionTemplate.FINGERPRINT:
+				out.append("sha-256 D1:2C:BE:AD");
+				break;
+			case MediaDescriptionTemplate.SSRC:
+				out.append(123456789L);
+				break;
+			case MediaDescriptionTemplate.CNAME:
+				out.append("cname");
+				break;
+			default:
+				Assert.fail("Unexpected slot " + slot);
+			}
+		}
+	};
+
+	private RTPFormats formats(int... payloadTypes) {
+		RTPFormats formats = new RTPFormats();
+		for (int payloadType : payloadTypes) {
+			formats.add(AVProfile.getFormat(payloadType));
+		}
+		return formats;
+	}
+
+	@Test
+	public void testSipAudio() throws SdpException {
+		// given
+		MediaDescriptionTemplate template = MediaDescriptionTemplate.getTemplate("audio", MediaProfile.RTP_AVP,
+				formats(0, 8, 101), false, false, false);
+		StringBuilder out = new StringBuilder();
+
+		// when
+		template.write(out, VALUES);
+
+		// then
+		String expected = "m=audio 65000 RTP/AVP 0 8 101\n"
+				+ "c=IN IP4 192.168.1.10\n"
+				+ "a=sendrecv\n"
+				+ "a=rtcp:65001 IN IP4 192.168.1.11\n"
+				+ "a=ptime:20\n"
+				+ "a=rtpmap:0 pcmu/8000\n"
+				+ "a=rtpmap:8 pcma/8000\n"
+				+ "a=rtpmap:101 telephone-event/8000\n"
+				+ "a=ssrc:123456789 cname:cname";
+		Assert.assertEquals(expected, out.toString());
+
+		MediaDescriptionField media = new MediaDescriptionFieldParser().parse(out.substring(0, out.indexOf("\n")));
+		Assert.assertEquals(65000, media.getPort());
+		Assert.assertArrayEquals(new int[] { 0, 8, 101 }, media.getPayloadTypes());
+	}
+
+	@Test
+	public void testWebRtcAudio() {
+		// given
+		MediaDescriptionTemplate template = MediaDescriptionTemplate.getTemplate("audio", MediaProfile.RTP_SAVPF,
+				formats(0, 101), true, true, true);
+		StringBuilder out = new StringBuilder();
+
+		// when
+		template.write(out, VALUES);
+
+		// then
+		String expected = "m=audio 65000 RTP/SAVPF 0 101\n"
+				+ "c=IN IP4 192.168.1.10\n"
+				+ "a=sendrecv\n"
+				+ "a=rtcp:65001 IN IP4 192.168.1.11\n"
+				+ "a=rtcp-mux\n"
+				+ "a=ptime:20\n"
+				+ "a=ice-ufrag:ufrag\n"
+				+ "a=ice-pwd:password\n"
+				+ "a=candidate:1 1 udp 2130706431 192.168.1.10 65000 typ host generation 0\n"
+				+ "a=rtpmap:0 pcmu/8000\n"
+				+ "a=rtpmap:101 telephone-event/8000\n"
+				+ "a=setup:passive\n"
+				+ "a=fingerprint:sha-256 D1:2C:BE:AD\n"
+				+ "a=ssrc:123456789 cname:cname";
+		Assert.assertEquals(expected, out.toString());
+	}
+
+	@Test
+	public void testSharedTemplates() {
+		// given
+		MediaDescriptionTemplate template1 = MediaDescriptionTemplate.getTemplate("audio", MediaProfile.RTP_AVP,
+				formats(0, 8), false, false, false);
+
+		// when
+		MediaDescriptionTemplate template2 = MediaDescriptionTemplate.getTemplate("audio", MediaProfile.RTP_AVP,
+				formats(0, 8), false, false, false);
+		MediaDescriptionTemplate template3 = MediaDescriptionTemplate.getTemplate("audio", MediaProfile.RTP_AVP,
+				formats(8, 0), false, false, false);
+		MediaDescriptionTemplate template4 = MediaDescriptionTemplate.getTemplate("audio", MediaProfile.RTP_AVP,
+				formats(0, 8), true, false, false);
+
+		// then
+		Assert.assertSame(template1, template2);
+		Assert.assertNotSame(template1, template3);
+		Assert.assertNotSame(template1, template4);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testUnsupportedMedia() {
+		MediaDescriptionTemplate.getTemplate("video", MediaProfile.RTP_AVP, formats(34), false, false, false);
+	}
+
+}
@@ -3,18 +3,142 @@
  */
 package org.mobicents.media.server.impl.rtp.sdp;
 
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.junit.After;
 import org.junit.Assert;
+import org.junit.Before;
 import org.junit.Test;
+import org.mobicents.media.io.ice.harvest.HarvestException;
+import org.mobicents.media.server.impl.rtp.ChannelsManager;
+import org.mobicents.media.server.impl.rtp.channels.AudioChannel;
+import org.mobicents.media.server.io.network.UdpManager;
 import org.mobicents.media.server.io.sdp.SdpException;
 import org.mobicents.media.server.io.sdp.SessionDescription;
 import org.mobicents.media.server.io.sdp.fields.MediaDescriptionField;
 import org.mobicents.media.server.io.sdp.fields.parser.MediaDescriptionFieldParser;
+import org.mobicents.media.server.scheduler.Clock;
+import org.mobicents.media.server.scheduler.DefaultClock;
+import org.mobicents.media.server.scheduler.Scheduler;
 
 /**
  * @author Henrique Rosa (henrique.rosa@telestax.com)
  *
  */
 public class SdpFactoryTest {
+
+	private static final String ADDRESS = "127.0.0.1";
+	private static final String REMOTE_HASH_FUNCTION = "sha-256";
+	private static final String REMOTE_FINGERPRINT = "AA:BB:CC:DD:EE:FF:00:11:22:33:44:55:66:77:88:99:AA:BB:CC:DD:EE:FF:00:11:22:33:44:55:66:77:88:99";
+
+	private Clock wallClock;
+	private Scheduler scheduler;
+	private UdpManager udpManager;
+	private ChannelsManager channelsManager;
+	private AudioChannel channel;
+
+	@Before
+	public void before() throws InterruptedException {
+		this.wallClock = new DefaultClock();
+		this.scheduler = new Scheduler();
+		this.scheduler.setClock(this.wallClock);
+		this.udpManager = new UdpManager(this.scheduler);
+		this.udpManager.setBindAddress(ADDRESS);
+		this.udpManager.setLocalBindAddress(ADDRESS);
+		this.channelsManager = new ChannelsManager(this.udpManager);
+		this.channelsManager.setScheduler(this.scheduler);
+
+		this.scheduler.start();
+		this.udpManager.start();
+
+		this.channel = new AudioChannel(this.wallClock, this.channelsManager);
+		this.channel.setCname("test-cname");
+	}
+
+	@After
+	public void after() {
+		if (this.channel.isOpen()) {
+			this.channel.close();
+		}
+		this.udpManager.stop();
+		this.scheduler.stop();
+	}
+
+	@Test
+	public void testWriteRtpAvp() throws IOException {
+		// given
+		channel.open();
+		channel.bind(false, false);
+
+		// when
+		StringBuilder written = new StringBuilder();
+		SdpFactory.writeSdp(written, ADDRESS, null, channel);
+
+		// then
+		String built = SdpFactory.buildSdp(ADDRESS, null, channel).toString();
+		Assert.assertTrue(written.indexOf("RTP/AVP") > 0);
+		assertSameSdp(built, written.toString());
+	}
+
+	@Test
+	public void testWriteIceDtlsRtcpMux() throws IOException, HarvestException {
+		// given
+		channel.open();
+		channel.enableICE(null, true);
+		channel.gatherIceCandidates(channelsManager.getPortManager());
+		channel.enableDTLS(REMOTE_HASH_FUNCTION, REMOTE_FINGERPRINT);
+
+		// when
+		StringBuilder written = new StringBuilder();
+		SdpFactory.writeSdp(written, ADDRESS, "", channel);
+
+		// then
+		String built = SdpFactory.buildSdp(ADDRESS, "", channel).toString();
+		Assert.assertTrue(written.indexOf("a=ice-lite") > 0);
+		Assert.assertTrue(written.indexOf("a=rtcp-mux") > 0);
+		Assert.assertTrue(written.indexOf("a=fingerprint:") > 0);
+		Assert.assertTrue(written.indexOf("a=candidate:") > 0);
+		assertSameSdp(built, written.toString());
+	}
+
+	@Test
+	public void testWriteRejectedMedia() throws IOException, SdpException {
+		// given
+		MediaDescriptionFieldParser mediaFieldParser = new MediaDescriptionFieldParser();
+		MediaDescriptionField video = mediaFieldParser.parse("m=video 49170 RTP/AVP 96 97");
+		MediaDescriptionField application = mediaFieldParser.parse("m=application 9 DTLS/SCTP 5000");
+		channel.open();
+		channel.bind(false, false);
+
+		// when
+		StringBuilder written = new StringBuilder();
+		SdpFactory.writeSdp(written, ADDRESS, null, channel);
+		SdpFactory.writeRejectedMedia(written, video);
+		SdpFactory.writeRejectedMedia(written, application);
+
+		// then
+		SessionDescription built = SdpFactory.buildSdp(ADDRESS, null, channel);
+		SdpFactory.rejectMediaField(built, video);
+		SdpFactory.rejectMediaField(built, application);
+		Assert.assertTrue(written.indexOf("\nm=video 0 RTP/AVP 96 97") > 0);
+		Assert.assertTrue(written.indexOf("\nm=application 0 DTLS/SCTP 5000") > 0);
+		assertSameSdp(built.toString(), written.toString());
+	}
+
+	/**
+	 * Compares two session descriptions ignoring the origin timestamp and the
+	 * order of media descriptions.
+	 */
+	private static void assertSameSdp(String expected, String actual) {
+		Assert.assertArrayEquals(expected + "\n<>\n" + actual, normalize(expected), normalize(actual));
+	}
+
+	private static String[] normalize(String sdp) {
+		String[] sections = sdp.replaceFirst("\no=- [0-9]+ ", "\no=- 0 ").split("\nm=");
+		Arrays.sort(sections, 1, sections.length);
+		return sections;
+	}
 	
 	@Test
 	public void testRejectApplication() throws SdpException {
@@ -0,0 +1,157 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2014, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ *
+ */
+
+package org.mobicents.media.server.impl.srtp;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ */
+public class DtlsHandshakeExecutorTest {
+
+	private DtlsHandshakeExecutor executor;
+
+	@Before
+	public void before() {
+		executor = new DtlsHandshakeExecutor(2);
+	}
+
+	@After
+	public void after() {
+		executor.shutdown();
+	}
+
+	@Test
+	public void testBoundedConcurrency() throws InterruptedException {
+		final CountDownLatch release = new CountDownLatch(1);
+		final CountDownLatch done = new CountDownLatch(5);
+		final AtomicInteger running = new AtomicInteger();
+		final AtomicInteger maxRunning = new AtomicInteger();
+
+		for (int i = 0; i < 5; i++) {
+			executor.execute(new Runnable() {
+
+				@Override
+				public void run() {
+					int current = running.incrementAndGet();
+					if (current > maxRunning.get()) {
+						maxRunning.set(current);
+					}
+					try {
+						release.await();
+					} catch (InterruptedException e) {
+						// lets finish
+					}
+					running.decrementAndGet();
+					done.countDown();
+				}
+			});
+		}
+
+		Thread.sleep(100);
+		Assert.assertEquals(2, executor.getActiveHandshakes());
+		Assert.assertEquals(3, executor.getQueueDepth());
+
+		release.countDown();
+		Assert.assertTrue(done.await(1, TimeUnit.SECONDS));
+		Thread.sleep(50);
+
+		Assert.assertEquals(2, maxRunning.get());
+		Assert.assertEquals(0, executor.getActiveHandshakes());
+		Assert.assertEquals(0, executor.getQueueDepth());
+		Assert.assertEquals(5, executor.getCompletedHandshakes());
+		Assert.assertTrue(executor.getWorstWait() >= 90);
+		Assert.assertTrue(executor.getWorstDuration() >= 90);
+	}
+
+	@Test
+	public void testFailedHandshake() throws InterruptedException {
+		final CountDownLatch done = new CountDownLatch(1);
+		executor.execute(new Runnable() {
+
+			@Override
+			public void run() {
+				throw new IllegalStateException("Handshake is taking too long!");
+			}
+		});
+		executor.execute(new Runnable() {
+
+			@Override
+			public void run() {
+				done.countDown();
+			}
+		});
+
+		// worker survives failed handshake
+		Assert.assertTrue(done.await(1, TimeUnit.SECONDS));
+		Thread.sleep(50);
+		Assert.assertEquals(2, executor.getCompletedHandshakes());
+	}
+
+	@Test
+	public void testQueueLimit() throws InterruptedException {
+		DtlsHandshakeExecutor bounded = new DtlsHandshakeExecutor(1, 1);
+		final CountDownLatch release = new CountDownLatch(1);
+		Runnable blocking = new Runnable() {
+
+			@Override
+			public void run() {
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					// lets finish
+				}
+			}
+		};
+
+		try {
+			bounded.execute(blocking);
+			Thread.sleep(50);
+			Future<?> queued = bounded.execute(blocking);
+			try {
+				bounded.execute(blocking);
+				Assert.fail("Handshake above queue capacity should be rejected");
+			} catch (RejectedExecutionException e) {
+				// expected
+			}
+			Assert.assertEquals(1, bounded.getRejectedHandshakes());
+
+			// cancelled handshake leaves the queue
+			bounded.cancel(queued);
+			Assert.assertEquals(0, bounded.getQueueDepth());
+			Assert.assertEquals(1, bounded.getCancelledHandshakes());
+			bounded.execute(blocking);
+		} finally {
+			release.countDown();
+			bounded.shutdown();
+		}
+	}
+
+}
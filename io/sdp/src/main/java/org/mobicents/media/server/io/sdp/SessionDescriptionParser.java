@@ -20,6 +20,9 @@
 
 package org.mobicents.media.server.io.sdp;
 
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
 import org.mobicents.media.server.io.sdp.attributes.ConnectionModeAttribute;
 import org.mobicents.media.server.io.sdp.attributes.FormatParameterAttribute;
 import org.mobicents.media.server.io.sdp.attributes.MaxPacketTimeAttribute;
@@ -41,6 +44,7 @@ import org.mobicents.media.server.io.sdp.ice.attributes.IcePwdAttribute;
 import org.mobicents.media.server.io.sdp.ice.attributes.IceUfragAttribute;
 import org.mobicents.media.server.io.sdp.rtcp.attributes.RtcpAttribute;
 import org.mobicents.media.server.io.sdp.rtcp.attributes.RtcpMuxAttribute;
+import org.mobicents.media.server.utils.Text;
 
 /**
  * Parses an SDP text description into a {@link SessionDescription} object.
@@ -56,6 +60,9 @@ public class SessionDescriptionParser {
 
 	private static final SdpParserPipeline PARSERS = new SdpParserPipeline();
 
+	private static final char SEPARATOR = ':';
+	private static final Charset CHARSET = Charset.forName("UTF-8");
+
 	public static SessionDescription parse(String text) throws SdpException {
 
 		if (text == null || text.isEmpty()) {
@@ -105,6 +112,278 @@ public class SessionDescriptionParser {
 		return info.sdp;
 	}
 
+	/**
+	 * Parses an SDP description held by an MGCP message.
+	 * 
+	 * @param text
+	 *            The text holding the description
+	 * @return The parsed session description
+	 * @throws SdpException
+	 *             If the description is empty or malformed
+	 */
+	public static SessionDescription parse(Text text) throws SdpException {
+		if (text == null || text.length() == 0) {
+			throw new SdpException(PARSE_ERROR_EMPTY);
+		}
+
+		// parse the message buffer in place, no copy
+		return parse(text.array(), text.arrayOffset(), text.length());
+	}
+
+	/**
+	 * Parses an SDP description in a single pass over its bytes.
+	 * <p>
+	 * Lines are dispatched on the field letter and attribute name without
+	 * splitting the description into strings first. Only the values kept by
+	 * the session description are turned into strings.
+	 * </p>
+	 * 
+	 * @param data
+	 *            The array holding the description
+	 * @param offset
+	 *            The position of the first byte of the description
+	 * @param length
+	 *            The length of the description
+	 * @return The parsed session description
+	 * @throws SdpException
+	 *             If the description is empty or malformed
+	 */
+	public static SessionDescription parse(byte[] data, int offset, int length) throws SdpException {
+		if (data == null || length <= 0) {
+			throw new SdpException(PARSE_ERROR_EMPTY);
+		}
+
+		SdpParsingInfo info = new SdpParsingInfo();
+		SdpLine line = new SdpLine(data);
+
+		int limit = offset + length;
+		int start = offset;
+		while (start < limit) {
+			int eol = start;
+			while (eol < limit && data[eol] != '\n') {
+				eol++;
+			}
+
+			// Drop carriage return and trailing white spaces
+			int end = eol;
+			while (end > start && (data[end - 1] & 0xFF) <= ' ') {
+				end--;
+			}
+
+			if (end > start) {
+				line.reset(start, end);
+				try {
+					if (line.charAt(0) == AttributeField.FIELD_TYPE) {
+						parseAttribute(line, info);
+					} else {
+						parseField(line, info);
+					}
+				} catch (Exception e) {
+					throw new SdpException("Could not parse SDP: " + line, e);
+				}
+			}
+			start = eol + 1;
+		}
+		return info.sdp;
+	}
+
+	private static void parseField(SdpLine line, SdpParsingInfo info) {
+		SdpField field;
+		switch (line.charAt(0)) {
+		case VersionField.FIELD_TYPE:
+			line.beginValue();
+			int version = line.nextInt();
+			if (version > Short.MAX_VALUE) {
+				throw new IllegalArgumentException("Version is out of range");
+			}
+			field = new VersionField((short) version);
+			break;
+
+		case OriginField.FIELD_TYPE:
+			line.beginValue();
+			field = new OriginField(line.nextToken(), line.nextToken(), line.nextToken(), line.nextToken(),
+					line.nextToken(), line.nextToken());
+			break;
+
+		case SessionNameField.FIELD_TYPE:
+			line.beginValue();
+			field = new SessionNameField(line.remainder());
+			break;
+
+		case TimingField.FIELD_TYPE:
+			line.beginValue();
+			field = new TimingField(line.nextInt(), line.nextInt());
+			break;
+
+		case ConnectionField.FIELD_TYPE:
+			line.beginValue();
+			field = new ConnectionField(line.nextToken(), line.nextToken(), line.nextToken());
+			break;
+
+		case MediaDescriptionField.FIELD_TYPE:
+			line.beginValue();
+			MediaDescriptionField md = new MediaDescriptionField();
+			md.setMedia(line.nextToken());
+			md.setPort(line.nextInt());
+			md.setProtocol(line.nextToken());
+
+			int[] formats = null;
+			int count = 0;
+			while (line.hasMore()) {
+				if (formats == null) {
+					formats = new int[8];
+				} else if (count == formats.length) {
+					formats = Arrays.copyOf(formats, count * 2);
+				}
+				formats[count++] = line.nextInt();
+			}
+			md.setPayloadTypes(formats == null ? null : Arrays.copyOf(formats, count));
+			field = md;
+			break;
+
+		default:
+			// Ignore unsupported type
+			return;
+		}
+		convertAndApplyField(field, info);
+	}
+
+	private static void parseAttribute(SdpLine line, SdpParsingInfo info) {
+		line.beginAttribute();
+
+		AttributeField attribute = null;
+		switch (line.charAt(2)) {
+		case 'c':
+			if (line.isAttribute(CandidateAttribute.ATTRIBUTE_TYPE)) {
+				attribute = parseCandidate(line);
+			}
+			break;
+
+		case 'f':
+			if (line.isAttribute(FormatParameterAttribute.ATTRIBUTE_TYPE)) {
+				line.requireValue();
+				attribute = new FormatParameterAttribute(line.nextInt(), line.nextToken());
+			} else if (line.isAttribute(FingerprintAttribute.ATTRIBUTE_TYPE)) {
+				line.requireValue();
+				attribute = new FingerprintAttribute(line.nextToken(), line.nextToken());
+			}
+			break;
+
+		case 'i':
+			if (line.isAttribute(IceUfragAttribute.ATTRIBUTE_TYPE)) {
+				attribute = new IceUfragAttribute(line.requiredRemainder());
+			} else if (line.isAttribute(IcePwdAttribute.ATTRIBUTE_TYPE)) {
+				attribute = new IcePwdAttribute(line.requiredRemainder());
+			} else if (line.isAttribute(IceLiteAttribute.ATTRIBUTE_TYPE)) {
+				attribute = new IceLiteAttribute();
+			} else if (line.isAttribute(ConnectionModeAttribute.INACTIVE)) {
+				attribute = new ConnectionModeAttribute(ConnectionModeAttribute.INACTIVE);
+			}
+			break;
+
+		case 'm':
+			if (line.isAttribute(MaxPacketTimeAttribute.ATTRIBUTE_TYPE)) {
+				line.requireValue();
+				attribute = new MaxPacketTimeAttribute(line.nextInt());
+			}
+			break;
+
+		case 'p':
+			if (line.isAttribute(PacketTimeAttribute.ATTRIBUTE_TYPE)) {
+				line.requireValue();
+				attribute = new PacketTimeAttribute(line.nextInt());
+			}
+			break;
+
+		case 'r':
+			if (line.isAttribute(RtpMapAttribute.ATTRIBUTE_TYPE)) {
+				line.requireValue();
+				int payloadType = line.nextInt();
+				String codec = line.nextToken('/');
+				int clockRate = line.nextInt('/');
+				int codecParams = line.hasMore() ? line.nextInt() : 1;
+				attribute = new RtpMapAttribute(payloadType, codec, clockRate, codecParams);
+			} else if (line.isAttribute(RtcpAttribute.ATTRIBUTE_TYPE)) {
+				line.requireValue();
+				int port = line.nextInt();
+				if (line.hasMore()) {
+					attribute = new RtcpAttribute(port, line.nextToken(), line.nextToken(), line.nextToken());
+				} else {
+					attribute = new RtcpAttribute(port);
+				}
+			} else if (line.isAttribute(RtcpMuxAttribute.ATTRIBUTE_TYPE)) {
+				attribute = new RtcpMuxAttribute();
+			} else if (line.isAttribute(ConnectionModeAttribute.RECVONLY)) {
+				attribute = new ConnectionModeAttribute(ConnectionModeAttribute.RECVONLY);
+			}
+			break;
+
+		case 's':
+			if (line.isAttribute(SsrcAttribute.ATTRIBUTE_TYPE)) {
+				line.requireValue();
+				SsrcAttribute ssrc = new SsrcAttribute(line.nextToken());
+				String name = line.nextToken(SEPARATOR);
+				String value = line.hasValueSeparator() ? line.nextToken() : null;
+				ssrc.addAttribute(name, value);
+				attribute = ssrc;
+			} else if (line.isAttribute(SetupAttribute.ATTRIBUTE_TYPE)) {
+				attribute = new SetupAttribute(line.remainder());
+			} else if (line.isAttribute(ConnectionModeAttribute.SENDRECV)) {
+				attribute = new ConnectionModeAttribute(ConnectionModeAttribute.SENDRECV);
+			} else if (line.isAttribute(ConnectionModeAttribute.SENDONLY)) {
+				attribute = new ConnectionModeAttribute(ConnectionModeAttribute.SENDONLY);
+			}
+			break;
+
+		default:
+			break;
+		}
+
+		if (attribute != null) {
+			convertAndApplyAttribute(attribute, info);
+		}
+	}
+
+	private static CandidateAttribute parseCandidate(SdpLine line) {
+		line.requireValue();
+
+		CandidateAttribute candidate = new CandidateAttribute();
+		candidate.setFoundation(line.nextToken());
+		int componentId = line.nextInt();
+		if (componentId > Short.MAX_VALUE) {
+			throw new IllegalArgumentException("Component id is out of range");
+		}
+		candidate.setComponentId((short) componentId);
+		candidate.setProtocol(line.nextToken());
+		candidate.setPriority(line.nextLong());
+		candidate.setAddress(line.nextToken());
+		candidate.setPort(line.nextInt());
+		line.nextToken(); // TYP
+
+		String type = line.nextToken();
+		if (!CandidateAttribute.isCandidateTypeValid(type)) {
+			throw new IllegalArgumentException("Unrecognized candidate type: " + type);
+		}
+		candidate.setCandidateType(type);
+
+		// Extensions come as name and value pairs
+		while (line.hasMore()) {
+			String name = line.nextToken();
+			if (CandidateAttribute.RADDR.equals(name)) {
+				candidate.setRelatedAddress(line.nextToken());
+			} else if (CandidateAttribute.RPORT.equals(name)) {
+				candidate.setRelatedPort(line.nextInt());
+			} else if (CandidateAttribute.TCPTYPE.equals(name)) {
+				candidate.setTcpType(line.nextToken());
+			} else if (CandidateAttribute.GENERATION.equals(name)) {
+				candidate.setGeneration(line.nextInt());
+			} else if (line.hasMore()) {
+				line.nextToken();
+			}
+		}
+		return candidate;
+	}
+
 	private static void convertAndApplyField(SdpField field, SdpParsingInfo info) {
 		switch (field.getFieldType()) {
 		case VersionField.FIELD_TYPE:
@@ -239,6 +518,163 @@ public class SessionDescriptionParser {
 		}
 	}
 
+	/**
+	 * Cursor over a single line of an SDP description.
+	 */
+	private static class SdpLine {
+
+		private final byte[] data;
+		private int start;
+		private int end;
+		private int position;
+
+		// attribute name bounds and value separator
+		private int nameEnd;
+		private boolean hasValue;
+
+		public SdpLine(byte[] data) {
+			this.data = data;
+		}
+
+		public void reset(int start, int end) {
+			this.start = start;
+			this.end = end;
+			this.position = start;
+		}
+
+		public char charAt(int index) {
+			int i = start + index;
+			return i < end ? (char) (data[i] & 0xFF) : 0;
+		}
+
+		public void beginValue() {
+			if (charAt(1) != '=') {
+				throw new IllegalArgumentException("Missing field separator");
+			}
+			this.position = start + 2;
+		}
+
+		public void beginAttribute() {
+			beginValue();
+			this.nameEnd = position;
+			while (nameEnd < end && data[nameEnd] != SEPARATOR) {
+				nameEnd++;
+			}
+			this.hasValue = nameEnd < end;
+			this.position = hasValue ? nameEnd + 1 : end;
+		}
+
+		public boolean isAttribute(String name) {
+			int length = name.length();
+			if (nameEnd - start - 2 != length) {
+				return false;
+			}
+			for (int i = 0; i < length; i++) {
+				if (data[start + 2 + i] != name.charAt(i)) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		public void requireValue() {
+			if (!hasValue) {
+				throw new IllegalArgumentException("No value found");
+			}
+		}
+
+		public boolean hasValueSeparator() {
+			return data[position - 1] == SEPARATOR;
+		}
+
+		public boolean hasMore() {
+			while (position < end && data[position] == ' ') {
+				position++;
+			}
+			return position < end;
+		}
+
+		public String nextToken() {
+			return nextToken(' ');
+		}
+
+		/**
+		 * Reads next token ending with white space or stop character, which
+		 * is consumed.
+		 */
+		public String nextToken(char stop) {
+			int from = skipToken(stop);
+			String token = new String(data, from, position - from, CHARSET);
+			consume(stop);
+			return token;
+		}
+
+		public int nextInt() {
+			return nextInt(' ');
+		}
+
+		public int nextInt(char stop) {
+			long value = nextNumber(stop);
+			if (value > Integer.MAX_VALUE) {
+				throw new NumberFormatException("Value is out of range");
+			}
+			return (int) value;
+		}
+
+		public long nextLong() {
+			return nextNumber(' ');
+		}
+
+		public String remainder() {
+			return new String(data, position, end - position, CHARSET);
+		}
+
+		public String requiredRemainder() {
+			requireValue();
+			if (position == end) {
+				throw new IllegalArgumentException("Value is empty");
+			}
+			return remainder();
+		}
+
+		private long nextNumber(char stop) {
+			int from = skipToken(stop);
+			long value = 0;
+			for (int i = from; i < position; i++) {
+				int digit = data[i] - '0';
+				if (digit < 0 || digit > 9 || value > (Long.MAX_VALUE - digit) / 10) {
+					throw new NumberFormatException("Invalid number");
+				}
+				value = value * 10 + digit;
+			}
+			consume(stop);
+			return value;
+		}
+
+		private int skipToken(char stop) {
+			if (!hasMore()) {
+				throw new IllegalArgumentException("Missing value");
+			}
+			int from = position;
+			while (position < end && data[position] != ' ' && data[position] != stop) {
+				position++;
+			}
+			return from;
+		}
+
+		private void consume(char stop) {
+			if (stop != ' ' && position < end && data[position] == stop) {
+				position++;
+			}
+		}
+
+		@Override
+		public String toString() {
+			return new String(data, start, end - start, CHARSET);
+		}
+
+	}
+
 	private static class SdpParsingInfo {
 
 		final SessionDescription sdp;
@@ -28,6 +28,7 @@ import java.nio.file.Paths;
 
 import org.junit.Assert;
 import org.junit.BeforeClass;
+import org.junit.Ignore;
 import org.junit.Test;
 import org.mobicents.media.server.io.sdp.attributes.ConnectionModeAttribute;
 import org.mobicents.media.server.io.sdp.attributes.MaxPacketTimeAttribute;
@@ -47,6 +48,7 @@ import org.mobicents.media.server.io.sdp.ice.attributes.IcePwdAttribute;
 import org.mobicents.media.server.io.sdp.ice.attributes.IceUfragAttribute;
 import org.mobicents.media.server.io.sdp.rtcp.attributes.RtcpAttribute;
 import org.mobicents.media.server.io.sdp.rtcp.attributes.RtcpMuxAttribute;
+import org.mobicents.media.server.utils.Text;
 
 /**
  * 
@@ -326,7 +328,92 @@ public class SessionDescriptionParserTest {
 		MediaDescriptionField application = sdp.getMediaDescription("application");
 		Assert.assertNull(application);
 	}
-	
-	
+
+	@Test
+	public void testParseBytes() throws SdpException {
+		String[] offers = { webrtcDescription, chrome39offer, firefox33offer, androidSdkOffer };
+		for (String offer : offers) {
+			// given
+			byte[] data = ("xx" + offer + "yy").getBytes();
+
+			// when
+			SessionDescription expected = SessionDescriptionParser.parse(offer);
+			SessionDescription sdp = SessionDescriptionParser.parse(data, 2, data.length - 4);
+
+			// then
+			Assert.assertEquals(expected.toString(), sdp.toString());
+		}
+	}
+
+	@Test
+	public void testParseText() throws SdpException {
+		// given
+		Text text = new Text(webrtcDescription.replace("\n", "\r\n"));
+
+		// when
+		SessionDescription sdp = SessionDescriptionParser.parse(text);
+
+		// then
+		MediaDescriptionField audio = sdp.getMediaDescription("audio");
+		Assert.assertNotNull(audio);
+		Assert.assertEquals(10, audio.getFormats().length);
+		Assert.assertEquals("actpass", audio.getSetup().getValue());
+		Assert.assertEquals("AU/SQPupllyS0SDG/eRWDCfA", audio.getIcePwd().getPassword());
+		Assert.assertEquals("rfQMs6/rvuHHWkM4", audio.getSsrc().getAttributeValue("cname"));
+
+		CandidateAttribute[] candidates = audio.getCandidates();
+		Assert.assertEquals(8, candidates.length);
+		for (CandidateAttribute candidate : candidates) {
+			if (!CandidateAttribute.TYP_HOST.equals(candidate.getCandidateType())) {
+				Assert.assertNotNull(candidate.getRelatedAddress());
+				Assert.assertTrue(candidate.getRelatedPort() > 0);
+			}
+		}
+		Assert.assertEquals(SessionDescriptionParser.parse(webrtcDescription).toString(), sdp.toString());
+	}
+
+	@Test
+	public void testParseSubText() throws SdpException {
+		// given
+		String message = "CRCX 1 test@127.0.0.1 MGCP 1.0\r\nM: sendrecv\r\n\r\n";
+		byte[] data = (message + webrtcDescription).getBytes();
+		Text text = new Text(data, message.length(), data.length - message.length());
+
+		// when
+		SessionDescription sdp = SessionDescriptionParser.parse(text);
+
+		// then
+		Assert.assertEquals(SessionDescriptionParser.parse(webrtcDescription).toString(), sdp.toString());
+	}
+
+	@Test(expected = SdpException.class)
+	public void testParseMalformedBytes() throws SdpException {
+		byte[] data = "v=0\nm=audio port RTP/AVP 0\n".getBytes();
+		SessionDescriptionParser.parse(data, 0, data.length);
+	}
+
+	@Ignore
+	@Test
+	public void testParsingSpeed() throws SdpException {
+		byte[] data = webrtcDescription.getBytes();
+		int iterations = 100000;
+
+		for (int round = 0; round < 3; round++) {
+			long start = System.nanoTime();
+			for (int i = 0; i < iterations; i++) {
+				SessionDescriptionParser.parse(new String(data));
+			}
+			long text = System.nanoTime() - start;
+
+			start = System.nanoTime();
+			for (int i = 0; i < iterations; i++) {
+				SessionDescriptionParser.parse(data, 0, data.length);
+			}
+			long bytes = System.nanoTime() - start;
+
+			System.out.println("String parser " + (text / iterations) + "ns, byte parser " + (bytes / iterations) + "ns");
+		}
+	}
+
 
 }
@@ -39,6 +39,7 @@ import org.mobicents.media.server.impl.resource.mediaplayer.audio.wav.WavTrackIm
 import org.mobicents.media.server.impl.resource.mediaplayer.audio.tone.ToneTrackImpl;
 import org.mobicents.media.server.scheduler.Scheduler;
 import org.mobicents.media.server.spi.dsp.Processor;
+import org.mobicents.media.server.spi.dsp.SharedEncoder;
 import org.mobicents.media.server.spi.ResourceUnavailableException;
 import org.mobicents.media.server.spi.format.AudioFormat;
 import org.mobicents.media.server.spi.format.FormatFactory;
@@ -75,6 +76,12 @@ public class AudioPlayerImpl extends AbstractSource implements Player, TTSEngine
     private final static Logger logger = Logger.getLogger(AudioPlayerImpl.class);
     
     private AudioInput input;
+    
+    //prompts shared with other players, may be null
+    private PromptCache promptCache;
+    
+    //encoder of current play of prompt, null if prompt is not cached
+    private SharedEncoder promptEncoder;
     /**
      * Creates new instance of the Audio player.
      * 
@@ -105,6 +112,24 @@ public class AudioPlayerImpl extends AbstractSource implements Player, TTSEngine
         this.dsp = dsp;        
     }
     
+    /**
+     * Assigns the cache of prompts shared by players.
+     *
+     * @param promptCache the cache or null to stream prompts directly.
+     */
+    public void setPromptCache(PromptCache promptCache) {
+        this.promptCache = promptCache;
+    }
+    
+    /**
+     * Gets the cache of prompts used by this player.
+     *
+     * @return the cache or null if prompts are streamed directly.
+     */
+    public PromptCache getPromptCache() {
+        return this.promptCache;
+    }
+    
     /**
      * Gets the digital signaling processor associated with this media source
      *
@@ -126,6 +151,7 @@ public class AudioPlayerImpl extends AbstractSource implements Player, TTSEngine
     		track.close();
             track = null;
     	}
+    	promptEncoder = null;
     	
         // let's disallow to assign file is player is not connected
         if (!this.isConnected()) {
@@ -147,9 +173,15 @@ public class AudioPlayerImpl extends AbstractSource implements Player, TTSEngine
     	try {
     		//check scheme, if its file, we should try to create dirs
     		if (ext.matches(Extension.WAV)) {       
-    			track = new WavTrackImpl(targetURL);            	
+    			track = new WavTrackImpl(targetURL, promptCache);            	
+    			if (promptCache != null) {
+    				PromptEncoder encoder = promptCache.getEncoder(targetURL, dsp == null ? null : dsp.getCodecs());
+    				if (encoder != null) {
+    					promptEncoder = encoder.newPlay();
+    				}
+    			}
     		} else if (ext.matches(Extension.GSM)) {
-    			track = new GsmTrackImpl(targetURL);
+    			track = new GsmTrackImpl(targetURL, promptCache);
     		} else if (ext.matches(Extension.TONE)) {
     			track = new ToneTrackImpl(targetURL);
     		} else if (ext.matches(Extension.TXT)) {
@@ -231,6 +263,11 @@ public class AudioPlayerImpl extends AbstractSource implements Player, TTSEngine
         		try
         		{
         			frame = dsp.process(frame,frame.getFormat(),LINEAR);
+        			
+        			//frames of cached prompt may be served encoded in advance
+        			if (promptEncoder != null) {
+        				frame.setSharedEncoder(promptEncoder, timestamp / frame.getDuration() + 1);
+        			}
         		}
         		catch(Exception e)
         		{
@@ -275,6 +312,7 @@ public class AudioPlayerImpl extends AbstractSource implements Player, TTSEngine
 
     public void setText(String text) {
         track = new TtsTrackImpl(text, voiceName, null);
+        promptEncoder = null;
     }    
 
     public void addListener(PlayerListener listener) throws TooManyListenersException {
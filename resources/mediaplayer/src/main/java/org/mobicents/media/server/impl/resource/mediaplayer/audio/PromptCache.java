@@ -0,0 +1,590 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.mobicents.media.server.impl.resource.mediaplayer.audio;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+import org.mobicents.media.server.spi.dsp.Codec;
+
+/**
+ * Cache of prompts shared by all players.
+ *
+ * Prompts are copied into direct buffers, so tracks read frames from memory
+ * without system calls. Files are not memory mapped, since truncating a
+ * mapped file would crash the server on the next read. Concurrent plays of
+ * a local file which is not cached yet wait for a single load. Least recently
+ * used prompts are evicted when the total size goes over capacity. Local
+ * files are checked for modification at most once per validation interval
+ * and reloaded when changed.
+ *
+ * Remote prompts are streamed until cached: the first miss starts a single
+ * load by background thread instead of blocking the play on the download.
+ * Remote prompts over max prompt size, known from Content-Length or found
+ * while loading, are remembered and streamed without further loads.
+ *
+ * Hot prompts keep variants encoded in advance with codecs requested by
+ * connections, see {@link PromptEncoder}. Variants are encoded by background
+ * thread and count towards capacity of the cache.
+ */
+public class PromptCache {
+	//prompts larger than this are streamed as before
+	public static final int DEFAULT_MAX_PROMPT_SIZE = 8 * 1024 * 1024;
+	public static final long DEFAULT_VALIDATION_INTERVAL = 1000L;
+
+	//number of remote prompts remembered as too large
+	private static final int MAX_TOO_LARGE = 1024;
+
+	private static final Logger logger = Logger.getLogger(PromptCache.class);
+
+	//encodes variants of hot prompts
+	private final static ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, "prompt-encoder");
+			thread.setDaemon(true);
+			thread.setPriority(Thread.MIN_PRIORITY);
+			return thread;
+		}
+	});
+
+	//loads remote prompts
+	private final static ThreadPoolExecutor loader = new ThreadPoolExecutor(2, 2, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, "prompt-loader");
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+
+	static {
+		executor.allowCoreThreadTimeOut(true);
+		loader.allowCoreThreadTimeOut(true);
+	}
+
+	private final long capacity;
+	private final int maxPromptSize;
+	private final long validationInterval;
+
+	//access ordered, guarded by this
+	private final LinkedHashMap<String, Prompt> prompts = new LinkedHashMap<String, Prompt>(64, 0.75f, true);
+	private long size;
+
+	//prompts being loaded, guarded by this
+	private final HashMap<String, Loading> loading = new HashMap<String, Loading>();
+
+	//remote prompts over max prompt size, guarded by this
+	private final LinkedHashMap<String, Boolean> tooLarge = new LinkedHashMap<String, Boolean>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+			return size() > MAX_TOO_LARGE;
+		}
+	};
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+
+	/**
+	 * Creates new cache.
+	 *
+	 * @param capacity the total size of cached prompts in bytes.
+	 */
+	public PromptCache(long capacity) {
+		this(capacity, DEFAULT_MAX_PROMPT_SIZE, DEFAULT_VALIDATION_INTERVAL);
+	}
+
+	/**
+	 * Creates new cache.
+	 *
+	 * @param capacity the total size of cached prompts in bytes.
+	 * @param maxPromptSize the size of the largest prompt to cache.
+	 * @param validationInterval the time in milliseconds between checks of file modification.
+	 */
+	public PromptCache(long capacity, int maxPromptSize, long validationInterval) {
+		if (capacity <= 0)
+			throw new IllegalArgumentException("Capacity should be positive: " + capacity);
+
+		this.capacity = capacity;
+		this.maxPromptSize = maxPromptSize;
+		this.validationInterval = validationInterval;
+	}
+
+	/**
+	 * Opens stream of prompt, loading it into cache if required.
+	 *
+	 * @param url the location of the prompt.
+	 * @return the stream reading the prompt.
+	 * @throws IOException if prompt can not be loaded.
+	 */
+	public InputStream openStream(URL url) throws IOException {
+		String key = url.toExternalForm();
+		long now = System.currentTimeMillis();
+
+		Prompt prompt;
+		synchronized (this) {
+			prompt = prompts.get(key);
+		}
+
+		if (prompt != null) {
+			if (isValid(prompt, now)) {
+				hits.incrementAndGet();
+				return new PromptInputStream(prompt.data.duplicate());
+			}
+			remove(key, prompt);
+		}
+
+		File file = toFile(url);
+		if (file == null)
+			return openRemote(url, key);
+
+		Loading current;
+		boolean owner = false;
+		synchronized (this) {
+			current = loading.get(key);
+			if (current == null) {
+				current = new Loading();
+				loading.put(key, current);
+				owner = true;
+			}
+		}
+
+		if (owner) {
+			misses.incrementAndGet();
+			try {
+				current.prompt = loadFile(file, url, now);
+				if (current.prompt != null)
+					put(key, current.prompt);
+			} finally {
+				synchronized (this) {
+					loading.remove(key);
+				}
+				current.done.countDown();
+			}
+		} else {
+			try {
+				current.done.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException("Interrupted while loading prompt: " + url);
+			}
+
+			if (current.prompt != null)
+				hits.incrementAndGet();
+			else
+				misses.incrementAndGet();
+		}
+
+		prompt = current.prompt;
+		if (prompt == null)
+			return url.openStream();
+
+		return new PromptInputStream(prompt.data.duplicate());
+	}
+
+	/**
+	 * Streams remote prompt which is not cached, starting its load if
+	 * required.
+	 */
+	private InputStream openRemote(final URL url, final String key) throws IOException {
+		misses.incrementAndGet();
+
+		final Loading current;
+		synchronized (this) {
+			if (tooLarge.containsKey(key) || loading.containsKey(key)) {
+				current = null;
+			} else {
+				current = new Loading();
+				loading.put(key, current);
+			}
+		}
+
+		if (current != null) {
+			executeLoad(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						current.prompt = loadRemote(url, key, System.currentTimeMillis());
+						if (current.prompt != null)
+							put(key, current.prompt);
+					} catch (IOException e) {
+						//next play tries again
+						logger.debug("Could not load prompt: " + url, e);
+					} finally {
+						synchronized (PromptCache.this) {
+							loading.remove(key);
+						}
+						current.done.countDown();
+					}
+				}
+			});
+		}
+		return url.openStream();
+	}
+
+	/**
+	 * Gets the encoder of cached prompt.
+	 *
+	 * @param url the location of the prompt.
+	 * @param decoders the codecs which may be used to decode prompt to linear format.
+	 * @return the encoder or null if prompt is not cached.
+	 */
+	public synchronized PromptEncoder getEncoder(URL url, Codec[] decoders) {
+		Prompt prompt = prompts.get(url.toExternalForm());
+		if (prompt == null)
+			return null;
+
+		if (prompt.encoder == null)
+			prompt.encoder = new PromptEncoder(this, url, decoders);
+
+		return prompt.encoder;
+	}
+
+	/**
+	 * Removes prompt from cache.
+	 *
+	 * @param url the location of the prompt.
+	 */
+	public synchronized void invalidate(URL url) {
+		tooLarge.remove(url.toExternalForm());
+		Prompt prompt = prompts.remove(url.toExternalForm());
+		if (prompt != null)
+			size -= prompt.size();
+	}
+
+	/**
+	 * Removes all prompts.
+	 */
+	public synchronized void clear() {
+		prompts.clear();
+		tooLarge.clear();
+		size = 0;
+	}
+
+	/**
+	 * Gets the total size of cached prompts.
+	 *
+	 * @return the size in bytes.
+	 */
+	public synchronized long getSize() {
+		return size;
+	}
+
+	/**
+	 * Gets the number of cached prompts.
+	 *
+	 * @return the number of prompts.
+	 */
+	public synchronized int getCount() {
+		return prompts.size();
+	}
+
+	/**
+	 * Gets the number of prompts served from cache.
+	 *
+	 * @return the number of hits.
+	 */
+	public long getHits() {
+		return hits.get();
+	}
+
+	/**
+	 * Gets the number of prompts loaded into cache or streamed.
+	 *
+	 * @return the number of misses.
+	 */
+	public long getMisses() {
+		return misses.get();
+	}
+
+	private boolean isValid(Prompt prompt, long now) {
+		if (prompt.file == null || now - prompt.checked < validationInterval)
+			return true;
+
+		if (prompt.file.lastModified() != prompt.modified || prompt.file.length() != prompt.data.capacity())
+			return false;
+
+		prompt.checked = now;
+		return true;
+	}
+
+	private synchronized void remove(String key, Prompt prompt) {
+		if (prompts.get(key) == prompt) {
+			prompts.remove(key);
+			size -= prompt.size();
+		}
+	}
+
+	private synchronized void put(String key, Prompt prompt) {
+		Prompt previous = prompts.put(key, prompt);
+		if (previous != null)
+			size -= previous.size();
+		size += prompt.size();
+		evict(prompt);
+	}
+
+	/**
+	 * Accounts variant encoded by encoder of cached prompt.
+	 *
+	 * @param encoder the encoder of the prompt.
+	 * @param bytes the size of encoded variant.
+	 */
+	protected synchronized void grow(PromptEncoder encoder, long bytes) {
+		for (Prompt prompt : prompts.values()) {
+			if (prompt.encoder == encoder) {
+				prompt.encodedSize += bytes;
+				size += bytes;
+				evict(prompt);
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Schedules encoding of prompt variant.
+	 *
+	 * @param task the encoding task.
+	 */
+	protected void execute(Runnable task) {
+		executor.execute(task);
+	}
+
+	/**
+	 * Schedules load of remote prompt.
+	 *
+	 * @param task the loading task.
+	 */
+	protected void executeLoad(Runnable task) {
+		loader.execute(task);
+	}
+
+	private void evict(Prompt current) {
+		Iterator<Map.Entry<String, Prompt>> iterator = prompts.entrySet().iterator();
+		while (size > capacity && iterator.hasNext()) {
+			Map.Entry<String, Prompt> eldest = iterator.next();
+			if (eldest.getValue() == current)
+				continue;
+
+			size -= eldest.getValue().size();
+			iterator.remove();
+		}
+	}
+
+	private Prompt loadFile(File file, URL url, long now) throws IOException {
+		long modified = file.lastModified();
+		long length = file.length();
+		if (length == 0 || length > maxPromptSize)
+			return null;
+
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = raf.getChannel();
+			ByteBuffer data = ByteBuffer.allocateDirect((int) length);
+			int len = channel.read(data);
+			while (len != -1 && data.hasRemaining())
+				len = channel.read(data);
+
+			//file is being rewritten, stream it this time
+			if (data.hasRemaining() || channel.size() != length || file.lastModified() != modified) {
+				logger.debug("Prompt changed while loading: " + url);
+				return null;
+			}
+
+			data.flip();
+			return new Prompt(data, file, modified, now);
+		} finally {
+			raf.close();
+		}
+	}
+
+	private Prompt loadRemote(URL url, String key, long now) throws IOException {
+		URLConnection connection = url.openConnection();
+		InputStream stream = connection.getInputStream();
+		try {
+			long length = connection.getContentLengthLong();
+			if (length > maxPromptSize) {
+				tooLarge(url, key);
+				return null;
+			}
+
+			byte[] buffer = new byte[8192];
+			ByteBuffer data = ByteBuffer.allocateDirect(length > 0 ? (int) length : Math.min(buffer.length, maxPromptSize));
+			int len = stream.read(buffer);
+			while (len != -1) {
+				if (data.position() + len > maxPromptSize) {
+					tooLarge(url, key);
+					return null;
+				}
+
+				if (data.remaining() < len) {
+					ByteBuffer larger = ByteBuffer.allocateDirect((int) Math.min(data.capacity() * 2L + len, maxPromptSize));
+					data.flip();
+					larger.put(data);
+					data = larger;
+				}
+				data.put(buffer, 0, len);
+				len = stream.read(buffer);
+			}
+
+			if (data.position() == 0 || (length > 0 && data.position() != length)) {
+				logger.debug("Prompt changed while loading: " + url);
+				return null;
+			}
+
+			data.flip();
+			if (data.remaining() == data.capacity())
+				return new Prompt(data, null, 0, now);
+
+			ByteBuffer exact = ByteBuffer.allocateDirect(data.remaining());
+			exact.put(data);
+			exact.flip();
+			return new Prompt(exact, null, 0, now);
+		} finally {
+			stream.close();
+		}
+	}
+
+	private synchronized void tooLarge(URL url, String key) {
+		logger.debug("Prompt is too large to be cached: " + url);
+		tooLarge.put(key, Boolean.TRUE);
+	}
+
+	private static File toFile(URL url) {
+		if (!"file".equals(url.getProtocol()))
+			return null;
+
+		try {
+			return new File(url.toURI());
+		} catch (URISyntaxException e) {
+			return new File(url.getPath());
+		} catch (IllegalArgumentException e) {
+			return null;
+		}
+	}
+
+	private static class Prompt {
+		private final ByteBuffer data;
+		private final File file;
+		private final long modified;
+		private volatile long checked;
+
+		//guarded by cache
+		private PromptEncoder encoder;
+		private long encodedSize;
+
+		private Prompt(ByteBuffer data, File file, long modified, long checked) {
+			this.data = data;
+			this.file = file;
+			this.modified = modified;
+			this.checked = checked;
+		}
+
+		private long size() {
+			return data.capacity() + encodedSize;
+		}
+	}
+
+	/**
+	 * Load of prompt awaited by concurrent plays.
+	 */
+	private static class Loading {
+		private final CountDownLatch done = new CountDownLatch(1);
+		private volatile Prompt prompt;
+	}
+
+	/**
+	 * Stream reading cached prompt, each stream has own position.
+	 */
+	private static class PromptInputStream extends InputStream {
+		private final ByteBuffer data;
+
+		private PromptInputStream(ByteBuffer data) {
+			this.data = data;
+		}
+
+		@Override
+		public int read() {
+			return data.hasRemaining() ? data.get() & 0xFF : -1;
+		}
+
+		@Override
+		public int read(byte[] buffer, int offset, int length) {
+			if (length == 0)
+				return 0;
+
+			int count = Math.min(length, data.remaining());
+			if (count == 0)
+				return -1;
+
+			data.get(buffer, offset, count);
+			return count;
+		}
+
+		@Override
+		public long skip(long n) {
+			int count = (int) Math.max(0, Math.min(n, data.remaining()));
+			data.position(data.position() + count);
+			return count;
+		}
+
+		@Override
+		public int available() {
+			return data.remaining();
+		}
+
+		@Override
+		public boolean markSupported() {
+			return true;
+		}
+
+		@Override
+		public synchronized void mark(int readlimit) {
+			data.mark();
+		}
+
+		@Override
+		public synchronized void reset() {
+			data.reset();
+		}
+	}
+}
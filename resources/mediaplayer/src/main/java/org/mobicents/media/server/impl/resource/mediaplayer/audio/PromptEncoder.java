@@ -0,0 +1,282 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.mobicents.media.server.impl.resource.mediaplayer.audio;
+
+import java.io.ByteArrayOutputStream;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+import org.mobicents.media.server.impl.resource.mediaplayer.Track;
+import org.mobicents.media.server.impl.resource.mediaplayer.audio.wav.WavTrackImpl;
+import org.mobicents.media.server.spi.dsp.Codec;
+import org.mobicents.media.server.spi.dsp.SharedEncoder;
+import org.mobicents.media.server.spi.format.AudioFormat;
+import org.mobicents.media.server.spi.format.FormatFactory;
+import org.mobicents.media.server.spi.memory.Frame;
+import org.mobicents.media.server.spi.memory.Memory;
+
+/**
+ * Encoder of cached prompt which serves frames encoded in advance.
+ *
+ * Player starts new play with {@link #newPlay()} and marks each frame with
+ * the returned encoder, cycle is the number of the frame counted from the
+ * beginning of the prompt starting with 1. Once prompt is played often
+ * enough, first request for a codec schedules encoding of the whole prompt in
+ * background with new instance of the codec.
+ *
+ * Each play decides once per codec type, on the first request: if it is the
+ * request for the first frame and the variant is ready, the whole play is
+ * served from the variant, otherwise the whole play is transcoded by
+ * processor. Served frames come from single encoding of the prompt from the
+ * beginning, so stateful codecs get variants as well.
+ */
+public class PromptEncoder {
+	//number of plays after which prompt is considered hot
+	public static final int HOT_PLAYS = 2;
+
+	private final static AudioFormat LINEAR = FormatFactory.createAudioFormat("linear", 8000, 16, 1);
+
+	//decision of play which is transcoded by processor
+	private final static Variant TRANSCODED = new Variant(null);
+
+	private static final Logger logger = Logger.getLogger(PromptEncoder.class);
+
+	private final PromptCache cache;
+	private final URL url;
+
+	//codecs of player used to decode prompt, may be null
+	private final Codec[] decoders;
+
+	private final AtomicInteger plays = new AtomicInteger();
+	private final ConcurrentHashMap<Class<?>, Variant> variants = new ConcurrentHashMap<Class<?>, Variant>();
+
+	private final AtomicLong servedFrames = new AtomicLong();
+
+	protected PromptEncoder(PromptCache cache, URL url, Codec[] decoders) {
+		this.cache = cache;
+		this.url = url;
+		this.decoders = decoders;
+	}
+
+	/**
+	 * Registers new play of the prompt.
+	 *
+	 * @return the encoder shared by frames of the play.
+	 */
+	public SharedEncoder newPlay() {
+		plays.incrementAndGet();
+		return new Play();
+	}
+
+	/**
+	 * Gets the number of plays of the prompt.
+	 *
+	 * @return the number of plays.
+	 */
+	public int getPlays() {
+		return plays.get();
+	}
+
+	private Variant decide(Class<? extends Codec> codecClass, long cycle) {
+		Variant variant = variants.get(codecClass);
+		if (variant == null) {
+			if (plays.get() >= HOT_PLAYS) {
+				variant = new Variant(codecClass);
+				if (variants.putIfAbsent(codecClass, variant) == null)
+					cache.execute(new VariantTask(variant));
+			}
+			return TRANSCODED;
+		}
+
+		if (cycle != 1 || variant.offsets == null)
+			return TRANSCODED;
+
+		return variant;
+	}
+
+	private Frame serve(Variant variant, Frame frame, Codec codec) {
+		int[] offsets = variant.offsets;
+		long index = frame.getSharedCycle() - 1;
+		if (index < 0 || index >= offsets.length - 1)
+			return null;
+
+		int offset = offsets[(int) index];
+		int length = offsets[(int) index + 1] - offset;
+		if (length == 0)
+			return null;
+
+		//frame is owned and recycled by consumers, so it is taken from pool
+		Frame result = Memory.allocatePayload(length);
+		if (result.isDirect())
+			result.getBuffer().put(variant.data, offset, length);
+		else
+			System.arraycopy(variant.data, offset, result.getData(), 0, length);
+
+		result.setOffset(0);
+		result.setLength(length);
+		result.setFormat(codec.getSupportedOutputFormat());
+		result.setTimestamp(frame.getTimestamp());
+		result.setDuration(frame.getDuration());
+		result.setSequenceNumber(frame.getSequenceNumber());
+		result.setEOM(frame.isEOM());
+
+		servedFrames.incrementAndGet();
+		return result;
+	}
+	/**
+	 * Checks whether prompt is encoded in advance with codec of specified
+	 * type.
+	 *
+	 * @param codec the codec of the processor.
+	 * @return true if encoded frames are ready.
+	 */
+	public boolean isEncoded(Codec codec) {
+		Variant variant = variants.get(codec.getClass());
+		return variant != null && variant.offsets != null;
+	}
+
+	/**
+	 * Gets the number of frames served from encoded variants.
+	 *
+	 * @return the number of frames.
+	 */
+	public long getServedFrames() {
+		return servedFrames.get();
+	}
+
+	private Codec newDecoder(Track track) throws Exception {
+		if (track.getFormat().matches(LINEAR))
+			return null;
+
+		if (decoders != null) {
+			for (Codec decoder : decoders) {
+				if (decoder.getSupportedInputFormat().matches(track.getFormat()) && decoder.getSupportedOutputFormat().matches(LINEAR))
+					return decoder.getClass().getDeclaredConstructor().newInstance();
+			}
+		}
+
+		throw new IllegalStateException("No decoder for " + track.getFormat());
+	}
+
+	private void build(Variant variant) throws Exception {
+		Track track = new WavTrackImpl(url, cache);
+		try {
+			Codec decoder = newDecoder(track);
+			Codec encoder = variant.codecClass.getDeclaredConstructor().newInstance();
+
+			//frames are kept back to back, offsets has one more entry for the end
+			ByteArrayOutputStream data = new ByteArrayOutputStream();
+			List<Integer> offsets = new ArrayList<Integer>();
+			boolean eom = false;
+			while (!eom) {
+				Frame frame = track.process(0);
+				eom = frame.isEOM();
+
+				if (decoder != null) {
+					Frame decoded = decoder.process(frame);
+					frame.recycle();
+					frame = decoded;
+				}
+
+				Frame encoded = encoder.process(frame);
+				frame.recycle();
+
+				offsets.add(data.size());
+				if (encoded != null) {
+					data.write(encoded.getData(), encoded.getOffset(), encoded.getLength());
+					encoded.recycle();
+				}
+			}
+			offsets.add(data.size());
+
+			int[] bounds = new int[offsets.size()];
+			for (int i = 0; i < bounds.length; i++) {
+				bounds[i] = offsets.get(i);
+			}
+
+			long size = data.size();
+			variant.data = data.toByteArray();
+			variant.offsets = bounds;
+			cache.grow(this, size);
+		} finally {
+			track.close();
+		}
+	}
+
+	private static class Variant {
+		private final Class<? extends Codec> codecClass;
+
+		private byte[] data;
+
+		//null until encoded, published after data
+		private volatile int[] offsets;
+
+		private Variant(Class<? extends Codec> codecClass) {
+			this.codecClass = codecClass;
+		}
+	}
+
+	private class Play extends SharedEncoder {
+		//decisions of the play per codec type
+		private final ConcurrentHashMap<Class<?>, Variant> decisions = new ConcurrentHashMap<Class<?>, Variant>(4);
+
+		@Override
+		public Frame encode(Frame frame, Codec codec) {
+			Variant variant = decisions.get(codec.getClass());
+			if (variant == null) {
+				Variant decided = decide(codec.getClass(), frame.getSharedCycle());
+				variant = decisions.putIfAbsent(codec.getClass(), decided);
+				if (variant == null)
+					variant = decided;
+			}
+
+			if (variant == TRANSCODED)
+				return null;
+
+			return serve(variant, frame, codec);
+		}
+	}
+
+	private class VariantTask implements Runnable {
+		private final Variant variant;
+
+		private VariantTask(Variant variant) {
+			this.variant = variant;
+		}
+
+		@Override
+		public void run() {
+			try {
+				build(variant);
+			} catch (Exception e) {
+				//variant stays empty, prompt is transcoded by processors
+				logger.warn("Could not encode prompt " + url + " with " + variant.codecClass.getName(), e);
+			}
+		}
+	}
+}
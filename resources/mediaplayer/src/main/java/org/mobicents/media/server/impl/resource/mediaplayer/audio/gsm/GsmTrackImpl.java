@@ -30,6 +30,7 @@ import javax.sound.sampled.AudioInputStream;
 import javax.sound.sampled.AudioSystem;
 import javax.sound.sampled.UnsupportedAudioFileException;
 import org.mobicents.media.server.impl.resource.mediaplayer.Track;
+import org.mobicents.media.server.impl.resource.mediaplayer.audio.PromptCache;
 import org.mobicents.media.server.spi.format.AudioFormat;
 import org.mobicents.media.server.spi.format.Format;
 import org.mobicents.media.server.spi.format.FormatFactory;
@@ -60,7 +61,11 @@ public class GsmTrackImpl implements Track {
     private static final Logger logger = Logger.getLogger(GsmTrackImpl.class);
     
     public GsmTrackImpl(URL url) throws UnsupportedAudioFileException, IOException {
-    	inStream=url.openStream();
+    	this(url, null);
+    }
+
+    public GsmTrackImpl(URL url, PromptCache cache) throws UnsupportedAudioFileException, IOException {
+    	inStream=cache == null ? url.openStream() : cache.openStream(url);
         stream = AudioSystem.getAudioInputStream(inStream);
         
         format = getFormat(stream);
@@ -32,6 +32,7 @@ import javax.sound.sampled.AudioInputStream;
 import javax.sound.sampled.AudioSystem;
 import javax.sound.sampled.UnsupportedAudioFileException;
 import org.mobicents.media.server.impl.resource.mediaplayer.Track;
+import org.mobicents.media.server.impl.resource.mediaplayer.audio.PromptCache;
 import org.mobicents.media.server.spi.format.AudioFormat;
 import org.mobicents.media.server.spi.format.Format;
 import org.mobicents.media.server.spi.format.FormatFactory;
@@ -71,7 +72,11 @@ public class WavTrackImpl implements Track {
     private byte paddingByte = PCM_PADDING_BYTE;
     
     public WavTrackImpl(URL url) throws UnsupportedAudioFileException, IOException {   
-    	inStream=url.openStream();
+    	this(url, null);
+    }
+
+    public WavTrackImpl(URL url, PromptCache cache) throws UnsupportedAudioFileException, IOException {   
+    	inStream=cache == null ? url.openStream() : cache.openStream(url);
     	
         getFormat(inStream);
         if (format == null) {
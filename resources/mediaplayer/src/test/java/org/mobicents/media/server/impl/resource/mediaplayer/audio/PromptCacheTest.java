@@ -0,0 +1,355 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.mobicents.media.server.impl.resource.mediaplayer.audio;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.net.URL;
+import java.net.URLConnection;
+import java.net.URLStreamHandler;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+import org.mobicents.media.server.impl.resource.mediaplayer.audio.wav.WavTrackImpl;
+
+import static org.junit.Assert.*;
+
+public class PromptCacheTest {
+
+    private List<File> files = new ArrayList<File>();
+
+    @After
+    public void tearDown() {
+        for (File file : files) {
+            file.delete();
+        }
+    }
+
+    private File createFile(byte[] data) throws IOException {
+        File file = File.createTempFile("prompt", ".wav");
+        files.add(file);
+        write(file, data);
+        return file;
+    }
+
+    private void write(File file, byte[] data) throws IOException {
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(data);
+        } finally {
+            out.close();
+        }
+    }
+
+    private byte[] content(int length, int value) {
+        byte[] data = new byte[length];
+        Arrays.fill(data, (byte) value);
+        return data;
+    }
+
+    private byte[] read(InputStream stream) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[7];
+        int len = stream.read(buffer);
+        while (len != -1) {
+            out.write(buffer, 0, len);
+            len = stream.read(buffer);
+        }
+        stream.close();
+        return out.toByteArray();
+    }
+
+    @Test
+    public void testSharedPrompt() throws Exception {
+        PromptCache cache = new PromptCache(1024);
+        byte[] data = content(100, 1);
+        URL url = createFile(data).toURI().toURL();
+
+        InputStream stream1 = cache.openStream(url);
+        InputStream stream2 = cache.openStream(url);
+
+        //each stream has own position
+        assertEquals(100, stream1.available());
+        assertEquals(1, stream1.read());
+        assertEquals(99, stream1.available());
+        assertEquals(100, stream2.available());
+
+        assertArrayEquals(data, read(stream2));
+        assertEquals(1, cache.getMisses());
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getCount());
+        assertEquals(100, cache.getSize());
+    }
+
+    @Test
+    public void testTruncatedFile() throws Exception {
+        PromptCache cache = new PromptCache(1024);
+        byte[] data = content(100, 1);
+        File file = createFile(data);
+
+        InputStream stream = cache.openStream(file.toURI().toURL());
+
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.setLength(10);
+        } finally {
+            raf.close();
+        }
+
+        //cached copy is not affected by the file
+        assertArrayEquals(data, read(stream));
+    }
+
+    /**
+     * Remote prompt which counts opened streams and bytes read.
+     */
+    private URL remote(String name, final byte[] data, final long length, final AtomicInteger opened, final AtomicInteger read) throws IOException {
+        return new URL(null, "test:" + name, new URLStreamHandler() {
+            @Override
+            protected URLConnection openConnection(URL u) {
+                return new URLConnection(u) {
+                    @Override
+                    public void connect() {
+                    }
+
+                    @Override
+                    public long getContentLengthLong() {
+                        return length;
+                    }
+
+                    @Override
+                    public InputStream getInputStream() {
+                        opened.incrementAndGet();
+                        return new ByteArrayInputStream(data) {
+                            @Override
+                            public synchronized int read(byte[] b, int off, int len) {
+                                int count = super.read(b, off, len);
+                                if (count > 0)
+                                    read.addAndGet(count);
+                                return count;
+                            }
+                        };
+                    }
+                };
+            }
+        });
+    }
+
+    /**
+     * Cache which runs loads of remote prompts on demand.
+     */
+    private static class ManualCache extends PromptCache {
+        private final List<Runnable> loads = new ArrayList<Runnable>();
+
+        private ManualCache(long capacity, int maxPromptSize) {
+            super(capacity, maxPromptSize, DEFAULT_VALIDATION_INTERVAL);
+        }
+
+        @Override
+        protected void executeLoad(Runnable task) {
+            loads.add(task);
+        }
+
+        private void runLoads() {
+            for (Runnable task : loads) {
+                task.run();
+            }
+            loads.clear();
+        }
+    }
+
+    @Test
+    public void testRemotePrompt() throws Exception {
+        ManualCache cache = new ManualCache(1024, 1024);
+        byte[] data = content(100, 1);
+        AtomicInteger opened = new AtomicInteger();
+        URL url = remote("prompt", data, data.length, opened, new AtomicInteger());
+
+        //plays stream while a single load is pending
+        for (int i = 0; i < 3; i++) {
+            assertArrayEquals(data, read(cache.openStream(url)));
+        }
+        assertEquals(1, cache.loads.size());
+        assertEquals(3, opened.get());
+        assertEquals(3, cache.getMisses());
+        assertEquals(0, cache.getCount());
+
+        cache.runLoads();
+        assertEquals(4, opened.get());
+        assertEquals(1, cache.getCount());
+        assertEquals(100, cache.getSize());
+
+        assertArrayEquals(data, read(cache.openStream(url)));
+        assertEquals(4, opened.get());
+        assertEquals(1, cache.getHits());
+        assertTrue(cache.loads.isEmpty());
+    }
+
+    @Test
+    public void testRemoteContentLength() throws Exception {
+        ManualCache cache = new ManualCache(1024, 100);
+        byte[] data = content(200, 2);
+        AtomicInteger read = new AtomicInteger();
+        URL url = remote("prompt", data, data.length, new AtomicInteger(), read);
+
+        assertArrayEquals(data, read(cache.openStream(url)));
+        read.set(0);
+        cache.runLoads();
+
+        //body is not downloaded when Content-Length is over the limit
+        assertEquals(0, read.get());
+        assertEquals(0, cache.getCount());
+
+        //too large prompt is remembered
+        assertArrayEquals(data, read(cache.openStream(url)));
+        assertTrue(cache.loads.isEmpty());
+
+        cache.invalidate(url);
+        cache.openStream(url).close();
+        assertEquals(1, cache.loads.size());
+    }
+
+    @Test
+    public void testRemoteWithoutLength() throws Exception {
+        ManualCache cache = new ManualCache(1024, 100);
+        byte[] data = content(200, 3);
+        URL url = remote("prompt", data, -1, new AtomicInteger(), new AtomicInteger());
+
+        assertArrayEquals(data, read(cache.openStream(url)));
+        cache.runLoads();
+        assertEquals(0, cache.getCount());
+
+        assertArrayEquals(data, read(cache.openStream(url)));
+        assertTrue(cache.loads.isEmpty());
+
+        //size within limit is cached without Content-Length
+        byte[] small = content(60, 4);
+        URL smallUrl = remote("small", small, -1, new AtomicInteger(), new AtomicInteger());
+        cache.openStream(smallUrl).close();
+        cache.runLoads();
+        assertEquals(1, cache.getCount());
+        assertArrayEquals(small, read(cache.openStream(smallUrl)));
+    }
+
+    @Test
+    public void testEviction() throws Exception {
+        PromptCache cache = new PromptCache(100);
+        URL url1 = createFile(content(40, 1)).toURI().toURL();
+        URL url2 = createFile(content(40, 2)).toURI().toURL();
+        URL url3 = createFile(content(40, 3)).toURI().toURL();
+
+        cache.openStream(url1);
+        cache.openStream(url2);
+        //url2 becomes least recently used
+        cache.openStream(url1);
+        cache.openStream(url3);
+
+        assertEquals(2, cache.getCount());
+        assertEquals(80, cache.getSize());
+
+        cache.openStream(url1);
+        cache.openStream(url3);
+        assertEquals(3, cache.getHits());
+
+        cache.openStream(url2);
+        assertEquals(4, cache.getMisses());
+    }
+
+    @Test
+    public void testLargePrompt() throws Exception {
+        PromptCache cache = new PromptCache(1024, 100, 0);
+        byte[] data = content(200, 5);
+        URL url = createFile(data).toURI().toURL();
+
+        assertArrayEquals(data, read(cache.openStream(url)));
+        assertEquals(0, cache.getCount());
+    }
+
+    @Test
+    public void testModifiedFile() throws Exception {
+        PromptCache cache = new PromptCache(1024, 1024, 0);
+        File file = createFile(content(50, 1));
+        URL url = file.toURI().toURL();
+
+        assertArrayEquals(content(50, 1), read(cache.openStream(url)));
+
+        write(file, content(60, 2));
+        assertArrayEquals(content(60, 2), read(cache.openStream(url)));
+        assertEquals(2, cache.getMisses());
+        assertEquals(1, cache.getCount());
+        assertEquals(60, cache.getSize());
+    }
+
+    @Test
+    public void testWavTrack() throws Exception {
+        PromptCache cache = new PromptCache(1024 * 1024);
+        int dataSize = 1600;
+
+        ByteArrayOutputStream wav = new ByteArrayOutputStream();
+        wav.write("RIFF".getBytes());
+        writeInt(wav, 36 + dataSize);
+        wav.write("WAVEfmt ".getBytes());
+        writeInt(wav, 16);
+        //format 7 is ulaw, mono, 8000Hz, 8 bits
+        writeShort(wav, 7);
+        writeShort(wav, 1);
+        writeInt(wav, 8000);
+        writeInt(wav, 8000);
+        writeShort(wav, 1);
+        writeShort(wav, 8);
+        wav.write("data".getBytes());
+        writeInt(wav, dataSize);
+        wav.write(content(dataSize, 0x7F));
+
+        URL url = createFile(wav.toByteArray()).toURI().toURL();
+
+        WavTrackImpl track1 = new WavTrackImpl(url, cache);
+        WavTrackImpl track2 = new WavTrackImpl(url, cache);
+
+        assertEquals("pcmu", track1.getFormat().getName().toString());
+        assertEquals(track1.getDuration(), track2.getDuration());
+        assertEquals(1, cache.getHits());
+        track1.close();
+        track2.close();
+    }
+
+    private void writeInt(ByteArrayOutputStream out, int value) {
+        writeShort(out, value & 0xFFFF);
+        writeShort(out, value >>> 16);
+    }
+
+    private void writeShort(ByteArrayOutputStream out, int value) {
+        out.write(value & 0xFF);
+        out.write((value >> 8) & 0xFF);
+    }
+
+}
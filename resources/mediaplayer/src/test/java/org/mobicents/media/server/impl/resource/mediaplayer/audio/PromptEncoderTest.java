@@ -0,0 +1,236 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.mobicents.media.server.impl.resource.mediaplayer.audio;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.URL;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mobicents.media.server.impl.dsp.audio.g711.ulaw.Encoder;
+import org.mobicents.media.server.spi.dsp.Codec;
+import org.mobicents.media.server.spi.dsp.SharedEncoder;
+import org.mobicents.media.server.spi.format.FormatFactory;
+import org.mobicents.media.server.spi.memory.Frame;
+import org.mobicents.media.server.spi.memory.Memory;
+
+import static org.junit.Assert.*;
+
+public class PromptEncoderTest {
+
+    private static final int FRAMES = 10;
+
+    private File file;
+    private URL url;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("prompt", ".wav");
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(createWav());
+        } finally {
+            out.close();
+        }
+        url = file.toURI().toURL();
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Test
+    public void testColdPrompt() throws Exception {
+        PromptCache cache = new PromptCache(1024 * 1024);
+        cache.openStream(url);
+        PromptEncoder encoder = cache.getEncoder(url, null);
+        SharedEncoder play = encoder.newPlay();
+        Codec codec = new Encoder();
+
+        //prompt played once is transcoded by processor
+        Frame frame = createFrame(1);
+        assertNull(play.encode(frame, codec));
+        Thread.sleep(100);
+        assertFalse(encoder.isEncoded(codec));
+        frame.recycle();
+    }
+
+    @Test
+    public void testHotPrompt() throws Exception {
+        PromptCache cache = new PromptCache(1024 * 1024);
+        cache.openStream(url);
+        long promptSize = cache.getSize();
+
+        PromptEncoder encoder = cache.getEncoder(url, null);
+        assertSame(encoder, cache.getEncoder(url, null));
+        encoder.newPlay();
+        SharedEncoder play = encoder.newPlay();
+        assertEquals(2, encoder.getPlays());
+
+        //first request schedules encoding
+        Codec codec = new Encoder();
+        assertNull(play.encode(createFrame(1), codec));
+        waitEncoded(encoder, codec);
+        //encoded variant counts towards capacity
+        assertTrue(cache.getSize() >= promptSize + FRAMES * 160);
+
+        //play which started before variant was ready stays transcoded
+        assertNull(play.encode(createFrame(2), codec));
+
+        assertServed(encoder.newPlay(), codec, new Encoder());
+        assertEquals(FRAMES, encoder.getServedFrames());
+    }
+
+    @Test
+    public void testLateRequest() throws Exception {
+        PromptCache cache = new PromptCache(1024 * 1024);
+        cache.openStream(url);
+        PromptEncoder encoder = cache.getEncoder(url, null);
+        encoder.newPlay();
+        Codec codec = new Encoder();
+        assertNull(encoder.newPlay().encode(createFrame(1), codec));
+        waitEncoded(encoder, codec);
+
+        //processor which joins in the middle of play transcodes it
+        SharedEncoder play = encoder.newPlay();
+        for (int i = 3; i <= FRAMES; i++) {
+            assertNull(play.encode(createFrame(i), codec));
+        }
+        assertEquals(0, encoder.getServedFrames());
+    }
+
+    @Test
+    public void testStatefulCodec() throws Exception {
+        PromptCache cache = new PromptCache(1024 * 1024);
+        cache.openStream(url);
+        long promptSize = cache.getSize();
+        PromptEncoder encoder = cache.getEncoder(url, null);
+        encoder.newPlay();
+
+        //frames of stateful codec are served from single encoding of the prompt
+        Codec codec = new org.mobicents.media.server.impl.dsp.audio.g729.Encoder();
+        assertNull(encoder.newPlay().encode(createFrame(1), codec));
+        waitEncoded(encoder, codec);
+        assertTrue(cache.getSize() > promptSize);
+
+        assertServed(encoder.newPlay(), codec, new org.mobicents.media.server.impl.dsp.audio.g729.Encoder());
+    }
+
+    private void waitEncoded(PromptEncoder encoder, Codec codec) throws InterruptedException {
+        for (int i = 0; i < 100 && !encoder.isEncoded(codec); i++) {
+            Thread.sleep(10);
+        }
+        assertTrue(encoder.isEncoded(codec));
+    }
+
+    private void assertServed(SharedEncoder play, Codec codec, Codec reference) {
+        for (int i = 1; i <= FRAMES; i++) {
+            Frame linear = createFrame(i);
+            linear.setTimestamp(i * 20000000L);
+            Frame expected = reference.process(linear);
+            Frame encoded = play.encode(linear, codec);
+
+            assertNotNull(encoded);
+            assertEquals(codec.getSupportedOutputFormat(), encoded.getFormat());
+            assertEquals(linear.getTimestamp(), encoded.getTimestamp());
+            assertEquals(expected.getLength(), encoded.getLength());
+            for (int j = 0; j < expected.getLength(); j++) {
+                assertEquals(expected.getData()[expected.getOffset() + j], encoded.getData()[j]);
+            }
+
+            expected.recycle();
+            encoded.recycle();
+            linear.recycle();
+        }
+
+        //frames past the end of prompt are transcoded by processor
+        assertNull(play.encode(createFrame(FRAMES * 100), codec));
+    }
+
+    private Frame createFrame(int index) {
+        Frame frame = Memory.allocate(320);
+        byte[] data = frame.getData();
+        for (int i = 0; i < data.length; i += 2) {
+            short value = sample(index - 1);
+            data[i] = (byte) value;
+            data[i + 1] = (byte) (value >> 8);
+        }
+        frame.setOffset(0);
+        frame.setLength(320);
+        frame.setDuration(20000000L);
+        frame.setFormat(FormatFactory.createAudioFormat("linear", 8000, 16, 1));
+        frame.setSharedEncoder(null, index);
+        return frame;
+    }
+
+    private short sample(int frame) {
+        return (short) (1000 * (frame + 1));
+    }
+
+    private byte[] createWav() {
+        int dataSize = FRAMES * 320;
+        ByteArrayOutputStream wav = new ByteArrayOutputStream();
+        wav.write('R');
+        wav.write('I');
+        wav.write('F');
+        wav.write('F');
+        writeInt(wav, 36 + dataSize);
+        for (char c : "WAVEfmt ".toCharArray()) {
+            wav.write(c);
+        }
+        writeInt(wav, 16);
+        //linear, mono, 8000Hz, 16 bits
+        writeShort(wav, 1);
+        writeShort(wav, 1);
+        writeInt(wav, 8000);
+        writeInt(wav, 16000);
+        writeShort(wav, 2);
+        writeShort(wav, 16);
+        for (char c : "data".toCharArray()) {
+            wav.write(c);
+        }
+        writeInt(wav, dataSize);
+        for (int i = 0; i < FRAMES; i++) {
+            for (int j = 0; j < 160; j++) {
+                writeShort(wav, sample(i));
+            }
+        }
+        return wav.toByteArray();
+    }
+
+    private void writeInt(ByteArrayOutputStream out, int value) {
+        writeShort(out, value & 0xFFFF);
+        writeShort(out, value >>> 16);
+    }
+
+    private void writeShort(ByteArrayOutputStream out, int value) {
+        out.write(value & 0xFF);
+        out.write((value >> 8) & 0xFF);
+    }
+
+}
@@ -23,13 +23,7 @@
 package org.mobicents.media.server.impl.resource.audio;
 
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
-import java.nio.ByteBuffer;
-import java.nio.channels.FileChannel;
 
 import org.mobicents.media.ComponentType;
 import org.mobicents.media.server.component.audio.AudioOutput;
@@ -62,27 +56,26 @@ public class AudioRecorderImpl extends AbstractSink implements Recorder {
     private long period = 20000000L;
     private int packetSize = (int)(period / 1000000) * LINEAR.getSampleRate()/1000 * LINEAR.getSampleSize() / 8;
     
-    private final static int SILENCE_LEVEL = 10;
-    
     static {
         formats.add(LINEAR);
     }
     
     private String recordDir;
-    private FileOutputStream fout;    
-    //file for recording
-    private File file;
     
-    //temp file for raw data
-    private File temp;
+    //write behind file for recording
+    private RecordingWriter writer;
+    private int maxBufferSize = RecordingWriter.DEFAULT_MAX_BUFFER_SIZE;
+    private RecordingFormat recordFormat = RecordingFormat.LINEAR;
     
     //if set ti true the record will terminate recording when silence detected
     private long postSpeechTimer = -1L;
     private long preSpeechTimer = -1L;
     
+    //detects speech for timers and silence trimming
+    private VoiceActivityDetector vad = new VoiceActivityDetector();
+    private boolean dropSilence = false;
+    
     //samples
-    private ByteBuffer byteBuffer=ByteBuffer.allocateDirect(8192);
-    private ByteBuffer headerBuffer=ByteBuffer.allocateDirect(44);
     private byte[] data;
     private int offset;
     private int len;
@@ -153,10 +146,20 @@ public class AudioRecorderImpl extends AbstractSink implements Recorder {
     	return this.oobOutput;
     }
     
+    @Override
+    public void setAffinity(int affinity) {
+        killRecording.setAffinity(affinity);
+        eventSender.setAffinity(affinity);
+        heartbeat.setAffinity(affinity);
+        output.setAffinity(affinity);
+        oobOutput.setAffinity(affinity);
+    }
+    
     @Override
     public void activate() {
     	this.lastPacketData=scheduler.getClock().getTime();
     	this.startTime=scheduler.getClock().getTime();
+    	this.vad.reset();
     	
     	output.start();
     	oobOutput.start();
@@ -181,18 +184,24 @@ public class AudioRecorderImpl extends AbstractSink implements Recorder {
         
         this.heartbeat.cancel();
         
-        try {
-            writeToWaveFile();
-        } catch (IOException e) {
-        	if(getEndpoint()==null)
-        		logger.error(e);
-        	else
-        		logger.error("(" + getEndpoint().getLocalName() + ")",e);        		
-        }
-        
-        //send event
+        //send event once file is complete
         recorderStopped.setQualifier(qualifier);
-        fireEvent(recorderStopped);
+        if (writer == null) {
+        	fireEvent(recorderStopped);
+        } else {
+        	final RecordingWriter closedWriter = writer;
+        	writer.close(new Runnable() {
+        		@Override
+        		public void run() {
+        			if (closedWriter.getDroppedBytes() > 0)
+        				logger.warn(closedWriter.getFile() + ": " + closedWriter.getDroppedBytes() + " bytes dropped, max pending " + closedWriter.getMaxPendingBytes());
+        			else if (logger.isDebugEnabled())
+        				logger.debug(closedWriter.getFile() + ": " + closedWriter.getWrittenBytes() + " bytes written");
+        			
+        			fireEvent(recorderStopped);
+        		}
+        	});
+        }
         
         //clean qualifier
         this.qualifier = 0;
@@ -200,6 +209,8 @@ public class AudioRecorderImpl extends AbstractSink implements Recorder {
         this.postSpeechTimer = -1L;
         this.preSpeechTimer = -1L;
         this.speechDetected=false;       
+        this.recordFormat = RecordingFormat.LINEAR;
+        this.dropSilence = false;
     }
     
     /**
@@ -229,6 +240,57 @@ public class AudioRecorderImpl extends AbstractSink implements Recorder {
         this.maxRecordTime = maxRecordTime;
     }
     
+    /**
+     * (Non Java-doc.)
+     * 
+     * @see org.mobicents.media.server.spi.recorder.Recorder;
+     */
+    public void setRecordFormat(String format) {
+        RecordingFormat value = RecordingFormat.getInstance(format);
+        if (value == null) {
+            throw new IllegalArgumentException("Unsupported record format " + format);
+        }
+        this.recordFormat = value;
+    }
+    
+    /**
+     * (Non Java-doc.)
+     * 
+     * @see org.mobicents.media.server.spi.recorder.Recorder;
+     */
+    public void setDropSilence(boolean value) {
+        this.dropSilence = value;
+    }
+    
+    /**
+     * Limits memory used for data waiting to be written.
+     * 
+     * @param maxBufferSize the size in bytes, data over limit is dropped.
+     */
+    public void setMaxBufferSize(int maxBufferSize) {
+        this.maxBufferSize = maxBufferSize;
+    }
+    
+    /**
+     * Gets the number of bytes dropped by current recording because I/O did
+     * not keep up.
+     * 
+     * @return the number of bytes.
+     */
+    public long getDroppedBytes() {
+        return writer == null ? 0 : writer.getDroppedBytes();
+    }
+    
+    /**
+     * Gets the max number of bytes of current recording which were waiting
+     * for I/O at once.
+     * 
+     * @return the number of bytes.
+     */
+    public long getMaxPendingBytes() {
+        return writer == null ? 0 : writer.getMaxPendingBytes();
+    }
+    
     /**
      * Fires specified event
      * 
@@ -246,15 +308,18 @@ public class AudioRecorderImpl extends AbstractSink implements Recorder {
         offset = frame.getOffset();
         len = frame.getLength();
         
-        byteBuffer.clear();
-        byteBuffer.limit(len-offset);
-        byteBuffer.put(data, offset, len-offset);
-        byteBuffer.rewind();
-        fout.getChannel().write(byteBuffer);
+        boolean speech = true;
+        if (this.postSpeechTimer > 0 || this.preSpeechTimer > 0 || this.dropSilence) {
+            speech = vad.process(data, offset, len);
+        }
+        
+        //silence is trimmed except hangover after speech
+        if (!this.dropSilence || vad.isVoiceActive()) {
+            writer.write(data, offset, len);
+        }
         
         if (this.postSpeechTimer > 0 || this.preSpeechTimer>0) {
-            //detecting silence
-            if (!this.checkForSilence(data, offset, len)) {
+            if (speech) {
                 this.lastPacketData=scheduler.getClock().getTime();
                 this.speechDetected=true;
             }
@@ -272,202 +337,21 @@ public class AudioRecorderImpl extends AbstractSink implements Recorder {
         String path = uri.startsWith("file:")  ?  uri.replaceAll("file://", "") :
                 this.recordDir + "/" + uri;
         
-        //create file for recording and temp file
-        file = new File(path);        
-        temp = new File(path + "~");                
-        
-        //open stream to temporary file
-        fout = new FileOutputStream(temp);
-        
-        //if append specified and file really exist copy data from the current
-        //file to temp
-        if (append && file.exists()) {
-        	if(getEndpoint()==null)
-        		logger.info("..............>>>>>Copying samples from " + file);
-        	else
-        		logger.info("(" + getEndpoint().getLocalName() + ") ..............>>>>>Copying samples from " + file);        		
-            copySamples(file, fout);                       
-        }
-    }
-    
-    /**
-     * Writes samples to file following WAVE format.
-     * 
-     * @throws IOException 
-     */
-    private void writeToWaveFile() throws IOException {
-    	if(getEndpoint()==null)
-    		logger.info("!!!!!!!!!! Writting to file......................");
-    	else
-    		logger.info("(" + getEndpoint().getLocalName() + ") !!!!!!!!!! Writting to file......................");
-    	
-        //stop called on inactive recorder
-        if (fout == null) {
-            return;
+        //previous recording was not stopped
+        if (writer != null) {
+            writer.close(null);
+            writer = null;
         }
         
-        fout.flush();
-        fout.close();
-                
-        FileInputStream fin = new FileInputStream(temp);
-        fout = new FileOutputStream(file);
-        
-        int size = fin.available();
-        if(getEndpoint()==null)
-        	logger.info("!!!!!!!!!! Size=" + size);
-        else
-        	logger.info("(" + getEndpoint().getLocalName() + ") !!!!!!!!!! Size=" + size);
-        
-		headerBuffer.clear();		
-        //RIFF
-		headerBuffer.put((byte) 0x52);
-		headerBuffer.put((byte) 0x49);
-		headerBuffer.put((byte) 0x46);
-		headerBuffer.put((byte) 0x46);
-        
-        int length = size + 36;
-        
-        //Length
-        headerBuffer.put((byte) (length));
-        headerBuffer.put((byte) (length >> 8));
-        headerBuffer.put((byte) (length >> 16));
-        headerBuffer.put((byte) (length >> 24));
-        
-        //WAVE
-        headerBuffer.put((byte) 0x57);
-        headerBuffer.put((byte) 0x41);
-        headerBuffer.put((byte) 0x56);
-        headerBuffer.put((byte) 0x45);
-        
-        //fmt
-        headerBuffer.put((byte) 0x66);
-        headerBuffer.put((byte) 0x6d);
-        headerBuffer.put((byte) 0x74);
-        headerBuffer.put((byte) 0x20);
-        
-        headerBuffer.put((byte) 0x10);
-        headerBuffer.put((byte) 0x00);
-        headerBuffer.put((byte) 0x00);
-        headerBuffer.put((byte) 0x00);
-        
-        //format - PCM
-        headerBuffer.put((byte) 0x01);
-        headerBuffer.put((byte) 0x00);
-        
-        //format - MONO
-        headerBuffer.put((byte) 0x01);
-        headerBuffer.put((byte) 0x00);
-        
-        //sample rate:8000
-        headerBuffer.put((byte) 0x40);
-        headerBuffer.put((byte) 0x1F);
-        headerBuffer.put((byte) 0x00);
-        headerBuffer.put((byte) 0x00);
-
-        //byte rate
-        headerBuffer.put((byte) 0x80);
-        headerBuffer.put((byte) 0x3E);
-        headerBuffer.put((byte) 0x00);
-        headerBuffer.put((byte) 0x00);
-        
-        
-        //Block align
-        headerBuffer.put((byte) 0x02);
-        headerBuffer.put((byte) 0x00);
-        
-        //Bits per sample: 16
-        headerBuffer.put((byte) 0x10);
-        headerBuffer.put((byte) 0x00);
-        
-        //"data"
-        headerBuffer.put((byte) 0x64);
-        headerBuffer.put((byte) 0x61);
-        headerBuffer.put((byte) 0x74);
-        headerBuffer.put((byte) 0x61);
-        
-        //len
-        headerBuffer.put((byte) (size));
-        headerBuffer.put((byte) (size >> 8));
-        headerBuffer.put((byte) (size >> 16));
-        headerBuffer.put((byte) (size >> 24));
-        
-        headerBuffer.rewind();
-        
-        //lets write header
-        FileChannel outChannel=fout.getChannel();        
-        outChannel.write(headerBuffer);
-        outChannel.force(true);
-        
-        //lets write data
-        FileChannel inChannel=fin.getChannel();
-        outChannel.transferFrom(fin.getChannel(), 44, inChannel.size());
-        if(getEndpoint()==null)
-        	logger.info("Was copied " + inChannel.size()  + " bytes");
-        else
-        	logger.info("(" + getEndpoint().getLocalName() + ") Was copied " + inChannel.size()  + " bytes");        
-        
-        
-        fout.flush();
-        fout.close();
-        
-        fin.close();
-        temp.delete();              
-    }
-    
-    /**
-     * Copies samples from source wav file to temporary raw destination.
-     * 
-     * @param src wav source file
-     * @param dst raw destination file.
-     */
-    private void copySamples(File src, FileOutputStream out) throws IOException {
-        FileInputStream in = new FileInputStream(src);
-        FileChannel inChannel = in.getChannel();
-    	FileChannel outChannel = out.getChannel();    	
-    	
+        //samples are appended to the existing file in place
         try {
-            this.copyData(inChannel, 44, outChannel);
+            writer = new RecordingWriter(new File(path), recordFormat, append, maxBufferSize);
         } finally {
-            in.close();
+            //format applies to this file only, even if it can not be opened
+            this.recordFormat = RecordingFormat.LINEAR;
         }
-     }
-    
-    /**
-     * Copies data from specified input to specified destination.
-     * 
-     * @param in the input of data
-     * @param offset the first position of data to read
-     * @param out destination
-     * @throws IOException 
-     */
-    private void copyData(FileChannel inChannel, int offset,  FileChannel outChannel) throws IOException {
-    	long count=inChannel.size()-(long)offset;
-    	inChannel.transferTo(offset,count,outChannel);    	
-                        
-    	if(getEndpoint()==null)
-        	logger.info("Was copied " + count  + " bytes");
-        else
-        	logger.info("(" + getEndpoint().getLocalName() + ") Was copied " + count + " bytes");                    	        
     }
     
-    /**
-     * Checks does the frame contains sound or silence.
-     * 
-     * @param data  buffer with samples
-     * @param offset the position of first sample in buffer
-     * @param len the number if samples
-     * @return true if silence detected
-     */
-    private boolean checkForSilence(byte[] data, int offset, int len) {
-        for (int i = offset; i < len - 1; i += 2) {
-            int s = (data[i] & 0xff) | (data[i + 1] << 8);
-            if (s > SILENCE_LEVEL) {
-                return false;
-            }
-        }
-        return true;
-    }    
-
     /**
      * (Non Java-doc.)
      * 
@@ -580,8 +464,6 @@ public class AudioRecorderImpl extends AbstractSink implements Recorder {
     	 private boolean hasEndOfEvent=false;
     	 private long endSeq=0;
     	 
-    	 private ByteBuffer toneBuffer=ByteBuffer.allocateDirect(1600);
-    	    
     	 byte[] data = new byte[4];
     	    
     	 public OOBRecorder()
@@ -629,11 +511,7 @@ public class AudioRecorderImpl extends AbstractSink implements Recorder {
         	
         	latestSeq=buffer.getSequenceNumber();
             currTone=data[0];
-            toneBuffer.clear();
-        	toneBuffer.limit(DtmfTonesData.buffer[data[0]].length);        	
-        	toneBuffer.put(DtmfTonesData.buffer[data[0]]);            
-            toneBuffer.rewind();            
-            fout.getChannel().write(toneBuffer);            
+            writer.write(DtmfTonesData.buffer[data[0]], 0, DtmfTonesData.buffer[data[0]].length);
     	 }
     	
     	 public void activate()
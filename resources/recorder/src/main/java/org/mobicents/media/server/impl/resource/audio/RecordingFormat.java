@@ -0,0 +1,185 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.mobicents.media.server.impl.resource.audio;
+
+import java.nio.ByteBuffer;
+
+import org.mobicents.media.server.spi.dsp.Codec;
+
+/**
+ * Format of recorded file:
+ * <ul>
+ * <li>LINEAR - 16 bit linear WAVE file</li>
+ * <li>PCMA - G.711 A-law WAVE file</li>
+ * <li>PCMU - G.711 u-law WAVE file</li>
+ * <li>GSM - raw GSM 6.10 file, 33 bytes per 20ms frame</li>
+ * </ul>
+ */
+public enum RecordingFormat {
+
+	LINEAR("linear", 1, 16, 44),
+	PCMA("pcma", 6, 8, 44),
+	PCMU("pcmu", 7, 8, 44),
+	GSM("gsm", 0, 0, 0);
+
+	private final String name;
+	private final int wavFormat;
+	private final int bitsPerSample;
+	private final int headerSize;
+
+	private RecordingFormat(String name, int wavFormat, int bitsPerSample, int headerSize) {
+		this.name = name;
+		this.wavFormat = wavFormat;
+		this.bitsPerSample = bitsPerSample;
+		this.headerSize = headerSize;
+	}
+
+	/**
+	 * Gets the encoding name of the format.
+	 *
+	 * @return the name, as used in SDP and MGCP options.
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Gets the size of the file header.
+	 *
+	 * @return the size in bytes, 0 for raw files.
+	 */
+	public int getHeaderSize() {
+		return headerSize;
+	}
+
+	/**
+	 * Creates encoder from linear samples.
+	 *
+	 * @return new encoder instance or null for linear format.
+	 */
+	public Codec newEncoder() {
+		switch (this) {
+			case PCMA:
+				return new org.mobicents.media.server.impl.dsp.audio.g711.alaw.Encoder();
+			case PCMU:
+				return new org.mobicents.media.server.impl.dsp.audio.g711.ulaw.Encoder();
+			case GSM:
+				return new org.mobicents.media.server.impl.dsp.audio.gsm.Encoder();
+			default:
+				return null;
+		}
+	}
+
+	/**
+	 * Creates file header.
+	 *
+	 * @param size the size of data in bytes.
+	 * @return the header ready for writing or null for raw files.
+	 */
+	public ByteBuffer header(long size) {
+		if (headerSize == 0)
+			return null;
+
+		int length = (int) size;
+		ByteBuffer header = ByteBuffer.allocate(headerSize);
+		//RIFF
+		header.put((byte) 0x52).put((byte) 0x49).put((byte) 0x46).put((byte) 0x46);
+		putInt(header, length + 36);
+		//WAVE
+		header.put((byte) 0x57).put((byte) 0x41).put((byte) 0x56).put((byte) 0x45);
+		//fmt
+		header.put((byte) 0x66).put((byte) 0x6d).put((byte) 0x74).put((byte) 0x20);
+		putInt(header, 16);
+		//format - PCM, A-law or u-law
+		putShort(header, wavFormat);
+		//format - MONO
+		putShort(header, 1);
+		//sample rate:8000
+		putInt(header, 8000);
+		//byte rate
+		putInt(header, 8000 * bitsPerSample / 8);
+		//Block align
+		putShort(header, bitsPerSample / 8);
+		//Bits per sample
+		putShort(header, bitsPerSample);
+		//"data"
+		header.put((byte) 0x64).put((byte) 0x61).put((byte) 0x74).put((byte) 0x61);
+		putInt(header, length);
+		header.flip();
+		return header;
+	}
+
+	/**
+	 * Checks whether header of existing file describes this format, so
+	 * samples may be appended to the file.
+	 *
+	 * Sizes in the header are not compared, they are patched when file is
+	 * closed.
+	 *
+	 * @param header the first bytes of the file.
+	 * @return true if file has the same format, always true for raw files.
+	 */
+	public boolean matches(ByteBuffer header) {
+		if (headerSize == 0)
+			return true;
+
+		if (header.remaining() < headerSize)
+			return false;
+
+		ByteBuffer expected = header(0);
+		int start = header.position();
+		for (int i = 0; i < headerSize; i++) {
+			//RIFF and data chunk sizes
+			if ((i >= 4 && i < 8) || i >= 40)
+				continue;
+
+			if (header.get(start + i) != expected.get(i))
+				return false;
+		}
+		return true;
+	}
+
+	private static void putInt(ByteBuffer buffer, int value) {
+		putShort(buffer, value & 0xFFFF);
+		putShort(buffer, value >>> 16);
+	}
+
+	private static void putShort(ByteBuffer buffer, int value) {
+		buffer.put((byte) value);
+		buffer.put((byte) (value >> 8));
+	}
+
+	/**
+	 * Finds format by encoding name.
+	 *
+	 * @param name the encoding name, case insensitive.
+	 * @return the format or null if not supported.
+	 */
+	public static RecordingFormat getInstance(String name) {
+		for (RecordingFormat format : values()) {
+			if (format.name.equalsIgnoreCase(name))
+				return format;
+		}
+		return null;
+	}
+}
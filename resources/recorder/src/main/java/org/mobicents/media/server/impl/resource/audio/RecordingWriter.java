@@ -0,0 +1,502 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.mobicents.media.server.impl.resource.audio;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+import org.mobicents.media.server.concurrent.ConcurrentRingFIFO;
+import org.mobicents.media.server.spi.dsp.Codec;
+import org.mobicents.media.server.spi.memory.Frame;
+import org.mobicents.media.server.spi.memory.Memory;
+
+/**
+ * Write behind file of recorder.
+ *
+ * Samples are copied into blocks of memory by media thread, full blocks are
+ * written by shared pool of I/O threads, so disk latency does not stall
+ * media cycle. Blocks are written at file offsets aligned to block size.
+ * Header is written as placeholder when file is opened and patched with the
+ * final sizes when file is closed, so data is never copied.
+ *
+ * For compressed formats linear samples are encoded by I/O thread in 20ms
+ * frames, encoded data is collected into aligned blocks the same way. Last
+ * incomplete frame is padded with silence.
+ *
+ * Memory of each writer is limited. When I/O does not keep up, data which
+ * does not fit is dropped and counted.
+ */
+public class RecordingWriter {
+	public static final int HEADER_SIZE = 44;
+	public static final int BLOCK_SIZE = 32 * 1024;
+	public static final int DEFAULT_MAX_BUFFER_SIZE = 1024 * 1024;
+
+	//linear samples of one 20ms frame
+	public static final int FRAME_SIZE = 320;
+
+	private static final int WRITER_THREADS = 4;
+
+	private static final Logger logger = Logger.getLogger(RecordingWriter.class);
+
+	private final static ThreadPoolExecutor executor = new ThreadPoolExecutor(WRITER_THREADS, WRITER_THREADS, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, "recorder-writer");
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+
+	static {
+		executor.allowCoreThreadTimeOut(true);
+	}
+
+	private final File file;
+	private final RecordingFormat format;
+	private final RandomAccessFile raf;
+	private final FileChannel channel;
+
+	//blocks waiting for I/O and blocks ready for reuse
+	private final ConcurrentRingFIFO<ByteBuffer> full;
+	private final ConcurrentRingFIFO<ByteBuffer> free;
+	private final int maxBlocks;
+
+	//guarded by this
+	private ByteBuffer current;
+	private int allocated;
+	private boolean closed;
+	private Runnable closeListener;
+
+	//position of next block, used by I/O thread only
+	private long position;
+
+	//encoder state, used by I/O thread only
+	private final Codec encoder;
+	private byte[] samples;
+	private int sampleCount;
+	private ByteBuffer output;
+
+	private final AtomicBoolean scheduled = new AtomicBoolean(false);
+	private final AtomicBoolean finished = new AtomicBoolean(false);
+	private volatile boolean closing;
+	private volatile boolean failed;
+
+	private final FlushTask flushTask = new FlushTask();
+
+	// statistics
+	private final AtomicLong pendingBytes = new AtomicLong();
+	private final AtomicLong maxPendingBytes = new AtomicLong();
+	private final AtomicLong droppedBytes = new AtomicLong();
+	private final AtomicLong writtenBytes = new AtomicLong();
+	private final AtomicLong writes = new AtomicLong();
+
+	/**
+	 * Opens linear WAVE file for recording.
+	 *
+	 * @param file the file to write.
+	 * @param append true to add samples to the existing file.
+	 * @param maxBufferSize the max size of data waiting for I/O in bytes.
+	 * @throws IOException if file can not be opened.
+	 */
+	public RecordingWriter(File file, boolean append, int maxBufferSize) throws IOException {
+		this(file, RecordingFormat.LINEAR, append, maxBufferSize);
+	}
+
+	/**
+	 * Opens file for recording.
+	 *
+	 * @param file the file to write.
+	 * @param format the format of the file.
+	 * @param append true to add samples to the existing file, which should
+	 *            have the same format.
+	 * @param maxBufferSize the max size of linear data waiting for I/O in
+	 *            bytes.
+	 * @throws IOException if file can not be opened or existing file has
+	 *             other format.
+	 */
+	public RecordingWriter(File file, RecordingFormat format, boolean append, int maxBufferSize) throws IOException {
+		this.file = file;
+		this.format = format;
+		this.encoder = format.newEncoder();
+		this.maxBlocks = Math.max(2, maxBufferSize / BLOCK_SIZE);
+		this.full = new ConcurrentRingFIFO<ByteBuffer>(maxBlocks);
+		this.free = new ConcurrentRingFIFO<ByteBuffer>(maxBlocks);
+
+		this.raf = new RandomAccessFile(file, "rw");
+		this.channel = raf.getChannel();
+		try {
+			long size = channel.size();
+			if (append && size >= format.getHeaderSize()) {
+				if (!format.matches(readHeader()))
+					throw new IOException("Can not append " + format.getName() + " samples to " + file + ", file has other format");
+
+				position = size;
+			} else {
+				channel.truncate(0);
+				ByteBuffer header = format.header(0);
+				if (header != null)
+					write(header, 0);
+				position = format.getHeaderSize();
+			}
+		} catch (IOException e) {
+			raf.close();
+			throw e;
+		}
+
+		//first block ends at block boundary, following writes are aligned
+		current = takeBlock();
+		if (encoder == null) {
+			current.limit((int) (BLOCK_SIZE - position % BLOCK_SIZE));
+		} else {
+			samples = new byte[FRAME_SIZE];
+			output = ByteBuffer.allocateDirect(BLOCK_SIZE);
+			output.limit((int) (BLOCK_SIZE - position % BLOCK_SIZE));
+		}
+	}
+
+	/**
+	 * Gets the file being written.
+	 *
+	 * @return the file.
+	 */
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 * Gets the format of the file.
+	 *
+	 * @return the format.
+	 */
+	public RecordingFormat getFormat() {
+		return format;
+	}
+
+	/**
+	 * Adds linear samples to the file.
+	 *
+	 * Data is ignored when writer is closed and dropped when writer failed
+	 * or buffers of writer are full.
+	 *
+	 * @param data the array with data.
+	 * @param offset the position of data in array.
+	 * @param length the length of data.
+	 * @return true if data is accepted.
+	 */
+	public synchronized boolean write(byte[] data, int offset, int length) {
+		if (closed)
+			return false;
+
+		if (failed || length > available()) {
+			droppedBytes.addAndGet(length);
+			return false;
+		}
+
+		while (length > 0) {
+			if (current == null)
+				current = takeBlock();
+
+			int count = Math.min(length, current.remaining());
+			current.put(data, offset, count);
+			offset += count;
+			length -= count;
+
+			if (!current.hasRemaining()) {
+				submit(current);
+				current = null;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Closes writer, remaining data is written and header is updated by I/O
+	 * thread.
+	 *
+	 * @param listener the task to run when file is closed, may be null.
+	 */
+	public void close(Runnable listener) {
+		synchronized (this) {
+			if (closed)
+				return;
+
+			closed = true;
+			closeListener = listener;
+			if (current != null && current.position() > 0)
+				submit(current);
+			current = null;
+		}
+
+		closing = true;
+		schedule();
+	}
+
+	/**
+	 * Checks whether writing failed.
+	 *
+	 * @return true if I/O error occurred.
+	 */
+	public boolean isFailed() {
+		return failed;
+	}
+
+	/**
+	 * Gets the number of bytes waiting for I/O.
+	 *
+	 * @return the number of bytes.
+	 */
+	public long getPendingBytes() {
+		return pendingBytes.get();
+	}
+
+	/**
+	 * Gets the max number of bytes which were waiting for I/O at once.
+	 *
+	 * @return the number of bytes.
+	 */
+	public long getMaxPendingBytes() {
+		return maxPendingBytes.get();
+	}
+
+	/**
+	 * Gets the number of bytes dropped because buffers were full.
+	 *
+	 * @return the number of bytes.
+	 */
+	public long getDroppedBytes() {
+		return droppedBytes.get();
+	}
+
+	/**
+	 * Gets the number of bytes written to file, not including header. For
+	 * compressed formats bytes are counted after encoding.
+	 *
+	 * @return the number of bytes.
+	 */
+	public long getWrittenBytes() {
+		return writtenBytes.get();
+	}
+
+	/**
+	 * Gets the number of block writes.
+	 *
+	 * @return the number of writes.
+	 */
+	public long getWrites() {
+		return writes.get();
+	}
+
+	private int available() {
+		int blocks = free.size() + maxBlocks - allocated;
+		return (current == null ? 0 : current.remaining()) + blocks * BLOCK_SIZE;
+	}
+
+	private ByteBuffer takeBlock() {
+		ByteBuffer block = free.poll();
+		if (block == null) {
+			allocated++;
+			block = ByteBuffer.allocateDirect(BLOCK_SIZE);
+		}
+		block.clear();
+		return block;
+	}
+
+	private void submit(ByteBuffer block) {
+		block.flip();
+		long pending = pendingBytes.addAndGet(block.remaining());
+		long max = maxPendingBytes.get();
+		while (pending > max && !maxPendingBytes.compareAndSet(max, pending))
+			max = maxPendingBytes.get();
+
+		full.offer(block);
+		schedule();
+	}
+
+	private void schedule() {
+		if (scheduled.compareAndSet(false, true))
+			executor.execute(flushTask);
+	}
+
+	private ByteBuffer readHeader() throws IOException {
+		ByteBuffer header = ByteBuffer.allocate(format.getHeaderSize());
+		int len = channel.read(header, 0);
+		while (len > 0 && header.hasRemaining())
+			len = channel.read(header, header.position());
+		header.flip();
+		return header;
+	}
+
+	private void write(ByteBuffer buffer, long position) throws IOException {
+		while (buffer.hasRemaining())
+			position += channel.write(buffer, position);
+	}
+
+	private void writeBlock(ByteBuffer block) throws IOException {
+		int length = block.remaining();
+		write(block, position);
+		position += length;
+		writtenBytes.addAndGet(length);
+		writes.incrementAndGet();
+	}
+
+	private void encode(ByteBuffer block) throws IOException {
+		while (block.hasRemaining()) {
+			int count = Math.min(block.remaining(), FRAME_SIZE - sampleCount);
+			block.get(samples, sampleCount, count);
+			sampleCount += count;
+
+			if (sampleCount == FRAME_SIZE)
+				encodeFrame();
+		}
+	}
+
+	private void encodeFrame() throws IOException {
+		Frame frame = Memory.allocate(FRAME_SIZE);
+		System.arraycopy(samples, 0, frame.getData(), 0, FRAME_SIZE);
+		frame.setOffset(0);
+		frame.setLength(FRAME_SIZE);
+		sampleCount = 0;
+
+		Frame encoded = encoder.process(frame);
+		frame.recycle();
+
+		byte[] data = encoded.getData();
+		int offset = encoded.getOffset();
+		int length = encoded.getLength();
+		try {
+			while (length > 0) {
+				int count = Math.min(length, output.remaining());
+				output.put(data, offset, count);
+				offset += count;
+				length -= count;
+
+				if (!output.hasRemaining())
+					writeOutput();
+			}
+		} finally {
+			encoded.recycle();
+		}
+	}
+
+	private void writeOutput() throws IOException {
+		output.flip();
+		writeBlock(output);
+		output.clear();
+	}
+
+	private void flush() {
+		ByteBuffer block = full.poll();
+		while (block != null) {
+			int length = block.remaining();
+			if (!failed) {
+				try {
+					if (encoder == null)
+						writeBlock(block);
+					else
+						encode(block);
+				} catch (IOException e) {
+					failed = true;
+					logger.error("Could not write to " + file, e);
+				}
+			}
+
+			pendingBytes.addAndGet(-length);
+			free.offer(block);
+			block = full.poll();
+		}
+	}
+
+	private void finish() {
+		Runnable listener;
+		synchronized (this) {
+			listener = closeListener;
+		}
+
+		try {
+			if (!failed) {
+				if (encoder != null) {
+					if (sampleCount > 0) {
+						Arrays.fill(samples, sampleCount, FRAME_SIZE, (byte) 0);
+						encodeFrame();
+					}
+
+					if (output.position() > 0)
+						writeOutput();
+				}
+
+				ByteBuffer header = format.header(position - format.getHeaderSize());
+				if (header != null)
+					write(header, 0);
+				channel.force(true);
+			}
+		} catch (IOException e) {
+			failed = true;
+			logger.error("Could not complete " + file, e);
+		} finally {
+			try {
+				raf.close();
+			} catch (IOException e) {
+			}
+		}
+
+		if (listener != null)
+			listener.run();
+	}
+
+	/**
+	 * Writes full blocks, only one task of writer runs at a time.
+	 */
+	private class FlushTask implements Runnable {
+		@Override
+		public void run() {
+			boolean done = false;
+			try {
+				flush();
+
+				//no data is submitted after close, so finish while this task
+				//still holds the writer and no other task can run
+				done = closing && full.isEmpty();
+				if (done && finished.compareAndSet(false, true))
+					finish();
+			} finally {
+				if (!done)
+					scheduled.set(false);
+			}
+
+			//close may have been requested while this task was running
+			if (!done && (closing || !full.isEmpty()))
+				schedule();
+		}
+	}
+}
@@ -0,0 +1,182 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.mobicents.media.server.impl.resource.audio;
+
+/**
+ * Streaming voice activity detector for 16 bit linear frames.
+ *
+ * Energy of each frame is measured as mean absolute amplitude and compared
+ * with the estimate of background noise. Frame is speech when energy is well
+ * above the noise, or moderately above the noise with high zero crossing
+ * rate, which keeps quiet unvoiced sounds like fricatives.
+ *
+ * Noise estimate is seeded with the quietest of the first frames, no speech
+ * is reported till then, so steady background noise present from the start
+ * is not taken for speech. Afterwards the estimate follows quieter frames
+ * quickly, louder frames slowly and voiced frames even slower, so it adapts
+ * to changes of background noise within seconds but not to speech. Voice is
+ * reported active for a short hangover after the last speech frame, so
+ * trimmed recordings do not cut word endings.
+ */
+public class VoiceActivityDetector {
+	//energies below this level are never speech
+	public static final int MIN_SPEECH_LEVEL = 100;
+
+	//speech to noise ratios, in 1/4 units
+	private static final int SPEECH_RATIO = 12;
+	private static final int UNVOICED_RATIO = 6;
+
+	//zero crossings per 1000 samples for unvoiced speech
+	private static final int UNVOICED_CROSSINGS = 250;
+
+	//noise estimate moves 1/8 towards quieter, 1/64 towards louder and 1/1024
+	//towards voiced frames
+	private static final int FALL_SHIFT = 3;
+	private static final int RISE_SHIFT = 6;
+	private static final int VOICED_RISE_SHIFT = 10;
+
+	//fractional bits of noise estimate
+	private static final int NOISE_SHIFT = 8;
+
+	//frames reported as active after speech
+	public static final int HANGOVER_FRAMES = 10;
+
+	//frames used to seed noise estimate, never reported as speech
+	public static final int TRAINING_FRAMES = 5;
+
+	private int noise = MIN_SPEECH_LEVEL << NOISE_SHIFT;
+	private int trainingFrames;
+	private int energy;
+	private int crossings;
+	private int hangover;
+
+	/**
+	 * Analyzes next frame.
+	 *
+	 * @param data the array with samples, little endian.
+	 * @param offset the position of first sample in array.
+	 * @param length the length of data in bytes.
+	 * @return true if frame contains speech.
+	 */
+	public boolean process(byte[] data, int offset, int length) {
+		int count = length / 2;
+		if (count == 0)
+			return false;
+
+		long sum = 0;
+		int zeroCrossings = 0;
+		int previous = 0;
+		for (int i = offset, end = offset + count * 2; i < end; i += 2) {
+			int s = (short) ((data[i] & 0xff) | (data[i + 1] << 8));
+			sum += s < 0 ? -s : s;
+			if ((s < 0 && previous >= 0) || (s >= 0 && previous < 0))
+				zeroCrossings++;
+			previous = s;
+		}
+
+		energy = (int) (sum / count);
+		crossings = zeroCrossings * 1000 / count;
+
+		int level = energy << NOISE_SHIFT;
+		if (trainingFrames < TRAINING_FRAMES) {
+			if (trainingFrames == 0 || level < noise)
+				noise = level;
+
+			trainingFrames++;
+			return false;
+		}
+
+		int threshold = Math.max(MIN_SPEECH_LEVEL, getNoiseLevel());
+		boolean voiced = energy * 4 > threshold * SPEECH_RATIO;
+		boolean speech = voiced || (energy * 4 > threshold * UNVOICED_RATIO && crossings > UNVOICED_CROSSINGS);
+
+		if (level < noise)
+			noise -= (noise - level) >> FALL_SHIFT;
+		else
+			noise += (level - noise) >> (voiced ? VOICED_RISE_SHIFT : RISE_SHIFT);
+
+		if (speech)
+			hangover = HANGOVER_FRAMES;
+		else if (hangover > 0)
+			hangover--;
+
+		return speech;
+	}
+
+	/**
+	 * Checks whether voice is active, including hangover after the last
+	 * speech frame.
+	 *
+	 * @return true if speech was detected recently.
+	 */
+	public boolean isVoiceActive() {
+		return hangover > 0;
+	}
+
+	/**
+	 * Gets the energy of the last frame.
+	 *
+	 * @return the mean absolute amplitude.
+	 */
+	public int getEnergy() {
+		return energy;
+	}
+
+	/**
+	 * Gets the zero crossing rate of the last frame.
+	 *
+	 * @return the number of crossings per 1000 samples.
+	 */
+	public int getCrossings() {
+		return crossings;
+	}
+
+	/**
+	 * Gets the estimate of background noise.
+	 *
+	 * @return the mean absolute amplitude.
+	 */
+	public int getNoiseLevel() {
+		return noise >> NOISE_SHIFT;
+	}
+
+	/**
+	 * Checks whether noise estimate is seeded.
+	 *
+	 * @return true if the first frames were analyzed.
+	 */
+	public boolean isTrained() {
+		return trainingFrames >= TRAINING_FRAMES;
+	}
+
+	/**
+	 * Prepares detector for new recording.
+	 */
+	public void reset() {
+		noise = MIN_SPEECH_LEVEL << NOISE_SHIFT;
+		trainingFrames = 0;
+		energy = 0;
+		crossings = 0;
+		hangover = 0;
+	}
+}
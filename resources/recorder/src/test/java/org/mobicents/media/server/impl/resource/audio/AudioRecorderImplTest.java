@@ -4,7 +4,12 @@
  */
 package org.mobicents.media.server.impl.resource.audio;
 
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+
 import org.junit.After;
 import org.junit.AfterClass;
 import org.junit.Before;
@@ -19,6 +24,9 @@ import org.mobicents.media.server.scheduler.Clock;
 import org.mobicents.media.server.scheduler.DefaultClock;
 import org.mobicents.media.server.scheduler.Scheduler;
 
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
 /**
  *
  * @author yulian oifa
@@ -86,6 +94,34 @@ public class AudioRecorderImplTest {
         System.out.println("======" + Integer.toHexString(8000));
     }
 
+    /**
+     * Format applies to one file, also when the file can not be opened.
+     */
+    @Test
+    public void testFormatAfterFailedFile() throws IOException {
+        File file = File.createTempFile("recorder", ".wav");
+        file.deleteOnExit();
+        
+        recorder.setRecordFormat("pcma");
+        try {
+            recorder.setRecordFile("file://" + new File(file, "record.wav").getPath(), false);
+            fail("Opened a file below a plain file");
+        } catch (IOException e) {
+            // expected
+        }
+        
+        recorder.setRecordFile("file://" + file.getPath(), false);
+        
+        byte[] header = new byte[RecordingFormat.LINEAR.getHeaderSize()];
+        DataInputStream in = new DataInputStream(new FileInputStream(file));
+        try {
+            in.readFully(header);
+        } finally {
+            in.close();
+        }
+        assertTrue(RecordingFormat.LINEAR.matches(ByteBuffer.wrap(header)));
+    }
+
     /**
      * Test of stop method, of class AudioRecorderImpl.
      * Check it manually
@@ -0,0 +1,244 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.mobicents.media.server.impl.resource.audio;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mobicents.media.server.spi.memory.Frame;
+import org.mobicents.media.server.spi.memory.Memory;
+
+import static org.junit.Assert.*;
+
+public class RecordingWriterTest {
+
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("record", ".wav");
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    private byte[] frame(int index) {
+        byte[] data = new byte[320];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) (index + i);
+        }
+        return data;
+    }
+
+    private void close(RecordingWriter writer) throws InterruptedException {
+        final CountDownLatch latch = new CountDownLatch(1);
+        writer.close(new Runnable() {
+            @Override
+            public void run() {
+                latch.countDown();
+            }
+        });
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+    }
+
+    private byte[] read() throws IOException {
+        byte[] content = new byte[(int) file.length()];
+        FileInputStream in = new FileInputStream(file);
+        try {
+            int offset = 0;
+            while (offset < content.length) {
+                offset += in.read(content, offset, content.length - offset);
+            }
+        } finally {
+            in.close();
+        }
+        return content;
+    }
+
+    private int readInt(byte[] data, int offset) {
+        return (data[offset] & 0xFF) | (data[offset + 1] & 0xFF) << 8 | (data[offset + 2] & 0xFF) << 16 | (data[offset + 3] & 0xFF) << 24;
+    }
+
+    @Test
+    public void testRecording() throws Exception {
+        RecordingWriter writer = new RecordingWriter(file, false, RecordingWriter.DEFAULT_MAX_BUFFER_SIZE);
+        int frames = 1000;
+        for (int i = 0; i < frames; i++) {
+            assertTrue(writer.write(frame(i), 0, 320));
+        }
+        close(writer);
+
+        //data is not accepted after close
+        assertFalse(writer.write(frame(0), 0, 320));
+        assertEquals(0, writer.getDroppedBytes());
+        assertEquals(frames * 320, writer.getWrittenBytes());
+        assertEquals(0, writer.getPendingBytes());
+        assertTrue(writer.getMaxPendingBytes() >= RecordingWriter.BLOCK_SIZE - RecordingWriter.HEADER_SIZE);
+        //all blocks but the last one are full
+        assertEquals(frames * 320 / RecordingWriter.BLOCK_SIZE + 1, writer.getWrites());
+
+        byte[] content = read();
+        assertEquals(RecordingWriter.HEADER_SIZE + frames * 320, content.length);
+        assertEquals("RIFF", new String(content, 0, 4, "US-ASCII"));
+        assertEquals(36 + frames * 320, readInt(content, 4));
+        assertEquals("data", new String(content, 36, 4, "US-ASCII"));
+        assertEquals(frames * 320, readInt(content, 40));
+        for (int i = 0; i < frames; i++) {
+            byte[] expected = frame(i);
+            for (int j = 0; j < expected.length; j++) {
+                assertEquals(expected[j], content[RecordingWriter.HEADER_SIZE + i * 320 + j]);
+            }
+        }
+    }
+
+    @Test
+    public void testAppend() throws Exception {
+        RecordingWriter writer = new RecordingWriter(file, false, RecordingWriter.DEFAULT_MAX_BUFFER_SIZE);
+        writer.write(frame(1), 0, 320);
+        close(writer);
+
+        writer = new RecordingWriter(file, true, RecordingWriter.DEFAULT_MAX_BUFFER_SIZE);
+        writer.write(frame(2), 0, 320);
+        close(writer);
+
+        byte[] content = read();
+        assertEquals(RecordingWriter.HEADER_SIZE + 640, content.length);
+        assertEquals(640, readInt(content, 40));
+        assertEquals(frame(1)[0], content[RecordingWriter.HEADER_SIZE]);
+        assertEquals(frame(2)[0], content[RecordingWriter.HEADER_SIZE + 320]);
+    }
+
+    @Test
+    public void testAppendOtherFormat() throws Exception {
+        RecordingWriter writer = new RecordingWriter(file, false, RecordingWriter.DEFAULT_MAX_BUFFER_SIZE);
+        writer.write(frame(1), 0, 320);
+        close(writer);
+        byte[] linear = read();
+
+        //pcmu samples can not follow linear samples in the same file
+        try {
+            new RecordingWriter(file, RecordingFormat.PCMU, true, RecordingWriter.DEFAULT_MAX_BUFFER_SIZE);
+            fail("Appended pcmu to linear file");
+        } catch (IOException e) {
+        }
+        assertArrayEquals(linear, read());
+
+        writer = new RecordingWriter(file, RecordingFormat.LINEAR, true, RecordingWriter.DEFAULT_MAX_BUFFER_SIZE);
+        writer.write(frame(2), 0, 320);
+        close(writer);
+        assertEquals(640, readInt(read(), 40));
+    }
+
+    @Test
+    public void testOverwrite() throws Exception {
+        RecordingWriter writer = new RecordingWriter(file, false, RecordingWriter.DEFAULT_MAX_BUFFER_SIZE);
+        writer.write(frame(1), 0, 320);
+        writer.write(frame(2), 0, 320);
+        close(writer);
+
+        writer = new RecordingWriter(file, false, RecordingWriter.DEFAULT_MAX_BUFFER_SIZE);
+        writer.write(frame(3), 0, 320);
+        close(writer);
+
+        byte[] content = read();
+        assertEquals(RecordingWriter.HEADER_SIZE + 320, content.length);
+        assertEquals(320, readInt(content, 40));
+        assertEquals(frame(3)[0], content[RecordingWriter.HEADER_SIZE]);
+    }
+
+    @Test
+    public void testPcmu() throws Exception {
+        RecordingWriter writer = new RecordingWriter(file, RecordingFormat.PCMU, false, RecordingWriter.DEFAULT_MAX_BUFFER_SIZE);
+        int frames = 500;
+        for (int i = 0; i < frames; i++) {
+            assertTrue(writer.write(frame(i), 0, 320));
+        }
+        close(writer);
+
+        //one byte per sample
+        assertEquals(frames * 160, writer.getWrittenBytes());
+        byte[] content = read();
+        assertEquals(RecordingWriter.HEADER_SIZE + frames * 160, content.length);
+        assertEquals(7, content[20]);
+        assertEquals(8000, readInt(content, 28));
+        assertEquals(8, content[34]);
+        assertEquals(frames * 160, readInt(content, 40));
+
+        Frame linear = Memory.allocate(320);
+        System.arraycopy(frame(3), 0, linear.getData(), 0, 320);
+        linear.setOffset(0);
+        linear.setLength(320);
+        Frame expected = RecordingFormat.PCMU.newEncoder().process(linear);
+        for (int j = 0; j < 160; j++) {
+            assertEquals(expected.getData()[j], content[RecordingWriter.HEADER_SIZE + 3 * 160 + j]);
+        }
+        linear.recycle();
+        expected.recycle();
+    }
+
+    @Test
+    public void testGsm() throws Exception {
+        RecordingWriter writer = new RecordingWriter(file, RecordingFormat.GSM, false, RecordingWriter.DEFAULT_MAX_BUFFER_SIZE);
+        int frames = 1000;
+        for (int i = 0; i < frames; i++) {
+            assertTrue(writer.write(frame(i), 0, 320));
+        }
+        //incomplete frame is padded
+        assertTrue(writer.write(frame(0), 0, 100));
+        close(writer);
+
+        //raw file without header, 33 bytes per frame
+        byte[] content = read();
+        assertEquals((frames + 1) * 33, content.length);
+        assertEquals(content.length, writer.getWrittenBytes());
+        for (int i = 0; i <= frames; i++) {
+            assertEquals(0xD0, content[i * 33] & 0xF0);
+        }
+
+        writer = new RecordingWriter(file, RecordingFormat.GSM, true, RecordingWriter.DEFAULT_MAX_BUFFER_SIZE);
+        writer.write(frame(0), 0, 320);
+        close(writer);
+        assertEquals((frames + 2) * 33, file.length());
+    }
+
+    @Test
+    public void testBufferLimit() throws Exception {
+        RecordingWriter writer = new RecordingWriter(file, false, 0);
+        //data larger than all blocks of writer is dropped as a whole
+        byte[] data = new byte[3 * RecordingWriter.BLOCK_SIZE];
+        assertFalse(writer.write(data, 0, data.length));
+        assertEquals(data.length, writer.getDroppedBytes());
+        close(writer);
+
+        assertEquals(RecordingWriter.HEADER_SIZE, file.length());
+    }
+
+}
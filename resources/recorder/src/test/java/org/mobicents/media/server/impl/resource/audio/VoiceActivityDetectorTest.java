@@ -0,0 +1,163 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.mobicents.media.server.impl.resource.audio;
+
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class VoiceActivityDetectorTest {
+
+    private VoiceActivityDetector vad;
+    private Random random = new Random(1);
+
+    @Before
+    public void setUp() {
+        vad = new VoiceActivityDetector();
+    }
+
+    private byte[] tone(int amplitude) {
+        byte[] data = new byte[320];
+        for (int i = 0; i < 160; i++) {
+            short s = (short) (amplitude * Math.sin(2 * Math.PI * 250 * i / 8000));
+            data[2 * i] = (byte) s;
+            data[2 * i + 1] = (byte) (s >> 8);
+        }
+        return data;
+    }
+
+    private byte[] constant(int value) {
+        byte[] data = new byte[320];
+        for (int i = 0; i < 160; i++) {
+            data[2 * i] = (byte) value;
+            data[2 * i + 1] = (byte) (value >> 8);
+        }
+        return data;
+    }
+
+    private byte[] noise(int amplitude) {
+        byte[] data = new byte[320];
+        for (int i = 0; i < 160; i++) {
+            short s = (short) (random.nextInt(2 * amplitude + 1) - amplitude);
+            data[2 * i] = (byte) s;
+            data[2 * i + 1] = (byte) (s >> 8);
+        }
+        return data;
+    }
+
+    private void train() {
+        for (int i = 0; i < VoiceActivityDetector.TRAINING_FRAMES; i++) {
+            assertFalse(vad.process(constant(0), 0, 320));
+        }
+        assertTrue(vad.isTrained());
+    }
+
+    @Test
+    public void testSilence() {
+        for (int i = 0; i < 100; i++) {
+            assertFalse(vad.process(constant(0), 0, 320));
+        }
+        assertFalse(vad.isVoiceActive());
+
+        //small negative samples are silence
+        assertFalse(vad.process(constant(-20), 0, 320));
+        assertEquals(20, vad.getEnergy());
+    }
+
+    @Test
+    public void testSpeech() {
+        train();
+        assertTrue(vad.process(tone(3000), 0, 320));
+        assertTrue(vad.isVoiceActive());
+
+        //loud negative samples are speech
+        vad.reset();
+        assertFalse(vad.isTrained());
+        train();
+        assertTrue(vad.process(constant(-3000), 0, 320));
+    }
+
+    @Test
+    public void testTraining() {
+        //first frames only seed noise estimate
+        for (int i = 0; i < VoiceActivityDetector.TRAINING_FRAMES; i++) {
+            assertFalse(vad.isTrained());
+            assertFalse(vad.process(tone(3000), 0, 320));
+            assertFalse(vad.isVoiceActive());
+        }
+        assertTrue(vad.isTrained());
+    }
+
+    @Test
+    public void testOffset() {
+        train();
+        byte[] data = new byte[640];
+        System.arraycopy(tone(3000), 0, data, 320, 320);
+        assertFalse(vad.process(data, 0, 320));
+        assertTrue(vad.process(data, 320, 320));
+    }
+
+    @Test
+    public void testNoiseFloor() {
+        //steady noise louder than initial estimate is never taken for speech
+        for (int i = 0; i < 500; i++) {
+            assertFalse(vad.process(noise(1000), 0, 320));
+        }
+        assertFalse(vad.isVoiceActive());
+        assertTrue(vad.getNoiseLevel() > 400);
+
+        //speech is detected over noise
+        assertTrue(vad.process(tone(8000), 0, 320));
+
+        //noise estimate does not follow speech
+        for (int i = 0; i < 100; i++) {
+            assertTrue(vad.process(tone(8000), 0, 320));
+        }
+    }
+
+    @Test
+    public void testLoudNoise() {
+        for (int amplitude : new int[] { 800, 4000 }) {
+            vad.reset();
+            for (int i = 0; i < 500; i++) {
+                assertFalse("Noise " + amplitude + " taken for speech in frame " + i, vad.process(noise(amplitude), 0, 320));
+            }
+        }
+    }
+
+    @Test
+    public void testHangover() {
+        train();
+        vad.process(tone(3000), 0, 320);
+        for (int i = 0; i < VoiceActivityDetector.HANGOVER_FRAMES - 1; i++) {
+            assertFalse(vad.process(constant(0), 0, 320));
+            assertTrue(vad.isVoiceActive());
+        }
+        vad.process(constant(0), 0, 320);
+        assertFalse(vad.isVoiceActive());
+    }
+
+}
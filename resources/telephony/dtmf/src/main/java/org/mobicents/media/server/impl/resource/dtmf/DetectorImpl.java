@@ -153,6 +153,14 @@ public class DetectorImpl extends AbstractSink implements DtmfDetector {
     	return this.oobOutput;
     }
     
+    @Override
+    public void setAffinity(int affinity)
+    {
+    	eventSender.setAffinity(affinity);
+    	output.setAffinity(affinity);
+    	oobOutput.setAffinity(affinity);
+    }
+    
     public void activate()
     {
     	this.offset = 0;
@@ -135,6 +135,12 @@ public class GeneratorImpl extends AbstractSource implements DtmfGenerator {
     	return this.oobInput;
     }    
     
+    @Override
+    public void setAffinity(int affinity) {
+    	super.setAffinity(affinity);
+    	oobGenerator.setAffinity(affinity);
+    }
+    
     @Override
     public void activate() {
     	if(oobDigit!=null) {
@@ -83,6 +83,12 @@ public class PhoneSignalDetector extends AbstractSink implements ToneDetector {
     	return this.output;
     }
     
+    @Override
+    public void setAffinity(int affinity)
+    {
+    	output.setAffinity(affinity);
+    }
+    
     public void setFrequency(int[] f) {
         this.f = f;
         freqFilters = new GoertzelFilter[f.length];
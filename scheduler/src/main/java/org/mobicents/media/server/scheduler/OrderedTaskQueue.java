@@ -23,6 +23,7 @@
 package org.mobicents.media.server.scheduler;
 
 import org.mobicents.media.server.concurrent.ConcurrentCyclicFIFO;
+import org.mobicents.media.server.concurrent.SingleConsumerRingFIFO;
 
 /**
  * Implements queue of tasks.
@@ -31,17 +32,35 @@ import org.mobicents.media.server.concurrent.ConcurrentCyclicFIFO;
  * @author yulian oifa
  */
 public class OrderedTaskQueue {
-	//inner holder for tasks
-    private ConcurrentCyclicFIFO<Task>[] taskList=new ConcurrentCyclicFIFO[2];
+	//number of tasks stored without locking, rest goes to overflow list
+	private static final int CAPACITY=1024;
+	
+	//inner holder for tasks, polled by single thread
+    private SingleConsumerRingFIFO<Task>[] taskList=newTaskList(2);
+    
+    //holder for tasks which does not fit into ring
+    private ConcurrentCyclicFIFO<Task>[] overflowList=newOverflowList(2);
     
     private Integer activeIndex=0;
     
     public OrderedTaskQueue() {
         //intitalize task list
-    	taskList[0] = new ConcurrentCyclicFIFO<Task>();
-    	taskList[1] = new ConcurrentCyclicFIFO<Task>();    
+    	taskList[0] = new SingleConsumerRingFIFO<Task>(CAPACITY);
+    	taskList[1] = new SingleConsumerRingFIFO<Task>(CAPACITY);
+    	overflowList[0] = new ConcurrentCyclicFIFO<Task>();
+    	overflowList[1] = new ConcurrentCyclicFIFO<Task>();
     }    
 
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private static SingleConsumerRingFIFO<Task>[] newTaskList(int size) {
+    	return new SingleConsumerRingFIFO[size];
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private static ConcurrentCyclicFIFO<Task>[] newOverflowList(int size) {
+    	return new ConcurrentCyclicFIFO[size];
+    }
+
     /**
      * Queues specified task using tasks dead line time.
      * 
@@ -53,7 +72,8 @@ public class OrderedTaskQueue {
     	{
     		if(!task.isInQueue0())
     		{
-    			taskList[0].offer(task);
+    			if(!taskList[0].offer(task))
+    				overflowList[0].offer(task);
     			task.storedInQueue0();
     		}
     	}
@@ -61,7 +81,8 @@ public class OrderedTaskQueue {
     	{
     		if(!task.isInQueue1())
     		{
-    			taskList[1].offer(task);
+    			if(!taskList[1].offer(task))
+    				overflowList[1].offer(task);
     			task.storedInQueue1();
     		}
     	}    	    	    
@@ -77,12 +98,18 @@ public class OrderedTaskQueue {
     	if(activeIndex==0)
     	{
     		result=taskList[0].poll();
+    		if(result==null)
+    			result=overflowList[0].poll();
+    		
     		if(result!=null)
     			result.removeFromQueue0();    		
     	}
     	else
     	{
     		result=taskList[1].poll();
+    		if(result==null)
+    			result=overflowList[1].poll();
+    		
     		if(result!=null)
     			result.removeFromQueue1();
     	}
@@ -100,7 +127,9 @@ public class OrderedTaskQueue {
      */
     public void clear() {
     	taskList[0].clear();
-    	taskList[1].clear();    	    	    
+    	taskList[1].clear();
+    	overflowList[0].clear();
+    	overflowList[1].clear();
     }
     
     /**
@@ -109,7 +138,7 @@ public class OrderedTaskQueue {
      * @return the size of the queue.
      */
     public int size() {
-    	return taskList[activeIndex].size();    	
+    	return taskList[activeIndex].size()+overflowList[activeIndex].size();
     }
 
     @Override
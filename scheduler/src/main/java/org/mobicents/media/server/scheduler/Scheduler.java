@@ -149,6 +149,19 @@ public class Scheduler  {
         heartBeatQueue[coreThread.runIndex].accept(task);
     }
     
+    /**
+     * Queues network task for execution as soon as possible by the thread
+     * which executes media tasks of the same affinity.
+     * 
+     * This scheduler executes the task in the network stage of the next
+     * cycle.
+     *
+     * @param task the task to be executed.
+     */
+    public void submitNow(Task task) {
+        submit(task, UDP_MANAGER_QUEUE);
+    }
+    
     /**
      * Queues chain of the tasks for execution.
      * 
@@ -173,17 +186,32 @@ public class Scheduler  {
         
         logger.info("Starting ");
         
-        coreThread.activate();
+        startCoreThreads();
         criticalThread.activate();
-        for(int i=0;i<workerThreads.length;i++)
-        	workerThreads[i].activate();
-        
         for(int i=0;i<criticalWorkerThreads.length;i++)
         	criticalWorkerThreads[i].activate();        
         
         logger.info("Started ");
     }
 
+    /**
+     * Starts threads which are processing management, network and media queues.
+     */
+    protected void startCoreThreads() {
+        coreThread.activate();
+        for(int i=0;i<workerThreads.length;i++)
+        	workerThreads[i].activate();
+    }
+    
+    /**
+     * Terminates threads which are processing management, network and media queues.
+     */
+    protected void stopCoreThreads() {
+        coreThread.shutdown();
+        for(int i=0;i<workerThreads.length;i++)
+        	workerThreads[i].shutdown();
+    }
+
     /**
      * Stops scheduler.
      */
@@ -192,11 +220,8 @@ public class Scheduler  {
             return;
         }
 
-        coreThread.shutdown();
+        stopCoreThreads();
         criticalThread.shutdown();
-        for(int i=0;i<workerThreads.length;i++)
-        	workerThreads[i].shutdown();
-        
         for(int i=0;i<criticalWorkerThreads.length;i++)
         	criticalWorkerThreads[i].shutdown();
         
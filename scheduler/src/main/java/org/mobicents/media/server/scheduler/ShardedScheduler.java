@@ -0,0 +1,432 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2014, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.mobicents.media.server.scheduler;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import org.apache.log4j.Logger;
+import org.mobicents.media.server.concurrent.ConcurrentRingFIFO;
+
+/**
+ * Scheduler which splits processing of management, network and media queues
+ * between shards, one shard per core.
+ *
+ * Task is owned by the shard selected by its affinity key. Each shard executes
+ * management, network, input, mixer and output stages of its own tasks
+ * back-to-back within its own 20ms cycle, so there is no global barrier between
+ * stages and slow task delays only the shard it belongs to. Shard which has
+ * completed its cycle steals pending tasks of the current stage from busy shards
+ * till the end of the cycle.
+ *
+ * Tasks submitted with {@link #submitNow(Task)} are handed to the owning shard
+ * through lock free inbox and executed between stages or as soon as the shard
+ * is idle, instead of waiting for the network stage of the next cycle.
+ *
+ * Critical SS7 queues are processed the same way as by the parent scheduler.
+ */
+public class ShardedScheduler extends Scheduler {
+	//duration of the processing cycle in nanoseconds
+	private static final long CYCLE_DURATION=20000000L;
+
+	//delay between attempts to steal the task in nanoseconds
+	private static final long STEAL_INTERVAL=500000L;
+
+	//number of heartbeat queues
+	private static final int HEARTBEAT_QUEUES=5;
+
+	//number of tasks of one stage which may be stolen
+	private static final int READY_TASKS=1024;
+
+	//number of tasks waiting for immediate execution by shard
+	private static final int INBOX_TASKS=1024;
+
+	private Shard[] shards;
+
+	private Logger logger = Logger.getLogger(ShardedScheduler.class) ;
+
+	/**
+	 * Creates new instance of scheduler with one shard per available core.
+	 */
+	public ShardedScheduler() {
+		this(Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Creates new instance of scheduler.
+	 *
+	 * @param shardsCount the number of shards.
+	 */
+	public ShardedScheduler(int shardsCount) {
+		super();
+		if(shardsCount<1)
+			throw new IllegalArgumentException("Shards count should be positive");
+
+		shards=new Shard[shardsCount];
+		for(int i=0;i<shards.length;i++)
+			shards[i]=new Shard(i);
+	}
+
+	@Override
+	public int getPoolSize()
+    {
+    	return shards.length;
+    }
+
+	/**
+	 * Gets the number of shards.
+	 *
+	 * @return the number of shards.
+	 */
+	public int getShardsCount()
+	{
+		return shards.length;
+	}
+
+	/**
+     * Queues task for execution by the shard selected by task affinity.
+     *
+     * @param task the task to be executed.
+     * @param index the queue index.
+     */
+	@Override
+	public void submit(Task task,Integer index) {
+		if(index<MANAGEMENT_QUEUE)
+		{
+			//critical queues are not sharded
+			super.submit(task, index);
+			return;
+		}
+
+		task.activate(false);
+		shardOf(task).taskQueues[index].accept(task);
+	}
+
+	/**
+     * Queues heartbeat task for execution by the shard selected by task affinity.
+     *
+     * @param task the task to be executed.
+     */
+	@Override
+	public void submitHeatbeat(Task task) {
+		task.activate(true);
+		Shard shard=shardOf(task);
+		shard.heartBeatQueue[shard.runIndex].accept(task);
+	}
+
+	/**
+     * Hands task to the shard selected by task affinity for execution as soon
+     * as the shard completes current stage or immediately when it is idle.
+     *
+     * @param task the task to be executed.
+     */
+	@Override
+	public void submitNow(Task task) {
+		task.activate(false);
+		Shard shard=shardOf(task);
+		if(!shard.inbox.offer(task))
+		{
+			//too many tasks, execute it in the network stage
+			shard.taskQueues[UDP_MANAGER_QUEUE].accept(task);
+			return;
+		}
+
+		LockSupport.unpark(shard);
+	}
+
+	@Override
+	protected void startCoreThreads() {
+		for(int i=0;i<shards.length;i++)
+			shards[i].activate();
+	}
+
+	@Override
+	protected void stopCoreThreads() {
+		for(int i=0;i<shards.length;i++)
+			shards[i].shutdown();
+	}
+
+	@Override
+	public void stop() {
+		super.stop();
+
+		for(int i=0;i<shards.length;i++)
+			shards[i].clear();
+	}
+
+	/**
+     * Shows the part of cycles which were not completed within 20ms.
+     *
+     * @return the miss rate value;
+     */
+	@Override
+	public double getMissRate() {
+		long cycles=0,overruns=0;
+		for(int i=0;i<shards.length;i++)
+		{
+			cycles+=shards[i].cycles;
+			overruns+=shards[i].overruns;
+		}
+
+		if(cycles==0)
+			return 0;
+
+		return (double)overruns/cycles;
+	}
+
+	/**
+	 * Gets the longest cycle duration of all shards.
+	 *
+	 * @return the duration in nanoseconds.
+	 */
+	@Override
+	public long getWorstExecutionTime() {
+		long result=0;
+		for(int i=0;i<shards.length;i++)
+			if(shards[i].worstExecutionTime>result)
+				result=shards[i].worstExecutionTime;
+
+		return result;
+	}
+
+	/**
+	 * Gets the number of tasks executed by shards other than owner.
+	 *
+	 * @return the number of stolen tasks.
+	 */
+	public long getStolenTasks() {
+		long result=0;
+		for(int i=0;i<shards.length;i++)
+			result+=shards[i].stolenTasks;
+
+		return result;
+	}
+
+	private Shard shardOf(Task task) {
+		return shards[(task.getAffinity() & Integer.MAX_VALUE)%shards.length];
+	}
+
+	/**
+	 * Shard thread, executes own tasks and steals tasks of other shards
+	 * when idle.
+	 */
+	private class Shard extends Thread {
+		private volatile boolean active;
+
+		private OrderedTaskQueue[] taskQueues = new OrderedTaskQueue[OUTPUT_QUEUE+1];
+		private OrderedTaskQueue[] heartBeatQueue = new OrderedTaskQueue[HEARTBEAT_QUEUES];
+		private volatile int runIndex=0;
+
+		//tasks of current stage available for owner and other shards
+		private ConcurrentRingFIFO<Task> readyTasks=new ConcurrentRingFIFO<Task>(READY_TASKS);
+
+		//tasks of current stage which are not completed yet
+		private AtomicInteger pendingTasks=new AtomicInteger();
+
+		//tasks executed by this shard between stages
+		private ConcurrentRingFIFO<Task> inbox=new ConcurrentRingFIFO<Task>(INBOX_TASKS);
+
+		//statistics
+		private volatile long cycles;
+		private volatile long overruns;
+		private volatile long worstExecutionTime;
+		private volatile long stolenTasks;
+
+		public Shard(int index) {
+			super("Scheduler-shard-" + index);
+
+			for(int i=MANAGEMENT_QUEUE;i<taskQueues.length;i++)
+				taskQueues[i]=new OrderedTaskQueue();
+
+			for(int i=0;i<heartBeatQueue.length;i++)
+				heartBeatQueue[i]=new OrderedTaskQueue();
+		}
+
+		public void activate() {
+			this.active = true;
+			this.start();
+		}
+
+		@Override
+		public void run() {
+			long cycleDuration;
+			long cycleStart = getClock().getTime();
+
+			while(active)
+			{
+				for(int currQueue=MANAGEMENT_QUEUE;currQueue<=OUTPUT_QUEUE;currQueue++)
+				{
+					executeQueue(taskQueues[currQueue]);
+					executeInbox();
+				}
+
+				executeQueue(taskQueues[MANAGEMENT_QUEUE]);
+
+				runIndex=(runIndex+1)%HEARTBEAT_QUEUES;
+				executeQueue(heartBeatQueue[runIndex]);
+
+				executeQueue(taskQueues[MANAGEMENT_QUEUE]);
+
+				//update statistics
+				cycleDuration=getClock().getTime() - cycleStart;
+				cycles++;
+				if(cycleDuration>CYCLE_DURATION)
+				{
+					overruns++;
+					if(logger.isDebugEnabled())
+						logger.debug(getName() + " cycle overrun, duration " + cycleDuration + "ns");
+				}
+
+				if(cycleDuration>worstExecutionTime)
+					worstExecutionTime=cycleDuration;
+
+				//help other shards till the end of cycle
+				stealTasks(cycleStart + CYCLE_DURATION);
+
+				//wait till next cycle
+				waitCycle(cycleStart + CYCLE_DURATION);
+
+				cycleStart = cycleStart + CYCLE_DURATION;
+			}
+		}
+
+		private void executeQueue(OrderedTaskQueue currQueue)
+		{
+			Task t;
+			currQueue.changePool();
+			t = currQueue.poll();
+
+			//publish all tasks of current stage
+			while(t!=null)
+			{
+				pendingTasks.incrementAndGet();
+				if(!readyTasks.offer(t))
+				{
+					//too many tasks, execute it locally
+					t.run();
+					notifyCompletion();
+				}
+
+				t = currQueue.poll();
+			}
+
+			t = readyTasks.poll();
+			while(t!=null)
+			{
+				t.run();
+				notifyCompletion();
+				t = readyTasks.poll();
+			}
+
+			//wait for tasks executed by other shards
+			while(pendingTasks.get()!=0)
+				LockSupport.park();
+		}
+
+		private void executeInbox()
+		{
+			Task t=inbox.poll();
+			while(t!=null)
+			{
+				t.run();
+				t=inbox.poll();
+			}
+		}
+
+		private void waitCycle(long deadline) {
+			long remaining=deadline - getClock().getTime();
+			while(active && remaining>0)
+			{
+				executeInbox();
+				//woken up by tasks handed to inbox
+				LockSupport.parkNanos(remaining);
+				remaining=deadline - getClock().getTime();
+			}
+			executeInbox();
+		}
+
+		private void notifyCompletion() {
+			if(pendingTasks.decrementAndGet()==0)
+				LockSupport.unpark(this);
+		}
+
+		private void stealTasks(long deadline) {
+			while(active)
+			{
+				executeInbox();
+				if(!stealTask())
+				{
+					if(deadline - getClock().getTime()<=STEAL_INTERVAL)
+						return;
+
+					LockSupport.parkNanos(STEAL_INTERVAL);
+				}
+			}
+		}
+
+		private boolean stealTask() {
+			Shard victim=null;
+			int maxSize=0,currSize;
+			for(int i=0;i<shards.length;i++)
+			{
+				if(shards[i]==this)
+					continue;
+
+				currSize=shards[i].readyTasks.size();
+				if(currSize>maxSize)
+				{
+					maxSize=currSize;
+					victim=shards[i];
+				}
+			}
+
+			if(victim==null)
+				return false;
+
+			Task t=victim.readyTasks.poll();
+			if(t==null)
+				return false;
+
+			t.run();
+			stolenTasks++;
+			victim.notifyCompletion();
+			return true;
+		}
+
+		private void clear() {
+			for(int i=MANAGEMENT_QUEUE;i<taskQueues.length;i++)
+				taskQueues[i].clear();
+
+			for(int i=0;i<heartBeatQueue.length;i++)
+				heartBeatQueue[i].clear();
+
+			inbox.clear();
+		}
+
+		/**
+		 * Terminates thread.
+		 */
+		private void shutdown() {
+			this.active = false;
+		}
+	}
+}
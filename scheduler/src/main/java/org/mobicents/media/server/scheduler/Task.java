@@ -48,10 +48,38 @@ public abstract class Task implements Runnable {
     
     protected int taskId;
     
+    //shard selection key, negative value means not assigned
+    private volatile int affinity=-1;
+    
     public Task() {
     	taskId=id.incrementAndGet();
     }
 
+    /**
+     * Assigns the key used by sharded schedulers to select the executing core.
+     * Tasks of the same endpoint should share the key so all their stages
+     * are executed by the same core.
+     * 
+     * @param affinity the non negative key value.
+     */
+    public void setAffinity(int affinity)
+    {
+    	this.affinity=affinity;
+    }
+    
+    /**
+     * Gets the key used by sharded schedulers to select the executing core.
+     * 
+     * @return assigned affinity or task id if affinity was not assigned.
+     */
+    public int getAffinity()
+    {
+    	if(affinity<0)
+    		return taskId;
+    	
+    	return affinity;
+    }
+
     public void storedInQueue0()
     {
     	inQueue0.set(true);
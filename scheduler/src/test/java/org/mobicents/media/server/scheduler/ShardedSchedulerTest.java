@@ -0,0 +1,160 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2014, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.mobicents.media.server.scheduler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ShardedSchedulerTest {
+
+	private ShardedScheduler scheduler;
+
+	@Before
+	public void setUp() {
+		scheduler = new ShardedScheduler(2);
+		scheduler.setClock(new DefaultClock());
+		scheduler.start();
+	}
+
+	@After
+	public void tearDown() {
+		scheduler.stop();
+	}
+
+	@Test
+	public void testStagesOrder() throws InterruptedException {
+		List<Integer> order = new CopyOnWriteArrayList<Integer>();
+
+		scheduler.submit(new TestTask(Scheduler.OUTPUT_QUEUE, 0, order, 0), Scheduler.OUTPUT_QUEUE);
+		scheduler.submit(new TestTask(Scheduler.MIXER_MIX_QUEUE, 0, order, 0), Scheduler.MIXER_MIX_QUEUE);
+		scheduler.submit(new TestTask(Scheduler.INPUT_QUEUE, 0, order, 0), Scheduler.INPUT_QUEUE);
+
+		Thread.sleep(100);
+
+		assertEquals(3, order.size());
+		assertEquals(Scheduler.INPUT_QUEUE, order.get(0));
+		assertEquals(Scheduler.MIXER_MIX_QUEUE, order.get(1));
+		assertEquals(Scheduler.OUTPUT_QUEUE, order.get(2));
+	}
+
+	@Test
+	public void testSlowShard() throws InterruptedException {
+		List<Integer> order = new CopyOnWriteArrayList<Integer>();
+		RepeatedTask fast = new RepeatedTask(1);
+
+		scheduler.submit(new TestTask(Scheduler.INPUT_QUEUE, 0, order, 200), Scheduler.INPUT_QUEUE);
+		scheduler.submit(fast, Scheduler.INPUT_QUEUE);
+
+		Thread.sleep(150);
+
+		// the other shard keeps its 20ms cycle while the first one is blocked
+		assertTrue(fast.count.get() >= 5);
+		assertEquals(0, order.size());
+	}
+
+	@Test
+	public void testWorkStealing() throws InterruptedException {
+		List<Integer> order = new CopyOnWriteArrayList<Integer>();
+		Set<String> threads = Collections.synchronizedSet(new HashSet<String>());
+
+		TestTask first = new TestTask(Scheduler.INPUT_QUEUE, 0, order, 50);
+		TestTask second = new TestTask(Scheduler.INPUT_QUEUE, 0, order, 50);
+		first.threads = threads;
+		second.threads = threads;
+
+		scheduler.submit(first, Scheduler.INPUT_QUEUE);
+		scheduler.submit(second, Scheduler.INPUT_QUEUE);
+
+		Thread.sleep(150);
+
+		assertEquals(2, order.size());
+		assertEquals(2, threads.size());
+		assertTrue(scheduler.getStolenTasks() > 0);
+	}
+
+	private class TestTask extends Task {
+		private int queue;
+		private List<Integer> order;
+		private long delay;
+		private Set<String> threads;
+
+		public TestTask(int queue, int affinity, List<Integer> order, long delay) {
+			super();
+			this.queue = queue;
+			this.order = order;
+			this.delay = delay;
+			setAffinity(affinity);
+		}
+
+		@Override
+		public int getQueueNumber() {
+			return queue;
+		}
+
+		@Override
+		public long perform() {
+			if (threads != null)
+				threads.add(Thread.currentThread().getName());
+
+			if (delay > 0)
+				try {
+					Thread.sleep(delay);
+				} catch (InterruptedException e) {
+				}
+
+			order.add(queue);
+			return 0;
+		}
+	}
+
+	private class RepeatedTask extends Task {
+		private AtomicInteger count = new AtomicInteger();
+
+		public RepeatedTask(int affinity) {
+			super();
+			setAffinity(affinity);
+		}
+
+		@Override
+		public int getQueueNumber() {
+			return Scheduler.INPUT_QUEUE;
+		}
+
+		@Override
+		public long perform() {
+			count.incrementAndGet();
+			scheduler.submit(this, Scheduler.INPUT_QUEUE);
+			return 0;
+		}
+	}
+}
@@ -0,0 +1,204 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.mobicents.media.server.spi.dsp;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.mobicents.media.server.spi.memory.Frame;
+
+/**
+ * Encodes media delivered to several sinks once per cycle.
+ * 
+ * Producer of identical frames, for example conference mixer, marks each frame
+ * with the encoder and current cycle. Processor which has to transcode such
+ * frame asks encoder first: the frame is transcoded by codec owned by encoder
+ * only once for each output format and each processor receives the copy of
+ * the result.
+ * 
+ * Encoder belongs to one stream, so its codec of stateful type like G.729
+ * is fed continuously with every cycle requested by any processor. Processor
+ * joining or leaving the stream, for example listener which becomes speaker,
+ * switches between own codec and codec of encoder; remote decoder sees this
+ * as discontinuity of codec state, like after packet loss.
+ * 
+ * Each codec of encoder is locked separately, so processors of different
+ * formats do not wait for each other.
+ */
+public class SharedEncoder {
+	private volatile long cycle;
+
+	// copy on write, new slots are added under lock of encoder
+	private volatile Slot[] slots = new Slot[0];
+
+	// statistics
+	private final AtomicLong encodedFrames = new AtomicLong();
+	private final AtomicLong sharedFrames = new AtomicLong();
+
+	/**
+	 * Starts new cycle, frames encoded during previous cycle are released.
+	 * 
+	 * @return the number of new cycle.
+	 */
+	public long next() {
+		release();
+		return ++cycle;
+	}
+
+	/**
+	 * Releases frames encoded during current cycle.
+	 */
+	public void release() {
+		Slot[] current = slots;
+		for (int i = 0; i < current.length; i++) {
+			current[i].release();
+		}
+	}
+
+	/**
+	 * Transcodes frame with codec of the same type as specified one.
+	 * 
+	 * Frame is not recycled.
+	 * 
+	 * @param frame
+	 *            the frame marked with this encoder.
+	 * @param codec
+	 *            the codec of the processor.
+	 * @return the copy of the transcoded frame or null if frame should be
+	 *         transcoded by processor itself, because frame belongs to
+	 *         previous cycle.
+	 */
+	public Frame encode(Frame frame, Codec codec) {
+		long frameCycle = frame.getSharedCycle();
+		if (frameCycle != cycle) {
+			return null;
+		}
+
+		Slot slot = slotOf(codec);
+		if (slot == null) {
+			return null;
+		}
+
+		return slot.encode(frame, frameCycle);
+	}
+
+	private Slot slotOf(Codec codec) {
+		Slot[] current = slots;
+		for (int i = 0; i < current.length; i++) {
+			if (current[i].codec.getClass() == codec.getClass()) {
+				return current[i];
+			}
+		}
+
+		synchronized (this) {
+			current = slots;
+			for (int i = 0; i < current.length; i++) {
+				if (current[i].codec.getClass() == codec.getClass()) {
+					return current[i];
+				}
+			}
+
+			Codec instance;
+			try {
+				instance = codec.getClass().getDeclaredConstructor().newInstance();
+			} catch (Exception e) {
+				return null;
+			}
+
+			Slot[] newSlots = new Slot[current.length + 1];
+			System.arraycopy(current, 0, newSlots, 0, current.length);
+			newSlots[current.length] = new Slot(instance);
+			slots = newSlots;
+			return newSlots[current.length];
+		}
+	}
+
+	/**
+	 * Gets the number of frames transcoded by codecs of this encoder.
+	 * 
+	 * @return the number of frames.
+	 */
+	public long getEncodedFrames() {
+		return encodedFrames.get();
+	}
+
+	/**
+	 * Gets the number of requests served without transcoding.
+	 * 
+	 * @return the number of frames.
+	 */
+	public long getSharedFrames() {
+		return sharedFrames.get();
+	}
+
+	/**
+	 * Codec of encoder with the frame it encoded during the cycle.
+	 */
+	private class Slot {
+		private final Codec codec;
+
+		private Frame encoded;
+		private long encodedCycle;
+
+		private Slot(Codec codec) {
+			this.codec = codec;
+		}
+
+		private synchronized Frame encode(Frame frame, long frameCycle) {
+			if (encodedCycle != frameCycle) {
+				if (frameCycle < encodedCycle) {
+					return null;
+				}
+
+				if (encoded != null) {
+					encoded.recycle();
+				}
+
+				// codec sees each cycle once, even if it returns nothing
+				encoded = codec.process(frame);
+				encodedCycle = frameCycle;
+				encodedFrames.incrementAndGet();
+			} else if (encoded != null) {
+				sharedFrames.incrementAndGet();
+			}
+
+			if (encoded == null) {
+				return null;
+			}
+
+			// timing of the copy is the timing of the frame of processor
+			Frame result = encoded.clone();
+			result.setTimestamp(frame.getTimestamp());
+			result.setDuration(frame.getDuration());
+			result.setSequenceNumber(frame.getSequenceNumber());
+			result.setEOM(frame.isEOM());
+			return result;
+		}
+
+		private synchronized void release() {
+			if (encoded != null) {
+				encoded.recycle();
+				encoded = null;
+			}
+		}
+	}
+}
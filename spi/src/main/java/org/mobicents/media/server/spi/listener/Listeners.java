@@ -23,20 +23,24 @@
 package org.mobicents.media.server.spi.listener;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.Semaphore;
 import java.lang.InterruptedException;
 
 /**
  * Implements collection of listener.
  * 
- * Allows concurrently modify list.
+ * Allows concurrently modify list. Events are dispatched to the snapshot of
+ * the list taken on last modification, so dispatch is lock free and may be
+ * called by several threads at once.
  * 
  * @author yulian oifa
  */
 public class Listeners<L extends Listener> {    
     //list of registered listeners
-    private ArrayList<Listener> list=new ArrayList<Listener>();
-    private ArrayList<Listener> processingList=new ArrayList<Listener>();
+    private ArrayList<L> list=new ArrayList<L>();
+    private volatile List<L> processingList=Collections.emptyList();
     private Semaphore accessSemaphore=new Semaphore(1);    
     
     /**
@@ -60,6 +64,7 @@ public class Listeners<L extends Listener> {
     	}
     	
     	list.add(listener);
+    	processingList=new ArrayList<L>(list);
     	accessSemaphore.release();
     }
     
@@ -76,6 +81,7 @@ public class Listeners<L extends Listener> {
     	}
     	
     	list.remove(listener);
+    	processingList=new ArrayList<L>(list);
     	accessSemaphore.release();
     }
     
@@ -91,6 +97,7 @@ public class Listeners<L extends Listener> {
     	}
     	
     	list.clear();
+    	processingList=Collections.emptyList();
     	accessSemaphore.release();
     }
     
@@ -100,21 +107,15 @@ public class Listeners<L extends Listener> {
      * @param event the event to be dispatched
      * @return true if event was delivered at least to one listener
      */
+    @SuppressWarnings("unchecked")
     public boolean dispatch(Event event) {
-    	try {
-    		accessSemaphore.acquire();
-    	}
-    	catch(InterruptedException e) {
-    		
-    	}
-    	    	
-    	processingList.clear();
-    	processingList.addAll(list);
-    	accessSemaphore.release();        	
-    	boolean res= (processingList.size()!=0);        
+    	//listener accepts events of its own type only, callers dispatch
+    	//events of the type of L
+    	List<L> currList=processingList;
+    	boolean res= (currList.size()!=0);        
     	
-    	for(int i=0;i<processingList.size();i++)
-    		processingList.get(i).process(event);        
+    	for(int i=0;i<currList.size();i++)
+    		currList.get(i).process(event);        
     	    
     	return res;
     }    
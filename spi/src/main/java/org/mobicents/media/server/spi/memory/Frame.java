@@ -22,17 +22,32 @@
 
 package org.mobicents.media.server.spi.memory;
 
+import java.nio.ByteBuffer;
 import java.util.concurrent.atomic.AtomicBoolean;
 
+import org.mobicents.media.server.spi.dsp.SharedEncoder;
 import org.mobicents.media.server.spi.format.Format;
 
 /**
+ * Media data unit.
+ * 
+ * Payload of the frame is kept either in heap array or in slice of pooled
+ * direct buffer. Direct frames may be passed to network channels and RTP
+ * packets without intermediate copies, their content should be accessed with
+ * the buffer returned by {@link #getBuffer()}. Once the array of direct frame
+ * is requested with {@link #getData()} the array becomes the payload till
+ * the frame is recycled.
  *
  * @author yulian oifa
  */
 public class Frame {
     private Partition partition;
     private byte[] data;
+    private ByteBuffer buffer;
+    private final boolean direct;
+    
+    //payload of direct frame was moved to array
+    private volatile boolean detached;
 
     private volatile int offset;
     private volatile int length;
@@ -45,11 +60,26 @@ public class Frame {
     private volatile Format format;
     private volatile String header;
     
+    //encoder shared by frames with identical content
+    private volatile SharedEncoder sharedEncoder;
+    private volatile long sharedCycle;
+    
     protected AtomicBoolean inPartition=new AtomicBoolean(false);
     
+    //allocation details, used only when leak detection is enabled
+    volatile long allocationTime;
+    volatile Throwable allocationSite;
+    
     protected Frame(Partition partition, byte[] data) {
         this.partition = partition;
         this.data = data;
+        this.direct = false;
+    }
+
+    protected Frame(Partition partition, ByteBuffer buffer) {
+        this.partition = partition;
+        this.buffer = buffer;
+        this.direct = true;
     }
 
     protected void reset() {
@@ -83,10 +113,63 @@ public class Frame {
         this.length = length;
     }
 
+    /**
+     * Gets the payload array.
+     * 
+     * For direct frame copies the payload to the array, which is used as the
+     * payload of the frame afterwards, so changes of the array are kept.
+     * 
+     * @return the payload array.
+     */
     public byte[] getData() {
+        if (direct && !detached) {
+            if (data == null) {
+                data = new byte[buffer.capacity()];
+            }
+            
+            ByteBuffer source = buffer.duplicate();
+            source.limit(offset + length).position(offset);
+            source.get(data, offset, length);
+            detached = true;
+        }
+        
         return data;
     }
 
+    /**
+     * Gets the view of payload.
+     * 
+     * For heap frame returns the buffer which wraps payload array. Each call
+     * returns new view, so callers do not disturb positions of each other.
+     * 
+     * @return the payload buffer with position at zero and limit at capacity.
+     */
+    public ByteBuffer getBuffer() {
+        if (direct && !detached) {
+            ByteBuffer view = buffer.duplicate();
+            view.clear();
+            return view;
+        }
+        
+        return ByteBuffer.wrap(data);
+    }
+
+    /**
+     * Checks whether payload is kept outside of heap.
+     * 
+     * @return true if payload is in the direct buffer.
+     */
+    public boolean isDirect() {
+        return direct && !detached;
+    }
+
+    /**
+     * Makes the pooled direct buffer the payload again.
+     */
+    void attach() {
+        detached = false;
+    }
+
     public long getTimestamp() {
         return timestamp;
     }
@@ -127,14 +210,58 @@ public class Frame {
         this.format = format;
     }    
 
+    /**
+     * Gets the encoder shared between copies of this frame.
+     * 
+     * @return the encoder or null if frame content is unique.
+     */
+    public SharedEncoder getSharedEncoder() {
+        return sharedEncoder;
+    }
+
+    /**
+     * Gets the cycle of the shared encoder this frame belongs to.
+     * 
+     * @return the cycle number.
+     */
+    public long getSharedCycle() {
+        return sharedCycle;
+    }
+
+    /**
+     * Marks frame as one of identical frames delivered to several sinks.
+     * 
+     * @param sharedEncoder the encoder shared between copies of frame.
+     * @param sharedCycle the current cycle of encoder.
+     */
+    public void setSharedEncoder(SharedEncoder sharedEncoder, long sharedCycle) {
+        this.sharedEncoder = sharedEncoder;
+        this.sharedCycle = sharedCycle;
+    }
+
     public void recycle() {
         partition.recycle(this);
     }
 
     @Override
     public Frame clone() {
-        Frame frame = Memory.allocate(data.length);
-        System.arraycopy(data, offset, frame.data, offset, length);
+        Frame frame;
+        if (direct) {
+            frame = Memory.allocateDirect(buffer.capacity());
+            ByteBuffer target = frame.getBuffer();
+            target.position(offset);
+            if (detached) {
+                target.put(data, offset, length);
+            } else {
+                ByteBuffer source = buffer.duplicate();
+                source.limit(offset + length).position(offset);
+                target.put(source);
+            }
+        } else {
+            frame = Memory.allocate(data.length);
+            System.arraycopy(data, offset, frame.data, offset, length);
+        }
+        
         frame.offset = offset;
         frame.length = length;
         frame.duration = duration;
@@ -143,6 +270,8 @@ public class Frame {
         frame.format = format;
         frame.timestamp = timestamp;
         frame.header = header;
+        frame.sharedEncoder = sharedEncoder;
+        frame.sharedCycle = sharedCycle;
         return frame;
     }
 }
@@ -0,0 +1,181 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2014, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.mobicents.media.server.spi.memory;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Debug helper which keeps track of allocated frames and reports frames which
+ * are not recycled within timeout, grouped by allocating component.
+ * 
+ * Tracking requires stack trace on each allocation, so it should not be
+ * enabled in production.
+ */
+class LeakDetector implements Runnable {
+
+	//allocator classes skipped while looking for allocating component
+	private static final Set<String> ALLOCATOR_CLASSES = new HashSet<String>(Arrays.asList(Memory.class.getName(),
+			Partition.class.getName(), Frame.class.getName(), LeakDetector.class.getName()));
+
+	private static final Logger logger = Logger.getLogger(LeakDetector.class);
+
+	//frames which are not recycled yet
+	private final Set<Frame> outstanding = Collections.newSetFromMap(new ConcurrentHashMap<Frame, Boolean>());
+
+	private volatile boolean enabled;
+	private volatile long timeout;
+
+	private Thread reporter;
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * Starts tracking.
+	 * 
+	 * @param timeout the time in milliseconds after which frame is reported.
+	 */
+	public synchronized void enable(long timeout) {
+		if (timeout <= 0) {
+			throw new IllegalArgumentException("Timeout should be positive");
+		}
+
+		this.timeout = timeout;
+		this.enabled = true;
+
+		if (reporter == null) {
+			reporter = new Thread(this, "Memory-leak-detector");
+			reporter.setDaemon(true);
+			reporter.start();
+		}
+	}
+
+	/**
+	 * Stops tracking and forgets all tracked frames.
+	 */
+	public synchronized void disable() {
+		this.enabled = false;
+		if (reporter != null) {
+			reporter.interrupt();
+			reporter = null;
+		}
+
+		outstanding.clear();
+	}
+
+	public void allocated(Frame frame) {
+		frame.allocationTime = System.currentTimeMillis();
+		frame.allocationSite = new Throwable();
+		outstanding.add(frame);
+	}
+
+	public void recycled(Frame frame) {
+		if (frame.allocationSite != null) {
+			outstanding.remove(frame);
+			frame.allocationSite = null;
+		}
+	}
+
+	/**
+	 * Counts frames which are not recycled within timeout.
+	 * 
+	 * @return the number of leaked frames per allocating class.
+	 */
+	public Map<String, Integer> getLeaks() {
+		Map<String, Integer> result = new HashMap<String, Integer>();
+		long deadline = System.currentTimeMillis() - timeout;
+
+		Iterator<Frame> frames = outstanding.iterator();
+		while (frames.hasNext()) {
+			Frame frame = frames.next();
+			Throwable site = frame.allocationSite;
+			if (site == null || frame.allocationTime > deadline) {
+				continue;
+			}
+
+			String component = getComponent(site);
+			Integer count = result.get(component);
+			result.put(component, count == null ? 1 : count + 1);
+		}
+
+		return result;
+	}
+
+	/**
+	 * Logs leaked frames count and allocation site for each component.
+	 */
+	public void report() {
+		Map<String, Integer> leaks = getLeaks();
+		if (leaks.isEmpty()) {
+			return;
+		}
+
+		Map<String, Throwable> sites = new HashMap<String, Throwable>();
+		long deadline = System.currentTimeMillis() - timeout;
+		Iterator<Frame> frames = outstanding.iterator();
+		while (frames.hasNext()) {
+			Frame frame = frames.next();
+			Throwable site = frame.allocationSite;
+			if (site != null && frame.allocationTime <= deadline) {
+				sites.put(getComponent(site), site);
+			}
+		}
+
+		for (Map.Entry<String, Integer> leak : leaks.entrySet()) {
+			logger.warn(leak.getValue() + " frames allocated by " + leak.getKey() + " are not recycled within "
+					+ timeout + "ms", sites.get(leak.getKey()));
+		}
+	}
+
+	public void run() {
+		while (enabled) {
+			try {
+				Thread.sleep(timeout);
+			} catch (InterruptedException e) {
+				return;
+			}
+
+			report();
+		}
+	}
+
+	private String getComponent(Throwable site) {
+		StackTraceElement[] stack = site.getStackTrace();
+		for (int i = 0; i < stack.length; i++) {
+			if (!ALLOCATOR_CLASSES.contains(stack[i].getClassName())) {
+				return stack[i].getClassName();
+			}
+		}
+
+		return "unknown";
+	}
+}
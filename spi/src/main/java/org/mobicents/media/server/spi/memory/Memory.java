@@ -22,27 +22,168 @@
 
 package org.mobicents.media.server.spi.memory;
 
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
 import org.mobicents.media.server.concurrent.ConcurrentMap;
 
 /**
+ * Frames allocator.
+ * 
+ * Frames are pooled per exact size, partitions for sizes up to 8KB are looked
+ * up by index without hashing.
+ * 
+ * Optional leak detection mode keeps allocation site of each frame and reports
+ * frames which are not recycled within timeout. It may be enabled at startup
+ * with mms.memory.leakTimeout system property, in seconds.
+ * 
+ * Payload frames exchanged with network are allocated in direct memory when
+ * mms.memory.direct system property is set to true.
  *
  * @author oifa yulian
  */
 public class Memory 
 {
+	public static final String LEAK_TIMEOUT_PROPERTY = "mms.memory.leakTimeout";
+	public static final String DIRECT_PROPERTY = "mms.memory.direct";
+	
+	//sizes up to this value are indexed directly
+	private static final int INDEXED_SIZE = 8192;
+	
+	private static AtomicReferenceArray<Partition> indexedPartitions = new AtomicReferenceArray<Partition>(INDEXED_SIZE + 1);
     private static ConcurrentMap<Partition> partitions = new ConcurrentMap<Partition>();
     
+    private static AtomicReferenceArray<Partition> indexedDirectPartitions = new AtomicReferenceArray<Partition>(INDEXED_SIZE + 1);
+    private static ConcurrentMap<Partition> directPartitions = new ConcurrentMap<Partition>();
+    
+    private static volatile boolean directPayloads = Boolean.getBoolean(DIRECT_PROPERTY);
+    
+    static final LeakDetector leakDetector = new LeakDetector();
+    
+    static {
+    	long leakTimeout = Long.getLong(LEAK_TIMEOUT_PROPERTY, 0L);
+    	if (leakTimeout > 0)
+    		leakDetector.enable(leakTimeout * 1000L);
+    }
+    
     public static Frame allocate(int size) 
     {
-    	Partition currPartition=partitions.get(size);
+    	return allocate(getPartition(size, indexedPartitions, partitions, false));
+    }
+    
+    /**
+     * Allocates frame backed by slice of pooled direct buffer.
+     * 
+     * @param size the size of the frame.
+     * @return the direct frame.
+     */
+    public static Frame allocateDirect(int size) 
+    {
+    	return allocate(getPartition(size, indexedDirectPartitions, directPartitions, true));
+    }
+    
+    /**
+     * Allocates frame for payload which is received from or sent to network.
+     * 
+     * @param size the size of the frame.
+     * @return the direct frame if direct payloads are enabled, heap frame otherwise.
+     */
+    public static Frame allocatePayload(int size) 
+    {
+    	if (directPayloads)
+    		return allocateDirect(size);
+    	
+    	return allocate(size);
+    }
+    
+    /**
+     * Enables or disables allocation of network payloads in direct memory.
+     * 
+     * @param value true to allocate payloads in direct memory.
+     */
+    public static void setDirectPayloads(boolean value)
+    {
+    	directPayloads = value;
+    }
+    
+    public static boolean isDirectPayloads()
+    {
+    	return directPayloads;
+    }
+    
+    private static Frame allocate(Partition partition)
+    {
+    	Frame frame = partition.allocate();
+    	if (leakDetector.isEnabled())
+    		leakDetector.allocated(frame);
+    	
+    	return frame;
+    }
+    
+    private static Partition getPartition(int size, AtomicReferenceArray<Partition> indexed, ConcurrentMap<Partition> other, boolean direct)
+    {
+    	if (size >= 0 && size <= INDEXED_SIZE)
+    	{
+    		Partition currPartition=indexed.get(size);
+    		if(currPartition==null)
+    		{
+    			indexed.compareAndSet(size, null, new Partition(size, direct));
+    			currPartition=indexed.get(size);
+    		}
+    		
+    		return currPartition;
+    	}
+    	
+    	Partition currPartition=other.get(size);
     	if(currPartition==null)
     	{
-    		currPartition=new Partition(size);
-    		Partition oldPartition=partitions.putIfAbsent(size,currPartition);
+    		currPartition=new Partition(size, direct);
+    		Partition oldPartition=other.putIfAbsent(size,currPartition);
     		if(oldPartition!=null)
     			currPartition=oldPartition;		
     	}
     	
-    	return currPartition.allocate();
+    	return currPartition;
+    }
+    
+    /**
+     * Enables tracking of frames which are not recycled.
+     * 
+     * @param timeout the time in seconds after which not recycled frame is reported as leaked.
+     */
+    public static void enableLeakDetection(long timeout)
+    {
+    	leakDetector.enable(timeout * 1000L);
+    }
+    
+    /**
+     * Disables tracking of frames which are not recycled.
+     */
+    public static void disableLeakDetection()
+    {
+    	leakDetector.disable();
+    }
+    
+    public static boolean isLeakDetectionEnabled()
+    {
+    	return leakDetector.isEnabled();
+    }
+    
+    /**
+     * Gets frames which are not recycled within timeout.
+     * 
+     * @return the number of leaked frames per allocating component class.
+     */
+    public static Map<String, Integer> getLeakedFrames()
+    {
+    	return leakDetector.getLeaks();
+    }
+    
+    /**
+     * Logs leaked frames with allocation site per component.
+     */
+    public static void reportLeakedFrames()
+    {
+    	leakDetector.report();
     }
 }
@@ -22,26 +22,79 @@
 
 package org.mobicents.media.server.spi.memory;
 
-import org.mobicents.media.server.concurrent.ConcurrentCyclicFIFO;
+import java.nio.ByteBuffer;
+
+import org.mobicents.media.server.concurrent.ConcurrentRingFIFO;
 
 /**
+ * Pool of frames of the same size.
+ * 
+ * Each thread allocates from and recycles to its own magazine of frames
+ * without any synchronization. Full magazines are exchanged between threads
+ * through lock free depot, so frames allocated by one thread and recycled by
+ * another one flow back in batches.
+ * 
+ * Direct partition slices its frames from shared direct chunks, since direct
+ * buffers are expensive to allocate one by one.
  *
  * @author oifa yulian
  */
 public class Partition {
 
+    //maximum number of free frames kept in partition
+    private static final int CAPACITY = 4096;
+    
+    //number of frames in one magazine
+    private static final int MAGAZINE_SIZE = 32;
+    
+    //size of direct memory block shared by frames
+    private static final int CHUNK_SIZE = 65536;
+
     protected int size;
-    private ConcurrentCyclicFIFO<Frame> heap = new ConcurrentCyclicFIFO<Frame>();
+    protected boolean direct;
+    
+    //remaining part of current direct chunk
+    private ByteBuffer chunk;
+    
+    //magazines shared between threads
+    private ConcurrentRingFIFO<Frame[]> fullMagazines = new ConcurrentRingFIFO<Frame[]>(CAPACITY / MAGAZINE_SIZE);
+    private ConcurrentRingFIFO<Frame[]> emptyMagazines = new ConcurrentRingFIFO<Frame[]>(CAPACITY / MAGAZINE_SIZE);
+    
+    //magazine of current thread
+    private ThreadLocal<Magazine> magazines = new ThreadLocal<Magazine>() {
+    	@Override
+    	protected Magazine initialValue() {
+    		return new Magazine();
+    	}
+    };
 
     protected Partition(int size) {
+        this(size, false);
+    }
+
+    protected Partition(int size, boolean direct) {
         this.size = size;
+        this.direct = direct;
     }
     
     protected Frame allocate() {
-    	//if (true) return new Frame(this, new byte[size]);
-    	Frame result=heap.poll();    	
+    	Magazine magazine = magazines.get();
+    	Frame result = magazine.pop();
+    	
+    	if (result == null) {
+    		//take full magazine from depot
+    		Frame[] frames = fullMagazines.poll();
+    		if (frames != null) {
+    			emptyMagazines.offer(magazine.load(frames, MAGAZINE_SIZE));
+    			result = magazine.pop();
+    		}
+    	}
     	
-        if (result==null) {
+        if (result == null) {
+            if (direct) {
+                return new Frame(this, allocateBuffer());
+            }
+            
             return new Frame(this, new byte[size]);
         }
         
@@ -54,11 +107,88 @@ public class Partition {
     		//dont add duplicate,otherwise may be reused in different places
     		return;
     	}
+        if (Memory.leakDetector.isEnabled()) {
+        	Memory.leakDetector.recycled(frame);
+        }
+        
         frame.setHeader(null);
         frame.setDuration(Long.MAX_VALUE);
-        frame.setEOM(false);        
-        heap.offer(frame);
-        //queue.offer(frame, frame.getDelay(TimeUnit.NANOSECONDS), TimeUnit.NANOSECONDS);
+        frame.setEOM(false);
+        frame.setSharedEncoder(null, 0);
+        frame.attach();
+        
+        Magazine magazine = magazines.get();
+        if (magazine.push(frame)) {
+        	return;
+        }
+        
+        //current magazine is full, share it with other threads
+        if (!fullMagazines.offer(magazine.frames)) {
+        	//frame is left for gc when partition is full
+        	return;
+        }
+        
+        Frame[] frames = emptyMagazines.poll();
+        if (frames == null) {
+        	frames = new Frame[MAGAZINE_SIZE];
+        }
+        
+        magazine.load(frames, 0);
+        magazine.push(frame);
     }
 
+    private synchronized ByteBuffer allocateBuffer() {
+        if (size == 0 || size > CHUNK_SIZE / 2) {
+            return ByteBuffer.allocateDirect(size);
+        }
+        
+        if (chunk == null || chunk.remaining() < size) {
+            chunk = ByteBuffer.allocateDirect(CHUNK_SIZE);
+        }
+        
+        chunk.limit(chunk.position() + size);
+        ByteBuffer result = chunk.slice();
+        chunk.position(chunk.limit());
+        chunk.limit(chunk.capacity());
+        return result;
+    }
+
+    /**
+     * Frames owned by single thread.
+     */
+    private static class Magazine {
+    	private Frame[] frames = new Frame[MAGAZINE_SIZE];
+    	private int count;
+    	
+    	private Frame pop() {
+    		if (count == 0) {
+    			return null;
+    		}
+    		
+    		Frame frame = frames[--count];
+    		frames[count] = null;
+    		return frame;
+    	}
+    	
+    	private boolean push(Frame frame) {
+    		if (count == frames.length) {
+    			return false;
+    		}
+    		
+    		frames[count++] = frame;
+    		return true;
+    	}
+    	
+    	/**
+    	 * Replaces frames of this magazine.
+    	 * 
+    	 * @return the previous frames array.
+    	 */
+    	private Frame[] load(Frame[] frames, int count) {
+    		Frame[] result = this.frames;
+    		this.frames = frames;
+    		this.count = count;
+    		return result;
+    	}
+    }
 }
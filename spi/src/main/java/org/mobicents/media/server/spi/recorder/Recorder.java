@@ -56,6 +56,14 @@ public interface Recorder extends MediaSink {
      */
     public void setRecordFile(String uri, boolean append) throws IOException;
 
+    /**
+     * Selects format of the file, applies to the next assigned file.
+     * 
+     * @param format the encoding name: linear, pcma, pcmu or gsm.
+     * @throws IllegalArgumentException if format is not supported.
+     */
+    public void setRecordFormat(String format);
+
     /**
      * Sets the time for recording.
      * 
@@ -77,6 +85,13 @@ public interface Recorder extends MediaSink {
      */
     public void setPostSpeechTimer(long value);
     
+    /**
+     * Enables trimming of silence, only speech is written to the file.
+     * 
+     * @param value true to drop silence.
+     */
+    public void setDropSilence(boolean value);
+    
     /**
      * Adds listener for the recorder
      * 
@@ -612,6 +612,25 @@ public class Text implements CharSequence {
         return chars[pos] - 48;
     }        
     
+    /**
+     * Gets the array which backs this text.
+     * The array is shared, not copied.
+     * 
+     * @return the backing array.
+     */
+    public byte[] array() {
+        return chars;
+    }
+    
+    /**
+     * Gets the position of the first character in the backing array.
+     * 
+     * @return the offset in the backing array.
+     */
+    public int arrayOffset() {
+        return pos;
+    }
+    
     /**
      * Writes this text into byte buffer.
      * 
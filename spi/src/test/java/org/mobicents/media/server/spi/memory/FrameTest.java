@@ -28,6 +28,10 @@
 package org.mobicents.media.server.spi.memory;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
 
 import org.junit.After;
 import org.junit.AfterClass;
@@ -94,4 +98,49 @@ public class FrameTest {
         assertEquals(2, (int)(frame1.getData()[1]));    	
     }
 
+    /**
+     * Test of getData method for direct frame.
+     */
+    @Test
+    public void testDirectData() {
+    	Frame frame1 = Memory.allocateDirect(3);
+    	frame1.getBuffer().put(0, (byte) 1).put(1, (byte) 2).put(2, (byte) 3);
+    	frame1.setOffset(0);
+    	frame1.setLength(3);
+    	assertTrue(frame1.isDirect());
+
+    	//changes of array are kept in the frame
+    	frame1.getData()[1] = 100;
+    	assertFalse(frame1.isDirect());
+    	assertEquals(100, (int)(frame1.getData()[1]));
+    	assertEquals(100, (int)(frame1.getBuffer().get(1)));
+    	assertEquals(3, (int)(frame1.getBuffer().get(2)));
+
+    	Frame frame2 = frame1.clone();
+    	assertEquals(100, (int)(frame2.getData()[1]));
+
+    	frame1.recycle();
+    	frame2.recycle();
+    }
+
+    /**
+     * Test of getBuffer method for direct frame.
+     */
+    @Test
+    public void testDirectBuffer() {
+    	Frame frame = Memory.allocateDirect(3);
+    	frame.setOffset(0);
+    	frame.setLength(3);
+
+    	//each caller gets own position and limit
+    	ByteBuffer buffer1 = frame.getBuffer();
+    	buffer1.put((byte) 1).put((byte) 2).limit(2);
+    	ByteBuffer buffer2 = frame.getBuffer();
+    	assertEquals(0, buffer2.position());
+    	assertEquals(buffer2.capacity(), buffer2.limit());
+    	assertEquals(2, (int)(buffer2.get(1)));
+
+    	frame.recycle();
+    }
+
 }
\ No newline at end of file
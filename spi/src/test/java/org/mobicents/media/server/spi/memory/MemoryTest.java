@@ -27,6 +27,16 @@
 
 package org.mobicents.media.server.spi.memory;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
 import org.junit.After;
 import org.junit.AfterClass;
 import org.junit.Before;
@@ -82,6 +92,100 @@ public class MemoryTest {
 */
     }
 
+    @Test
+    public void testRecycle() {
+        Frame frame = Memory.allocate(161);
+        assertEquals(161, frame.getData().length);
+        frame.recycle();
+
+        // same thread gets frame back from its magazine
+        assertSame(frame, Memory.allocate(161));
+
+        // frame of other size is never reused
+        frame.recycle();
+        assertNotSame(frame, Memory.allocate(162));
+    }
+
+    @Test
+    public void testRecycleByOtherThread() throws InterruptedException {
+        final Frame[] frames = new Frame[200];
+        for (int i = 0; i < frames.length; i++) {
+            frames[i] = Memory.allocate(163);
+        }
+
+        Thread recycler = new Thread() {
+            public void run() {
+                for (int i = 0; i < frames.length; i++) {
+                    frames[i].recycle();
+                }
+            }
+        };
+        recycler.start();
+        recycler.join();
+
+        // full magazines are shared through depot
+        Set<Frame> original = new HashSet<Frame>();
+        for (int i = 0; i < frames.length; i++) {
+            original.add(frames[i]);
+        }
+
+        int reused = 0;
+        for (int i = 0; i < frames.length; i++) {
+            if (original.contains(Memory.allocate(163))) {
+                reused++;
+            }
+        }
+
+        assertTrue(reused > 0);
+    }
+
+    @Test
+    public void testDirect() {
+        Frame frame = Memory.allocateDirect(160);
+        assertTrue(frame.isDirect());
+        assertTrue(frame.getBuffer().isDirect());
+        assertEquals(160, frame.getBuffer().capacity());
+
+        frame.getBuffer().put(10, (byte) 100);
+        frame.setOffset(10);
+        frame.setLength(1);
+        assertEquals(100, frame.getData()[10]);
+
+        Frame copy = frame.clone();
+        assertTrue(copy.isDirect());
+        assertEquals(100, copy.getBuffer().get(10));
+
+        // direct and heap frames are pooled separately
+        frame.recycle();
+        assertSame(frame, Memory.allocateDirect(160));
+        assertFalse(Memory.allocate(160).isDirect());
+    }
+
+    @Test
+    public void testLeakDetection() throws InterruptedException {
+        Memory.enableLeakDetection(1);
+        try {
+            assertTrue(Memory.isLeakDetectionEnabled());
+
+            Frame leaked = Memory.allocate(164);
+            Frame recycled = Memory.allocate(164);
+            recycled.recycle();
+
+            assertTrue(Memory.getLeakedFrames().isEmpty());
+            Thread.sleep(1100);
+
+            Map<String, Integer> leaks = Memory.getLeakedFrames();
+            assertEquals(Integer.valueOf(1), leaks.get(MemoryTest.class.getName()));
+
+            leaked.recycle();
+            assertTrue(Memory.getLeakedFrames().isEmpty());
+        } finally {
+            Memory.disableLeakDetection();
+        }
+
+        assertFalse(Memory.isLeakDetectionEnabled());
+    }
+
     //@Test
     public void testGC() throws InterruptedException {
         for (int i = 0; i < 5000; i++) {